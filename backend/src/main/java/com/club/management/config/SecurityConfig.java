@@ -1,5 +1,6 @@
 package com.club.management.config;
 
+import com.club.management.security.CredentialVerifier;
 import com.club.management.security.CustomUserDetailsService;
 import com.club.management.security.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,7 +17,6 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -45,14 +45,13 @@ public class SecurityConfig {
     @Value("${app.cors.allowed-origins}")
     private String allowedOrigins;
 
-    @Value("${app.security.bcrypt-strength:4}")
-    private int bcryptStrength;
+    @Autowired
+    private CredentialVerifier credentialVerifier;
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        // Usar strength reducido para producción (4 = mucho más rápido que 10)
-        // En local dev puedes usar 10 para mayor seguridad
-        return new BCryptPasswordEncoder(bcryptStrength);
+        // BCrypt (app.security.bcrypt-strength) ejecutado en el pool acotado de CredentialVerifier
+        return credentialVerifier.getPasswordEncoder();
     }
 
     @Bean
@@ -104,6 +103,8 @@ public class SecurityConfig {
                         .requestMatchers("/public/**").permitAll()
                         .requestMatchers("/actuator/health").permitAll()
                         .requestMatchers("/api/auth/login").permitAll()
+                        .requestMatchers("/api/auth/refresh").permitAll()  // Canje de refresh token (access token caducado)
+                        .requestMatchers("/api/auth/logout").permitAll()
                         .requestMatchers("/api/auth/register").permitAll()
                         .requestMatchers("/api/auth/device/setup").permitAll()
                         .requestMatchers("/api/auth/device/pair").permitAll()
@@ -166,6 +167,9 @@ public class SecurityConfig {
             "Access-Control-Request-Headers"
         ));
 
+        // Cabeceras propias que el frontend necesita leer (ArchivoVentasService)
+        configuration.setExposedHeaders(Arrays.asList("X-Ventas-Archivadas-Hasta"));
+
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
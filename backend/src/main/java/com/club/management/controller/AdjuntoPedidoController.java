@@ -2,10 +2,12 @@ package com.club.management.controller;
 
 import com.club.management.dto.AdjuntoPedidoDTO;
 import com.club.management.service.AdjuntoPedidoService;
+import com.club.management.service.AlmacenContenidoService;
+import com.club.management.service.DerivadosAdjuntoService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -28,6 +30,7 @@ import java.util.List;
 public class AdjuntoPedidoController {
 
     private final AdjuntoPedidoService adjuntoService;
+    private final AlmacenContenidoService almacenContenido;
 
     /**
      * Obtener todos los adjuntos de un pedido
@@ -72,33 +75,18 @@ public class AdjuntoPedidoController {
     }
 
     /**
-     * Descargar un archivo adjunto
+     * Descargar un archivo adjunto (admite Range e If-None-Match)
      */
     @GetMapping("/{adjuntoId}/download")
     @PreAuthorize("hasAnyRole('ADMIN', 'GERENTE', 'ENCARGADO', 'LECTURA')")
-    public ResponseEntity<Resource> descargarAdjunto(
+    public void descargarAdjunto(
             @PathVariable Long adjuntoId,
-            HttpServletRequest request) {
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         log.info("GET /api/pedidos/adjuntos/{}/download - Descargar adjunto", adjuntoId);
 
-        // Cargar el archivo como Resource
-        Resource resource = adjuntoService.descargarAdjunto(adjuntoId);
-
-        // Obtener información del adjunto
-        AdjuntoPedidoDTO adjunto = adjuntoService.obtenerAdjunto(adjuntoId);
-
-        // Determinar el tipo de contenido
-        String contentType = adjunto.getMimeType();
-        if (contentType == null) {
-            contentType = "application/octet-stream";
-        }
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + adjunto.getNombreOriginal() + "\"")
-                .body(resource);
+        almacenContenido.enviar(adjuntoService.descargarAdjunto(adjuntoId), false, request, response);
     }
 
     /**
@@ -106,24 +94,50 @@ public class AdjuntoPedidoController {
      */
     @GetMapping("/{adjuntoId}/preview")
     @PreAuthorize("hasAnyRole('ADMIN', 'GERENTE', 'ENCARGADO', 'LECTURA')")
-    public ResponseEntity<Resource> previsualizarAdjunto(
+    public void previsualizarAdjunto(
             @PathVariable Long adjuntoId,
-            HttpServletRequest request) {
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         log.info("GET /api/pedidos/adjuntos/{}/preview - Vista previa del adjunto", adjuntoId);
 
-        Resource resource = adjuntoService.descargarAdjunto(adjuntoId);
-        AdjuntoPedidoDTO adjunto = adjuntoService.obtenerAdjunto(adjuntoId);
+        // Imágenes: versión comprimida si está lista; si no, el original
+        AdjuntoPedidoService.Derivado derivado = adjuntoService
+                .descargarDerivado(adjuntoId, DerivadosAdjuntoService.Variante.PREVISUALIZACION);
+        AlmacenContenidoService.Descarga descarga = derivado.listo()
+                ? derivado.descarga()
+                : adjuntoService.descargarAdjunto(adjuntoId);
 
-        String contentType = adjunto.getMimeType();
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        almacenContenido.enviar(descarga, true, request, response);
+    }
+
+    /**
+     * Miniatura de un adjunto de imagen.
+     * 202 con Retry-After si todavía se está generando; 404 si no es una imagen
+     * o no se puede decodificar.
+     */
+    @GetMapping("/{adjuntoId}/thumbnail")
+    @PreAuthorize("hasAnyRole('ADMIN', 'GERENTE', 'ENCARGADO', 'LECTURA')")
+    public void miniaturaAdjunto(
+            @PathVariable Long adjuntoId,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        log.debug("GET /api/pedidos/adjuntos/{}/thumbnail - Miniatura del adjunto", adjuntoId);
+
+        AdjuntoPedidoService.Derivado miniatura = adjuntoService
+                .descargarDerivado(adjuntoId, DerivadosAdjuntoService.Variante.MINIATURA);
+        if (!miniatura.listo()) {
+            if (miniatura.pendiente()) {
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.setHeader(HttpHeaders.RETRY_AFTER, "2");
+            } else {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+            return;
         }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + adjunto.getNombreOriginal() + "\"")
-                .body(resource);
+        almacenContenido.enviar(miniatura.descarga(), true, request, response);
     }
 
     /**
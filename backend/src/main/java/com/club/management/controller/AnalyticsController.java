@@ -2,6 +2,7 @@ package com.club.management.controller;
 
 import com.club.management.dto.response.*;
 import com.club.management.service.AnalyticsService;
+import com.club.management.service.RendimientoEmpleadosService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -11,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +26,7 @@ import java.util.Map;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final RendimientoEmpleadosService rendimientoEmpleadosService;
 
     /**
      * Obtiene los costes laborales de un periodo específico
@@ -78,6 +81,56 @@ public class AnalyticsController {
         return ResponseEntity.ok(rendimiento);
     }
 
+    /**
+     * Compara el rendimiento de todos los empleados en un rango de meses
+     *
+     * @param desde Mes de inicio en formato YYYY-MM (opcional, por defecto hace 1 año)
+     * @param hasta Mes de fin en formato YYYY-MM (opcional, por defecto mes actual)
+     * @param orden horas, jornadas, importe, ventas o numeroVentas (por defecto horas)
+     * @param limite Número máximo de empleados (opcional)
+     * @return Ranking de empleados de mayor a menor según el criterio
+     */
+    @GetMapping("/rendimiento-empleados")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<List<RendimientoEmpleadoDTO>> getRankingEmpleados(
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta,
+            @RequestParam(required = false, defaultValue = "horas") String orden,
+            @RequestParam(required = false) Integer limite) {
+
+        log.info("GET /api/analytics/rendimiento-empleados - desde: {}, hasta: {}, orden: {}, limite: {}",
+                desde, hasta, orden, limite);
+
+        YearMonth inicio = desde == null || desde.isEmpty() ? YearMonth.now().minusYears(1) : YearMonth.parse(desde);
+        YearMonth fin = hasta == null || hasta.isEmpty() ? YearMonth.now() : YearMonth.parse(hasta);
+
+        return ResponseEntity.ok(rendimientoEmpleadosService.getRanking(inicio, fin, orden, limite));
+    }
+
+    /**
+     * Obtiene la evolución mensual del rendimiento de un empleado
+     *
+     * @param empleadoId ID del empleado
+     * @param desde Mes de inicio en formato YYYY-MM (opcional, por defecto hace 1 año)
+     * @param hasta Mes de fin en formato YYYY-MM (opcional, por defecto mes actual)
+     * @return Un elemento por mes del rango, a cero si no hubo actividad
+     */
+    @GetMapping("/rendimiento-empleado/{empleadoId}/tendencia")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<List<RendimientoEmpleadoMesDTO>> getTendenciaEmpleado(
+            @PathVariable Long empleadoId,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta) {
+
+        log.info("GET /api/analytics/rendimiento-empleado/{}/tendencia - desde: {}, hasta: {}",
+                empleadoId, desde, hasta);
+
+        YearMonth inicio = desde == null || desde.isEmpty() ? YearMonth.now().minusYears(1) : YearMonth.parse(desde);
+        YearMonth fin = hasta == null || hasta.isEmpty() ? YearMonth.now() : YearMonth.parse(hasta);
+
+        return ResponseEntity.ok(rendimientoEmpleadosService.getTendencia(empleadoId, inicio, fin));
+    }
+
     /**
      * Obtiene el análisis de rentabilidad de eventos en un rango de fechas
      *
@@ -0,0 +1,58 @@
+package com.club.management.controller;
+
+import com.club.management.dto.ArchivoVentasEstadoDTO;
+import com.club.management.service.ArchivoVentasService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controlador REST para el archivo frío de sesiones de caja y ventas
+ */
+@RestController
+@RequestMapping("/api/pos/archivo")
+@RequiredArgsConstructor
+public class ArchivoVentasController {
+
+    private final ArchivoVentasService archivoVentasService;
+
+    /**
+     * Obtiene el estado del archivo (sesiones, ventas y rango archivado)
+     */
+    @GetMapping("/estado")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<ArchivoVentasEstadoDTO> getEstado() {
+        return ResponseEntity.ok(archivoVentasService.getEstado());
+    }
+
+    /**
+     * Archiva ahora las sesiones cerradas antes de la fecha indicada
+     * (por defecto, las que están fuera del periodo de retención)
+     */
+    @PostMapping("/ejecutar")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> ejecutar(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate antesDe) {
+        ArchivoVentasEstadoDTO estado = archivoVentasService.getEstado();
+        LocalDate limite = antesDe != null ? antesDe : LocalDate.now().minusDays(estado.getRetencionDias());
+
+        if (!limite.isBefore(LocalDate.now())) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Solo se pueden archivar sesiones cerradas antes de hoy"));
+        }
+
+        int archivadas = archivoVentasService.archivarSesionesCerradasAntesDe(limite.atStartOfDay());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("sesionesArchivadas", archivadas);
+        response.put("antesDe", limite);
+        return ResponseEntity.ok(response);
+    }
+}
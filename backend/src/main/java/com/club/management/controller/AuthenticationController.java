@@ -3,6 +3,7 @@ package com.club.management.controller;
 import com.club.management.dto.AuthDispositivoDTO;
 import com.club.management.dto.request.DeviceLoginRequest;
 import com.club.management.dto.request.LoginRequest;
+import com.club.management.dto.request.RefreshTokenRequest;
 import com.club.management.dto.response.LoginResponse;
 import com.club.management.dto.response.UsuarioDTO;
 import com.club.management.service.AuthenticationService;
@@ -10,8 +11,13 @@ import com.club.management.service.DispositivoPOSService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 /**
@@ -91,10 +97,22 @@ public class AuthenticationController {
     /**
      * POST /api/auth/refresh
      * Refresca el token JWT
+     *
+     * Con {"refreshToken": "..."} canjea el refresh token por un nuevo par (no requiere
+     * access token válido). Sin body, renueva el access token del usuario autenticado.
      */
     @PostMapping("/refresh")
     @Operation(summary = "Refresh token", description = "Genera un nuevo token JWT")
-    public ResponseEntity<LoginResponse> refreshToken() {
+    public ResponseEntity<LoginResponse> refreshToken(@RequestBody(required = false) RefreshTokenRequest request) {
+        if (request != null && request.getRefreshToken() != null) {
+            return ResponseEntity.ok(authenticationService.refresh(request.getRefreshToken()));
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
         String newToken = authenticationService.refreshToken();
         UsuarioDTO usuario = authenticationService.getCurrentUser();
 
@@ -108,4 +126,19 @@ public class AuthenticationController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * POST /api/auth/logout
+     * Revoca el access token actual y, si se envía, el refresh token
+     */
+    @PostMapping("/logout")
+    @Operation(summary = "Logout", description = "Revoca los tokens de la sesión")
+    public ResponseEntity<Void> logout(@RequestBody(required = false) RefreshTokenRequest request,
+                                       HttpServletRequest httpRequest) {
+        String bearer = httpRequest.getHeader("Authorization");
+        String accessToken = bearer != null && bearer.startsWith("Bearer ") ? bearer.substring(7) : null;
+
+        authenticationService.logout(accessToken, request != null ? request.getRefreshToken() : null);
+        return ResponseEntity.noContent().build();
+    }
 }
@@ -0,0 +1,77 @@
+package com.club.management.controller;
+
+import com.club.management.dto.AbrirBotellaRequest;
+import com.club.management.dto.BotellaAbiertaDTO;
+import com.club.management.dto.CerrarBotellaRequest;
+import com.club.management.dto.ResumenBotellasDTO;
+import com.club.management.service.BotellaAbiertaService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Botellas abiertas en barra: apertura, cierre y copas disponibles por barra
+ */
+@RestController
+@RequestMapping("/api/botellas-abiertas")
+@RequiredArgsConstructor
+public class BotellaAbiertaController {
+
+    private final BotellaAbiertaService botellaService;
+
+    /**
+     * Botellas abiertas de una barra (o de todas) con las copas en tiempo real
+     * GET /api/botellas-abiertas?ubicacion=BARRA_VIP
+     */
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
+    public ResponseEntity<List<BotellaAbiertaDTO>> getBotellasAbiertas(@RequestParam(required = false) String ubicacion) {
+        return ResponseEntity.ok(botellaService.getBotellasAbiertas(ubicacion));
+    }
+
+    /**
+     * Resumen por producto de las botellas abiertas
+     * GET /api/botellas-abiertas/resumen?ubicacion=BARRA_VIP
+     */
+    @GetMapping("/resumen")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
+    public ResponseEntity<List<ResumenBotellasDTO>> getResumen(@RequestParam(required = false) String ubicacion) {
+        return ResponseEntity.ok(botellaService.getResumen(ubicacion));
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
+    public ResponseEntity<?> getBotella(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(botellaService.getBotella(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/abrir")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO')")
+    public ResponseEntity<?> abrirBotella(@Valid @RequestBody AbrirBotellaRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(botellaService.abrirBotella(request));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/cerrar")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO')")
+    public ResponseEntity<?> cerrarBotella(@Valid @RequestBody CerrarBotellaRequest request) {
+        try {
+            return ResponseEntity.ok(botellaService.cerrarBotella(request));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
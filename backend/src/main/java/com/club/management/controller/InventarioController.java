@@ -0,0 +1,38 @@
+package com.club.management.controller;
+
+import com.club.management.dto.request.ConteoInventarioRequest;
+import com.club.management.dto.response.ConteoInventarioResultadoDTO;
+import com.club.management.service.InventarioService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Controlador de inventarios físicos (conteos)
+ */
+@RestController
+@RequestMapping("/api/inventarios")
+@RequiredArgsConstructor
+public class InventarioController {
+
+    private final InventarioService inventarioService;
+
+    /**
+     * Registra una hoja de conteo completa y ajusta el stock de los productos con diferencias
+     */
+    @PostMapping("/conteo")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO')")
+    public ResponseEntity<?> registrarConteo(@Valid @RequestBody ConteoInventarioRequest request) {
+        try {
+            ConteoInventarioResultadoDTO resultado = inventarioService.registrarConteo(request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(resultado);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.club.management.controller;
 
 import com.club.management.dto.request.JornadaTrabajoRequest;
 import com.club.management.dto.response.JornadaTrabajoDTO;
+import com.club.management.dto.response.PagoJornadasDTO;
 import com.club.management.service.JornadaTrabajoService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -162,10 +163,11 @@ public class JornadaTrabajoController {
      */
     @PostMapping("/pagar-multiples")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH')")
-    public ResponseEntity<List<JornadaTrabajoDTO>> pagarMultiplesJornadas(
+    public ResponseEntity<PagoJornadasDTO> pagarMultiplesJornadas(
             @Valid @RequestBody Map<String, Object> body) {
         @SuppressWarnings("unchecked")
-        List<Long> jornadaIds = (List<Long>) body.get("jornadaIds");
+        List<Number> ids = (List<Number>) body.get("jornadaIds");
+        List<Long> jornadaIds = ids == null ? List.of() : ids.stream().map(Number::longValue).toList();
         String metodoPago = (String) body.get("metodoPago");
         return ResponseEntity.ok(jornadaTrabajoService.pagarMultiplesJornadas(jornadaIds, metodoPago));
     }
@@ -2,12 +2,15 @@ package com.club.management.controller;
 
 import com.club.management.dto.request.NominaRequest;
 import com.club.management.dto.response.NominaDTO;
+import com.club.management.dto.response.NominaGeneracionDTO;
+import com.club.management.service.NominaGeneracionService;
 import com.club.management.service.NominaService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,6 +22,7 @@ import java.util.Map;
 public class NominaController {
 
     private final NominaService nominaService;
+    private final NominaGeneracionService nominaGeneracionService;
 
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH', 'ROLE_LECTURA')")
@@ -115,6 +119,38 @@ public class NominaController {
         return ResponseEntity.status(HttpStatus.CREATED).body(nominas);
     }
 
+    /**
+     * Lanza la generación masiva de nóminas del periodo en segundo plano
+     *
+     * @param periodo Periodo en formato YYYY-MM
+     * @param modo SALARIO_BASE o JORNADAS
+     * @return Trabajo de generación (consultar su progreso con GET /generaciones/{id})
+     */
+    @PostMapping("/generaciones")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH')")
+    public ResponseEntity<?> iniciarGeneracion(
+            @RequestParam String periodo,
+            @RequestParam(defaultValue = "JORNADAS") String modo,
+            Authentication authentication) {
+        try {
+            NominaGeneracionService.Modo modoGeneracion = NominaGeneracionService.Modo.valueOf(modo.toUpperCase());
+            NominaGeneracionDTO job = nominaGeneracionService.iniciar(periodo, modoGeneracion, authentication.getName());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Modo de generación inválido: " + modo));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/generaciones/{id}")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH')")
+    public ResponseEntity<NominaGeneracionDTO> getGeneracion(@PathVariable String id) {
+        return nominaGeneracionService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH')")
     public ResponseEntity<NominaDTO> update(@PathVariable Long id,
@@ -0,0 +1,48 @@
+package com.club.management.controller;
+
+import com.club.management.dto.response.PrevisionConsumoDTO;
+import com.club.management.service.PrevisionConsumoService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Previsión de consumo: cantidades sugeridas para pedir y fecha estimada de rotura de stock
+ */
+@RestController
+@RequestMapping("/api/prevision-consumo")
+@RequiredArgsConstructor
+public class PrevisionConsumoController {
+
+    private final PrevisionConsumoService previsionService;
+
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
+    public ResponseEntity<List<PrevisionConsumoDTO>> getPrevisiones(
+            @RequestParam(required = false) Long proveedorId,
+            @RequestParam(defaultValue = "7") int horizonteDias) {
+        return ResponseEntity.ok(previsionService.getPrevisiones(proveedorId, limitarHorizonte(horizonteDias)));
+    }
+
+    @GetMapping("/{productoId}")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
+    public ResponseEntity<PrevisionConsumoDTO> getPrevision(
+            @PathVariable Long productoId,
+            @RequestParam(defaultValue = "7") int horizonteDias) {
+        return ResponseEntity.ok(previsionService.getPrevision(productoId, limitarHorizonte(horizonteDias)));
+    }
+
+    @PostMapping("/cerrar-jornadas")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<Void> cerrarJornadas() {
+        previsionService.cerrarJornadas();
+        return ResponseEntity.ok().build();
+    }
+
+    private static int limitarHorizonte(int horizonteDias) {
+        return Math.max(1, Math.min(horizonteDias, 90));
+    }
+}
@@ -1,18 +1,22 @@
 package com.club.management.controller;
 
 import com.club.management.dto.request.ProductoFormData;
+import com.club.management.dto.response.ImportacionProductosResultadoDTO;
 import com.club.management.dto.response.InventoryStatsDTO;
 import com.club.management.dto.response.ProductoDTO;
 import com.club.management.entity.Producto.TipoVenta;
 import com.club.management.service.InventoryStatsService;
 import com.club.management.service.ProductoCalculationService;
+import com.club.management.service.ProductoImportService;
 import com.club.management.service.ProductoService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -26,6 +30,7 @@ public class ProductoController {
     private final ProductoService productoService;
     private final ProductoCalculationService calculationService;
     private final InventoryStatsService inventoryStatsService;
+    private final ProductoImportService productoImportService;
 
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
@@ -79,8 +84,41 @@ public class ProductoController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Importación masiva de productos (catálogo de proveedor) desde CSV o XLSX
+     * POST /api/productos/importar
+     * Cabecera con al menos codigo, nombre y categoria; los productos existentes se
+     * actualizan por código. Si alguna fila es inválida no se importa nada.
+     */
+    @PostMapping(value = "/importar", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<?> importarProductos(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) Long proveedorId) {
+        try {
+            ImportacionProductosResultadoDTO resultado = productoImportService.importar(file, proveedorId);
+            if (!resultado.getErrores().isEmpty()) {
+                return ResponseEntity.badRequest().body(resultado);
+            }
+            return ResponseEntity.ok(resultado);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ========== ENDPOINTS PARA MODELO DE OCIO NOCTURNO ==========
 
+    /**
+     * Recalcular unidades, ingreso, beneficio y margen de todo el catálogo
+     * POST /api/productos/recalcular-economia
+     */
+    @PostMapping("/recalcular-economia")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE')")
+    public ResponseEntity<Map<String, Object>> recalcularEconomia() {
+        int modificados = calculationService.recalcularCatalogo();
+        return ResponseEntity.ok(Map.of("productosModificados", modificados));
+    }
+
     /**
      * Obtener presets de configuración para un tipo de venta
      * GET /api/productos/presets/{tipoVenta}
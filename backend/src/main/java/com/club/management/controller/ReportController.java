@@ -1,5 +1,7 @@
 package com.club.management.controller;
 
+import com.club.management.service.ArchivoVentasService;
+import com.club.management.service.reports.DataExportService;
 import com.club.management.service.reports.ExcelExportService;
 import com.club.management.service.reports.PdfReportService;
 import lombok.RequiredArgsConstructor;
@@ -10,10 +12,14 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/reportes")
@@ -22,100 +28,87 @@ public class ReportController {
 
     private final ExcelExportService excelExportService;
     private final PdfReportService pdfReportService;
+    private final DataExportService dataExportService;
+    private final ArchivoVentasService archivoVentasService;
 
     @GetMapping("/eventos/excel")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
-    public ResponseEntity<byte[]> exportEventosExcel(
+    public ResponseEntity<StreamingResponseBody> exportEventosExcel(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin) {
-        try {
-            byte[] excelData = excelExportService.exportEventos(fechaInicio, fechaFin);
-            String filename = String.format("eventos_%s_%s.xlsx",
-                    fechaInicio.format(DateTimeFormatter.ISO_DATE),
-                    fechaFin.format(DateTimeFormatter.ISO_DATE));
+        String filename = String.format("eventos_%s_%s.xlsx",
+                fechaInicio.format(DateTimeFormatter.ISO_DATE),
+                fechaFin.format(DateTimeFormatter.ISO_DATE));
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(excelData);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        StreamingResponseBody stream = out -> excelExportService.exportEventos(fechaInicio, fechaFin, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(stream);
     }
 
     @GetMapping("/transacciones/excel")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_LECTURA')")
-    public ResponseEntity<byte[]> exportTransaccionesExcel(
+    public ResponseEntity<StreamingResponseBody> exportTransaccionesExcel(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin) {
-        try {
-            byte[] excelData = excelExportService.exportTransacciones(fechaInicio, fechaFin);
-            String filename = String.format("transacciones_%s_%s.xlsx",
-                    fechaInicio.format(DateTimeFormatter.ISO_DATE),
-                    fechaFin.format(DateTimeFormatter.ISO_DATE));
+        String filename = String.format("transacciones_%s_%s.xlsx",
+                fechaInicio.format(DateTimeFormatter.ISO_DATE),
+                fechaFin.format(DateTimeFormatter.ISO_DATE));
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(excelData);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        StreamingResponseBody stream = out -> excelExportService.exportTransacciones(fechaInicio, fechaFin, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(stream);
     }
 
     @GetMapping("/nominas/excel")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_RRHH')")
-    public ResponseEntity<byte[]> exportNominasExcel(
+    public ResponseEntity<StreamingResponseBody> exportNominasExcel(
             @RequestParam Integer mes,
             @RequestParam Integer anio) {
-        try {
-            byte[] excelData = excelExportService.exportNominas(mes, anio);
-            String filename = String.format("nominas_%d_%d.xlsx", mes, anio);
+        String filename = String.format("nominas_%d_%d.xlsx", mes, anio);
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(excelData);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        StreamingResponseBody stream = out -> excelExportService.exportNominas(mes, anio, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(stream);
     }
 
     @GetMapping("/inventario/excel")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
-    public ResponseEntity<byte[]> exportInventarioExcel() {
-        try {
-            byte[] excelData = excelExportService.exportInventario();
-            String filename = String.format("inventario_%s.xlsx",
-                    LocalDate.now().format(DateTimeFormatter.ISO_DATE));
+    public ResponseEntity<StreamingResponseBody> exportInventarioExcel() {
+        String filename = String.format("inventario_%s.xlsx",
+                LocalDate.now().format(DateTimeFormatter.ISO_DATE));
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(excelData);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        StreamingResponseBody stream = out -> excelExportService.exportInventario(out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(stream);
     }
 
     @GetMapping("/movimientos-stock/excel")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
-    public ResponseEntity<byte[]> exportMovimientosStockExcel(
+    public ResponseEntity<StreamingResponseBody> exportMovimientosStockExcel(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin) {
-        try {
-            byte[] excelData = excelExportService.exportMovimientosStock(fechaInicio, fechaFin);
-            String filename = String.format("movimientos_stock_%s_%s.xlsx",
-                    fechaInicio.format(DateTimeFormatter.ISO_DATE),
-                    fechaFin.format(DateTimeFormatter.ISO_DATE));
+        String filename = String.format("movimientos_stock_%s_%s.xlsx",
+                fechaInicio.format(DateTimeFormatter.ISO_DATE),
+                fechaFin.format(DateTimeFormatter.ISO_DATE));
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .body(excelData);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        StreamingResponseBody stream = out -> excelExportService.exportMovimientosStock(fechaInicio, fechaFin, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(stream);
     }
 
     // ========== ENDPOINTS PARA EXPORTACIÓN PDF ==========
@@ -197,4 +190,68 @@ public class ReportController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    // ========== EXPORTACIÓN DE DATOS PARA BI (CSV / NDJSON) ==========
+
+    /**
+     * Exporta en streaming ventas, detalle-venta, transacciones o movimientos-stock.
+     * Incremental con updatedSince/afterId de la última fila recibida (ver DataExportService); comprimido con
+     * gzip si el cliente lo acepta. Las ventas archivadas no se exportan: si la descarga de ventas o
+     * detalle-venta alcanza el periodo archivado, la cabecera X-Ventas-Archivadas-Hasta lo indica.
+     */
+    @GetMapping("/export/{dataset}")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_LECTURA')")
+    public ResponseEntity<?> exportDatos(
+            @PathVariable String dataset,
+            @RequestParam(defaultValue = "csv") String formato,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime updatedSince,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Integer limite,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        DataExportService.Dataset ds;
+        DataExportService.Formato fmt;
+        try {
+            ds = DataExportService.Dataset.valueOf(dataset.toUpperCase().replace('-', '_'));
+            fmt = DataExportService.Formato.valueOf(formato.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Dataset o formato no válido: " + dataset + " / " + formato));
+        }
+        if (limite != null && limite <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "El límite debe ser mayor que 0"));
+        }
+        if (afterId != null && updatedSince == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "afterId requiere updatedSince (fecha e id de la última fila recibida)"));
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String filename = ds.name().toLowerCase() + (fmt == DataExportService.Formato.CSV ? ".csv" : ".ndjson");
+        MediaType contentType = fmt == DataExportService.Formato.CSV
+                ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        StreamingResponseBody stream = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+            dataExportService.export(ds, fmt, updatedSince, afterId, limite, target);
+            if (target instanceof GZIPOutputStream gz) {
+                gz.finish();
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(contentType);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (ds.isVentas()) {
+            LocalDateTime archivadasHasta = archivoVentasService.getUltimaVentaArchivada();
+            if (archivadasHasta != null && (updatedSince == null || !updatedSince.isAfter(archivadasHasta))) {
+                response.header(ArchivoVentasService.CABECERA_ARCHIVADAS_HASTA, archivadasHasta.toString());
+            }
+        }
+        return response.body(stream);
+    }
 }
@@ -0,0 +1,126 @@
+package com.club.management.controller;
+
+import com.club.management.dto.request.ReportJobRequest;
+import com.club.management.dto.response.ReportJobDTO;
+import com.club.management.service.reports.ReportJobService;
+import com.club.management.service.reports.TipoReporte;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Controlador REST para la generación de reportes en segundo plano.
+ *
+ * Flujo: POST para encolar → GET /{id} (polling) o GET /{id}/eventos (SSE)
+ * → GET /{id}/descarga cuando el estado es COMPLETADO.
+ * Cada tipo de reporte exige los mismos roles que su endpoint síncrono.
+ */
+@RestController
+@RequestMapping("/api/reportes/jobs")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA', 'ROLE_RRHH')")
+public class ReportJobController {
+
+    private final ReportJobService reportJobService;
+
+    /**
+     * Encola la generación de un reporte
+     */
+    @PostMapping
+    public ResponseEntity<?> encolar(@Valid @RequestBody ReportJobRequest request, Authentication authentication) {
+        if (!tieneAcceso(request.getTipo(), authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "Sin permisos para el reporte " + request.getTipo()));
+        }
+        try {
+            ReportJobDTO job = reportJobService.encolar(request, authentication.getName());
+            HttpStatus status = "COMPLETADO".equals(job.getEstado()) ? HttpStatus.OK : HttpStatus.ACCEPTED;
+            return ResponseEntity.status(status).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Estado de un trabajo
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ReportJobDTO> getJob(@PathVariable String id, Authentication authentication) {
+        return reportJobService.getJob(id)
+                .filter(job -> tieneAcceso(TipoReporte.valueOf(job.getTipo()), authentication))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Cambios de estado de un trabajo por Server-Sent Events (evento "estado")
+     */
+    @GetMapping(value = "/{id}/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> eventos(@PathVariable String id, Authentication authentication) {
+        try {
+            if (!tieneAcceso(reportJobService.getTipo(id), authentication)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(reportJobService.suscribir(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Descarga el fichero de un trabajo completado
+     */
+    @GetMapping("/{id}/descarga")
+    public ResponseEntity<?> descargar(@PathVariable String id, Authentication authentication) {
+        TipoReporte tipo;
+        try {
+            tipo = reportJobService.getTipo(id);
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!tieneAcceso(tipo, authentication)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            Path fichero = reportJobService.getFichero(id);
+            Resource resource = new FileSystemResource(fichero);
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + reportJobService.getNombreFichero(id) + "\"")
+                    .contentType(MediaType.parseMediaType(tipo.getFormato().getContentType()))
+                    .contentLength(resource.contentLength())
+                    .body(resource);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            log.error("Error leyendo reporte {}: {}", id, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private boolean tieneAcceso(TipoReporte tipo, Authentication authentication) {
+        return authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .anyMatch(tipo.getRoles()::contains);
+    }
+}
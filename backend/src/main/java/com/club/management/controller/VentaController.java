@@ -2,6 +2,7 @@ package com.club.management.controller;
 
 import com.club.management.dto.VentaDTO;
 import com.club.management.dto.VentaRequest;
+import com.club.management.service.ArchivoVentasService;
 import com.club.management.service.VentaService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -23,11 +24,12 @@ import java.util.List;
 public class VentaController {
 
     private final VentaService ventaService;
+    private final ArchivoVentasService archivoVentasService;
 
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
     public ResponseEntity<List<VentaDTO>> getAll() {
-        return ResponseEntity.ok(ventaService.findAll());
+        return sinArchivadas(ventaService.findAll());
     }
 
     @GetMapping("/{id}")
@@ -51,7 +53,7 @@ public class VentaController {
     @GetMapping("/empleado/{empleadoId}")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_GERENTE', 'ROLE_ENCARGADO', 'ROLE_LECTURA')")
     public ResponseEntity<List<VentaDTO>> getByEmpleado(@PathVariable Long empleadoId) {
-        return ResponseEntity.ok(ventaService.findByEmpleadoId(empleadoId));
+        return sinArchivadas(ventaService.findByEmpleadoId(empleadoId));
     }
 
     @GetMapping("/evento/{eventoId}")
@@ -83,4 +85,17 @@ public class VentaController {
         VentaDTO venta = ventaService.crearVenta(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(venta);
     }
+
+    /**
+     * Listados sin rango: solo ventas en caliente; si hay archivo, se indica hasta dónde llega
+     */
+    private ResponseEntity<List<VentaDTO>> sinArchivadas(List<VentaDTO> ventas) {
+        LocalDateTime archivadasHasta = archivoVentasService.getUltimaVentaArchivada();
+        if (archivadasHasta == null) {
+            return ResponseEntity.ok(ventas);
+        }
+        return ResponseEntity.ok()
+                .header(ArchivoVentasService.CABECERA_ARCHIVADAS_HASTA, archivadasHasta.toString())
+                .body(ventas);
+    }
 }
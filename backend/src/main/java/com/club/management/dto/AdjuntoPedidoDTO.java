@@ -39,6 +39,7 @@ public class AdjuntoPedidoDTO {
     // URLs para descarga
     private String urlDescarga; // URL para descargar el archivo
     private String urlVistaPrevia; // URL para vista previa (si aplica)
+    private String urlMiniatura; // Miniatura JPEG (solo imágenes)
 
     // Flags de ayuda
     private Boolean esImagen;
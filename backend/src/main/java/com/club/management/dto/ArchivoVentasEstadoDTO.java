@@ -0,0 +1,35 @@
+package com.club.management.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * DTO con el estado del archivo frío de sesiones de caja y ventas
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivoVentasEstadoDTO {
+
+    private Long sesionesArchivadas;
+    private Long ventasArchivadas;
+    private BigDecimal totalArchivado;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime primeraVentaArchivada;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime ultimaVentaArchivada;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime ultimoArchivado;
+
+    private Integer retencionDias;
+}
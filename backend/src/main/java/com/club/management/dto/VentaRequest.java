@@ -60,5 +60,8 @@ public class VentaRequest {
 
         @Builder.Default
         private BigDecimal descuento = BigDecimal.ZERO;
+
+        private String tipoVenta;  // Opcional: COPA_INDIVIDUAL para copas de una botella abierta
+        private String ubicacion;  // Barra de la botella abierta (obligatoria con COPA_INDIVIDUAL)
     }
 }
@@ -0,0 +1,53 @@
+package com.club.management.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Hoja de conteo físico completa: una línea por producto contado
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConteoInventarioRequest {
+
+    @Size(max = 200, message = "El nombre no puede exceder 200 caracteres")
+    private String nombre;
+
+    private LocalDate fechaInventario;
+
+    private String observaciones;
+
+    @NotEmpty(message = "La hoja de conteo no tiene líneas")
+    @Valid
+    private List<LineaConteo> lineas;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LineaConteo {
+
+        // Producto por ID o por código
+        private Long productoId;
+        private String codigo;
+
+        @NotNull(message = "El stock contado es obligatorio")
+        @DecimalMin(value = "0", message = "El stock contado no puede ser negativo")
+        private BigDecimal stockFisico;
+
+        private String observaciones;
+    }
+}
@@ -0,0 +1,40 @@
+package com.club.management.dto.request;
+
+import com.club.management.service.reports.TipoReporte;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Request para encolar la generación de un reporte en segundo plano
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportJobRequest {
+
+    @NotNull(message = "El tipo de reporte es obligatorio")
+    private TipoReporte tipo;
+
+    // Reportes por rango de fechas
+    private LocalDate fechaInicio;
+    private LocalDate fechaFin;
+
+    // Reportes por periodo (nóminas)
+    @Min(value = 1, message = "El mes debe estar entre 1 y 12")
+    @Max(value = 12, message = "El mes debe estar entre 1 y 12")
+    private Integer mes;
+    private Integer anio;
+
+    /**
+     * ALTA, NORMAL (por defecto) o BAJA
+     */
+    private String prioridad;
+}
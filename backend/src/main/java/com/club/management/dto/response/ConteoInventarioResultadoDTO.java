@@ -0,0 +1,39 @@
+package com.club.management.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConteoInventarioResultadoDTO {
+
+    private Long inventarioId;
+    private String nombre;
+    private Integer productosContados;
+    private Integer productosAjustados;
+    private BigDecimal costoDiferenciaTotal;  // Valor a precio de compra (negativo = faltante)
+
+    // Solo los productos con diferencia
+    private List<DiferenciaDTO> diferencias;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DiferenciaDTO {
+        private Long productoId;
+        private String productoCodigo;
+        private String productoNombre;
+        private BigDecimal stockSistema;
+        private BigDecimal stockFisico;
+        private BigDecimal diferencia;
+        private BigDecimal costoDiferencia;
+    }
+}
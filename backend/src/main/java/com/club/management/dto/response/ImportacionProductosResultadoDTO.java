@@ -0,0 +1,32 @@
+package com.club.management.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportacionProductosResultadoDTO {
+
+    private Integer filasLeidas;
+    private Integer creados;
+    private Integer actualizados;
+
+    // Si hay errores no se importa nada
+    private List<ErrorFilaDTO> errores;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErrorFilaDTO {
+        private Integer fila;
+        private String codigo;
+        private String mensaje;
+    }
+}
@@ -19,6 +19,9 @@ public class LoginResponse {
     private String username;
     private String email;
     private String rol;
+    private String refreshToken;
+    private Long expiresIn;          // Vida del access token en milisegundos
+    private Long refreshExpiresIn;   // Vida del refresh token en milisegundos
 
     public LoginResponse(String token, String username, String email, String rol) {
         this.token = token;
@@ -0,0 +1,59 @@
+package com.club.management.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Estado de una generación masiva de nóminas
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NominaGeneracionDTO {
+
+    private String id;
+    private String periodo;
+
+    /**
+     * SALARIO_BASE o JORNADAS
+     */
+    private String modo;
+    private String solicitadoPor;
+
+    /**
+     * PENDIENTE, EN_PROCESO, COMPLETADO o ERROR
+     */
+    private String estado;
+
+    /**
+     * CALCULANDO, INSERTANDO o VINCULANDO mientras está en proceso
+     */
+    private String fase;
+
+    private Integer empleadosActivos;
+    private Integer totalNominas;
+    private Integer nominasProcesadas;
+    private Integer nominasCreadas;
+    private Integer omitidas;
+    private Integer jornadasVinculadas;
+    private Integer porcentaje;
+    private BigDecimal totalBruto;
+    private BigDecimal totalNeto;
+    private String error;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime creadoEn;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime iniciadoEn;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime finalizadoEn;
+}
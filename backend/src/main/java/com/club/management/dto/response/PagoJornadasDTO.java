@@ -0,0 +1,32 @@
+package com.club.management.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Resumen del pago de varias jornadas a la vez
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PagoJornadasDTO {
+
+    private Integer jornadasPagadas;
+    private BigDecimal totalPagado;
+    private Integer empleados;
+    private String metodoPago;
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate fechaPago;
+
+    // Ya estaban pagadas: no se tocan (conservan su fecha y método de pago)
+    private List<Long> yaPagadas;
+}
@@ -0,0 +1,40 @@
+package com.club.management.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrevisionConsumoDTO {
+
+    private Long productoId;
+    private String productoCodigo;
+    private String productoNombre;
+    private String unidadMedida;
+    private Long proveedorId;
+
+    // Stock
+    private BigDecimal stockActual;
+    private BigDecimal stockMinimo;
+    private BigDecimal stockMaximo;
+
+    // Consumo por jornada (EWMA) según el día de la semana
+    private Map<DayOfWeek, BigDecimal> consumoPorDiaSemana;
+    private BigDecimal consumoMedioDiario;
+
+    // Previsión
+    private Integer horizonteDias;
+    private BigDecimal consumoPrevisto;  // Consumo esperado en el horizonte
+    private BigDecimal cantidadSugerida;  // Cubre el horizonte y deja el stock mínimo
+    private Integer diasHastaAgotarse;  // null si no se agota en app.prevision-consumo.max-dias-agotamiento
+    private LocalDate fechaAgotamientoEstimada;
+}
@@ -75,4 +75,19 @@ public class RendimientoEmpleadoDTO {
      * Importe pendiente de pago
      */
     private BigDecimal importePendiente;
+
+    /**
+     * Ventas del TPV registradas por el empleado en el periodo
+     */
+    private Long numeroVentas;
+
+    /**
+     * Importe de las ventas del TPV del empleado en el periodo
+     */
+    private BigDecimal totalVentas;
+
+    /**
+     * Posición en el ranking (solo en la comparativa de empleados)
+     */
+    private Integer posicion;
 }
@@ -0,0 +1,58 @@
+package com.club.management.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO para la evolución mensual del rendimiento de un empleado
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RendimientoEmpleadoMesDTO {
+
+    /**
+     * Periodo en formato YYYY-MM
+     */
+    private String periodo;
+
+    /**
+     * Jornadas trabajadas en el mes
+     */
+    private Long jornadas;
+
+    /**
+     * Horas trabajadas en el mes
+     */
+    private BigDecimal horas;
+
+    /**
+     * Importe de las jornadas del mes (pagadas o no)
+     */
+    private BigDecimal importeJornadas;
+
+    /**
+     * Importe ya pagado de las jornadas del mes
+     */
+    private BigDecimal importePagado;
+
+    /**
+     * Importe pendiente de pago de las jornadas del mes
+     */
+    private BigDecimal importePendiente;
+
+    /**
+     * Ventas del TPV registradas por el empleado en el mes
+     */
+    private Long numeroVentas;
+
+    /**
+     * Importe de las ventas del TPV del empleado en el mes
+     */
+    private BigDecimal totalVentas;
+}
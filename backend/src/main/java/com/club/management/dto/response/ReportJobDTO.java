@@ -0,0 +1,44 @@
+package com.club.management.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un trabajo de generación de reporte
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportJobDTO {
+
+    private String id;
+    private String tipo;
+    private String prioridad;
+    private String solicitadoPor;
+
+    /**
+     * PENDIENTE, EN_PROCESO, COMPLETADO o ERROR
+     */
+    private String estado;
+
+    private Integer posicionEnCola;
+    private Boolean desdeCache;
+    private String nombreFichero;
+    private Long tamanoBytes;
+    private String error;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime creadoEn;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime iniciadoEn;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime finalizadoEn;
+}
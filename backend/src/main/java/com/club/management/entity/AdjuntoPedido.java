@@ -50,6 +50,9 @@ public class AdjuntoPedido {
     @Column(name = "ruta_archivo", nullable = false, length = 1000)
     private String rutaArchivo;
 
+    @Column(name = "sha256", length = 64)
+    private String sha256; // Contenido en archivos_contenido (null en adjuntos antiguos)
+
     @Column(columnDefinition = "TEXT")
     private String descripcion;
 
@@ -19,7 +19,8 @@ import java.time.LocalDateTime;
 public class DetalleInventario {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalles_inventario_seq")
+    @SequenceGenerator(name = "detalles_inventario_seq", sequenceName = "detalles_inventario_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -22,7 +22,8 @@ import java.time.LocalDateTime;
 public class DetallePedido {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_pedido_seq")
+    @SequenceGenerator(name = "detalle_pedido_seq", sequenceName = "detalle_pedido_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -22,7 +22,8 @@ import java.time.LocalDateTime;
 public class DetalleVenta {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_venta_seq")
+    @SequenceGenerator(name = "detalle_venta_seq", sequenceName = "detalle_venta_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class MovimientoStock {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimientos_stock_seq")
+    @SequenceGenerator(name = "movimientos_stock_seq", sequenceName = "movimientos_stock_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
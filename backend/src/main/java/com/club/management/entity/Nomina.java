@@ -19,7 +19,8 @@ import java.time.LocalDateTime;
 public class Nomina {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "nominas_seq")
+    @SequenceGenerator(name = "nominas_seq", sequenceName = "nominas_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -25,7 +25,8 @@ import java.time.LocalDateTime;
 public class PedidoAuditoria {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pedido_auditoria_seq")
+    @SequenceGenerator(name = "pedido_auditoria_seq", sequenceName = "pedido_auditoria_id_seq", allocationSize = 25)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 
@@ -118,6 +119,67 @@ public class PedidoRecurrente {
         return now.isAfter(tiempoNotificacion) && now.isBefore(proximaEjecucion);
     }
 
+    /**
+     * Primera ejecución posterior a desde según la frecuencia
+     * (días del mes que no existen, p.ej. 31 en abril, pasan al último día del mes)
+     */
+    public static LocalDateTime calcularProximaEjecucion(
+            Frecuencia frecuencia,
+            Integer diaEjecucion,
+            LocalTime horaEjecucion,
+            LocalDateTime desde
+    ) {
+        LocalDate fecha = desde.toLocalDate();
+        LocalDateTime proxima;
+
+        switch (frecuencia) {
+            case SEMANAL:
+                // Próximo día de la semana especificado (1=Lunes, 7=Domingo)
+                int diasHasta = (requerirDia(frecuencia, diaEjecucion, 7) - fecha.getDayOfWeek().getValue() + 7) % 7;
+                proxima = fecha.plusDays(diasHasta).atTime(horaEjecucion);
+                if (!proxima.isAfter(desde)) {
+                    proxima = proxima.plusWeeks(1);
+                }
+                return proxima;
+
+            case QUINCENAL:
+                // Días 1 y 15 de cada mes
+                proxima = fecha.withDayOfMonth(1).atTime(horaEjecucion);
+                if (!proxima.isAfter(desde)) {
+                    proxima = fecha.withDayOfMonth(15).atTime(horaEjecucion);
+                }
+                if (!proxima.isAfter(desde)) {
+                    proxima = fecha.plusMonths(1).withDayOfMonth(1).atTime(horaEjecucion);
+                }
+                return proxima;
+
+            case MENSUAL:
+            case TRIMESTRAL:
+                // Día del mes especificado, este mes si aún no ha pasado
+                int dia = requerirDia(frecuencia, diaEjecucion, 31);
+                proxima = diaDelMes(fecha, dia).atTime(horaEjecucion);
+                if (!proxima.isAfter(desde)) {
+                    proxima = diaDelMes(fecha.plusMonths(frecuencia == Frecuencia.MENSUAL ? 1 : 3), dia)
+                            .atTime(horaEjecucion);
+                }
+                return proxima;
+
+            default:
+                throw new IllegalArgumentException("Frecuencia no válida: " + frecuencia);
+        }
+    }
+
+    private static int requerirDia(Frecuencia frecuencia, Integer dia, int maximo) {
+        if (dia == null || dia < 1 || dia > maximo) {
+            throw new IllegalArgumentException("Día de ejecución no válido para " + frecuencia + ": " + dia);
+        }
+        return dia;
+    }
+
+    private static LocalDate diaDelMes(LocalDate fecha, int dia) {
+        return fecha.withDayOfMonth(Math.min(dia, fecha.lengthOfMonth()));
+    }
+
     /**
      * Obtener descripción legible de la frecuencia
      */
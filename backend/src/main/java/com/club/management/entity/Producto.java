@@ -73,7 +73,7 @@ public class Producto {
     @Column(name = "factor_merma", precision = 5, scale = 2)
     private BigDecimal factorMerma = BigDecimal.ZERO;
 
-    // Campos calculados automáticamente por trigger de base de datos
+    // Campos calculados por ProductoCalculationService (al guardar y al arrancar)
     @Column(name = "unidades_teoricas", precision = 10, scale = 2)
     private BigDecimal unidadesTeorica;
 
@@ -20,7 +20,8 @@ import java.time.LocalDateTime;
 public class SystemLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "system_logs_seq")
+    @SequenceGenerator(name = "system_logs_seq", sequenceName = "system_logs_id_seq", allocationSize = 25)
     private Long id;
 
     @Column(name = "nivel", nullable = false, length = 20)
@@ -0,0 +1,16 @@
+package com.club.management.repository;
+
+import com.club.management.entity.BotellaAbierta;
+import com.club.management.entity.BotellaAbierta.EstadoBotella;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BotellaAbiertaRepository extends JpaRepository<BotellaAbierta, Long> {
+
+    List<BotellaAbierta> findByEstadoOrderByUbicacionAscFechaAperturaAsc(EstadoBotella estado);
+
+    List<BotellaAbierta> findByEstadoAndUbicacionOrderByFechaAperturaAsc(EstadoBotella estado, String ubicacion);
+}
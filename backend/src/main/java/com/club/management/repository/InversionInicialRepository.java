@@ -17,6 +17,9 @@ public interface InversionInicialRepository extends JpaRepository<InversionInici
 
     List<InversionInicial> findAllByOrderByFechaDesc();
 
+    @Query("SELECT MIN(i.fecha) FROM InversionInicial i")
+    LocalDate findFechaPrimeraInversion();
+
     @Query("SELECT SUM(i.monto) FROM InversionInicial i")
     BigDecimal calcularInversionTotal();
 
@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +23,9 @@ public interface NominaRepository extends JpaRepository<Nomina, Long> {
     // Buscar por empleado y periodo
     Optional<Nomina> findByEmpleadoIdAndPeriodo(Long empleadoId, String periodo);
 
+    // Nóminas de un periodo para un conjunto de empleados
+    List<Nomina> findByPeriodoAndEmpleadoIdIn(String periodo, Collection<Long> empleadoIds);
+
     // Buscar por estado
     List<Nomina> findByEstado(String estado);
 
@@ -0,0 +1,71 @@
+package com.club.management.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Admisión por IP de los endpoints de autenticación y pairing (token bucket de
+ * {@link AuthRateLimiter}). Responde 429 antes de llegar a BCrypt o a la BD.
+ *
+ * Se ejecuta después de la cadena de Spring Security para que las respuestas 429
+ * de /api/auth/** lleven las cabeceras CORS (las de /public/** las pone PublicCorsFilter).
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 10)
+public class AuthAdmissionFilter extends OncePerRequestFilter {
+
+    private static final List<String> PREFIJOS = List.of(
+            "/api/auth/login",
+            "/api/auth/refresh",
+            "/api/auth/device/",
+            "/api/auth/pos/",
+            "/public/pos/auth",
+            "/public/pos/setup",
+            "/public/pos/pair",
+            "/api/dispositivos-pos/setup",
+            "/api/dispositivos-pos/pair"
+    );
+
+    private final AuthRateLimiter authRateLimiter;
+    private final ClientIpResolver clientIpResolver;
+
+    public AuthAdmissionFilter(AuthRateLimiter authRateLimiter, ClientIpResolver clientIpResolver) {
+        this.authRateLimiter = authRateLimiter;
+        this.clientIpResolver = clientIpResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        return PREFIJOS.stream().noneMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!authRateLimiter.admitirIp(clientIpResolver.resolver(request))) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", "5");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"error\":\"Demasiados intentos de autenticación, inténtalo más tarde\"}");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,96 @@
+package com.club.management.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Control de admisión de los endpoints de autenticación mediante token buckets.
+ *
+ * - Por IP: todas las peticiones de login, refresh y pairing.
+ * - Por dispositivo (UUID): intentos de PIN que llegan a BCrypt.
+ *
+ * Cada bucket admite ráfagas de hasta "capacidad" peticiones y se recarga a
+ * "recarga-por-minuto". Los buckets inactivos se descartan tras 10 minutos.
+ * Los rechazos se cuentan en auth.admision.rechazos{motivo}.
+ */
+@Component
+@Slf4j
+public class AuthRateLimiter {
+
+    private final Limite limiteIp;
+    private final Limite limiteDispositivo;
+    private final MeterRegistry meterRegistry;
+
+    public AuthRateLimiter(MeterRegistry meterRegistry,
+                           @Value("${app.security.rate-limit.ip.capacidad:20}") int capacidadIp,
+                           @Value("${app.security.rate-limit.ip.recarga-por-minuto:60}") int recargaIp,
+                           @Value("${app.security.rate-limit.dispositivo.capacidad:5}") int capacidadDispositivo,
+                           @Value("${app.security.rate-limit.dispositivo.recarga-por-minuto:10}") int recargaDispositivo) {
+        this.meterRegistry = meterRegistry;
+        this.limiteIp = new Limite("ip", capacidadIp, recargaIp);
+        this.limiteDispositivo = new Limite("dispositivo", capacidadDispositivo, recargaDispositivo);
+    }
+
+    public boolean admitirIp(String ip) {
+        return limiteIp.admitir(ip);
+    }
+
+    public boolean admitirDispositivo(String uuid) {
+        return limiteDispositivo.admitir(uuid);
+    }
+
+    private class Limite {
+        private final String motivo;
+        private final int capacidad;
+        private final double tokensPorNano;
+        private final Cache<String, TokenBucket> buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .maximumSize(100_000)
+                .build();
+
+        Limite(String motivo, int capacidad, int recargaPorMinuto) {
+            this.motivo = motivo;
+            this.capacidad = capacidad;
+            this.tokensPorNano = recargaPorMinuto / (double) Duration.ofMinutes(1).toNanos();
+        }
+
+        boolean admitir(String clave) {
+            if (clave == null) {
+                return true;
+            }
+            TokenBucket bucket = buckets.get(clave, k -> new TokenBucket(capacidad));
+            if (bucket.consumir(capacidad, tokensPorNano)) {
+                return true;
+            }
+            meterRegistry.counter("auth.admision.rechazos", "motivo", motivo).increment();
+            log.warn("Admisión de autenticación rechazada ({}): {}", motivo, clave);
+            return false;
+        }
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long ultimaRecarga = System.nanoTime();
+
+        TokenBucket(int capacidad) {
+            this.tokens = capacidad;
+        }
+
+        synchronized boolean consumir(int capacidad, double tokensPorNano) {
+            long ahora = System.nanoTime();
+            tokens = Math.min(capacidad, tokens + (ahora - ultimaRecarga) * tokensPorNano);
+            ultimaRecarga = ahora;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
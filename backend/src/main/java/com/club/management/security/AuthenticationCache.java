@@ -0,0 +1,138 @@
+package com.club.management.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caché de autenticaciones JWT ya verificadas.
+ *
+ * Clave: SHA-256 del token, para no guardar bearer tokens en claro en memoria
+ * (volcados de heap, herramientas de diagnóstico).
+ * Valor: el Authentication construido la primera vez (claims verificados y
+ * principal cargado de BD), que se reutiliza tal cual en las siguientes
+ * peticiones: sin verificar firma, sin parsear y sin consultar la BD.
+ *
+ * - Tamaño acotado (app.security.auth-cache.max-size).
+ * - TTL por entrada = min(app.security.auth-cache.ttl-segundos, expiración del token),
+ *   así nunca se acepta un token caducado y los cambios de usuario que no pasen
+ *   por {@link #invalidarUsuario} se aplican como mucho tras el TTL.
+ * - Revocar un token o un usuario ({@link TokenRevocationList}) invalida sus entradas
+ *   (también tras el commit, para no recachear datos antiguos leídos en paralelo).
+ */
+@Component
+@Slf4j
+public class AuthenticationCache {
+
+    private record Entrada(String username, String jti, long expiraEnNanos, UsernamePasswordAuthenticationToken authentication) {
+    }
+
+    private final Cache<String, Entrada> cache;
+
+    public AuthenticationCache(@Value("${app.security.auth-cache.max-size:10000}") long maxSize,
+                               @Value("${app.security.auth-cache.ttl-segundos:300}") long ttlSegundos) {
+        long ttlMaxNanos = TimeUnit.SECONDS.toNanos(ttlSegundos);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Entrada>() {
+                    @Override
+                    public long expireAfterCreate(String clave, Entrada entrada, long currentTime) {
+                        return Math.max(0, Math.min(ttlMaxNanos, entrada.expiraEnNanos() - System.nanoTime()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String clave, Entrada entrada, long currentTime, long currentDuration) {
+                        return expireAfterCreate(clave, entrada, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String clave, Entrada entrada, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Autenticación cacheada para el token, o null si no está (o ha caducado)
+     */
+    public UsernamePasswordAuthenticationToken get(String token) {
+        Entrada entrada = cache.getIfPresent(clave(token));
+        return entrada != null ? entrada.authentication() : null;
+    }
+
+    /**
+     * Guarda la autenticación de un token válido hasta su expiración
+     *
+     * @param jti            identificador del token (claim jti), puede ser null
+     * @param expiraEnMillis expiración del token (claim exp) en epoch millis
+     */
+    public void put(String token, String username, String jti, long expiraEnMillis, UsernamePasswordAuthenticationToken authentication) {
+        long restanteMillis = expiraEnMillis - System.currentTimeMillis();
+        if (restanteMillis <= 0) {
+            return;
+        }
+        long expiraEnNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(restanteMillis);
+        cache.put(clave(token), new Entrada(username, jti, expiraEnNanos, authentication));
+    }
+
+    /**
+     * Elimina todas las entradas de un usuario. Si hay una transacción activa,
+     * se repite tras el commit.
+     */
+    public void invalidarUsuario(String username) {
+        if (username == null) {
+            return;
+        }
+        eliminar(username);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eliminar(username);
+                }
+            });
+        }
+    }
+
+    /**
+     * Elimina la entrada del token con el jti indicado
+     */
+    public void invalidarToken(String jti) {
+        if (jti == null) {
+            return;
+        }
+        cache.asMap().values().removeIf(entrada -> jti.equals(entrada.jti()));
+    }
+
+    public void invalidarTodo() {
+        cache.invalidateAll();
+    }
+
+    private static String clave(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 no disponible", ex);
+        }
+    }
+
+    private void eliminar(String username) {
+        cache.asMap().values().removeIf(entrada -> username.equals(entrada.username()));
+        log.debug("Caché de autenticación invalidada para {}", username);
+    }
+}
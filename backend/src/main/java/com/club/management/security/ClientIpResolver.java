@@ -0,0 +1,41 @@
+package com.club.management.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * IP del cliente para limitación por IP y auditoría.
+ *
+ * X-Forwarded-For lo puede escribir el propio cliente: solo son fiables las
+ * entradas que añaden nuestros proxies, al final de la cabecera. Con
+ * app.security.proxies-confiables = N (Railway/Render: 1) la IP del cliente es la
+ * entrada N-ésima empezando por la derecha, la que añadió el proxy más externo.
+ * Con 0 (por defecto) la cabecera se ignora y se usa la dirección de la conexión.
+ */
+@Component
+public class ClientIpResolver {
+
+    private final int proxiesConfiables;
+
+    public ClientIpResolver(@Value("${app.security.proxies-confiables:0}") int proxiesConfiables) {
+        this.proxiesConfiables = Math.max(0, proxiesConfiables);
+    }
+
+    public String resolver(HttpServletRequest request) {
+        if (proxiesConfiables > 0) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                String[] saltos = forwarded.split(",");
+                // Menos saltos que proxies: la petición no pasó por todos, no es fiable
+                if (saltos.length >= proxiesConfiables) {
+                    String ip = saltos[saltos.length - proxiesConfiables].trim();
+                    if (!ip.isEmpty()) {
+                        return ip;
+                    }
+                }
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,209 @@
+package com.club.management.security;
+
+import com.club.management.exception.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Verificación de contraseñas y PINs en un pool acotado.
+ *
+ * BCrypt es CPU puro: con toda la plantilla haciendo login a la apertura, o con
+ * alguien martilleando los endpoints de pairing, los hilos de Tomcat saturaban la
+ * CPU y las ventas se quedaban esperando. Aquí:
+ * - Como mucho app.security.verificacion.hilos BCrypt en paralelo (por defecto la
+ *   mitad de los cores) y una cola de app.security.verificacion.cola; si la cola
+ *   está llena o la espera supera el timeout se responde 429 en lugar de apilar.
+ * - Los PIN de dispositivo correctos se recuerdan durante
+ *   app.security.verificacion.cache-pin-minutos (digest salado en memoria, ligado
+ *   al hash almacenado: cambiar el PIN invalida la entrada), así las
+ *   re-autenticaciones del mismo terminal no pasan por BCrypt.
+ * - Métricas: auth.verificacion{tipo} (tiempo de BCrypt), auth.verificacion.espera
+ *   (tiempo en cola), auth.verificacion.cola y auth.verificacion.activos (gauges).
+ *
+ * {@link #getPasswordEncoder()} es el PasswordEncoder de la aplicación, de modo que
+ * el login de usuarios (DaoAuthenticationProvider) también pasa por el pool.
+ */
+@Component
+@Slf4j
+public class CredentialVerifier {
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final MeterRegistry meterRegistry;
+    private final Timer esperaTimer;
+    private final Cache<String, byte[]> pinsVerificados;
+    private final byte[] sal = new byte[16];
+    private final PasswordEncoder passwordEncoder = new BoundedPasswordEncoder();
+
+    public CredentialVerifier(MeterRegistry meterRegistry,
+                              @Value("${app.security.bcrypt-strength:4}") int bcryptStrength,
+                              @Value("${app.security.verificacion.hilos:0}") int hilos,
+                              @Value("${app.security.verificacion.cola:32}") int capacidadCola,
+                              @Value("${app.security.verificacion.timeout-ms:5000}") long timeoutMs,
+                              @Value("${app.security.verificacion.cache-pin-minutos:10}") long cachePinMinutos) {
+        // Usar strength reducido para producción (4 = mucho más rápido que 10)
+        this.bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        this.meterRegistry = meterRegistry;
+        this.timeoutMs = timeoutMs;
+
+        int numHilos = hilos > 0 ? hilos : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(numHilos, numHilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola),
+                r -> {
+                    Thread t = new Thread(r, "credenciales-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.esperaTimer = Timer.builder("auth.verificacion.espera").register(meterRegistry);
+        Gauge.builder("auth.verificacion.cola", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("auth.verificacion.activos", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+
+        this.pinsVerificados = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(cachePinMinutos))
+                .maximumSize(10_000)
+                .build();
+        new SecureRandom().nextBytes(sal);
+
+        log.info("Verificación de credenciales: {} hilos, cola {}", numHilos, capacidadCola);
+    }
+
+    public PasswordEncoder getPasswordEncoder() {
+        return passwordEncoder;
+    }
+
+    /**
+     * Verifica el PIN de un dispositivo, reutilizando una verificación correcta reciente.
+     *
+     * @param admision control de admisión consultado solo si hace falta BCrypt
+     * @throws TooManyRequestsException si la admisión o el pool rechazan la verificación
+     */
+    public boolean verificarPin(String uuid, String pin, String pinCifrado, BooleanSupplier admision) {
+        if (pin == null || pinCifrado == null) {
+            return false;
+        }
+        byte[] digest = digest(uuid, pin, pinCifrado);
+        byte[] cacheado = pinsVerificados.getIfPresent(uuid);
+        if (cacheado != null && MessageDigest.isEqual(cacheado, digest)) {
+            meterRegistry.counter("auth.verificacion.cache", "resultado", "acierto").increment();
+            return true;
+        }
+
+        if (!admision.getAsBoolean()) {
+            throw new TooManyRequestsException("Demasiados intentos de PIN para este dispositivo, inténtalo más tarde");
+        }
+        boolean correcto = ejecutar("pin", () -> bcrypt.matches(pin, pinCifrado));
+        if (correcto) {
+            pinsVerificados.put(uuid, digest);
+        }
+        return correcto;
+    }
+
+    /**
+     * Olvida la verificación cacheada de un dispositivo (cambio de PIN, borrado)
+     */
+    public void olvidarPin(String uuid) {
+        pinsVerificados.invalidate(uuid);
+    }
+
+    private <T> T ejecutar(String tipo, Callable<T> tarea) {
+        long encolado = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                esperaTimer.record(System.nanoTime() - encolado, TimeUnit.NANOSECONDS);
+                return meterRegistry.timer("auth.verificacion", "tipo", tipo).recordCallable(tarea);
+            });
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("auth.admision.rechazos", "motivo", "cola").increment();
+            log.warn("Cola de verificación de credenciales llena ({}), petición rechazada", tipo);
+            throw new TooManyRequestsException("Demasiados intentos de autenticación, inténtalo de nuevo en unos segundos");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            meterRegistry.counter("auth.admision.rechazos", "motivo", "timeout").increment();
+            throw new TooManyRequestsException("Verificación de credenciales saturada, inténtalo de nuevo en unos segundos");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Verificación de credenciales interrumpida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("Error verificando credenciales", e.getCause());
+        }
+    }
+
+    private byte[] digest(String uuid, String pin, String pinCifrado) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(sal);
+            sha.update(uuid.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(pinCifrado.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(pin.getBytes(StandardCharsets.UTF_8));
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * BCrypt ejecutado en el pool acotado
+     */
+    private class BoundedPasswordEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return ejecutar("hash", () -> bcrypt.encode(rawPassword));
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return ejecutar("password", () -> bcrypt.matches(rawPassword, encodedPassword));
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return bcrypt.upgradeEncoding(encodedPassword);
+        }
+    }
+}
@@ -1,24 +1,30 @@
 package com.club.management.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Filtro de autenticación JWT
- * Intercepta todas las peticiones y valida el token JWT
+ * Intercepta todas las peticiones y valida el token JWT.
+ * Las autenticaciones verificadas se reutilizan desde {@link AuthenticationCache}.
  */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -29,6 +35,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
+    private static final List<GrantedAuthority> DEVICE_AUTHORITIES =
+            List.of(new SimpleGrantedAuthority("ROLE_DEVICE"));
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
@@ -37,8 +55,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String path = request.getRequestURI();
         String method = request.getMethod();
 
-        logger.info("JWT Filter: " + method + " " + path + " - Processing...");
-
         // Only skip JWT for truly public endpoints
         if (path.startsWith("/public/") ||
             path.equals("/api/auth/login") ||
@@ -50,56 +66,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             path.equals("/api/auth/device/quick-start") || // Public: Quick start
             path.startsWith("/api/auth/pos/") ||         // POS authentication endpoints
             path.equals("/actuator/health")) {
-            logger.info("JWT Filter: Skipping public endpoint " + path);
             filterChain.doFilter(request, response);
             return;
         }
 
         try {
             String jwt = getJwtFromRequest(request);
-            logger.info("JWT Filter: Token extracted: " + (jwt != null ? "YES (length=" + jwt.length() + ")" : "NO"));
-
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
-                logger.info("JWT Filter: Token valid, username: " + username);
-
-                // Check if this is a device token (UUID format: 8-4-4-4-12 hex characters)
-                // Device tokens contain the device UUID directly
-                if (isDeviceUUID(username)) {
-                    logger.info("JWT Filter: Device token detected for UUID: " + username);
-
-                    // Create a simple authenticated token for devices
-                    // Devices don't need full UserDetails, just authentication
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(
-                                    username,  // Principal is the device UUID
-                                    null,      // No credentials needed
-                                    java.util.Collections.singletonList(
-                                        new org.springframework.security.core.authority.SimpleGrantedAuthority("ROLE_DEVICE")
-                                    )
-                            );
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    logger.info("JWT Filter: Device authentication set in SecurityContext");
-                } else {
-                    // Regular user authentication
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                    logger.info("JWT Filter: User loaded, authorities: " + userDetails.getAuthorities());
-
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(
-                                    userDetails,
-                                    null,
-                                    userDetails.getAuthorities()
-                            );
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
+            if (StringUtils.hasText(jwt)) {
+                // Petición repetida con el mismo token: sin verificar firma, sin parsear y sin BD
+                UsernamePasswordAuthenticationToken authentication = authenticationCache.get(jwt);
+                if (authentication == null) {
+                    authentication = authenticate(jwt);
+                }
+                if (authentication != null) {
                     SecurityContextHolder.getContext().setAuthentication(authentication);
-                    logger.info("JWT Filter: Authentication set in SecurityContext");
                 }
-            } else {
-                logger.warn("JWT Filter: Token validation failed or empty");
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("JWT Filter: No token for " + method + " " + path);
             }
         } catch (Exception ex) {
             logger.error("JWT Filter: Exception occurred: " + ex.getMessage(), ex);
@@ -108,6 +92,75 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Verifica el token (un único parseo), construye la autenticación y la guarda
+     * en caché hasta la expiración del token. Devuelve null si el token no es válido.
+     *
+     * Los access tokens llevan las authorities y no consultan la BD; los tokens
+     * emitidos antes de su introducción (sin claim "tipo") siguen cargando el usuario.
+     */
+    private UsernamePasswordAuthenticationToken authenticate(String jwt) {
+        Claims claims = tokenProvider.parseClaims(jwt);
+        if (claims == null) {
+            logger.warn("JWT Filter: Token validation failed");
+            return null;
+        }
+        String username = claims.getSubject();
+        Object tipo = claims.get(JwtTokenProvider.CLAIM_TIPO);
+
+        if (JwtTokenProvider.TIPO_REFRESH.equals(tipo)) {
+            logger.warn("JWT Filter: Refresh token used as bearer token for " + username);
+            return null;
+        }
+        if (tokenRevocationList.isRevocado(claims)) {
+            logger.warn("JWT Filter: Revoked token for " + username);
+            return null;
+        }
+
+        UsernamePasswordAuthenticationToken authentication;
+
+        // Check if this is a device token (UUID format: 8-4-4-4-12 hex characters)
+        // Device tokens contain the device UUID directly
+        if (isDeviceUUID(username)) {
+            // Devices don't need full UserDetails, just authentication
+            authentication = new UsernamePasswordAuthenticationToken(
+                    username,  // Principal is the device UUID
+                    null,      // No credentials needed
+                    DEVICE_AUTHORITIES
+            );
+        } else if (JwtTokenProvider.TIPO_ACCESS.equals(tipo)) {
+            // Access token: authorities firmadas en el token, sin consultar la BD
+            String authorities = claims.get(JwtTokenProvider.CLAIM_AUTHORITIES, String.class);
+            UserDetails userDetails = User.withUsername(username)
+                    .password("")
+                    .authorities(StringUtils.hasText(authorities)
+                            ? authorities.split(",")
+                            : new String[0])
+                    .build();
+            authentication = new UsernamePasswordAuthenticationToken(
+                    userDetails,
+                    null,
+                    userDetails.getAuthorities()
+            );
+        } else {
+            // Regular user authentication
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            authentication = new UsernamePasswordAuthenticationToken(
+                    userDetails,
+                    null,
+                    userDetails.getAuthorities()
+            );
+        }
+
+        if (claims.getExpiration() != null) {
+            authenticationCache.put(jwt, username, claims.getId(), claims.getExpiration().getTime(), authentication);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("JWT Filter: Authenticated " + username + " with " + authentication.getAuthorities());
+        }
+        return authentication;
+    }
+
     /**
      * Extrae el JWT del header Authorization
      */
@@ -128,6 +181,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return false;
         }
         // UUID regex: 8 hex - 4 hex - 4 hex - 4 hex - 12 hex
-        return str.matches("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+        return UUID_PATTERN.matcher(str).matches();
     }
 }
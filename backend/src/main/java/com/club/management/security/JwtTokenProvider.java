@@ -11,12 +11,21 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.Date;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
  * Proveedor de tokens JWT
  * Maneja la creación, validación y extracción de información de tokens JWT
+ *
+ * - Access token (corta duración, jwt.access-expiration): lleva las authorities y
+ *   el tipo "access"; el filtro autoriza con él sin consultar la BD.
+ * - Refresh token (jwt.refresh-expiration): solo sirve para obtener un nuevo par
+ *   en /api/auth/refresh, que es donde se vuelve a comprobar el usuario en BD.
+ * - Token de dispositivo POS (jwt.expiration): subject = UUID del dispositivo.
+ * Todos llevan jti para poder revocarlos individualmente ({@link TokenRevocationList}).
  */
 @Component
 @Slf4j
@@ -25,27 +34,64 @@ public class JwtTokenProvider {
     @Value("${jwt.secret}")
     private String jwtSecret;
 
+    public static final String CLAIM_AUTHORITIES = "authorities";
+    public static final String CLAIM_TIPO = "tipo";
+    public static final String CLAIM_DISPOSITIVO = "dispositivo";
+    public static final String TIPO_ACCESS = "access";
+    public static final String TIPO_REFRESH = "refresh";
+
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
+    @Value("${jwt.access-expiration:900000}")
+    private long accessExpiration;
+
+    @Value("${jwt.refresh-expiration:604800000}")
+    private long refreshExpiration;
+
     /**
      * Genera un token JWT para el usuario autenticado
      * INCLUYE las authorities/roles del usuario en el token
      */
     public String generateToken(Authentication authentication) {
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        return generateAccessToken(userDetails.getUsername(), userDetails.getAuthorities());
+    }
 
+    /**
+     * Genera un access token de corta duración con las authorities del usuario
+     */
+    public String generateAccessToken(String username, Collection<? extends GrantedAuthority> grantedAuthorities) {
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpiration);
+        Date expiryDate = new Date(now.getTime() + accessExpiration);
 
         // Extraer roles/authorities del usuario
-        String authorities = userDetails.getAuthorities().stream()
+        String authorities = grantedAuthorities.stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.joining(","));
 
         return Jwts.builder()
-                .setSubject(userDetails.getUsername())
-                .claim("authorities", authorities)  // ← AGREGADO: authorities en el token
+                .setId(UUID.randomUUID().toString())
+                .setSubject(username)
+                .claim(CLAIM_AUTHORITIES, authorities)
+                .claim(CLAIM_TIPO, TIPO_ACCESS)
+                .setIssuedAt(now)
+                .setExpiration(expiryDate)
+                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .compact();
+    }
+
+    /**
+     * Genera un refresh token. No lleva authorities: el rol se vuelve a leer de BD al refrescar
+     */
+    public String generateRefreshToken(String username) {
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + refreshExpiration);
+
+        return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(username)
+                .claim(CLAIM_TIPO, TIPO_REFRESH)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
                 .signWith(getSigningKey(), SignatureAlgorithm.HS512)
@@ -61,8 +107,10 @@ public class JwtTokenProvider {
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
-                .claim("authorities", "ROLE_POS_DEVICE")  // ← AGREGADO: rol para dispositivos POS
+                .claim(CLAIM_AUTHORITIES, "ROLE_POS_DEVICE")  // ← AGREGADO: rol para dispositivos POS
+                .claim(CLAIM_DISPOSITIVO, true)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
                 .signWith(getSigningKey(), SignatureAlgorithm.HS512)
@@ -86,12 +134,20 @@ public class JwtTokenProvider {
      * Valida el token JWT
      */
     public boolean validateToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    /**
+     * Verifica la firma y devuelve los claims del token, o null si no es válido.
+     * Permite validar y leer el token con un único parseo.
+     */
+    public Claims parseClaims(String authToken) {
         try {
-            Jwts.parser()
+            return Jwts.parser()
                     .verifyWith(getSigningKey())
                     .build()
-                    .parseSignedClaims(authToken);
-            return true;
+                    .parseSignedClaims(authToken)
+                    .getPayload();
         } catch (SecurityException ex) {
             log.error("Invalid JWT signature: {}", ex.getMessage());
         } catch (MalformedJwtException ex) {
@@ -103,7 +159,22 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty: {}", ex.getMessage());
         }
-        return false;
+        return null;
+    }
+
+    public long getAccessExpiration() {
+        return accessExpiration;
+    }
+
+    public long getRefreshExpiration() {
+        return refreshExpiration;
+    }
+
+    /**
+     * Duración máxima de cualquier token emitido (para caducar revocaciones de usuario)
+     */
+    public long getMaxExpiration() {
+        return Math.max(jwtExpiration, Math.max(accessExpiration, refreshExpiration));
     }
 
     /**
@@ -0,0 +1,195 @@
+package com.club.management.security;
+
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lista de revocación (deny-list) de tokens JWT.
+ *
+ * La fuente de verdad es la tabla tokens_revocados (V041); cada instancia mantiene
+ * una copia en memoria que se recarga cada app.security.revocacion.sync-ms, de modo
+ * que comprobar un token no consulta la BD. La tabla solo guarda revocaciones
+ * vigentes (se purgan al caducar), así que la recarga completa es barata.
+ *
+ * - Por jti: un token concreto (logout, rotación de refresh token).
+ * - Por usuario: todos sus tokens emitidos antes de la revocación (desactivación,
+ *   cambio de rol o contraseña, borrado). iat tiene precisión de segundos: se
+ *   compara con la revocación truncada al segundo.
+ *
+ * Las revocaciones de esta instancia se aplican al momento; las de otras
+ * instancias, en la siguiente sincronización.
+ */
+@Component
+@Slf4j
+public class TokenRevocationList {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final AuthenticationCache authenticationCache;
+    private final JwtTokenProvider tokenProvider;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Map<String, Long> jtisRevocados = new ConcurrentHashMap<>();
+    private volatile Map<String, Long> usuariosRevocados = new ConcurrentHashMap<>();
+
+    public TokenRevocationList(NamedParameterJdbcTemplate jdbcTemplate,
+                               AuthenticationCache authenticationCache,
+                               JwtTokenProvider tokenProvider,
+                               TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.authenticationCache = authenticationCache;
+        this.tokenProvider = tokenProvider;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void cargar() {
+        try {
+            sincronizar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar la lista de revocación de tokens: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * true si el token (por jti o por usuario) está revocado
+     */
+    public boolean isRevocado(Claims claims) {
+        if (claims.getId() != null && jtisRevocados.containsKey(claims.getId())) {
+            return true;
+        }
+        Long revocadoDesde = usuariosRevocados.get(claims.getSubject());
+        if (revocadoDesde == null) {
+            return false;
+        }
+        Date emitido = claims.getIssuedAt();
+        return emitido == null || emitido.getTime() < revocadoDesde;
+    }
+
+    /**
+     * Revoca un token concreto hasta su expiración
+     */
+    public void revocarToken(String jti, String username, Date expiracion, String motivo) {
+        if (jti == null || expiracion == null) {
+            return;
+        }
+        jdbcTemplate.update(
+                "INSERT INTO tokens_revocados (jti, username, motivo, revocado_en, expira_en) " +
+                "VALUES (:jti, :username, :motivo, CURRENT_TIMESTAMP, :expiraEn)",
+                new MapSqlParameterSource()
+                        .addValue("jti", jti)
+                        .addValue("username", username)
+                        .addValue("motivo", motivo)
+                        .addValue("expiraEn", new Timestamp(expiracion.getTime())));
+
+        jtisRevocados.put(jti, expiracion.getTime());
+        authenticationCache.invalidarToken(jti);
+    }
+
+    /**
+     * Revoca todos los tokens emitidos hasta ahora para el usuario (o UUID de dispositivo)
+     */
+    public void revocarUsuario(String username, String motivo) {
+        if (username == null) {
+            return;
+        }
+        LocalDateTime ahora = LocalDateTime.now().withNano(0);
+        jdbcTemplate.update(
+                "INSERT INTO tokens_revocados (username, motivo, revocado_en, expira_en) " +
+                "VALUES (:username, :motivo, :revocadoEn, :expiraEn)",
+                new MapSqlParameterSource()
+                        .addValue("username", username)
+                        .addValue("motivo", motivo)
+                        .addValue("revocadoEn", Timestamp.valueOf(ahora))
+                        .addValue("expiraEn", Timestamp.valueOf(
+                                ahora.plusNanos(tokenProvider.getMaxExpiration() * 1_000_000))));
+
+        usuariosRevocados.merge(username, toMillis(ahora), Math::max);
+        authenticationCache.invalidarUsuario(username);
+        log.info("Tokens revocados para {} ({})", username, motivo);
+    }
+
+    /**
+     * Recarga las revocaciones vigentes desde BD e invalida en caché las nuevas
+     */
+    @Scheduled(fixedDelayString = "${app.security.revocacion.sync-ms:30000}")
+    public void sincronizar() {
+        Map<String, Long> jtis = new HashMap<>();
+        Map<String, Long> usuarios = new HashMap<>();
+
+        jdbcTemplate.query(
+                "SELECT jti, username, revocado_en, expira_en FROM tokens_revocados " +
+                "WHERE expira_en > CURRENT_TIMESTAMP",
+                new MapSqlParameterSource(),
+                rs -> {
+                    String jti = rs.getString("jti");
+                    if (jti != null) {
+                        jtis.put(jti, rs.getTimestamp("expira_en").getTime());
+                    } else {
+                        usuarios.merge(rs.getString("username"), rs.getTimestamp("revocado_en").getTime(), Math::max);
+                    }
+                });
+
+        // Revocaciones hechas por otras instancias desde la última sincronización
+        Map<String, Long> jtisAnteriores = jtisRevocados;
+        Map<String, Long> usuariosAnteriores = usuariosRevocados;
+        jtis.keySet().stream()
+                .filter(jti -> !jtisAnteriores.containsKey(jti))
+                .forEach(authenticationCache::invalidarToken);
+        usuarios.forEach((username, desde) -> {
+            Long anterior = usuariosAnteriores.get(username);
+            if (anterior == null || anterior < desde) {
+                authenticationCache.invalidarUsuario(username);
+            }
+        });
+
+        // Conservar revocaciones locales aún no visibles en la lectura (transacción sin commit)
+        long ahora = System.currentTimeMillis();
+        jtisAnteriores.forEach((jti, expira) -> {
+            if (expira > ahora) {
+                jtis.putIfAbsent(jti, expira);
+            }
+        });
+        long ventana = tokenProvider.getMaxExpiration();
+        usuariosAnteriores.forEach((username, desde) -> {
+            if (desde + ventana > ahora) {
+                usuarios.merge(username, desde, Math::max);
+            }
+        });
+
+        jtisRevocados = new ConcurrentHashMap<>(jtis);
+        usuariosRevocados = new ConcurrentHashMap<>(usuarios);
+        log.debug("Lista de revocación sincronizada: {} tokens, {} usuarios", jtis.size(), usuarios.size());
+    }
+
+    /**
+     * Elimina las revocaciones caducadas (en su propia transacción: el pool no
+     * hace autocommit)
+     */
+    @Scheduled(cron = "${app.security.revocacion.purga-cron:0 20 * * * *}")
+    public void purgar() {
+        Integer eliminadas = transactionTemplate.execute(status -> jdbcTemplate.update(
+                "DELETE FROM tokens_revocados WHERE expira_en <= CURRENT_TIMESTAMP",
+                new MapSqlParameterSource()));
+        if (eliminadas != null && eliminadas > 0) {
+            log.info("Revocaciones de tokens caducadas eliminadas: {}", eliminadas);
+        }
+    }
+
+    private static long toMillis(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -10,14 +10,17 @@ import com.club.management.repository.UsuarioRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +35,23 @@ public class AdjuntoPedidoService {
     private final PedidoRepository pedidoRepository;
     private final UsuarioRepository usuarioRepository;
     private final FileStorageService fileStorageService;
+    private final AlmacenContenidoService almacenContenido;
+    private final DerivadosAdjuntoService derivados;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Derivado de un adjunto: descarga lista, o vacía y pendiente si se está
+     * generando, o vacía sin pendiente si el adjunto no tiene derivados
+     */
+    public record Derivado(AlmacenContenidoService.Descarga descarga, boolean pendiente) {
+        public boolean listo() {
+            return descarga != null;
+        }
+    }
+
+    private record MetadatosAdjunto(Long id, String rutaArchivo, String mimeType, String sha256,
+                                    String nombreOriginal) {
+    }
 
     @Value("${app.file-storage.max-file-size:10485760}") // 10 MB por defecto
     private long maxFileSize;
@@ -61,9 +81,8 @@ public class AdjuntoPedidoService {
             throw new RuntimeException("El archivo está vacío");
         }
 
-        // Almacenar el archivo
-        String subdirectorio = "pedidos/" + pedidoId;
-        String nombreArchivo = fileStorageService.storeFileInSubdirectory(file, subdirectorio);
+        // Almacenar el archivo (por contenido: si ya existe se reutiliza)
+        AlmacenContenidoService.Contenido contenido = almacenContenido.guardar(file, maxFileSize);
 
         // Obtener usuario (opcional)
         Usuario usuario = null;
@@ -74,12 +93,13 @@ public class AdjuntoPedidoService {
         // Crear registro en base de datos
         AdjuntoPedido adjunto = AdjuntoPedido.builder()
                 .pedido(pedido)
-                .nombreArchivo(nombreArchivo)
+                .nombreArchivo(contenido.ruta())
                 .nombreOriginal(file.getOriginalFilename())
                 .tipoArchivo(AdjuntoPedido.TipoAdjunto.valueOf(tipoArchivo.toUpperCase()))
                 .mimeType(file.getContentType())
-                .tamanioBytes(file.getSize())
-                .rutaArchivo(nombreArchivo)
+                .tamanioBytes(contenido.tamanioBytes())
+                .rutaArchivo(contenido.ruta())
+                .sha256(contenido.sha256())
                 .descripcion(descripcion)
                 .subidoPor(usuario)
                 .fechaSubida(LocalDateTime.now())
@@ -87,6 +107,9 @@ public class AdjuntoPedidoService {
 
         adjunto = adjuntoRepository.save(adjunto);
 
+        // Miniatura y previsualización en segundo plano
+        derivados.programarTrasCommit(adjunto.getRutaArchivo(), adjunto.getMimeType());
+
         log.info("Archivo adjunto subido exitosamente: {} para pedido ID: {}",
                 file.getOriginalFilename(), pedidoId);
 
@@ -118,11 +141,44 @@ public class AdjuntoPedidoService {
      * Descargar archivo adjunto
      */
     @Transactional(readOnly = true)
-    public Resource descargarAdjunto(Long adjuntoId) {
+    public AlmacenContenidoService.Descarga descargarAdjunto(Long adjuntoId) {
         AdjuntoPedido adjunto = adjuntoRepository.findById(adjuntoId)
                 .orElseThrow(() -> new RuntimeException("Adjunto no encontrado con ID: " + adjuntoId));
 
-        return fileStorageService.loadFileAsResource(adjunto.getRutaArchivo());
+        Path fichero = almacenContenido.resolver(adjunto.getRutaArchivo());
+        String etag = adjunto.getSha256() != null
+                ? "\"" + adjunto.getSha256() + "\""
+                : almacenContenido.etagPorMetadatos(fichero);
+
+        return new AlmacenContenidoService.Descarga(fichero, etag, adjunto.getMimeType(), adjunto.getNombreOriginal());
+    }
+
+    /**
+     * Miniatura o previsualización comprimida de un adjunto de imagen.
+     *
+     * Sin transacción: la espera a la generación puede durar segundos. Los metadatos
+     * se leen con una consulta JDBC suelta, que devuelve la conexión al pool en el
+     * acto (por JPA quedaría retenida en el EntityManager de la petición).
+     */
+    public Derivado descargarDerivado(Long adjuntoId, DerivadosAdjuntoService.Variante variante) {
+        MetadatosAdjunto adjunto = jdbcTemplate.query(
+                "SELECT id, ruta_archivo, mime_type, sha256, nombre_original FROM adjuntos_pedido WHERE id = :id",
+                Map.of("id", adjuntoId),
+                (rs, rowNum) -> new MetadatosAdjunto(rs.getLong("id"), rs.getString("ruta_archivo"),
+                        rs.getString("mime_type"), rs.getString("sha256"), rs.getString("nombre_original")))
+                .stream().findFirst()
+                .orElseThrow(() -> new RuntimeException("Adjunto no encontrado con ID: " + adjuntoId));
+
+        Optional<Path> fichero = derivados.obtener(adjunto.rutaArchivo(), adjunto.mimeType(), variante);
+        if (fichero.isEmpty()) {
+            return new Derivado(null, derivados.generable(adjunto.rutaArchivo(), adjunto.mimeType()));
+        }
+        return new Derivado(new AlmacenContenidoService.Descarga(
+                fichero.get(),
+                "\"" + (adjunto.sha256() != null ? adjunto.sha256() : "adjunto-" + adjunto.id())
+                        + "-" + variante.getSufijo() + "\"",
+                "image/jpeg",
+                nombreSinExtension(adjunto.nombreOriginal()) + "." + variante.getSufijo() + ".jpg"), false);
     }
 
     /**
@@ -133,8 +189,13 @@ public class AdjuntoPedidoService {
         AdjuntoPedido adjunto = adjuntoRepository.findById(adjuntoId)
                 .orElseThrow(() -> new RuntimeException("Adjunto no encontrado con ID: " + adjuntoId));
 
-        // Eliminar archivo físico
-        boolean archivoEliminado = fileStorageService.deleteFile(adjunto.getRutaArchivo());
+        // Eliminar archivo físico. El contenido compartido no se borra aquí: el
+        // trigger descuenta la referencia y la limpieza periódica lo elimina
+        boolean archivoEliminado = false;
+        if (adjunto.getSha256() == null) {
+            archivoEliminado = fileStorageService.deleteFile(adjunto.getRutaArchivo());
+            almacenContenido.borrarConDerivados(almacenContenido.ubicar(adjunto.getRutaArchivo()));
+        }
 
         // Eliminar registro de base de datos
         adjuntoRepository.delete(adjunto);
@@ -159,6 +220,14 @@ public class AdjuntoPedidoService {
         return adjuntoRepository.calcularTamanioTotalPedido(pedidoId);
     }
 
+    private static String nombreSinExtension(String nombre) {
+        if (nombre == null) {
+            return "adjunto";
+        }
+        int punto = nombre.lastIndexOf('.');
+        return punto > 0 ? nombre.substring(0, punto) : nombre;
+    }
+
     /**
      * Mapear entidad a DTO
      */
@@ -194,6 +263,10 @@ public class AdjuntoPedidoService {
             dto.setUrlVistaPrevia(baseUrl + "/api/pedidos/adjuntos/" + adjunto.getId() + "/preview");
         }
 
+        if (adjunto.isImagen()) {
+            dto.setUrlMiniatura(baseUrl + "/api/pedidos/adjuntos/" + adjunto.getId() + "/thumbnail");
+        }
+
         return dto;
     }
 }
@@ -1,127 +1,263 @@
 package com.club.management.service;
 
 import com.club.management.entity.AlertaStock;
-import com.club.management.entity.Producto;
 import com.club.management.repository.AlertaStockRepository;
-import com.club.management.repository.ProductoRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Alertas de stock bajo / sin stock.
+ *
+ * Detección dirigida por eventos: cada cambio de stock publica un
+ * {@link StockModificadoEvent}; tras el commit los productos afectados se acumulan
+ * y cada app.alertas-stock.flush-ms se evalúan en bloque (una lectura de stock por
+ * lote) contra el índice en memoria de stock mínimo y alerta activa por producto.
+ * Solo los productos que cruzan un umbral generan escrituras, y las altas y bajas
+ * de alertas se hacen en batch.
+ *
+ * La pasada horaria queda como reconciliación set-based (cambios de stock que no
+ * publican evento, p.ej. SQL manual) y reconstruye el índice.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AlertaStockService {
 
+    static final String SIN_STOCK = "SIN_STOCK";
+    static final String STOCK_BAJO = "STOCK_BAJO";
+
+    /** Alerta que corresponde a un producto según su stock (NULL si ninguna) */
+    private static final String ALERTA_SQL =
+            "(CASE WHEN NOT p.activo THEN NULL " +
+            "      WHEN p.stock_actual <= 0 THEN '" + SIN_STOCK + "' " +
+            "      WHEN p.stock_actual < p.stock_minimo THEN '" + STOCK_BAJO + "' END)";
+
     private final AlertaStockRepository alertaRepository;
-    private final ProductoRepository productoRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /** Productos con stock modificado pendientes de evaluar */
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+
+    /** Índice en memoria: stock mínimo y alerta de stock activa por producto */
+    private final Map<Long, Umbral> indice = new ConcurrentHashMap<>();
+
+    private record Umbral(BigDecimal stockMinimo, String alertaActiva) {
+    }
+
+    private record EstadoProducto(Long id, String codigo, String nombre, String unidadMedida,
+                                  BigDecimal stockActual, BigDecimal stockMinimo, boolean activo) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void inicializar() {
+        verificarStockYGenerarAlertas();
+    }
 
     /**
-     * Verifica el stock de todos los productos y genera alertas automáticamente
-     * Se ejecuta cada hora
+     * Encola los productos afectados por un cambio de stock ya confirmado
      */
-    @Scheduled(cron = "0 0 * * * *") // Cada hora
-    @Transactional
-    public void verificarStockYGenerarAlertas() {
-        log.info("Iniciando verificación automática de stock...");
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockModificado(StockModificadoEvent event) {
+        pendientes.addAll(event.productoIds());
+    }
+
+    /**
+     * Evalúa en bloque los productos con stock modificado desde la última pasada.
+     * El índice solo se actualiza tras el commit: si el lote falla, los productos
+     * se reevalúan contra el estado anterior
+     */
+    @Scheduled(fixedDelayString = "${app.alertas-stock.flush-ms:5000}")
+    public void procesarPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(pendientes);
+        pendientes.removeAll(ids);
+
+        Map<Long, Umbral> cambios = new HashMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> evaluar(ids, cambios));
+        } catch (RuntimeException e) {
+            // Se reintentan en la siguiente pasada
+            pendientes.addAll(ids);
+            throw e;
+        }
+        indice.putAll(cambios);
+    }
+
+    private void evaluar(List<Long> ids, Map<Long, Umbral> cambios) {
+        List<EstadoProducto> estados = jdbcTemplate.query(
+                "SELECT id, codigo, nombre, unidad_medida, stock_actual, stock_minimo, activo " +
+                "FROM productos WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids),
+                (rs, i) -> mapEstado(rs));
 
-        List<Producto> productosActivos = productoRepository.findByActivoTrue();
-        int alertasCreadas = 0;
+        List<Long> desactivar = new ArrayList<>();
+        List<EstadoProducto> crear = new ArrayList<>();
+        for (EstadoProducto estado : estados) {
+            String deseada = alertaDeseada(estado);
+            Umbral umbral = indice.get(estado.id());
+            String actual = umbral != null ? umbral.alertaActiva() : null;
 
-        for (Producto producto : productosActivos) {
-            boolean alertaGenerada = procesarAlertas(producto);
-            if (alertaGenerada) {
-                alertasCreadas++;
+            if (!Objects.equals(deseada, actual)) {
+                if (actual != null) {
+                    desactivar.add(estado.id());
+                }
+                if (deseada != null) {
+                    crear.add(estado);
+                }
             }
+            cambios.put(estado.id(), new Umbral(estado.stockMinimo(), deseada));
         }
 
-        log.info("Verificación completada. {} alertas generadas.", alertasCreadas);
+        if (!desactivar.isEmpty()) {
+            jdbcTemplate.update(
+                    "UPDATE alertas_stock SET activa = FALSE " +
+                    "WHERE activa AND producto_id IN (:ids) AND tipo_alerta IN ('" + SIN_STOCK + "', '" + STOCK_BAJO + "')",
+                    new MapSqlParameterSource("ids", desactivar));
+        }
+        int creadas = insertarAlertas(crear);
+
+        if (creadas > 0 || !desactivar.isEmpty()) {
+            log.info("Alertas de stock: {} productos evaluados, {} alertas creadas, {} productos con alertas desactivadas",
+                    ids.size(), creadas, desactivar.size());
+        }
     }
 
     /**
-     * Procesa las alertas para un producto específico
+     * Reconciliación: alinea alertas y stock de todos los productos en dos
+     * sentencias set-based y reconstruye el índice. Se ejecuta cada hora
      */
+    @Scheduled(cron = "${app.alertas-stock.reconciliacion-cron:0 0 * * * *}")
     @Transactional
-    public boolean procesarAlertas(Producto producto) {
-        boolean alertaGenerada = false;
-
-        // Verificar si el stock está en 0
-        if (producto.getStockActual().compareTo(java.math.BigDecimal.ZERO) == 0) {
-            alertaGenerada = crearAlertaSiNoExiste(
-                    producto,
-                    "SIN_STOCK",
-                    "CRITICO",
-                    String.format("⚠️ CRÍTICO: El producto '%s' no tiene stock disponible", producto.getNombre())
-            );
+    public void verificarStockYGenerarAlertas() {
+        long inicio = System.currentTimeMillis();
+
+        // Desactivar alertas que ya no corresponden al estado del producto
+        int desactivadas = jdbcTemplate.update(
+                "UPDATE alertas_stock a SET activa = FALSE " +
+                "FROM productos p " +
+                "WHERE a.producto_id = p.id AND a.activa " +
+                "  AND a.tipo_alerta IN ('" + SIN_STOCK + "', '" + STOCK_BAJO + "') " +
+                "  AND a.tipo_alerta IS DISTINCT FROM " + ALERTA_SQL,
+                new MapSqlParameterSource());
+
+        // Productos que necesitan alerta y no la tienen
+        List<EstadoProducto> sinAlerta = jdbcTemplate.query(
+                "SELECT p.id, p.codigo, p.nombre, p.unidad_medida, p.stock_actual, p.stock_minimo, p.activo " +
+                "FROM productos p " +
+                "WHERE p.activo AND (p.stock_actual <= 0 OR p.stock_actual < p.stock_minimo) " +
+                "  AND NOT EXISTS (SELECT 1 FROM alertas_stock a " +
+                "                  WHERE a.producto_id = p.id AND a.activa AND a.tipo_alerta = " + ALERTA_SQL + ")",
+                new MapSqlParameterSource(),
+                (rs, i) -> mapEstado(rs));
+        int creadas = insertarAlertas(sinAlerta);
+
+        // Reconstruir índice
+        Map<Long, Umbral> nuevo = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT p.id, p.stock_minimo, " + ALERTA_SQL + " AS alerta FROM productos p",
+                new MapSqlParameterSource(),
+                rs -> {
+                    nuevo.put(rs.getLong("id"), new Umbral(rs.getBigDecimal("stock_minimo"), rs.getString("alerta")));
+                });
+        indice.keySet().retainAll(nuevo.keySet());
+        indice.putAll(nuevo);
+
+        log.info("Reconciliación de alertas de stock: {} productos, {} alertas creadas, {} desactivadas en {} ms",
+                nuevo.size(), creadas, desactivadas, System.currentTimeMillis() - inicio);
+    }
+
+    private static String alertaDeseada(EstadoProducto p) {
+        if (!p.activo()) {
+            return null;
         }
-        // Verificar si el stock está por debajo del mínimo
-        else if (producto.getStockActual().compareTo(producto.getStockMinimo()) < 0) {
-            alertaGenerada = crearAlertaSiNoExiste(
-                    producto,
-                    "STOCK_BAJO",
-                    "ALTO",
-                    String.format("⚠️ Stock bajo: El producto '%s' tiene %s %s (mínimo: %s %s)",
-                            producto.getNombre(),
-                            producto.getStockActual(),
-                            producto.getUnidadMedida(),
-                            producto.getStockMinimo(),
-                            producto.getUnidadMedida())
-            );
+        if (p.stockActual().signum() <= 0) {
+            return SIN_STOCK;
         }
-        // Si el stock está OK, desactivar alertas existentes
-        else {
-            desactivarAlertasDeProducto(producto.getId());
+        if (p.stockActual().compareTo(p.stockMinimo()) < 0) {
+            return STOCK_BAJO;
         }
-
-        return alertaGenerada;
+        return null;
     }
 
     /**
-     * Crea una alerta solo si no existe una activa del mismo tipo para el producto
+     * Inserta en batch las alertas de los productos indicados. El índice único
+     * parcial (producto_id, tipo_alerta) WHERE activa evita duplicados
      */
-    private boolean crearAlertaSiNoExiste(Producto producto, String tipoAlerta, String nivel, String mensaje) {
-        // Verificar si ya existe una alerta activa del mismo tipo para este producto
-        List<AlertaStock> alertasActivas = alertaRepository
-                .findByProductoIdAndActivaTrueOrderByFechaAlertaDesc(producto.getId());
-
-        boolean yaExiste = alertasActivas.stream()
-                .anyMatch(a -> a.getTipoAlerta().equals(tipoAlerta));
-
-        if (!yaExiste) {
-            AlertaStock alerta = new AlertaStock();
-            alerta.setProducto(producto);
-            alerta.setTipoAlerta(tipoAlerta);
-            alerta.setNivel(nivel);
-            alerta.setMensaje(mensaje);
-            alerta.setFechaAlerta(LocalDateTime.now());
-            alerta.setLeida(false);
-            alerta.setActiva(true);
-
-            alertaRepository.save(alerta);
-            log.info("Alerta creada para producto {}: {} - {}", producto.getCodigo(), nivel, tipoAlerta);
-            return true;
+    private int insertarAlertas(List<EstadoProducto> productos) {
+        if (productos.isEmpty()) {
+            return 0;
         }
+        LocalDateTime ahora = LocalDateTime.now();
+        MapSqlParameterSource[] batch = productos.stream()
+                .map(p -> {
+                    String tipo = alertaDeseada(p);
+                    return new MapSqlParameterSource()
+                            .addValue("productoId", p.id())
+                            .addValue("tipo", tipo)
+                            .addValue("nivel", SIN_STOCK.equals(tipo) ? "CRITICO" : "ALTO")
+                            .addValue("mensaje", mensaje(p, tipo))
+                            .addValue("fecha", ahora);
+                })
+                .toArray(MapSqlParameterSource[]::new);
 
-        return false;
-    }
+        int[] filas = jdbcTemplate.batchUpdate(
+                "INSERT INTO alertas_stock (producto_id, tipo_alerta, nivel, mensaje, fecha_alerta, leida, activa) " +
+                "VALUES (:productoId, :tipo, :nivel, :mensaje, :fecha, FALSE, TRUE) " +
+                "ON CONFLICT (producto_id, tipo_alerta) WHERE activa DO NOTHING",
+                batch);
 
-    /**
-     * Desactiva todas las alertas activas de un producto
-     */
-    @Transactional
-    public void desactivarAlertasDeProducto(Long productoId) {
-        List<AlertaStock> alertasActivas = alertaRepository
-                .findByProductoIdAndActivaTrueOrderByFechaAlertaDesc(productoId);
+        int creadas = 0;
+        for (int i = 0; i < filas.length; i++) {
+            if (filas[i] != 0) {
+                creadas++;
+                log.info("Alerta creada para producto {}: {}", productos.get(i).codigo(), alertaDeseada(productos.get(i)));
+            }
+        }
+        return creadas;
+    }
 
-        for (AlertaStock alerta : alertasActivas) {
-            alerta.setActiva(false);
-            alertaRepository.save(alerta);
+    private static String mensaje(EstadoProducto p, String tipo) {
+        if (SIN_STOCK.equals(tipo)) {
+            return String.format("⚠️ CRÍTICO: El producto '%s' no tiene stock disponible", p.nombre());
         }
+        return String.format("⚠️ Stock bajo: El producto '%s' tiene %s %s (mínimo: %s %s)",
+                p.nombre(), p.stockActual(), p.unidadMedida(), p.stockMinimo(), p.unidadMedida());
+    }
+
+    private static EstadoProducto mapEstado(ResultSet rs) throws SQLException {
+        return new EstadoProducto(
+                rs.getLong("id"),
+                rs.getString("codigo"),
+                rs.getString("nombre"),
+                rs.getString("unidad_medida"),
+                rs.getBigDecimal("stock_actual"),
+                rs.getBigDecimal("stock_minimo"),
+                rs.getBoolean("activo"));
     }
 
     /**
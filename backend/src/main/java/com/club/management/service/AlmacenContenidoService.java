@@ -0,0 +1,397 @@
+package com.club.management.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Almacenamiento de adjuntos por contenido.
+ *
+ * Cada fichero se guarda una sola vez en contenido/ab/cd/&lt;sha256&gt;; la tabla
+ * archivos_contenido (V048) cuenta cuántos adjuntos lo usan. La subida se copia
+ * a un temporal calculando el SHA-256 por el camino, sin cargar el fichero en
+ * memoria. La descarga se sirve desde el disco con FileChannel.transferTo (o
+ * sendfile de Tomcat si el conector lo admite), con soporte de Range, ETag e
+ * If-None-Match.
+ */
+@Service
+@Slf4j
+public class AlmacenContenidoService {
+
+    private static final String DIRECTORIO_CONTENIDO = "contenido";
+    private static final String DIRECTORIO_TEMPORAL = "contenido/tmp";
+
+    // Atributos de sendfile del conector NIO de Tomcat
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Path base;
+    private final Path temporal;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long graciaMinutos;
+
+    public AlmacenContenidoService(
+            @Value("${app.file-storage.upload-dir:uploads}") String uploadDir,
+            @Value("${app.file-storage.contenido.gracia-minutos:60}") long graciaMinutos,
+            NamedParameterJdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate) {
+        this.base = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.temporal = base.resolve(DIRECTORIO_TEMPORAL);
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.graciaMinutos = graciaMinutos;
+
+        try {
+            Files.createDirectories(temporal);
+        } catch (IOException ex) {
+            log.error("No se pudo crear el directorio de contenido", ex);
+            throw new RuntimeException("No se pudo crear el directorio de contenido", ex);
+        }
+    }
+
+    /**
+     * Contenido almacenado. ruta es relativa al directorio de subidas.
+     */
+    public record Contenido(String sha256, String ruta, long tamanioBytes) {
+    }
+
+    /**
+     * Fichero listo para servir
+     */
+    public record Descarga(Path fichero, String etag, String mimeType, String nombreOriginal) {
+    }
+
+    /**
+     * Guarda el contenido del fichero (si no estaba ya) y suma una referencia.
+     * Debe llamarse dentro de la transacción que crea el adjunto: si se deshace,
+     * la referencia también, y el fichero recién colocado se borra.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Contenido guardar(MultipartFile file, long maxBytes) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(temporal, "subida-", ".tmp");
+
+            // 1. Copia en streaming al temporal calculando el hash
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long tamanio;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) {
+                tamanio = copiar(in, out, maxBytes);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String ruta = rutaContenido(sha256);
+
+            // 2. Referencia; la fila queda bloqueada hasta el commit, así la limpieza
+            //    no puede borrar el fichero mientras lo colocamos
+            jdbcTemplate.update(
+                    "INSERT INTO archivos_contenido (sha256, tamanio_bytes, referencias) " +
+                    "VALUES (:sha256, :tamanio, 1) " +
+                    "ON CONFLICT (sha256) DO UPDATE " +
+                    "SET referencias = archivos_contenido.referencias + 1, actualizado_en = CURRENT_TIMESTAMP",
+                    new MapSqlParameterSource()
+                            .addValue("sha256", sha256)
+                            .addValue("tamanio", tamanio));
+
+            // 3. Colocar el fichero si es contenido nuevo
+            Path destino = base.resolve(ruta);
+            if (Files.exists(destino)) {
+                log.info("Contenido {} ya almacenado, se reutiliza ({} bytes)", sha256, tamanio);
+            } else {
+                Files.createDirectories(destino.getParent());
+                try {
+                    Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE);
+                    tmp = null;
+                    borrarSiSeDeshace(sha256, destino);
+                    log.info("Contenido {} almacenado ({} bytes)", sha256, tamanio);
+                } catch (FileAlreadyExistsException ex) {
+                    // Otra subida del mismo contenido lo colocó antes
+                    log.debug("Contenido {} colocado por otra subida", sha256);
+                }
+            }
+
+            return new Contenido(sha256, ruta, tamanio);
+
+        } catch (IOException ex) {
+            log.error("Error al almacenar el archivo: {}", file.getOriginalFilename(), ex);
+            throw new RuntimeException("Error al almacenar el archivo: " + file.getOriginalFilename(), ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 no disponible", ex);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ex) {
+                    log.warn("No se pudo borrar el temporal {}: {}", tmp, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Ruta absoluta de un fichero del almacenamiento (nuevo o anterior a V048)
+     */
+    public Path resolver(String ruta) {
+        Path fichero = ubicar(ruta);
+        if (!Files.isReadable(fichero)) {
+            throw new RuntimeException("Archivo no encontrado: " + ruta);
+        }
+        return fichero;
+    }
+
+    /**
+     * Ruta absoluta dentro del almacenamiento, exista o no el fichero
+     */
+    public Path ubicar(String ruta) {
+        Path fichero = base.resolve(ruta).normalize();
+        if (!fichero.startsWith(base)) {
+            throw new RuntimeException("Ruta de archivo inválida: " + ruta);
+        }
+        return fichero;
+    }
+
+    /**
+     * ETag de un fichero anterior a V048, sin hash: tamaño y fecha de modificación
+     */
+    public String etagPorMetadatos(Path fichero) {
+        try {
+            return "\"" + Long.toHexString(Files.size(fichero)) + "-" +
+                    Long.toHexString(Files.getLastModifiedTime(fichero).toMillis()) + "\"";
+        } catch (IOException ex) {
+            throw new RuntimeException("Archivo no encontrado: " + fichero.getFileName(), ex);
+        }
+    }
+
+    /**
+     * Escribe el fichero (o el rango pedido) en la respuesta.
+     * Un único rango se responde con 206; varios rangos se ignoran y se envía el
+     * fichero entero, como permite la RFC 9110.
+     */
+    public void enviar(Descarga descarga, boolean inline,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path fichero = descarga.fichero();
+        long longitud = Files.size(fichero);
+        String etag = descarga.etag();
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        // El contenido de un adjunto no cambia nunca
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=86400");
+
+        if (coincide(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long inicio = 0;
+        long fin = longitud - 1;
+        String rango = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rango != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> rangos;
+            try {
+                rangos = HttpRange.parseRanges(rango);
+            } catch (IllegalArgumentException ex) {
+                rangos = List.of();
+            }
+            if (rangos.size() == 1) {
+                HttpRange unico = rangos.get(0);
+                try {
+                    inicio = unico.getRangeStart(longitud);
+                    fin = unico.getRangeEnd(longitud);
+                } catch (IllegalArgumentException ex) {
+                    inicio = longitud;
+                }
+                if (longitud == 0 || inicio >= longitud) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + longitud);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + inicio + "-" + fin + "/" + longitud);
+            } else if (rangos.isEmpty()) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + longitud);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        long cantidad = longitud == 0 ? 0 : fin - inicio + 1;
+        String mimeType = descarga.mimeType() != null ? descarga.mimeType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        response.setContentType(mimeType);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                        .filename(descarga.nombreOriginal(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString());
+        response.setContentLengthLong(cantidad);
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || cantidad == 0) {
+            return;
+        }
+
+        // sendfile del conector: el kernel copia del fichero al socket
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, fichero.toString());
+            request.setAttribute(SENDFILE_START, inicio);
+            request.setAttribute(SENDFILE_END, fin + 1);
+            return;
+        }
+
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            WritableByteChannel salida = Channels.newChannel(response.getOutputStream());
+            long posicion = inicio;
+            long restante = cantidad;
+            while (restante > 0) {
+                long enviados = canal.transferTo(posicion, restante, salida);
+                if (enviados <= 0) {
+                    break;
+                }
+                posicion += enviados;
+                restante -= enviados;
+            }
+        }
+    }
+
+    /**
+     * Borra el contenido que lleva un tiempo sin referencias.
+     * El DELETE bloquea las filas hasta el commit, de modo que una subida del
+     * mismo contenido espera y vuelve a colocar el fichero.
+     */
+    @Scheduled(fixedDelayString = "${app.file-storage.contenido.limpieza-ms:3600000}",
+               initialDelayString = "${app.file-storage.contenido.limpieza-ms:3600000}")
+    public void purgarSinReferencias() {
+        Integer borrados = transactionTemplate.execute(status -> {
+            List<String> hashes = jdbcTemplate.queryForList(
+                    "DELETE FROM archivos_contenido c " +
+                    "WHERE c.referencias <= 0 " +
+                    "AND c.actualizado_en < :limite " +
+                    "AND NOT EXISTS (SELECT 1 FROM adjuntos_pedido a WHERE a.sha256 = c.sha256) " +
+                    "RETURNING c.sha256",
+                    new MapSqlParameterSource("limite",
+                            Timestamp.valueOf(LocalDateTime.now().minusMinutes(graciaMinutos))),
+                    String.class);
+
+            for (String sha256 : hashes) {
+                borrarConDerivados(base.resolve(rutaContenido(sha256)));
+            }
+            return hashes.size();
+        });
+
+        if (borrados != null && borrados > 0) {
+            log.info("Limpieza de adjuntos: {} ficheros sin referencias eliminados", borrados);
+        }
+    }
+
+    /**
+     * Borra un fichero y sus derivados (miniaturas y previsualizaciones junto a él)
+     */
+    public void borrarConDerivados(Path fichero) {
+        try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(fichero.getParent(), fichero.getFileName() + "*")) {
+            for (Path f : ficheros) {
+                Files.deleteIfExists(f);
+            }
+        } catch (NoSuchFileException ex) {
+            // Directorio ya eliminado
+        } catch (IOException ex) {
+            log.warn("No se pudo borrar {}: {}", fichero.getFileName(), ex.getMessage());
+        }
+    }
+
+    private void borrarSiSeDeshace(String sha256, Path destino) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                // Solo si ninguna otra subida ha registrado el mismo contenido entretanto
+                Integer filas = jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*) FROM archivos_contenido WHERE sha256 = :sha256",
+                        new MapSqlParameterSource("sha256", sha256), Integer.class);
+                if (filas != null && filas == 0) {
+                    try {
+                        Files.deleteIfExists(destino);
+                    } catch (IOException ex) {
+                        log.warn("No se pudo borrar el contenido {} tras rollback: {}", sha256, ex.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private static long copiar(InputStream in, OutputStream out, long maxBytes) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int leidos;
+        while ((leidos = in.read(buffer)) != -1) {
+            total += leidos;
+            if (total > maxBytes) {
+                throw new RuntimeException("El archivo excede el tamaño máximo permitido de " + (maxBytes / 1024 / 1024) + " MB");
+            }
+            out.write(buffer, 0, leidos);
+        }
+        return total;
+    }
+
+    private static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidato : ifNoneMatch.split(",")) {
+            String valor = candidato.trim();
+            if (valor.equals("*") || valor.equals(etag) || valor.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String rutaContenido(String sha256) {
+        return DIRECTORIO_CONTENIDO + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+    }
+}
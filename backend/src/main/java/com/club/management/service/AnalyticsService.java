@@ -1,7 +1,6 @@
 package com.club.management.service;
 
 import com.club.management.dto.response.*;
-import com.club.management.entity.Empleado;
 import com.club.management.entity.Evento;
 import com.club.management.entity.JornadaTrabajo;
 import com.club.management.entity.Transaccion;
@@ -32,6 +31,7 @@ public class AnalyticsService {
     private final EmpleadoRepository empleadoRepository;
     private final EventoRepository eventoRepository;
     private final TransaccionRepository transaccionRepository;
+    private final RendimientoEmpleadosService rendimientoEmpleadosService;
 
     private static final DateTimeFormatter PERIODO_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
 
@@ -109,65 +109,10 @@ public class AnalyticsService {
     public RendimientoEmpleadoDTO getRendimientoPorEmpleado(Long empleadoId, String periodoInicio, String periodoFin) {
         log.info("Calculando rendimiento del empleado {} desde {} hasta {}", empleadoId, periodoInicio, periodoFin);
 
-        // Validar que el empleado existe
-        Empleado empleado = empleadoRepository.findById(empleadoId)
-                .orElseThrow(() -> new RuntimeException("Empleado no encontrado con ID: " + empleadoId));
-
-        // Convertir periodos a fechas
-        LocalDate fechaInicio = YearMonth.parse(periodoInicio, PERIODO_FORMATTER).atDay(1);
-        LocalDate fechaFin = YearMonth.parse(periodoFin, PERIODO_FORMATTER).atEndOfMonth();
-
-        // Obtener jornadas del empleado en el rango
-        List<JornadaTrabajo> jornadas = jornadaTrabajoRepository.findByEmpleadoIdAndFechaBetween(
-                empleadoId, fechaInicio, fechaFin);
-
-        // Calcular total de horas trabajadas
-        BigDecimal totalHoras = jornadas.stream()
-                .map(JornadaTrabajo::getHorasTrabajadas)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Total de jornadas
-        long totalJornadas = jornadas.size();
-
-        // Total pagado
-        BigDecimal totalPagado = jornadas.stream()
-                .map(JornadaTrabajo::getTotalPago)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Calcular promedios
-        BigDecimal promedioHorasPorJornada = totalJornadas > 0
-                ? totalHoras.divide(BigDecimal.valueOf(totalJornadas), 2, RoundingMode.HALF_UP)
-                : BigDecimal.ZERO;
-
-        BigDecimal promedioIngresoPorJornada = totalJornadas > 0
-                ? totalPagado.divide(BigDecimal.valueOf(totalJornadas), 2, RoundingMode.HALF_UP)
-                : BigDecimal.ZERO;
-
-        BigDecimal precioPromedioHora = totalHoras.compareTo(BigDecimal.ZERO) > 0
-                ? totalPagado.divide(totalHoras, 2, RoundingMode.HALF_UP)
-                : BigDecimal.ZERO;
-
-        // Jornadas pendientes
-        List<JornadaTrabajo> jornadasPendientes = jornadaTrabajoRepository.findByEmpleadoIdAndPagadoFalse(empleadoId);
-        long cantidadPendientes = jornadasPendientes.size();
-        BigDecimal importePendiente = jornadasPendientes.stream()
-                .map(JornadaTrabajo::getTotalPago)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        return RendimientoEmpleadoDTO.builder()
-                .empleadoId(empleadoId)
-                .empleadoNombre(empleado.getNombre() + " " + empleado.getApellidos())
-                .totalHorasTrabajadas(totalHoras)
-                .totalJornadas(totalJornadas)
-                .totalPagado(totalPagado)
-                .promedioHorasPorJornada(promedioHorasPorJornada)
-                .promedioIngresoPorJornada(promedioIngresoPorJornada)
-                .periodoInicio(periodoInicio)
-                .periodoFin(periodoFin)
-                .precioPromedioHora(precioPromedioHora)
-                .jornadasPendientes(cantidadPendientes)
-                .importePendiente(importePendiente)
-                .build();
+        // Se lee de la matriz empleado × mes, sin cargar jornadas
+        return rendimientoEmpleadosService.getRendimiento(empleadoId,
+                YearMonth.parse(periodoInicio, PERIODO_FORMATTER),
+                YearMonth.parse(periodoFin, PERIODO_FORMATTER));
     }
 
     /**
@@ -0,0 +1,454 @@
+package com.club.management.service;
+
+import com.club.management.dto.ArchivoVentasEstadoDTO;
+import com.club.management.dto.EstadisticasPOSDTO;
+import com.club.management.dto.VentaDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de archivo frío para sesiones de caja y ventas antiguas.
+ *
+ * Las sesiones cerradas hace más de {@code app.archivo.retencion-dias} días se
+ * mueven a sesiones_caja_archivo (ventas y líneas en JSONB) y se borran de las
+ * tablas calientes. Antes de borrarlas se acumulan en los resúmenes diarios
+ * (ventas_resumen_diario, detalle_venta_resumen_diario) para que los reportes
+ * de rangos archivados sigan funcionando sin tocar el archivo.
+ *
+ * Los resúmenes tienen granularidad de hora (ventas) y de día (productos): los
+ * reportes sobre rangos archivados redondean los extremos a esa granularidad.
+ *
+ * Los listados sin rango (todas las ventas, por empleado) y la exportación no
+ * leen el archivo: marcan la respuesta con {@link #CABECERA_ARCHIVADAS_HASTA}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArchivoVentasService {
+
+    /** Cabecera de las respuestas que no incluyen las ventas archivadas (hasta esa fecha) */
+    public static final String CABECERA_ARCHIVADAS_HASTA = "X-Ventas-Archivadas-Hasta";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.archivo.retencion-dias:180}")
+    private int retencionDias;
+
+    @Value("${app.archivo.sesiones-por-lote:50}")
+    private int sesionesPorLote;
+
+    // ========== ARCHIVADO ==========
+
+    /**
+     * Archiva las sesiones cerradas fuera del periodo de retención
+     * Se ejecuta cada día a las 06:30, después del cierre de la noche
+     */
+    @Scheduled(cron = "${app.archivo.cron:0 30 6 * * *}")
+    public void archivarSesionesAntiguas() {
+        archivarSesionesCerradasAntesDe(LocalDate.now().minusDays(retencionDias).atStartOfDay());
+    }
+
+    /**
+     * Archiva todas las sesiones cerradas antes de la fecha indicada.
+     * Cada lote se archiva en su propia transacción para no bloquear las tablas calientes.
+     *
+     * @return número de sesiones archivadas
+     */
+    public int archivarSesionesCerradasAntesDe(LocalDateTime limite) {
+        log.info("Iniciando archivado de sesiones de caja cerradas antes de {}", limite);
+
+        int totalArchivadas = 0;
+        while (true) {
+            Integer archivadas = transactionTemplate.execute(status -> archivarLote(limite));
+            if (archivadas == null || archivadas == 0) {
+                break;
+            }
+            totalArchivadas += archivadas;
+        }
+
+        log.info("Archivado completado. {} sesiones archivadas.", totalArchivadas);
+        return totalArchivadas;
+    }
+
+    /**
+     * Archiva un lote de sesiones cerradas. Debe ejecutarse dentro de una transacción.
+     */
+    private int archivarLote(LocalDateTime limite) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM sesiones_caja " +
+                "WHERE estado = 'CERRADA' AND fecha_cierre < :limite " +
+                "ORDER BY fecha_cierre " +
+                "LIMIT :lote " +
+                "FOR UPDATE SKIP LOCKED",
+                new MapSqlParameterSource()
+                        .addValue("limite", limite)
+                        .addValue("lote", sesionesPorLote),
+                Long.class);
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+
+        // 1. Resumen de ventas por día/hora/método de pago/cajero
+        jdbcTemplate.update(
+                "INSERT INTO ventas_resumen_diario " +
+                "    (fecha, hora, metodo_pago, empleado_id, num_ventas, subtotal, descuento, total) " +
+                "SELECT CAST(v.fecha AS DATE), EXTRACT(HOUR FROM v.fecha), v.metodo_pago, v.empleado_id, " +
+                "       COUNT(*), SUM(v.subtotal), SUM(COALESCE(v.descuento, 0)), SUM(v.total) " +
+                "FROM ventas v " +
+                "WHERE v.sesion_caja_id IN (:ids) " +
+                "GROUP BY 1, 2, 3, 4 " +
+                "ON CONFLICT (fecha, hora, metodo_pago, empleado_id) DO UPDATE SET " +
+                "    num_ventas = ventas_resumen_diario.num_ventas + EXCLUDED.num_ventas, " +
+                "    subtotal = ventas_resumen_diario.subtotal + EXCLUDED.subtotal, " +
+                "    descuento = ventas_resumen_diario.descuento + EXCLUDED.descuento, " +
+                "    total = ventas_resumen_diario.total + EXCLUDED.total",
+                params);
+
+        // 2. Resumen de productos vendidos por día
+        jdbcTemplate.update(
+                "INSERT INTO detalle_venta_resumen_diario (fecha, producto_id, cantidad, total, num_ventas) " +
+                "SELECT CAST(v.fecha AS DATE), d.producto_id, SUM(d.cantidad), SUM(d.total), COUNT(DISTINCT v.id) " +
+                "FROM detalle_venta d " +
+                "JOIN ventas v ON v.id = d.venta_id " +
+                "WHERE v.sesion_caja_id IN (:ids) " +
+                "GROUP BY 1, 2 " +
+                "ON CONFLICT (fecha, producto_id) DO UPDATE SET " +
+                "    cantidad = detalle_venta_resumen_diario.cantidad + EXCLUDED.cantidad, " +
+                "    total = detalle_venta_resumen_diario.total + EXCLUDED.total, " +
+                "    num_ventas = detalle_venta_resumen_diario.num_ventas + EXCLUDED.num_ventas",
+                params);
+
+        // 3. Copiar sesiones con sus ventas y líneas: la fila completa (to_jsonb, incluye
+        //    columnas que se añadan más adelante) más los campos de VentaDTO/DetalleVentaDTO
+        jdbcTemplate.update(
+                "INSERT INTO sesiones_caja_archivo " +
+                "    (id, nombre_caja, empleado_apertura_id, empleado_cierre_id, fecha_apertura, fecha_cierre, " +
+                "     monto_inicial, monto_esperado, monto_real, diferencia, observaciones, " +
+                "     num_ventas, total_ventas, fecha_primera_venta, fecha_ultima_venta, ventas) " +
+                "SELECT s.id, s.nombre_caja, s.empleado_apertura_id, s.empleado_cierre_id, s.fecha_apertura, " +
+                "       s.fecha_cierre, s.monto_inicial, s.monto_esperado, s.monto_real, s.diferencia, " +
+                "       s.observaciones, COALESCE(agg.num_ventas, 0), COALESCE(agg.total_ventas, 0), " +
+                "       agg.primera_venta, agg.ultima_venta, COALESCE(agg.ventas, '[]'::jsonb) " +
+                "FROM sesiones_caja s " +
+                "LEFT JOIN LATERAL ( " +
+                "    SELECT COUNT(*) AS num_ventas, SUM(v.total) AS total_ventas, " +
+                "           MIN(v.fecha) AS primera_venta, MAX(v.fecha) AS ultima_venta, " +
+                "           jsonb_agg(to_jsonb(v) || jsonb_build_object( " +
+                "               'id', v.id, " +
+                "               'numeroTicket', v.numero_ticket, " +
+                "               'fecha', to_char(v.fecha, 'YYYY-MM-DD\"T\"HH24:MI:SS'), " +
+                "               'subtotal', v.subtotal, " +
+                "               'descuento', v.descuento, " +
+                "               'total', v.total, " +
+                "               'metodoPago', v.metodo_pago, " +
+                "               'montoEfectivo', v.monto_efectivo, " +
+                "               'montoTarjeta', v.monto_tarjeta, " +
+                "               'sesionCajaId', s.id, " +
+                "               'sesionCajaNombre', s.nombre_caja, " +
+                "               'empleadoId', v.empleado_id, " +
+                "               'empleadoNombre', e.nombre, " +
+                "               'eventoId', v.evento_id, " +
+                "               'eventoNombre', ev.nombre, " +
+                "               'clienteNombre', v.cliente_nombre, " +
+                "               'observaciones', v.observaciones, " +
+                "               'createdAt', to_char(v.created_at, 'YYYY-MM-DD\"T\"HH24:MI:SS'), " +
+                "               'detalles', COALESCE(( " +
+                "                   SELECT jsonb_agg(to_jsonb(d) || jsonb_build_object( " +
+                "                       'id', d.id, " +
+                "                       'productoId', d.producto_id, " +
+                "                       'productoNombre', p.nombre, " +
+                "                       'productoCategoria', p.categoria, " +
+                "                       'cantidad', d.cantidad, " +
+                "                       'precioUnitario', d.precio_unitario, " +
+                "                       'subtotal', d.subtotal, " +
+                "                       'descuento', d.descuento, " +
+                "                       'total', d.total) ORDER BY d.id) " +
+                "                   FROM detalle_venta d " +
+                "                   JOIN productos p ON p.id = d.producto_id " +
+                "                   WHERE d.venta_id = v.id), '[]'::jsonb) " +
+                "           ) ORDER BY v.fecha) AS ventas " +
+                "    FROM ventas v " +
+                "    JOIN empleados e ON e.id = v.empleado_id " +
+                "    LEFT JOIN eventos ev ON ev.id = v.evento_id " +
+                "    WHERE v.sesion_caja_id = s.id " +
+                ") agg ON true " +
+                "WHERE s.id IN (:ids)",
+                params);
+
+        // 4. Borrar de las tablas calientes (detalle_venta se borra en cascada).
+        //    Con club.archivo_ventas la matriz de rendimiento (V050) no descuenta lo archivado
+        jdbcTemplate.queryForObject("SELECT set_config('club.archivo_ventas', 'on', true)",
+                new MapSqlParameterSource(), String.class);
+        jdbcTemplate.update("DELETE FROM estadisticas_pos_cache WHERE sesion_caja_id IN (:ids)", params);
+        int ventasBorradas = jdbcTemplate.update("DELETE FROM ventas WHERE sesion_caja_id IN (:ids)", params);
+        jdbcTemplate.update("DELETE FROM sesiones_caja WHERE id IN (:ids)", params);
+
+        log.info("Lote archivado: {} sesiones, {} ventas", ids.size(), ventasBorradas);
+        return ids.size();
+    }
+
+    // ========== LECTURA TRANSPARENTE ==========
+
+    /**
+     * Indica si un rango que empieza en {@code fechaInicio} puede contener ventas archivadas
+     */
+    public boolean contieneVentasArchivadas(LocalDateTime fechaInicio) {
+        LocalDateTime ultima = getUltimaVentaArchivada();
+        return ultima != null && !fechaInicio.isAfter(ultima);
+    }
+
+    /**
+     * Totales de ventas archivadas en un rango (granularidad de hora)
+     */
+    @Transactional(readOnly = true)
+    public ResumenVentasArchivadas getResumen(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        if (!contieneVentasArchivadas(fechaInicio)) {
+            return ResumenVentasArchivadas.vacio();
+        }
+
+        ResumenVentasArchivadas resumen = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(num_ventas), 0) AS num_ventas, " +
+                "       COALESCE(SUM(total), 0) AS total, " +
+                "       COALESCE(SUM(total) FILTER (WHERE metodo_pago = 'EFECTIVO'), 0) AS total_efectivo, " +
+                "       COALESCE(SUM(total) FILTER (WHERE metodo_pago = 'TARJETA'), 0) AS total_tarjeta, " +
+                "       COALESCE(SUM(total) FILTER (WHERE metodo_pago = 'MIXTO'), 0) AS total_mixto " +
+                "FROM ventas_resumen_diario " +
+                "WHERE fecha + hora * INTERVAL '1 hour' BETWEEN :inicio AND :fin",
+                rangoHoras(fechaInicio, fechaFin),
+                (rs, rowNum) -> ResumenVentasArchivadas.builder()
+                        .numVentas(rs.getLong("num_ventas"))
+                        .total(rs.getBigDecimal("total"))
+                        .totalEfectivo(rs.getBigDecimal("total_efectivo"))
+                        .totalTarjeta(rs.getBigDecimal("total_tarjeta"))
+                        .totalMixto(rs.getBigDecimal("total_mixto"))
+                        .build());
+
+        Long unidades = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(cantidad), 0) FROM detalle_venta_resumen_diario " +
+                "WHERE fecha BETWEEN :inicio AND :fin",
+                rangoDias(fechaInicio, fechaFin),
+                Long.class);
+
+        resumen.setUnidadesVendidas(unidades != null ? unidades : 0L);
+        return resumen;
+    }
+
+    /**
+     * Productos vendidos en ventas archivadas (granularidad de día), ordenados por cantidad
+     */
+    @Transactional(readOnly = true)
+    public List<EstadisticasPOSDTO.ProductoVendidoDTO> getProductosVendidos(
+            LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        if (!contieneVentasArchivadas(fechaInicio)) {
+            return new ArrayList<>();
+        }
+
+        return jdbcTemplate.query(
+                "SELECT r.producto_id, p.nombre, SUM(r.cantidad) AS cantidad, SUM(r.total) AS total, " +
+                "       SUM(r.num_ventas) AS num_ventas " +
+                "FROM detalle_venta_resumen_diario r " +
+                "JOIN productos p ON p.id = r.producto_id " +
+                "WHERE r.fecha BETWEEN :inicio AND :fin " +
+                "GROUP BY r.producto_id, p.nombre " +
+                "ORDER BY cantidad DESC",
+                rangoDias(fechaInicio, fechaFin),
+                (rs, rowNum) -> EstadisticasPOSDTO.ProductoVendidoDTO.builder()
+                        .productoId(rs.getLong("producto_id"))
+                        .nombre(rs.getString("nombre"))
+                        .cantidadVendida(rs.getLong("cantidad"))
+                        .totalIngresos(rs.getBigDecimal("total"))
+                        .numeroVentas(rs.getInt("num_ventas"))
+                        .build());
+    }
+
+    /**
+     * Ventas archivadas agrupadas por hora del día
+     */
+    @Transactional(readOnly = true)
+    public List<EstadisticasPOSDTO.VentaPorHoraDTO> getVentasPorHora(
+            LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        if (!contieneVentasArchivadas(fechaInicio)) {
+            return new ArrayList<>();
+        }
+
+        return jdbcTemplate.query(
+                "SELECT hora, SUM(num_ventas) AS cantidad, SUM(total) AS total " +
+                "FROM ventas_resumen_diario " +
+                "WHERE fecha + hora * INTERVAL '1 hour' BETWEEN :inicio AND :fin " +
+                "GROUP BY hora " +
+                "ORDER BY hora",
+                rangoHoras(fechaInicio, fechaFin),
+                (rs, rowNum) -> EstadisticasPOSDTO.VentaPorHoraDTO.builder()
+                        .hora(rs.getInt("hora"))
+                        .cantidad(rs.getInt("cantidad"))
+                        .total(rs.getBigDecimal("total"))
+                        .build());
+    }
+
+    /**
+     * Ventas archivadas completas (con detalles) en un rango, más recientes primero
+     */
+    @Transactional(readOnly = true)
+    public List<VentaDTO> findVentasEntreFechas(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        if (!contieneVentasArchivadas(fechaInicio)) {
+            return new ArrayList<>();
+        }
+
+        List<String> lotes = jdbcTemplate.queryForList(
+                "SELECT ventas::text FROM sesiones_caja_archivo " +
+                "WHERE fecha_primera_venta <= :fin AND fecha_ultima_venta >= :inicio",
+                new MapSqlParameterSource()
+                        .addValue("inicio", fechaInicio)
+                        .addValue("fin", fechaFin),
+                String.class);
+
+        List<VentaDTO> ventas = new ArrayList<>();
+        for (String json : lotes) {
+            for (VentaDTO venta : leerVentas(json)) {
+                if (!venta.getFecha().isBefore(fechaInicio) && !venta.getFecha().isAfter(fechaFin)) {
+                    ventas.add(venta);
+                }
+            }
+        }
+        ventas.sort(Comparator.comparing(VentaDTO::getFecha).reversed());
+        return ventas;
+    }
+
+    /**
+     * Ventas archivadas de un evento: las de las sesiones con ventas entre el día del
+     * evento y el mediodía siguiente (los eventos de noche cruzan la medianoche)
+     */
+    @Transactional(readOnly = true)
+    public List<VentaDTO> findVentasByEventoId(Long eventoId, LocalDate fechaEvento) {
+        LocalDateTime inicio = fechaEvento.atStartOfDay();
+        if (!contieneVentasArchivadas(inicio)) {
+            return new ArrayList<>();
+        }
+
+        List<VentaDTO> ventas = findVentasEntreFechas(inicio, fechaEvento.plusDays(1).atTime(12, 0));
+        ventas.removeIf(venta -> !eventoId.equals(venta.getEventoId()));
+        return ventas;
+    }
+
+    /**
+     * Ventas de una sesión archivada (lista vacía si la sesión no está archivada)
+     */
+    @Transactional(readOnly = true)
+    public List<VentaDTO> findVentasBySesionCajaId(Long sesionCajaId) {
+        List<String> json = jdbcTemplate.queryForList(
+                "SELECT ventas::text FROM sesiones_caja_archivo WHERE id = :id",
+                new MapSqlParameterSource("id", sesionCajaId),
+                String.class);
+
+        if (json.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<VentaDTO> ventas = leerVentas(json.get(0));
+        ventas.sort(Comparator.comparing(VentaDTO::getFecha).reversed());
+        return ventas;
+    }
+
+    /**
+     * Estado del archivo: sesiones/ventas archivadas y rango cubierto
+     */
+    @Transactional(readOnly = true)
+    public ArchivoVentasEstadoDTO getEstado() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) AS sesiones, COALESCE(SUM(num_ventas), 0) AS ventas, " +
+                "       COALESCE(SUM(total_ventas), 0) AS total, " +
+                "       MIN(fecha_primera_venta) AS primera, MAX(fecha_ultima_venta) AS ultima, " +
+                "       MAX(archivado_en) AS ultimo_archivado " +
+                "FROM sesiones_caja_archivo",
+                Map.of(),
+                (rs, rowNum) -> ArchivoVentasEstadoDTO.builder()
+                        .sesionesArchivadas(rs.getLong("sesiones"))
+                        .ventasArchivadas(rs.getLong("ventas"))
+                        .totalArchivado(rs.getBigDecimal("total"))
+                        .primeraVentaArchivada(rs.getObject("primera", LocalDateTime.class))
+                        .ultimaVentaArchivada(rs.getObject("ultima", LocalDateTime.class))
+                        .ultimoArchivado(rs.getObject("ultimo_archivado", LocalDateTime.class))
+                        .retencionDias(retencionDias)
+                        .build());
+    }
+
+    /**
+     * Fecha de la última venta archivada (null si el archivo está vacío). Los rangos
+     * posteriores no necesitan consultar el archivo. Se lee siempre de la base de
+     * datos (índice sobre fecha_ultima_venta): otra instancia puede haber archivado.
+     */
+    public LocalDateTime getUltimaVentaArchivada() {
+        return jdbcTemplate.queryForObject(
+                "SELECT MAX(fecha_ultima_venta) FROM sesiones_caja_archivo",
+                Map.of(),
+                LocalDateTime.class);
+    }
+
+    private List<VentaDTO> leerVentas(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<VentaDTO>>() {});
+        } catch (Exception e) {
+            throw new RuntimeException("Error al leer ventas archivadas: " + e.getMessage(), e);
+        }
+    }
+
+    private MapSqlParameterSource rangoHoras(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return new MapSqlParameterSource()
+                .addValue("inicio", fechaInicio.truncatedTo(ChronoUnit.HOURS))
+                .addValue("fin", fechaFin);
+    }
+
+    private MapSqlParameterSource rangoDias(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return new MapSqlParameterSource()
+                .addValue("inicio", fechaInicio.toLocalDate())
+                .addValue("fin", fechaFin.toLocalDate());
+    }
+
+    /**
+     * Totales agregados de ventas archivadas en un rango
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ResumenVentasArchivadas {
+        private long numVentas;
+        private BigDecimal total;
+        private BigDecimal totalEfectivo;
+        private BigDecimal totalTarjeta;
+        private BigDecimal totalMixto;
+        private long unidadesVendidas;
+
+        public static ResumenVentasArchivadas vacio() {
+            return new ResumenVentasArchivadas(0L, BigDecimal.ZERO, BigDecimal.ZERO,
+                    BigDecimal.ZERO, BigDecimal.ZERO, 0L);
+        }
+    }
+}
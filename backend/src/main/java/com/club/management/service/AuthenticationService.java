@@ -6,16 +6,22 @@ import com.club.management.dto.response.UsuarioDTO;
 import com.club.management.entity.Usuario;
 import com.club.management.repository.UsuarioRepository;
 import com.club.management.security.JwtTokenProvider;
+import com.club.management.security.TokenRevocationList;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Servicio de autenticación
@@ -33,6 +39,9 @@ public class AuthenticationService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
     /**
      * Autentica un usuario y genera un token JWT
      */
@@ -48,9 +57,6 @@ public class AuthenticationService {
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        // Generar token
-        String token = tokenProvider.generateToken(authentication);
-
         // Actualizar último acceso
         Usuario usuario = usuarioRepository.findByUsername(loginRequest.getUsername())
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado"));
@@ -58,13 +64,10 @@ public class AuthenticationService {
         usuario.setUltimoAcceso(LocalDateTime.now());
         usuarioRepository.save(usuario);
 
-        // Retornar respuesta
-        return new LoginResponse(
-                token,
-                usuario.getUsername(),
-                usuario.getEmail(),
-                usuario.getRol().name()
-        );
+        // Generar par de tokens y retornar respuesta
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        return buildLoginResponse(usuario, tokenProvider.generateAccessToken(
+                userDetails.getUsername(), userDetails.getAuthorities()));
     }
 
     /**
@@ -89,6 +92,62 @@ public class AuthenticationService {
         return tokenProvider.generateToken(authentication);
     }
 
+    /**
+     * Canjea un refresh token por un nuevo par access/refresh (rotación).
+     * Es el único punto donde se vuelve a comprobar el usuario en BD: si está
+     * inactivo o su rol ha cambiado, el nuevo access token lo refleja.
+     */
+    @Transactional
+    public LoginResponse refresh(String refreshToken) {
+        Claims claims = tokenProvider.parseClaims(refreshToken);
+        if (claims == null
+                || !JwtTokenProvider.TIPO_REFRESH.equals(claims.get(JwtTokenProvider.CLAIM_TIPO))
+                || tokenRevocationList.isRevocado(claims)) {
+            throw new BadCredentialsException("Refresh token inválido o revocado");
+        }
+
+        Usuario usuario = usuarioRepository.findByUsername(claims.getSubject())
+                .orElseThrow(() -> new BadCredentialsException("Usuario no encontrado"));
+        if (!Boolean.TRUE.equals(usuario.getActivo())) {
+            throw new BadCredentialsException("Usuario inactivo");
+        }
+
+        // El refresh token es de un solo uso
+        tokenRevocationList.revocarToken(claims.getId(), usuario.getUsername(), claims.getExpiration(), "REFRESH");
+
+        return buildLoginResponse(usuario, tokenProvider.generateAccessToken(usuario.getUsername(),
+                List.of(new SimpleGrantedAuthority("ROLE_" + usuario.getRol().name()))));
+    }
+
+    /**
+     * Revoca el access token actual y el refresh token indicado (si se envía)
+     */
+    @Transactional
+    public void logout(String accessToken, String refreshToken) {
+        for (String token : new String[]{accessToken, refreshToken}) {
+            if (token == null) {
+                continue;
+            }
+            Claims claims = tokenProvider.parseClaims(token);
+            if (claims != null) {
+                tokenRevocationList.revocarToken(claims.getId(), claims.getSubject(), claims.getExpiration(), "LOGOUT");
+            }
+        }
+    }
+
+    private LoginResponse buildLoginResponse(Usuario usuario, String accessToken) {
+        return LoginResponse.builder()
+                .token(accessToken)
+                .type("Bearer")
+                .username(usuario.getUsername())
+                .email(usuario.getEmail())
+                .rol(usuario.getRol().name())
+                .refreshToken(tokenProvider.generateRefreshToken(usuario.getUsername()))
+                .expiresIn(tokenProvider.getAccessExpiration())
+                .refreshExpiresIn(tokenProvider.getRefreshExpiration())
+                .build();
+    }
+
     /**
      * Mapea Usuario a UsuarioDTO
      */
@@ -0,0 +1,643 @@
+package com.club.management.service;
+
+import com.club.management.dto.AbrirBotellaRequest;
+import com.club.management.dto.BotellaAbiertaDTO;
+import com.club.management.dto.CerrarBotellaRequest;
+import com.club.management.dto.ResumenBotellasDTO;
+import com.club.management.entity.BotellaAbierta;
+import com.club.management.entity.BotellaAbierta.EstadoBotella;
+import com.club.management.entity.Empleado;
+import com.club.management.entity.Producto;
+import com.club.management.entity.SesionCaja;
+import com.club.management.repository.BotellaAbiertaRepository;
+import com.club.management.repository.EmpleadoRepository;
+import com.club.management.repository.ProductoRepository;
+import com.club.management.repository.SesionCajaRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Botellas abiertas en barra (copas sueltas de botellas VIP / venta dual)
+ *
+ * Las copas servidas se cuentan en memoria con contadores atómicos por botella,
+ * sin leer ni bloquear la fila en cada copa. Cada app.botellas.flush-ms se vuelcan
+ * a botellas_abiertas en una sola sentencia las copas confirmadas desde el último
+ * volcado (incremento, no valor absoluto: varias instancias pueden servir de la
+ * misma botella); las botellas agotadas se cierran en esa misma sentencia. Después
+ * se relee el estado de las botellas abiertas para incorporar las copas, aperturas
+ * y cierres de otras instancias. Entre dos volcados una botella puede servirse a la
+ * vez desde varias instancias; el volcado nunca pasa de copas_totales.
+ * Al arrancar se cargan las botellas ABIERTA de la base de datos.
+ *
+ * Por barra (ubicación) y producto se sirve siempre de la botella abierta más
+ * antigua. Si no queda ninguna con copas y app.botellas.auto-abrir está activo,
+ * se abre otra automáticamente. Abrir una botella descuenta 1 unidad de stock
+ * (las copas de botella abierta no descuentan en el trigger, ver V046) y se
+ * confirma en su propia transacción: la botella queda abierta aunque la venta
+ * que la pidió se deshaga.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BotellaAbiertaService {
+
+    static final String COPA_INDIVIDUAL = "COPA_INDIVIDUAL";
+
+    private final BotellaAbiertaRepository botellaRepository;
+    private final ProductoRepository productoRepository;
+    private final EmpleadoRepository empleadoRepository;
+    private final SesionCajaRepository sesionCajaRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.botellas.auto-abrir:true}")
+    private boolean autoAbrir;
+
+    /** Contadores de las botellas abiertas, por id */
+    private final Map<Long, Contador> contadores = new ConcurrentHashMap<>();
+
+    /** Botellas abiertas por barra y producto, en orden de apertura */
+    private final Map<Barra, Deque<Contador>> barras = new ConcurrentHashMap<>();
+
+    /** Botellas con copas pendientes de volcar */
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+
+    private TransactionTemplate nuevaTransaccion;
+
+    private record Barra(String ubicacion, Long productoId) {
+    }
+
+    /**
+     * Copas de una botella. servidas incluye las de ventas aún sin confirmar
+     * (enCurso); volcadas son las que ya constan en la base de datos (propias y de
+     * otras instancias), a la base de datos solo se escribe la diferencia
+     */
+    private static final class Contador {
+        final long botellaId;
+        final Barra barra;
+        final int totales;
+        final AtomicInteger servidas;
+        final AtomicInteger enCurso = new AtomicInteger();
+        volatile int volcadas;
+        volatile boolean retirada;
+
+        Contador(long botellaId, Barra barra, int totales, int servidas) {
+            this.botellaId = botellaId;
+            this.barra = barra;
+            this.totales = totales;
+            this.servidas = new AtomicInteger(servidas);
+            this.volcadas = servidas;
+        }
+
+        /** Reserva hasta copas copas; devuelve las reservadas (0 si está agotada) */
+        int reservar(int copas) {
+            while (true) {
+                int actual = servidas.get();
+                if (retirada || actual >= totales) {
+                    return 0;
+                }
+                int n = Math.min(copas, totales - actual);
+                if (servidas.compareAndSet(actual, actual + n)) {
+                    return n;
+                }
+            }
+        }
+
+        boolean disponible() {
+            return !retirada && servidas.get() < totales;
+        }
+
+        int confirmadas() {
+            return servidas.get() - enCurso.get();
+        }
+
+        int sinVolcar() {
+            return confirmadas() - volcadas;
+        }
+    }
+
+    @PostConstruct
+    void configurarTransacciones() {
+        nuevaTransaccion = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        nuevaTransaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        jdbcTemplate.query(
+                "SELECT id, producto_id, ubicacion, copas_totales, copas_servidas " +
+                "FROM botellas_abiertas WHERE estado = 'ABIERTA' ORDER BY fecha_apertura, id",
+                new MapSqlParameterSource(),
+                rs -> {
+                    registrar(new Contador(rs.getLong("id"),
+                            new Barra(rs.getString("ubicacion"), rs.getLong("producto_id")),
+                            rs.getInt("copas_totales"), rs.getInt("copas_servidas")));
+                });
+        log.info("Botellas abiertas cargadas: {} en {} barras/productos", contadores.size(), barras.size());
+    }
+
+    /**
+     * Sirve copas de la botella abierta más antigua del producto en la barra, abriendo
+     * otra si se agota (app.botellas.auto-abrir). Dentro de una transacción las copas
+     * se confirman con el commit y se devuelven si hay rollback.
+     *
+     * @return copas servidas por botella, en orden (una venta puede acabar una botella y empezar otra)
+     */
+    public Map<Long, Integer> servirCopas(Long productoId, String ubicacion, int copas) {
+        if (copas <= 0) {
+            throw new IllegalArgumentException("La cantidad de copas debe ser mayor a 0");
+        }
+        Barra barra = new Barra(normalizarUbicacion(ubicacion), productoId);
+        Map<Long, Integer> servidas = new LinkedHashMap<>();
+        try {
+            int faltan = copas;
+            while (faltan > 0) {
+                Contador contador = botellaActiva(barra);
+                if (contador == null) {
+                    if (!autoAbrir) {
+                        throw new RuntimeException("No hay botellas abiertas del producto " + productoId +
+                                " en " + barra.ubicacion());
+                    }
+                    contador = abrirAutomaticamente(barra);
+                }
+                // enCurso antes de reservar: un cierre concurrente nunca ve copas sin confirmar como servidas
+                contador.enCurso.addAndGet(faltan);
+                int n = contador.reservar(faltan);
+                contador.enCurso.addAndGet(n - faltan);
+                if (n > 0) {
+                    servidas.merge(contador.botellaId, n, Integer::sum);
+                    faltan -= n;
+                }
+            }
+        } catch (RuntimeException e) {
+            finalizar(servidas, false);
+            throw e;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    finalizar(servidas, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            finalizar(servidas, true);
+        }
+        return servidas;
+    }
+
+    /**
+     * Abrir una botella manualmente
+     */
+    @Transactional
+    public BotellaAbiertaDTO abrirBotella(AbrirBotellaRequest request) {
+        Long id = abrir(request.getProductoId(), normalizarUbicacion(request.getUbicacion()),
+                request.getEmpleadoId(), request.getSesionCajaId(), request.getNotas());
+        return getBotella(id);
+    }
+
+    /**
+     * Cerrar una botella (terminada o desperdiciada) con las copas confirmadas hasta ahora
+     */
+    @Transactional
+    public BotellaAbiertaDTO cerrarBotella(CerrarBotellaRequest request) {
+        Empleado empleado = empleadoRepository.findById(request.getEmpleadoId())
+                .orElseThrow(() -> new RuntimeException("Empleado no encontrado"));
+
+        BotellaAbierta botella;
+        Contador contador;
+        // Sin volcado local a medias; el de otra instancia espera al bloqueo de la
+        // fila y ya no la encuentra abierta
+        synchronized (this) {
+            jdbcTemplate.queryForList("SELECT id FROM botellas_abiertas WHERE id = :id FOR UPDATE",
+                    new MapSqlParameterSource("id", request.getBotellaId()), Long.class);
+            botella = botellaRepository.findById(request.getBotellaId())
+                    .orElseThrow(() -> new RuntimeException("Botella no encontrada"));
+
+            contador = contadores.get(botella.getId());
+            if (contador != null) {
+                contador.retirada = true;
+                if (contador.enCurso.get() > 0) {
+                    contador.retirada = false;
+                    throw new RuntimeException("Hay ventas en curso de esta botella, inténtalo de nuevo");
+                }
+                int servidas = Math.min(botella.getCopasTotales(), botella.getCopasServidas() + contador.sinVolcar());
+                botella.setCopasServidas(servidas);
+                botella.setCopasRestantes(botella.getCopasTotales() - servidas);
+            }
+        }
+        try {
+            botella.cerrar(request.getMotivo());
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            if (contador != null) {
+                contador.retirada = false;
+            }
+            throw new RuntimeException(e.getMessage());
+        }
+        botella.setCerradaPor(empleado);
+        if (request.getNotas() != null && !request.getNotas().isBlank()) {
+            botella.setNotas(botella.getNotas() != null
+                    ? botella.getNotas() + "\n" + request.getNotas()
+                    : request.getNotas());
+        }
+        BotellaAbierta saved = botellaRepository.save(botella);
+
+        if (contador != null) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        retirar(contador);
+                    } else {
+                        contador.retirada = false;
+                    }
+                }
+            });
+        }
+        log.info("Botella {} cerrada ({}): {} de {} copas servidas",
+                saved.getId(), saved.getEstado(), saved.getCopasServidas(), saved.getCopasTotales());
+        return toDTO(saved);
+    }
+
+    @Transactional(readOnly = true)
+    public BotellaAbiertaDTO getBotella(Long id) {
+        return toDTO(botellaRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Botella no encontrada")));
+    }
+
+    /**
+     * Botellas abiertas, de una barra o de todas, con las copas en tiempo real
+     */
+    @Transactional(readOnly = true)
+    public List<BotellaAbiertaDTO> getBotellasAbiertas(String ubicacion) {
+        List<BotellaAbierta> botellas = ubicacion != null && !ubicacion.isBlank()
+                ? botellaRepository.findByEstadoAndUbicacionOrderByFechaAperturaAsc(
+                        EstadoBotella.ABIERTA, normalizarUbicacion(ubicacion))
+                : botellaRepository.findByEstadoOrderByUbicacionAscFechaAperturaAsc(EstadoBotella.ABIERTA);
+        return botellas.stream()
+                .map(this::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resumen por producto de las botellas abiertas (de una barra o de todas)
+     */
+    @Transactional(readOnly = true)
+    public List<ResumenBotellasDTO> getResumen(String ubicacion) {
+        Map<Long, List<BotellaAbiertaDTO>> porProducto = getBotellasAbiertas(ubicacion).stream()
+                .collect(Collectors.groupingBy(BotellaAbiertaDTO::getProductoId, LinkedHashMap::new, Collectors.toList()));
+
+        List<ResumenBotellasDTO> resumen = new ArrayList<>();
+        for (List<BotellaAbiertaDTO> botellas : porProducto.values()) {
+            BotellaAbiertaDTO primera = botellas.get(0);
+            BigDecimal equivalente = BigDecimal.ZERO;
+            int servidas = 0;
+            int disponibles = 0;
+            int conAlertas = 0;
+            for (BotellaAbiertaDTO b : botellas) {
+                servidas += b.getCopasServidas();
+                disponibles += b.getCopasRestantes();
+                equivalente = equivalente.add(BigDecimal.valueOf(b.getCopasRestantes())
+                        .divide(BigDecimal.valueOf(b.getCopasTotales()), 4, RoundingMode.HALF_UP));
+                if (b.getAlerta() != null) {
+                    conAlertas++;
+                }
+            }
+            resumen.add(ResumenBotellasDTO.builder()
+                    .productoId(primera.getProductoId())
+                    .productoNombre(primera.getProductoNombre())
+                    .categoria(primera.getProductoCategoria())
+                    .totalBotellasAbiertas((long) botellas.size())
+                    .totalCopasServidas(servidas)
+                    .totalCopasDisponibles(disponibles)
+                    .equivalenteBotellas(equivalente.setScale(2, RoundingMode.HALF_UP))
+                    .ubicaciones(new ArrayList<>(botellas.stream()
+                            .map(BotellaAbiertaDTO::getUbicacion)
+                            .collect(Collectors.toCollection(TreeSet::new))))
+                    .botellaMasAntigua(botellas.stream().map(BotellaAbiertaDTO::getFechaApertura)
+                            .min(Comparator.naturalOrder()).orElse(null))
+                    .botellaMasReciente(botellas.stream().map(BotellaAbiertaDTO::getFechaApertura)
+                            .max(Comparator.naturalOrder()).orElse(null))
+                    .tieneAlertaCasiVacia(botellas.stream().anyMatch(b -> Boolean.TRUE.equals(b.getIsCasiVacia())))
+                    .tieneAlertaMas24h(botellas.stream().anyMatch(b -> Boolean.TRUE.equals(b.getIsAbiertaMas24Horas())))
+                    .botellasConAlertas(conAlertas)
+                    .build());
+        }
+        return resumen;
+    }
+
+    /**
+     * Vuelca en una sentencia las copas confirmadas desde el último volcado, cierra
+     * las botellas agotadas y sincroniza los contadores con la base de datos
+     */
+    @Scheduled(fixedDelayString = "${app.botellas.flush-ms:2000}")
+    public synchronized void volcarContadores() {
+        List<Long> ids = new ArrayList<>(pendientes);
+        pendientes.removeAll(ids);
+
+        Map<Contador, Integer> volcados = new LinkedHashMap<>();
+        for (Long id : ids) {
+            Contador contador = contadores.get(id);
+            if (contador != null && contador.sinVolcar() != 0) {
+                volcados.put(contador, contador.sinVolcar());
+            }
+        }
+
+        if (!volcados.isEmpty()) {
+            List<Object[]> deltas = volcados.entrySet().stream()
+                    .map(e -> new Object[]{e.getKey().botellaId, e.getValue()})
+                    .toList();
+            try {
+                // En su propia transacción: en producción la conexión no hace autocommit
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                        "UPDATE botellas_abiertas b " +
+                        "SET copas_servidas = LEAST(b.copas_totales, b.copas_servidas + v.delta), " +
+                        "    copas_restantes = b.copas_totales - LEAST(b.copas_totales, b.copas_servidas + v.delta), " +
+                        "    estado = CASE WHEN b.copas_servidas + v.delta >= b.copas_totales " +
+                        "                  THEN 'CERRADA' ELSE b.estado END, " +
+                        "    fecha_cierre = CASE WHEN b.copas_servidas + v.delta >= b.copas_totales " +
+                        "                        THEN CURRENT_TIMESTAMP ELSE b.fecha_cierre END, " +
+                        "    updated_at = CURRENT_TIMESTAMP " +
+                        "FROM (VALUES :deltas) AS v(id, delta) " +
+                        "WHERE b.id = v.id AND b.estado = 'ABIERTA'",
+                        new MapSqlParameterSource("deltas", deltas)));
+            } catch (RuntimeException e) {
+                // Se reintentan en la siguiente pasada
+                pendientes.addAll(ids);
+                throw e;
+            }
+            volcados.forEach((contador, delta) -> contador.volcadas += delta);
+        }
+
+        sincronizar();
+    }
+
+    /**
+     * Relee las botellas abiertas: incorpora las copas servidas desde otras
+     * instancias, da de alta las abiertas en otra instancia y retira las cerradas
+     * (agotadas en el volcado o cerradas en otra instancia)
+     */
+    private void sincronizar() {
+        // Solo se retiran contadores que ya existían antes de la lectura
+        Set<Long> conocidas = new HashSet<>(contadores.keySet());
+        Set<Long> abiertas = new HashSet<>();
+        jdbcTemplate.query(
+                "SELECT id, producto_id, ubicacion, copas_totales, copas_servidas " +
+                "FROM botellas_abiertas WHERE estado = 'ABIERTA' ORDER BY fecha_apertura, id",
+                new MapSqlParameterSource(),
+                rs -> {
+                    long id = rs.getLong("id");
+                    int enBaseDeDatos = rs.getInt("copas_servidas");
+                    abiertas.add(id);
+                    Contador contador = contadores.get(id);
+                    if (contador == null) {
+                        registrar(new Contador(id, new Barra(rs.getString("ubicacion"), rs.getLong("producto_id")),
+                                rs.getInt("copas_totales"), enBaseDeDatos));
+                    } else if (enBaseDeDatos > contador.volcadas) {
+                        contador.servidas.addAndGet(enBaseDeDatos - contador.volcadas);
+                        contador.volcadas = enBaseDeDatos;
+                    }
+                });
+
+        List<Long> cerradas = new ArrayList<>();
+        for (Long id : conocidas) {
+            Contador contador = contadores.get(id);
+            if (contador != null && !abiertas.contains(id)) {
+                retirar(contador);
+                cerradas.add(id);
+            }
+        }
+        if (!cerradas.isEmpty()) {
+            log.info("Botellas cerradas retiradas de memoria: {}", cerradas);
+        }
+    }
+
+    @PreDestroy
+    void detener() {
+        try {
+            volcarContadores();
+        } catch (RuntimeException e) {
+            log.error("No se pudieron volcar los contadores de botellas al parar: {}", e.getMessage());
+        }
+    }
+
+    private Contador botellaActiva(Barra barra) {
+        Deque<Contador> botellas = barras.get(barra);
+        if (botellas == null) {
+            return null;
+        }
+        for (Contador contador : botellas) {
+            if (contador.disponible()) {
+                return contador;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Una sola apertura automática a la vez por barra y producto
+     */
+    private Contador abrirAutomaticamente(Barra barra) {
+        Deque<Contador> botellas = barras.computeIfAbsent(barra, b -> new ConcurrentLinkedDeque<>());
+        synchronized (botellas) {
+            Contador activa = botellaActiva(barra);
+            if (activa != null) {
+                return activa;
+            }
+            Long id = abrir(barra.productoId(), barra.ubicacion(), null, null, "Apertura automática");
+            log.info("Botella {} abierta automáticamente (producto {}, {})", id, barra.productoId(), barra.ubicacion());
+            return contadores.get(id);
+        }
+    }
+
+    /**
+     * Abre una botella en su propia transacción: descuenta 1 unidad de stock,
+     * registra el movimiento y da de alta el contador tras el commit
+     */
+    private Long abrir(Long productoId, String ubicacion, Long empleadoId, Long sesionCajaId, String notas) {
+        BotellaAbierta botella = nuevaTransaccion.execute(status -> {
+            Producto producto = productoRepository.findById(productoId)
+                    .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
+            int copasTotales = copasPorBotella(producto);
+
+            Empleado empleado = empleadoId != null
+                    ? empleadoRepository.findById(empleadoId)
+                            .orElseThrow(() -> new RuntimeException("Empleado no encontrado"))
+                    : null;
+            SesionCaja sesion = sesionCajaId != null
+                    ? sesionCajaRepository.findById(sesionCajaId)
+                            .orElseThrow(() -> new RuntimeException("Sesión de caja no encontrada"))
+                    : null;
+
+            List<BigDecimal> stock = jdbcTemplate.queryForList(
+                    "UPDATE productos SET stock_actual = stock_actual - 1, actualizado_en = CURRENT_TIMESTAMP " +
+                    "WHERE id = :id AND stock_actual >= 1 " +
+                    "RETURNING stock_actual",
+                    new MapSqlParameterSource("id", productoId), BigDecimal.class);
+            if (stock.isEmpty()) {
+                throw new RuntimeException("No hay stock de '" + producto.getNombre() + "' para abrir una botella");
+            }
+
+            BotellaAbierta nueva = botellaRepository.save(BotellaAbierta.builder()
+                    .producto(producto)
+                    .sesionCaja(sesion)
+                    .abiertaPor(empleado)
+                    .ubicacion(ubicacion)
+                    .copasTotales(copasTotales)
+                    .copasServidas(0)
+                    .copasRestantes(copasTotales)
+                    .notas(notas)
+                    .build());
+
+            BigDecimal stockNuevo = stock.get(0);
+            jdbcTemplate.update(
+                    "INSERT INTO movimientos_stock (producto_id, tipo_movimiento, cantidad, stock_anterior, stock_nuevo, " +
+                    "                               motivo, referencia, fecha_movimiento) " +
+                    "VALUES (:productoId, 'SALIDA', 1, :anterior, :nuevo, 'Apertura de botella', :referencia, CURRENT_TIMESTAMP)",
+                    new MapSqlParameterSource()
+                            .addValue("productoId", productoId)
+                            .addValue("anterior", stockNuevo.add(BigDecimal.ONE))
+                            .addValue("nuevo", stockNuevo)
+                            .addValue("referencia", "Botella abierta #" + nueva.getId() + " (" + ubicacion + ")"));
+
+            eventPublisher.publishEvent(StockModificadoEvent.of(productoId));
+            eventPublisher.publishEvent(ConsumoRegistradoEvent.of(productoId, BigDecimal.ONE, nueva.getFechaApertura()));
+            return nueva;
+        });
+
+        registrar(new Contador(botella.getId(), new Barra(ubicacion, productoId), botella.getCopasTotales(), 0));
+        return botella.getId();
+    }
+
+    private static int copasPorBotella(Producto producto) {
+        if (producto.getCopasPorBotella() != null && producto.getCopasPorBotella() > 0) {
+            return producto.getCopasPorBotella();
+        }
+        if (producto.getUnidadesReales() != null && producto.getUnidadesReales().compareTo(BigDecimal.ONE) > 0) {
+            return producto.getUnidadesReales().setScale(0, RoundingMode.DOWN).intValue();
+        }
+        throw new RuntimeException("El producto '" + producto.getNombre() + "' no tiene copas por botella configuradas");
+    }
+
+    private void registrar(Contador contador) {
+        // La sincronización puede haberla dado de alta ya
+        if (contadores.putIfAbsent(contador.botellaId, contador) == null) {
+            barras.computeIfAbsent(contador.barra, b -> new ConcurrentLinkedDeque<>()).addLast(contador);
+        }
+    }
+
+    private void retirar(Contador contador) {
+        contador.retirada = true;
+        contadores.remove(contador.botellaId);
+        pendientes.remove(contador.botellaId);
+        Deque<Contador> botellas = barras.get(contador.barra);
+        if (botellas != null) {
+            botellas.remove(contador);
+        }
+    }
+
+    /**
+     * Confirma (commit) o devuelve (rollback) las copas reservadas por una venta
+     */
+    private void finalizar(Map<Long, Integer> servidas, boolean confirmar) {
+        servidas.forEach((botellaId, copas) -> {
+            Contador contador = contadores.get(botellaId);
+            if (contador == null) {
+                return;
+            }
+            if (!confirmar) {
+                contador.servidas.addAndGet(-copas);
+            }
+            contador.enCurso.addAndGet(-copas);
+            pendientes.add(botellaId);
+        });
+    }
+
+    private static String normalizarUbicacion(String ubicacion) {
+        if (ubicacion == null || ubicacion.isBlank()) {
+            throw new RuntimeException("La ubicación es obligatoria");
+        }
+        return ubicacion.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private BotellaAbiertaDTO toDTO(BotellaAbierta botella) {
+        // Copas en tiempo real si la botella está en memoria
+        Contador contador = contadores.get(botella.getId());
+        if (contador != null && botella.getEstado() == EstadoBotella.ABIERTA) {
+            botella.setCopasServidas(contador.confirmadas());
+            botella.setCopasRestantes(contador.totales - contador.confirmadas());
+        }
+
+        Producto producto = botella.getProducto();
+        BigDecimal precioCopa = producto.getPrecioCopa() != null ? producto.getPrecioCopa() : producto.getPrecioVenta();
+        Empleado abiertaPor = botella.getAbiertaPor();
+        Empleado cerradaPor = botella.getCerradaPor();
+
+        return BotellaAbiertaDTO.builder()
+                .id(botella.getId())
+                .productoId(producto.getId())
+                .productoNombre(producto.getNombre())
+                .productoCategoria(producto.getCategoria())
+                .precioCopa(precioCopa)
+                .sesionCajaId(botella.getSesionCaja() != null ? botella.getSesionCaja().getId() : null)
+                .ubicacion(botella.getUbicacion())
+                .copasTotales(botella.getCopasTotales())
+                .copasServidas(botella.getCopasServidas())
+                .copasRestantes(botella.getCopasRestantes())
+                .porcentajeConsumido(botella.getPorcentajeConsumido())
+                .fechaApertura(botella.getFechaApertura())
+                .fechaCierre(botella.getFechaCierre())
+                .horasAbierta(botella.getHorasAbierta())
+                .estado(botella.getEstado())
+                .abiertaPorId(abiertaPor != null ? abiertaPor.getId() : null)
+                .abiertaPorNombre(abiertaPor != null ? abiertaPor.getNombre() + " " + abiertaPor.getApellidos() : null)
+                .cerradaPorId(cerradaPor != null ? cerradaPor.getId() : null)
+                .cerradaPorNombre(cerradaPor != null ? cerradaPor.getNombre() + " " + cerradaPor.getApellidos() : null)
+                .ingresosGenerados(precioCopa != null
+                        ? precioCopa.multiply(BigDecimal.valueOf(botella.getCopasServidas())) : null)
+                .ingresosPotencialesPerdidos(precioCopa != null && botella.getEstado() == EstadoBotella.DESPERDICIADA
+                        ? precioCopa.multiply(BigDecimal.valueOf(botella.getCopasRestantes())) : BigDecimal.ZERO)
+                .alerta(botella.getNivelAlerta())
+                .notas(botella.getNotas())
+                .createdAt(botella.getCreatedAt())
+                .updatedAt(botella.getUpdatedAt())
+                .isCasiVacia(botella.isCasiVacia())
+                .isVacia(botella.isVacia())
+                .isAbiertaMas24Horas(botella.isAbiertaMas24Horas())
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.club.management.service;
+
+import com.club.management.entity.DetalleVenta;
+import com.club.management.entity.Venta;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evento publicado al registrar ventas o consumos: cantidad consumida por producto,
+ * en unidades de stock (lo mismo que descuentan los triggers), y fecha del consumo.
+ * Lo consume {@link PrevisionConsumoService} tras el commit.
+ * Las copas de una botella abierta no cuentan: la botella entera se registra al abrirla.
+ */
+public record ConsumoRegistradoEvent(Map<Long, BigDecimal> cantidades, LocalDateTime fecha) {
+
+    public static ConsumoRegistradoEvent of(Long productoId, BigDecimal cantidad, LocalDateTime fecha) {
+        return new ConsumoRegistradoEvent(Map.of(productoId, cantidad), fecha);
+    }
+
+    public static ConsumoRegistradoEvent deVenta(Venta venta) {
+        Map<Long, BigDecimal> cantidades = new HashMap<>();
+        for (DetalleVenta detalle : venta.getDetalles()) {
+            // Las copas de botella abierta se cuentan al abrir la botella
+            if (Boolean.TRUE.equals(detalle.getEsCopaIndividual())) {
+                continue;
+            }
+            cantidades.merge(detalle.getProducto().getId(), BigDecimal.valueOf(detalle.getCantidad()), BigDecimal::add);
+        }
+        return new ConsumoRegistradoEvent(cantidades, venta.getFecha());
+    }
+}
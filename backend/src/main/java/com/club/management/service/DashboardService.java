@@ -26,7 +26,7 @@ public class DashboardService {
     private final EventoRepository eventoRepository;
     private final UsuarioRepository usuarioRepository;
     private final ProveedorRepository proveedorRepository;
-    private final TransaccionRepository transaccionRepository;
+    private final LibroDiarioService libroDiarioService;
 
     @Cacheable(value = "dashboardStats", unless = "#result == null")
     public DashboardStatsDTO getDashboardStats() {
@@ -66,11 +66,7 @@ public class DashboardService {
         LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
         LocalDate finMes = LocalDate.now().withDayOfMonth(LocalDate.now().lengthOfMonth());
 
-        BigDecimal ingresos = transaccionRepository.sumByTipoAndFechaBetween(
-                com.club.management.entity.Transaccion.TipoTransaccion.INGRESO, inicioMes, finMes
-        );
-
-        return ingresos != null ? ingresos : BigDecimal.ZERO;
+        return libroDiarioService.getIngresos(inicioMes, finMes);
     }
 
     private List<ProximoEventoDTO> obtenerProximosEventos() {
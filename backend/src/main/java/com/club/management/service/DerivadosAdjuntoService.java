@@ -0,0 +1,327 @@
+package com.club.management.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Duration;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Miniaturas y previsualizaciones comprimidas de los adjuntos de imagen
+ *
+ * - Se generan tras el commit de la subida en un pool acotado
+ *   (app.adjuntos.derivados.hilos / capacidad-cola); si la cola está llena se
+ *   descarta y se genera cuando alguien lo pida.
+ * - Se guardan junto al original (&lt;original&gt;.thumb.jpg, &lt;original&gt;.preview.jpg),
+ *   así el contenido deduplicado comparte también sus derivados y la limpieza
+ *   de AlmacenContenidoService los borra con él.
+ * - La imagen se decodifica con submuestreo: una foto de 12 MP de un móvil no
+ *   llega a ocupar el heap a resolución completa.
+ * - Los originales que no se pueden decodificar (HEIC, WebP sin lector...) se
+ *   recuerdan por ruta, que en el contenido deduplicado es su hash, durante
+ *   {@link #REINTENTO_FALLIDOS}: ni se vuelven a decodificar en cada petición ni
+ *   se anuncian como pendientes.
+ *
+ * Los PDF no tienen derivados (no hay renderizador en el proyecto); se sirven
+ * con Range y el visor del navegador pide solo las páginas que muestra.
+ */
+@Service
+@Slf4j
+public class DerivadosAdjuntoService {
+
+    private static final Duration REINTENTO_FALLIDOS = Duration.ofHours(6);
+    private static final int MAX_FALLIDOS = 1000;
+
+    public enum Variante {
+        MINIATURA("thumb", 320, 0.75f),
+        PREVISUALIZACION("preview", 1600, 0.82f);
+
+        private final String sufijo;
+        private final int ladoMaximo;
+        private final float calidad;
+
+        Variante(String sufijo, int ladoMaximo, float calidad) {
+            this.sufijo = sufijo;
+            this.ladoMaximo = ladoMaximo;
+            this.calidad = calidad;
+        }
+
+        public String getSufijo() {
+            return sufijo;
+        }
+    }
+
+    private final AlmacenContenidoService almacenContenido;
+    private final long esperaMs;
+    private final ThreadPoolExecutor executor;
+
+    // Generaciones en curso por ruta del original, para no repetirlas
+    private final Map<String, CompletableFuture<Void>> enCurso = new ConcurrentHashMap<>();
+
+    // Originales sin derivados posibles -> momento del fallo (LRU acotado)
+    private final Map<String, Long> fallidos = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_FALLIDOS;
+        }
+    };
+
+    public DerivadosAdjuntoService(AlmacenContenidoService almacenContenido,
+                                   @Value("${app.adjuntos.derivados.hilos:2}") int hilos,
+                                   @Value("${app.adjuntos.derivados.capacidad-cola:100}") int capacidadCola,
+                                   @Value("${app.adjuntos.derivados.espera-ms:5000}") long esperaMs) {
+        this.almacenContenido = almacenContenido;
+        this.esperaMs = esperaMs;
+
+        AtomicLong hilo = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola),
+                r -> {
+                    Thread t = new Thread(r, "adjunto-derivados-" + hilo.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Si el adjunto es una imagen, programa sus derivados para después del commit
+     */
+    public void programarTrasCommit(String ruta, String mimeType) {
+        if (!esImagen(mimeType)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    programar(ruta);
+                }
+            });
+        } else {
+            programar(ruta);
+        }
+    }
+
+    /**
+     * Derivado de un adjunto de imagen. Si aún no existe se genera (o se espera a la
+     * generación en curso) hasta app.adjuntos.derivados.espera-ms; vacío si no da tiempo
+     * o el original no admite derivados (ver {@link #generable}).
+     * Bloquea la petición: no llamar dentro de una transacción.
+     */
+    public Optional<Path> obtener(String ruta, String mimeType, Variante variante) {
+        if (!esImagen(mimeType)) {
+            return Optional.empty();
+        }
+        Path derivado = rutaDerivado(ruta, variante);
+        if (Files.exists(derivado)) {
+            return Optional.of(derivado);
+        }
+        if (haFallado(ruta)) {
+            return Optional.empty();
+        }
+
+        CompletableFuture<Void> generacion = programar(ruta);
+        if (generacion == null) {
+            return Optional.empty();
+        }
+        try {
+            generacion.get(esperaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            log.debug("Derivados de {} aún en generación", ruta);
+        } catch (ExecutionException ex) {
+            log.debug("Sin derivados para {}: {}", ruta, ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return Files.exists(derivado) ? Optional.of(derivado) : Optional.empty();
+    }
+
+    /**
+     * Si el original puede tener derivados: es una imagen y no ha fallado su
+     * decodificación. Si lo es y {@link #obtener} no devolvió nada, están en camino.
+     */
+    public boolean generable(String ruta, String mimeType) {
+        return esImagen(mimeType) && !haFallado(ruta);
+    }
+
+    private boolean haFallado(String ruta) {
+        synchronized (fallidos) {
+            Long desde = fallidos.get(ruta);
+            if (desde == null) {
+                return false;
+            }
+            if (System.currentTimeMillis() - desde > REINTENTO_FALLIDOS.toMillis()) {
+                fallidos.remove(ruta);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private CompletableFuture<Void> programar(String ruta) {
+        CompletableFuture<Void> existente = enCurso.get(ruta);
+        if (existente != null) {
+            return existente;
+        }
+        CompletableFuture<Void> nueva = new CompletableFuture<>();
+        existente = enCurso.putIfAbsent(ruta, nueva);
+        if (existente != null) {
+            return existente;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    generar(ruta);
+                    nueva.complete(null);
+                } catch (Exception ex) {
+                    log.warn("No se pudieron generar los derivados de {}: {}", ruta, ex.getMessage());
+                    synchronized (fallidos) {
+                        fallidos.put(ruta, System.currentTimeMillis());
+                    }
+                    nueva.completeExceptionally(ex);
+                } finally {
+                    enCurso.remove(ruta, nueva);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Cola llena: se generará cuando se pida
+            enCurso.remove(ruta, nueva);
+            log.warn("Cola de derivados llena, se omite {}", ruta);
+            return null;
+        }
+        return nueva;
+    }
+
+    /**
+     * Decodifica el original una vez (submuestreado al tamaño de la previsualización)
+     * y escribe las dos variantes
+     */
+    private void generar(String ruta) throws IOException {
+        Path original = almacenContenido.resolver(ruta);
+        BufferedImage imagen = leerSubmuestreada(original, Variante.PREVISUALIZACION.ladoMaximo);
+        if (imagen == null) {
+            throw new IOException("Formato de imagen no soportado");
+        }
+
+        for (Variante variante : Variante.values()) {
+            Path destino = rutaDerivado(ruta, variante);
+            if (Files.exists(destino)) {
+                continue;
+            }
+            escribirJpeg(escalar(imagen, variante.ladoMaximo), destino, variante.calidad);
+        }
+        log.debug("Derivados generados para {}", ruta);
+    }
+
+    private static BufferedImage leerSubmuestreada(Path original, int ladoMaximo) throws IOException {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(original.toFile())) {
+            if (entrada == null) {
+                return null;
+            }
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                return null;
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                int lado = Math.max(lector.getWidth(0), lector.getHeight(0));
+
+                // Submuestreo entero: nunca por debajo del doble del tamaño final,
+                // el escalado posterior suaviza el resultado
+                int paso = Math.max(1, lado / (ladoMaximo * 2));
+                ImageReadParam param = lector.getDefaultReadParam();
+                param.setSourceSubsampling(paso, paso, 0, 0);
+                return lector.read(0, param);
+            } finally {
+                lector.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage escalar(BufferedImage imagen, int ladoMaximo) {
+        int ancho = imagen.getWidth();
+        int alto = imagen.getHeight();
+        double factor = Math.min(1.0, (double) ladoMaximo / Math.max(ancho, alto));
+        int nuevoAncho = Math.max(1, (int) Math.round(ancho * factor));
+        int nuevoAlto = Math.max(1, (int) Math.round(alto * factor));
+
+        // JPEG sin canal alfa: las transparencias de PNG/GIF quedan sobre blanco
+        BufferedImage resultado = new BufferedImage(nuevoAncho, nuevoAlto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resultado.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, nuevoAncho, nuevoAlto);
+            g.drawImage(imagen, 0, 0, nuevoAncho, nuevoAlto, null);
+        } finally {
+            g.dispose();
+        }
+        return resultado;
+    }
+
+    private static void escribirJpeg(BufferedImage imagen, Path destino, float calidad) throws IOException {
+        Path tmp = destino.resolveSibling(destino.getFileName() + ".tmp");
+        ImageWriter escritor = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream salida = ImageIO.createImageOutputStream(tmp.toFile())) {
+            ImageWriteParam param = escritor.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(calidad);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            escritor.setOutput(salida);
+            escritor.write(null, new IIOImage(imagen, null, null), param);
+        } finally {
+            escritor.dispose();
+        }
+        Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rutaDerivado(String ruta, Variante variante) {
+        return almacenContenido.ubicar(ruta + "." + variante.sufijo + ".jpg");
+    }
+
+    private static boolean esImagen(String mimeType) {
+        return mimeType != null && mimeType.startsWith("image/") && !mimeType.equals("image/svg+xml");
+    }
+}
@@ -6,9 +6,13 @@ import com.club.management.entity.*;
 import com.club.management.exception.ResourceNotFoundException;
 import com.club.management.exception.UnauthorizedException;
 import com.club.management.repository.*;
+import com.club.management.security.AuthRateLimiter;
+import com.club.management.security.CredentialVerifier;
 import com.club.management.security.JwtTokenProvider;
+import com.club.management.security.TokenRevocationList;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,6 +38,10 @@ public class DispositivoPOSService {
     private final VentaRepository ventaRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
+    private final TokenRevocationList tokenRevocationList;
+    private final CredentialVerifier credentialVerifier;
+    private final AuthRateLimiter authRateLimiter;
+    private final ApplicationEventPublisher eventPublisher;
 
     // ============================================
     // GESTIÓN DE DISPOSITIVOS
@@ -200,6 +208,8 @@ public class DispositivoPOSService {
         }
 
         dispositivoPOSRepository.delete(dispositivo);
+        tokenRevocationList.revocarUsuario(dispositivo.getUuid(), "BORRADO_DISPOSITIVO");
+        credentialVerifier.olvidarPin(dispositivo.getUuid());
         log.info("🗑️ Dispositivo POS eliminado: {}", dispositivo.getNombre());
     }
 
@@ -528,7 +538,9 @@ public class DispositivoPOSService {
             throw new UnauthorizedException("Dispositivo desactivado");
         }
 
-        if (!passwordEncoder.matches(pin, dispositivo.getPinRapido())) {
+        // Verificación correcta reciente: sin BCrypt. Si no, admisión por dispositivo y pool acotado
+        if (!credentialVerifier.verificarPin(dispositivo.getUuid(), pin, dispositivo.getPinRapido(),
+                () -> authRateLimiter.admitirDispositivo(dispositivo.getUuid()))) {
             registrarLogInterno(dispositivo, DispositivoPOSLog.TipoEvento.LOGIN_FALLIDO, "PIN incorrecto", null);
             throw new UnauthorizedException("PIN incorrecto");
         }
@@ -864,6 +876,10 @@ public class DispositivoPOSService {
 
             // Guardar venta (dispara triggers para transacciones y stock)
             Venta ventaGuardada = ventaRepository.save(venta);
+            eventPublisher.publishEvent(new StockModificadoEvent(ventaGuardada.getDetalles().stream()
+                    .map(d -> d.getProducto().getId())
+                    .collect(Collectors.toSet())));
+            eventPublisher.publishEvent(ConsumoRegistradoEvent.deVenta(ventaGuardada));
 
             // Buscar o crear registro de sincronización
             VentaPendienteSync pendiente = ventaPendienteSyncRepository
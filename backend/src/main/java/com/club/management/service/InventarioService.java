@@ -0,0 +1,245 @@
+package com.club.management.service;
+
+import com.club.management.dto.request.ConteoInventarioRequest;
+import com.club.management.dto.request.ConteoInventarioRequest.LineaConteo;
+import com.club.management.dto.response.ConteoInventarioResultadoDTO;
+import com.club.management.dto.response.ConteoInventarioResultadoDTO.DiferenciaDTO;
+import com.club.management.entity.Inventario;
+import com.club.management.entity.Usuario;
+import com.club.management.repository.InventarioRepository;
+import com.club.management.repository.UsuarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Inventarios físicos (conteos)
+ *
+ * Una hoja de conteo completa se concilia en una sola transacción y con un número
+ * fijo de sentencias, sea cual sea el número de productos:
+ * - Una lectura (con bloqueo) del stock de todos los productos contados.
+ * - Inserción en batch de los detalles_inventario y de los movimientos AJUSTE.
+ * - Un único UPDATE set-based de productos.stock_actual.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventarioService {
+
+    private final InventarioRepository inventarioRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private record StockSistema(Long id, String codigo, String nombre, BigDecimal stockActual, BigDecimal precioCompra) {
+    }
+
+    private record LineaConciliada(StockSistema producto, LineaConteo linea, BigDecimal diferencia,
+                                   BigDecimal costoDiferencia) {
+        boolean ajustada() {
+            return diferencia.signum() != 0;
+        }
+    }
+
+    @Transactional
+    public ConteoInventarioResultadoDTO registrarConteo(ConteoInventarioRequest request) {
+        List<LineaConteo> lineas = request.getLineas();
+        if (lineas == null || lineas.isEmpty()) {
+            throw new RuntimeException("La hoja de conteo no tiene líneas");
+        }
+
+        // 1. Stock actual de todos los productos contados (bloqueados hasta el commit)
+        List<Long> ids = new ArrayList<>();
+        List<String> codigos = new ArrayList<>();
+        for (LineaConteo linea : lineas) {
+            if (linea.getProductoId() != null) {
+                ids.add(linea.getProductoId());
+            } else if (linea.getCodigo() != null && !linea.getCodigo().isBlank()) {
+                codigos.add(linea.getCodigo().trim());
+            } else {
+                throw new RuntimeException("Cada línea del conteo debe indicar productoId o código");
+            }
+        }
+        Map<Long, StockSistema> porId = new HashMap<>();
+        Map<String, StockSistema> porCodigo = new HashMap<>();
+        for (StockSistema producto : leerStock(ids, codigos)) {
+            porId.put(producto.id(), producto);
+            porCodigo.put(producto.codigo(), producto);
+        }
+
+        // 2. Diferencias
+        Set<String> noEncontrados = new TreeSet<>();
+        Set<Long> contados = new HashSet<>();
+        List<LineaConciliada> conciliadas = new ArrayList<>(lineas.size());
+        for (LineaConteo linea : lineas) {
+            StockSistema producto = linea.getProductoId() != null
+                    ? porId.get(linea.getProductoId())
+                    : porCodigo.get(linea.getCodigo().trim());
+            if (producto == null) {
+                noEncontrados.add(linea.getProductoId() != null ? "ID " + linea.getProductoId() : linea.getCodigo());
+                continue;
+            }
+            if (!contados.add(producto.id())) {
+                throw new RuntimeException("El producto " + producto.codigo() + " aparece más de una vez en el conteo");
+            }
+            BigDecimal diferencia = linea.getStockFisico().subtract(producto.stockActual());
+            BigDecimal precio = producto.precioCompra() != null ? producto.precioCompra() : BigDecimal.ZERO;
+            conciliadas.add(new LineaConciliada(producto, linea, diferencia,
+                    diferencia.multiply(precio).setScale(2, RoundingMode.HALF_UP)));
+        }
+        if (!noEncontrados.isEmpty()) {
+            throw new RuntimeException("Productos no encontrados: " + String.join(", ", noEncontrados));
+        }
+
+        // 3. Cabecera del inventario
+        Usuario usuario = getUsuarioActual();
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDate fecha = request.getFechaInventario() != null ? request.getFechaInventario() : ahora.toLocalDate();
+
+        Inventario inventario = new Inventario();
+        inventario.setFechaInventario(fecha);
+        inventario.setNombre(request.getNombre() != null && !request.getNombre().isBlank()
+                ? request.getNombre()
+                : "Inventario " + fecha.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+        inventario.setEstado("CERRADO");
+        inventario.setFechaCierre(ahora);
+        inventario.setObservaciones(request.getObservaciones());
+        inventario.setUsuarioResponsable(usuario);
+        inventario = inventarioRepository.save(inventario);
+
+        // 4. Detalles (todas las líneas) y movimientos (solo las ajustadas) en batch
+        Long usuarioId = usuario != null ? usuario.getId() : null;
+        String referencia = "Inventario #" + inventario.getId();
+        List<MapSqlParameterSource> detalles = new ArrayList<>(conciliadas.size());
+        List<MapSqlParameterSource> movimientos = new ArrayList<>();
+        List<Object[]> nuevosStocks = new ArrayList<>();
+        for (LineaConciliada c : conciliadas) {
+            MapSqlParameterSource fila = new MapSqlParameterSource()
+                    .addValue("inventarioId", inventario.getId())
+                    .addValue("productoId", c.producto().id())
+                    .addValue("stockSistema", c.producto().stockActual())
+                    .addValue("stockFisico", c.linea().getStockFisico())
+                    .addValue("diferencia", c.diferencia())
+                    .addValue("precioUnitario", c.producto().precioCompra())
+                    .addValue("costoDiferencia", c.costoDiferencia())
+                    .addValue("observaciones", c.linea().getObservaciones())
+                    .addValue("usuarioId", usuarioId)
+                    .addValue("referencia", referencia)
+                    .addValue("fecha", Timestamp.valueOf(ahora));
+            detalles.add(fila);
+            if (c.ajustada()) {
+                movimientos.add(fila);
+                nuevosStocks.add(new Object[]{c.producto().id(), c.linea().getStockFisico()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO detalles_inventario (inventario_id, producto_id, stock_sistema, stock_fisico, diferencia, " +
+                "                                 precio_unitario, costo_diferencia, observaciones, verificado) " +
+                "VALUES (:inventarioId, :productoId, :stockSistema, :stockFisico, :diferencia, " +
+                "        :precioUnitario, :costoDiferencia, :observaciones, TRUE)",
+                detalles.toArray(MapSqlParameterSource[]::new));
+
+        if (!movimientos.isEmpty()) {
+            // Como en registrarMovimiento, la cantidad de un AJUSTE es el stock resultante
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO movimientos_stock (producto_id, tipo_movimiento, cantidad, stock_anterior, stock_nuevo, " +
+                    "                               precio_unitario, costo_total, motivo, referencia, usuario_id, " +
+                    "                               fecha_movimiento, notas) " +
+                    "VALUES (:productoId, 'AJUSTE', :stockFisico, :stockSistema, :stockFisico, " +
+                    "        :precioUnitario, :costoDiferencia, 'Inventario físico', :referencia, :usuarioId, " +
+                    "        :fecha, :observaciones)",
+                    movimientos.toArray(MapSqlParameterSource[]::new));
+
+            // 5. Stock de todos los productos ajustados en una sola sentencia
+            jdbcTemplate.update(
+                    "UPDATE productos p " +
+                    "SET stock_actual = v.stock_fisico, actualizado_en = CURRENT_TIMESTAMP " +
+                    "FROM (VALUES :stocks) AS v(id, stock_fisico) " +
+                    "WHERE p.id = v.id",
+                    new MapSqlParameterSource("stocks", nuevosStocks));
+
+            eventPublisher.publishEvent(new StockModificadoEvent(
+                    conciliadas.stream().filter(LineaConciliada::ajustada).map(c -> c.producto().id()).toList()));
+        }
+
+        BigDecimal costoTotal = conciliadas.stream()
+                .map(LineaConciliada::costoDiferencia)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        log.info("Inventario {} registrado: {} productos contados, {} ajustados, diferencia {} €",
+                inventario.getId(), conciliadas.size(), movimientos.size(), costoTotal);
+
+        return ConteoInventarioResultadoDTO.builder()
+                .inventarioId(inventario.getId())
+                .nombre(inventario.getNombre())
+                .productosContados(conciliadas.size())
+                .productosAjustados(movimientos.size())
+                .costoDiferenciaTotal(costoTotal)
+                .diferencias(conciliadas.stream()
+                        .filter(LineaConciliada::ajustada)
+                        .map(c -> DiferenciaDTO.builder()
+                                .productoId(c.producto().id())
+                                .productoCodigo(c.producto().codigo())
+                                .productoNombre(c.producto().nombre())
+                                .stockSistema(c.producto().stockActual())
+                                .stockFisico(c.linea().getStockFisico())
+                                .diferencia(c.diferencia())
+                                .costoDiferencia(c.costoDiferencia())
+                                .build())
+                        .toList())
+                .build();
+    }
+
+    private List<StockSistema> leerStock(List<Long> ids, List<String> codigos) {
+        List<String> condiciones = new ArrayList<>();
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (!ids.isEmpty()) {
+            condiciones.add("id IN (:ids)");
+            params.addValue("ids", ids);
+        }
+        if (!codigos.isEmpty()) {
+            condiciones.add("codigo IN (:codigos)");
+            params.addValue("codigos", codigos);
+        }
+        return jdbcTemplate.query(
+                "SELECT id, codigo, nombre, stock_actual, precio_compra FROM productos " +
+                "WHERE " + String.join(" OR ", condiciones) + " " +
+                "ORDER BY id FOR UPDATE",
+                params,
+                (rs, i) -> new StockSistema(
+                        rs.getLong("id"),
+                        rs.getString("codigo"),
+                        rs.getString("nombre"),
+                        rs.getBigDecimal("stock_actual"),
+                        rs.getBigDecimal("precio_compra")));
+    }
+
+    private Usuario getUsuarioActual() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication.getName() == null) {
+            return null;
+        }
+        return usuarioRepository.findByUsername(authentication.getName()).orElse(null);
+    }
+}
@@ -1,156 +1,153 @@
 package com.club.management.service;
 
 import com.club.management.dto.response.InventoryStatsDTO;
-import com.club.management.entity.AlertaStock;
-import com.club.management.entity.MovimientoStock;
-import com.club.management.entity.Producto;
-import com.club.management.repository.AlertaStockRepository;
-import com.club.management.repository.MovimientoStockRepository;
-import com.club.management.repository.ProductoRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Servicio para obtener estadísticas del inventario
+ *
+ * Todo se agrega en PostgreSQL (conteos con FILTER, GROUP BY por categoría y el
+ * top de productos movidos con LIMIT), sin cargar productos ni movimientos en
+ * memoria. El resultado se cachea en "inventoryStats" y se invalida con cada
+ * {@link StockModificadoEvent}; la expiración de la caché acota el desfase de
+ * los conteos por fecha y de las alertas.
  */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class InventoryStatsService {
 
-    private final ProductoRepository productoRepository;
-    private final MovimientoStockRepository movimientoRepository;
-    private final AlertaStockRepository alertaRepository;
+    private static final int LIMITE_MAS_MOVIDOS = 10;
 
+    private static final String VALOR = "COALESCE(precio_compra, 0) * stock_actual";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Cacheable(value = "inventoryStats", unless = "#result == null")
     @Transactional(readOnly = true)
     public InventoryStatsDTO getInventoryStats() {
-        List<Producto> productos = productoRepository.findAll();
-
-        // Estadísticas generales
-        Long totalProductos = (long) productos.size();
-        Long productosActivos = productos.stream().filter(Producto::getActivo).count();
-        Long productosInactivos = totalProductos - productosActivos;
-        Long productosBajoStock = productos.stream()
-                .filter(p -> p.getStockActual().compareTo(p.getStockMinimo()) < 0)
-                .count();
-        Long productosSinStock = productos.stream()
-                .filter(p -> p.getStockActual().compareTo(BigDecimal.ZERO) == 0)
-                .count();
-
-        // Valor del inventario
-        BigDecimal valorTotalInventario = productos.stream()
-                .filter(Producto::getActivo)
-                .map(p -> {
-                    BigDecimal precio = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-                    return precio.multiply(p.getStockActual());
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal valorProductosBajoStock = productos.stream()
-                .filter(p -> p.getActivo() && p.getStockActual().compareTo(p.getStockMinimo()) < 0)
-                .map(p -> {
-                    BigDecimal precio = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-                    return precio.multiply(p.getStockActual());
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // Estadísticas generales y valor del inventario
+        Map<String, Object> productos = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS total, " +
+                "       COUNT(*) FILTER (WHERE activo) AS activos, " +
+                "       COUNT(*) FILTER (WHERE stock_actual < stock_minimo) AS bajo_stock, " +
+                "       COUNT(*) FILTER (WHERE stock_actual = 0) AS sin_stock, " +
+                "       COALESCE(SUM(" + VALOR + ") FILTER (WHERE activo), 0) AS valor_total, " +
+                "       COALESCE(SUM(" + VALOR + ") FILTER (WHERE activo AND stock_actual < stock_minimo), 0) AS valor_bajo_stock " +
+                "FROM productos",
+                new MapSqlParameterSource());
+
+        Long totalProductos = toLong(productos.get("total"));
+        Long productosActivos = toLong(productos.get("activos"));
 
         // Movimientos por período
         LocalDateTime ahora = LocalDateTime.now();
-        LocalDateTime inicioHoy = ahora.toLocalDate().atStartOfDay();
-        LocalDateTime inicioSemana = ahora.minusDays(7);
-        LocalDateTime inicioMes = ahora.minusDays(30);
-
-        Long movimientosHoy = movimientoRepository.countByFechaMovimientoAfter(inicioHoy);
-        Long movimientosSemana = movimientoRepository.countByFechaMovimientoAfter(inicioSemana);
-        Long movimientosMes = movimientoRepository.countByFechaMovimientoAfter(inicioMes);
+        MapSqlParameterSource periodos = new MapSqlParameterSource()
+                .addValue("inicioHoy", Timestamp.valueOf(ahora.toLocalDate().atStartOfDay()))
+                .addValue("inicioSemana", Timestamp.valueOf(ahora.minusDays(7)))
+                .addValue("inicioMes", Timestamp.valueOf(ahora.minusDays(30)))
+                .addValue("limite", LIMITE_MAS_MOVIDOS);
+
+        Map<String, Object> movimientos = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) FILTER (WHERE fecha_movimiento > :inicioHoy) AS hoy, " +
+                "       COUNT(*) FILTER (WHERE fecha_movimiento > :inicioSemana) AS semana, " +
+                "       COUNT(*) AS mes " +
+                "FROM movimientos_stock " +
+                "WHERE fecha_movimiento > :inicioMes",
+                periodos);
 
         // Alertas
-        List<AlertaStock> alertas = alertaRepository.findByActivaTrueOrderByFechaAlertaDesc();
-        Long alertasActivas = (long) alertas.size();
-        Long alertasCriticas = alertas.stream()
-                .filter(a -> "CRITICO".equals(a.getNivel()))
-                .count();
+        Map<String, Object> alertas = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS activas, " +
+                "       COUNT(*) FILTER (WHERE nivel = 'CRITICO') AS criticas " +
+                "FROM alertas_stock " +
+                "WHERE activa",
+                new MapSqlParameterSource());
 
         // Productos más movidos (últimos 30 días)
-        List<MovimientoStock> movimientosRecientes = movimientoRepository
-                .findByFechaMovimientoAfterOrderByFechaMovimientoDesc(inicioMes);
-
-        Map<Long, List<MovimientoStock>> movimientosPorProducto = movimientosRecientes.stream()
-                .collect(Collectors.groupingBy(m -> m.getProducto().getId()));
-
-        List<InventoryStatsDTO.ProductoMovimientoDTO> productosMasMovidos = movimientosPorProducto.entrySet().stream()
-                .map(entry -> {
-                    Producto producto = productoRepository.findById(entry.getKey()).orElse(null);
-                    if (producto == null) return null;
-
-                    List<MovimientoStock> movs = entry.getValue();
-                    BigDecimal cantidadTotal = movs.stream()
-                            .map(MovimientoStock::getCantidad)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-                    return InventoryStatsDTO.ProductoMovimientoDTO.builder()
-                            .productoId(producto.getId())
-                            .productoNombre(producto.getNombre())
-                            .productoCodigo(producto.getCodigo())
-                            .totalMovimientos((long) movs.size())
-                            .cantidadTotal(cantidadTotal)
-                            .build();
-                })
-                .filter(Objects::nonNull)
-                .sorted((a, b) -> b.getTotalMovimientos().compareTo(a.getTotalMovimientos()))
-                .limit(10)
-                .collect(Collectors.toList());
+        List<InventoryStatsDTO.ProductoMovimientoDTO> productosMasMovidos = jdbcTemplate.query(
+                "SELECT p.id, p.nombre, p.codigo, m.total_movimientos, m.cantidad_total " +
+                "FROM (SELECT producto_id, COUNT(*) AS total_movimientos, SUM(cantidad) AS cantidad_total " +
+                "      FROM movimientos_stock " +
+                "      WHERE fecha_movimiento > :inicioMes " +
+                "      GROUP BY producto_id " +
+                "      ORDER BY total_movimientos DESC " +
+                "      LIMIT :limite) m " +
+                "JOIN productos p ON p.id = m.producto_id " +
+                "ORDER BY m.total_movimientos DESC",
+                periodos,
+                (rs, rowNum) -> InventoryStatsDTO.ProductoMovimientoDTO.builder()
+                        .productoId(rs.getLong("id"))
+                        .productoNombre(rs.getString("nombre"))
+                        .productoCodigo(rs.getString("codigo"))
+                        .totalMovimientos(rs.getLong("total_movimientos"))
+                        .cantidadTotal(rs.getBigDecimal("cantidad_total"))
+                        .build());
 
         // Distribución por categoría
-        Map<String, InventoryStatsDTO.ProductoCategoriaStatsDTO> distribucionPorCategoria = productos.stream()
-                .filter(Producto::getActivo)
-                .collect(Collectors.groupingBy(
-                        Producto::getCategoria,
-                        Collectors.collectingAndThen(
-                                Collectors.toList(),
-                                list -> {
-                                    String categoria = list.get(0).getCategoria();
-                                    Long cantidadProductos = (long) list.size();
-                                    BigDecimal valorTotal = list.stream()
-                                            .map(p -> {
-                                                BigDecimal precio = p.getPrecioCompra() != null ? p.getPrecioCompra() : BigDecimal.ZERO;
-                                                return precio.multiply(p.getStockActual());
-                                            })
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                                    BigDecimal stockTotal = list.stream()
-                                            .map(Producto::getStockActual)
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-                                    return InventoryStatsDTO.ProductoCategoriaStatsDTO.builder()
-                                            .categoria(categoria)
-                                            .cantidadProductos(cantidadProductos)
-                                            .valorTotal(valorTotal)
-                                            .stockTotal(stockTotal)
-                                            .build();
-                                }
-                        )
-                ));
+        Map<String, InventoryStatsDTO.ProductoCategoriaStatsDTO> distribucionPorCategoria = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT categoria, COUNT(*) AS cantidad, " +
+                "       COALESCE(SUM(" + VALOR + "), 0) AS valor_total, " +
+                "       COALESCE(SUM(stock_actual), 0) AS stock_total " +
+                "FROM productos " +
+                "WHERE activo " +
+                "GROUP BY categoria " +
+                "ORDER BY categoria",
+                new MapSqlParameterSource(),
+                rs -> {
+                    String categoria = rs.getString("categoria");
+                    distribucionPorCategoria.put(categoria, InventoryStatsDTO.ProductoCategoriaStatsDTO.builder()
+                            .categoria(categoria)
+                            .cantidadProductos(rs.getLong("cantidad"))
+                            .valorTotal(rs.getBigDecimal("valor_total"))
+                            .stockTotal(rs.getBigDecimal("stock_total"))
+                            .build());
+                });
 
         return InventoryStatsDTO.builder()
                 .totalProductos(totalProductos)
                 .productosActivos(productosActivos)
-                .productosInactivos(productosInactivos)
-                .productosBajoStock(productosBajoStock)
-                .productosSinStock(productosSinStock)
-                .valorTotalInventario(valorTotalInventario)
-                .valorProductosBajoStock(valorProductosBajoStock)
-                .movimientosHoy(movimientosHoy)
-                .movimientosSemana(movimientosSemana)
-                .movimientosMes(movimientosMes)
-                .alertasActivas(alertasActivas)
-                .alertasCriticas(alertasCriticas)
+                .productosInactivos(totalProductos - productosActivos)
+                .productosBajoStock(toLong(productos.get("bajo_stock")))
+                .productosSinStock(toLong(productos.get("sin_stock")))
+                .valorTotalInventario((BigDecimal) productos.get("valor_total"))
+                .valorProductosBajoStock((BigDecimal) productos.get("valor_bajo_stock"))
+                .movimientosHoy(toLong(movimientos.get("hoy")))
+                .movimientosSemana(toLong(movimientos.get("semana")))
+                .movimientosMes(toLong(movimientos.get("mes")))
+                .alertasActivas(toLong(alertas.get("activas")))
+                .alertasCriticas(toLong(alertas.get("criticas")))
                 .productosMasMovidos(productosMasMovidos)
                 .distribucionPorCategoria(distribucionPorCategoria)
                 .build();
     }
+
+    /**
+     * Invalida las estadísticas cuando cambia el stock (tras el commit)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @CacheEvict(value = "inventoryStats", allEntries = true)
+    public void onStockModificado(StockModificadoEvent event) {
+        log.debug("Estadísticas de inventario invalidadas ({} productos)", event.productoIds().size());
+    }
+
+    private static Long toLong(Object valor) {
+        return valor == null ? 0L : ((Number) valor).longValue();
+    }
 }
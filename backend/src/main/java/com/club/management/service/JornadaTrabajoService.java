@@ -2,6 +2,7 @@ package com.club.management.service;
 
 import com.club.management.dto.request.JornadaTrabajoRequest;
 import com.club.management.dto.response.JornadaTrabajoDTO;
+import com.club.management.dto.response.PagoJornadasDTO;
 import com.club.management.entity.Empleado;
 import com.club.management.entity.Evento;
 import com.club.management.entity.JornadaTrabajo;
@@ -9,6 +10,9 @@ import com.club.management.repository.EmpleadoRepository;
 import com.club.management.repository.EventoRepository;
 import com.club.management.repository.JornadaTrabajoRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.SqlArrayValue;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,9 +21,12 @@ import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.YearMonth;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,6 +36,7 @@ public class JornadaTrabajoService {
     private final JornadaTrabajoRepository jornadaTrabajoRepository;
     private final EmpleadoRepository empleadoRepository;
     private final EventoRepository eventoRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
 
     /**
      * Obtiene todas las jornadas de trabajo
@@ -241,26 +249,56 @@ public class JornadaTrabajoService {
 
     /**
      * Paga múltiples jornadas a la vez
+     *
+     * Un único UPDATE ... WHERE id = ANY(:ids) que devuelve el resumen agregado. Las
+     * jornadas que ya estaban pagadas no se tocan y se informan aparte; si algún id
+     * no existe no se paga ninguna.
      */
     @Transactional
-    public List<JornadaTrabajoDTO> pagarMultiplesJornadas(List<Long> jornadaIds, String metodoPago) {
-        List<JornadaTrabajo> jornadas = jornadaTrabajoRepository.findAllById(jornadaIds);
-
-        if (jornadas.size() != jornadaIds.size()) {
-            throw new RuntimeException("Algunas jornadas no fueron encontradas");
+    public PagoJornadasDTO pagarMultiplesJornadas(List<Long> jornadaIds, String metodoPago) {
+        if (jornadaIds == null || jornadaIds.isEmpty()) {
+            throw new RuntimeException("Debe indicar al menos una jornada");
         }
+        Set<Long> ids = new LinkedHashSet<>(jornadaIds);
 
         LocalDate fechaPago = LocalDate.now();
         String metodo = metodoPago != null && !metodoPago.isEmpty() ? metodoPago : "EFECTIVO";
 
-        jornadas.forEach(jornada -> {
-            jornada.setPagado(true);
-            jornada.setFechaPago(fechaPago);
-            jornada.setMetodoPago(metodo);
-        });
-
-        List<JornadaTrabajo> updated = jornadaTrabajoRepository.saveAll(jornadas);
-        return updated.stream().map(this::toDTO).collect(Collectors.toList());
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", new SqlArrayValue("bigint", ids.toArray()))
+                .addValue("fechaPago", fechaPago)
+                .addValue("metodo", metodo);
+
+        // La consulta exterior ve la tabla antes del UPDATE: lo que existe y no se
+        // ha pagado ahora es lo que ya estaba pagado
+        PagoJornadasDTO resumen = jdbcTemplate.queryForObject(
+                "WITH pagadas AS (" +
+                "    UPDATE jornadas_trabajo " +
+                "    SET pagado = TRUE, fecha_pago = :fechaPago, metodo_pago = :metodo, " +
+                "        actualizado_en = CURRENT_TIMESTAMP " +
+                "    WHERE id = ANY(:ids) AND pagado = FALSE " +
+                "    RETURNING id, empleado_id, total_pago" +
+                ") " +
+                "SELECT (SELECT COUNT(*) FROM pagadas) AS jornadas, " +
+                "       (SELECT COALESCE(SUM(total_pago), 0) FROM pagadas) AS total, " +
+                "       (SELECT COUNT(DISTINCT empleado_id) FROM pagadas) AS empleados, " +
+                "       ARRAY(SELECT j.id FROM jornadas_trabajo j " +
+                "             WHERE j.id = ANY(:ids) AND j.id NOT IN (SELECT id FROM pagadas) " +
+                "             ORDER BY j.id) AS ya_pagadas",
+                params,
+                (rs, i) -> PagoJornadasDTO.builder()
+                        .jornadasPagadas(rs.getInt("jornadas"))
+                        .totalPagado(rs.getBigDecimal("total"))
+                        .empleados(rs.getInt("empleados"))
+                        .metodoPago(metodo)
+                        .fechaPago(fechaPago)
+                        .yaPagadas(Arrays.asList((Long[]) rs.getArray("ya_pagadas").getArray()))
+                        .build());
+
+        if (resumen.getJornadasPagadas() + resumen.getYaPagadas().size() != ids.size()) {
+            throw new RuntimeException("Algunas jornadas no fueron encontradas");
+        }
+        return resumen;
     }
 
     /**
@@ -268,34 +306,40 @@ public class JornadaTrabajoService {
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getEstadisticasEmpleado(Long empleadoId) {
-        // Verificar que el empleado existe
-        Empleado empleado = empleadoRepository.findById(empleadoId)
-                .orElseThrow(() -> new RuntimeException("Empleado no encontrado con ID: " + empleadoId));
-
-        Map<String, Object> stats = new HashMap<>();
-
-        // Total pendiente de pago
-        Double totalPendiente = jornadaTrabajoRepository.calcularTotalPendientePorEmpleado(empleadoId);
-        stats.put("totalPendiente", totalPendiente);
-
-        // Total del mes actual
         YearMonth mesActual = YearMonth.now();
-        LocalDate inicioMes = mesActual.atDay(1);
-        LocalDate finMes = mesActual.atEndOfMonth();
-        Double horasMesActual = jornadaTrabajoRepository.calcularTotalHorasPorEmpleado(empleadoId, inicioMes, finMes);
-        Double totalPagadoMesActual = jornadaTrabajoRepository.calcularTotalPagadoPorEmpleado(empleadoId, inicioMes, finMes);
-
-        stats.put("horasMesActual", horasMesActual);
-        stats.put("totalPagadoMesActual", totalPagadoMesActual);
-
-        // Jornadas pendientes
-        List<JornadaTrabajo> pendientes = jornadaTrabajoRepository.findByEmpleadoIdAndPagadoFalse(empleadoId);
-        stats.put("cantidadPendientes", pendientes.size());
-
-        // Nombre del empleado
-        stats.put("empleadoNombre", empleado.getNombre() + " " + empleado.getApellidos());
-
-        return stats;
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("empleadoId", empleadoId)
+                .addValue("inicioMes", mesActual.atDay(1))
+                .addValue("finMes", mesActual.atEndOfMonth());
+
+        // Una fila agregada; sin fila es que el empleado no existe
+        List<Map<String, Object>> filas = jdbcTemplate.query(
+                "SELECT e.nombre, e.apellidos, " +
+                "       COALESCE(SUM(j.total_pago) FILTER (WHERE NOT j.pagado), 0) AS total_pendiente, " +
+                "       COUNT(j.id) FILTER (WHERE NOT j.pagado) AS cantidad_pendientes, " +
+                "       COALESCE(SUM(j.horas_trabajadas) " +
+                "                FILTER (WHERE j.fecha BETWEEN :inicioMes AND :finMes), 0) AS horas_mes, " +
+                "       COALESCE(SUM(j.total_pago) " +
+                "                FILTER (WHERE j.pagado AND j.fecha BETWEEN :inicioMes AND :finMes), 0) AS pagado_mes " +
+                "FROM empleados e " +
+                "LEFT JOIN jornadas_trabajo j ON j.empleado_id = e.id " +
+                "WHERE e.id = :empleadoId " +
+                "GROUP BY e.id, e.nombre, e.apellidos",
+                params,
+                (rs, i) -> {
+                    Map<String, Object> stats = new HashMap<>();
+                    stats.put("totalPendiente", rs.getBigDecimal("total_pendiente"));
+                    stats.put("horasMesActual", rs.getBigDecimal("horas_mes"));
+                    stats.put("totalPagadoMesActual", rs.getBigDecimal("pagado_mes"));
+                    stats.put("cantidadPendientes", rs.getLong("cantidad_pendientes"));
+                    stats.put("empleadoNombre", rs.getString("nombre") + " " + rs.getString("apellidos"));
+                    return stats;
+                });
+
+        if (filas.isEmpty()) {
+            throw new RuntimeException("Empleado no encontrado con ID: " + empleadoId);
+        }
+        return filas.get(0);
     }
 
     /**
@@ -303,17 +347,20 @@ public class JornadaTrabajoService {
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getEstadisticasGenerales() {
-        Map<String, Object> stats = new HashMap<>();
-
-        // Total pendiente general
-        Double totalPendiente = jornadaTrabajoRepository.calcularTotalPendienteGeneral();
-        stats.put("totalPendiente", totalPendiente);
-
-        // Cantidad de jornadas pendientes
-        Long cantidadPendientes = jornadaTrabajoRepository.countPendientes();
-        stats.put("cantidadPendientes", cantidadPendientes);
-
-        return stats;
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(total_pago), 0) AS total_pendiente, " +
+                "       COUNT(*) AS cantidad_pendientes, " +
+                "       COUNT(DISTINCT empleado_id) AS empleados_pendientes " +
+                "FROM jornadas_trabajo " +
+                "WHERE pagado = FALSE",
+                new MapSqlParameterSource(),
+                (rs, i) -> {
+                    Map<String, Object> stats = new HashMap<>();
+                    stats.put("totalPendiente", rs.getBigDecimal("total_pendiente"));
+                    stats.put("cantidadPendientes", rs.getLong("cantidad_pendientes"));
+                    stats.put("empleadosConPendientes", rs.getLong("empleados_pendientes"));
+                    return stats;
+                });
     }
 
     // Métodos auxiliares privados
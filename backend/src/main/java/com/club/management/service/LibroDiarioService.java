@@ -0,0 +1,128 @@
+package com.club.management.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Consultas sobre el libro diario de ingresos y gastos (V040).
+ *
+ * libro_diario_totales guarda, por cada día con movimiento, las sumas acumuladas
+ * desde el primer día. El total de un periodo se obtiene restando el acumulado
+ * del último día anterior al inicio al acumulado del último día hasta el fin,
+ * sin recorrer transacciones.
+ *
+ * El trigger sobre transacciones solo apunta cada cambio en libro_diario_pendiente
+ * (V056), sin tocar filas compartidas, y {@link #plegar()} lo aplica a los
+ * acumulados en segundo plano. Las consultas suman los deltas aún sin plegar.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LibroDiarioService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Data
+    @AllArgsConstructor
+    public static class TotalesPeriodo {
+        private BigDecimal ingresos;
+        private BigDecimal gastos;
+
+        public BigDecimal getBalance() {
+            return ingresos.subtract(gastos);
+        }
+    }
+
+    /**
+     * Ingresos y gastos entre dos fechas (ambas incluidas)
+     */
+    @Transactional(readOnly = true)
+    public TotalesPeriodo getTotales(LocalDate fechaInicio, LocalDate fechaFin) {
+        Map<String, Object> fila = jdbcTemplate.queryForMap(
+                "SELECT COALESCE(fin.ingresos_acumulados, 0) - COALESCE(ini.ingresos_acumulados, 0) + pend.ingresos AS ingresos, " +
+                "       COALESCE(fin.gastos_acumulados, 0) - COALESCE(ini.gastos_acumulados, 0) + pend.gastos AS gastos " +
+                "FROM (SELECT COALESCE(SUM(monto) FILTER (WHERE tipo = 'INGRESO'), 0) AS ingresos, " +
+                "             COALESCE(SUM(monto) FILTER (WHERE tipo = 'GASTO'), 0) AS gastos " +
+                "      FROM libro_diario_pendiente WHERE fecha BETWEEN :inicio AND :fin) pend " +
+                "LEFT JOIN LATERAL (SELECT ingresos_acumulados, gastos_acumulados FROM libro_diario_totales " +
+                "                   WHERE fecha <= :fin ORDER BY fecha DESC LIMIT 1) fin ON TRUE " +
+                "LEFT JOIN LATERAL (SELECT ingresos_acumulados, gastos_acumulados FROM libro_diario_totales " +
+                "                   WHERE fecha < :inicio ORDER BY fecha DESC LIMIT 1) ini ON TRUE",
+                new MapSqlParameterSource()
+                        .addValue("inicio", fechaInicio)
+                        .addValue("fin", fechaFin));
+
+        return new TotalesPeriodo((BigDecimal) fila.get("ingresos"), (BigDecimal) fila.get("gastos"));
+    }
+
+    public BigDecimal getIngresos(LocalDate fechaInicio, LocalDate fechaFin) {
+        return getTotales(fechaInicio, fechaFin).getIngresos();
+    }
+
+    public BigDecimal getGastos(LocalDate fechaInicio, LocalDate fechaFin) {
+        return getTotales(fechaInicio, fechaFin).getGastos();
+    }
+
+    /**
+     * Aplica a libro_diario y libro_diario_totales los deltas ya confirmados
+     */
+    @Scheduled(fixedDelayString = "${app.libro-diario.plegado-ms:5000}")
+    @Transactional
+    public void plegar() {
+        Integer plegados = jdbcTemplate.getJdbcTemplate()
+                .queryForObject("SELECT plegar_libro_diario()", Integer.class);
+        if (plegados != null && plegados > 0) {
+            log.debug("Libro diario: {} deltas plegados", plegados);
+        }
+    }
+
+    /**
+     * Comprueba cada noche que el libro cuadra con transacciones y lo reconstruye si no
+     */
+    @Scheduled(cron = "${app.libro-diario.reconciliacion-cron:0 45 5 * * *}")
+    @Transactional
+    public void reconciliar() {
+        Map<String, Object> fila = jdbcTemplate.queryForMap(
+                "SELECT " +
+                "  (SELECT COALESCE(SUM(monto) FILTER (WHERE tipo = 'INGRESO'), 0) FROM transacciones) AS ingresos_tx, " +
+                "  (SELECT COALESCE(SUM(monto) FILTER (WHERE tipo = 'GASTO'), 0) FROM transacciones) AS gastos_tx, " +
+                "  COALESCE((SELECT ingresos_acumulados FROM libro_diario_totales ORDER BY fecha DESC LIMIT 1), 0) " +
+                "    + (SELECT COALESCE(SUM(monto) FILTER (WHERE tipo = 'INGRESO'), 0) FROM libro_diario_pendiente) AS ingresos_libro, " +
+                "  COALESCE((SELECT gastos_acumulados FROM libro_diario_totales ORDER BY fecha DESC LIMIT 1), 0) " +
+                "    + (SELECT COALESCE(SUM(monto) FILTER (WHERE tipo = 'GASTO'), 0) FROM libro_diario_pendiente) AS gastos_libro",
+                new MapSqlParameterSource());
+
+        BigDecimal ingresosTx = (BigDecimal) fila.get("ingresos_tx");
+        BigDecimal gastosTx = (BigDecimal) fila.get("gastos_tx");
+        BigDecimal ingresosLibro = (BigDecimal) fila.get("ingresos_libro");
+        BigDecimal gastosLibro = (BigDecimal) fila.get("gastos_libro");
+
+        if (ingresosTx.compareTo(ingresosLibro) != 0 || gastosTx.compareTo(gastosLibro) != 0) {
+            log.warn("Libro diario descuadrado (ingresos {} vs {}, gastos {} vs {}). Reconstruyendo...",
+                    ingresosTx, ingresosLibro, gastosTx, gastosLibro);
+            reconstruir();
+        } else {
+            log.debug("Libro diario cuadrado: ingresos {}, gastos {}", ingresosLibro, gastosLibro);
+        }
+    }
+
+    /**
+     * Reconstruye el libro completo a partir de transacciones
+     */
+    @Transactional
+    public void reconstruir() {
+        jdbcTemplate.getJdbcTemplate().execute("SELECT reconstruir_libro_diario()");
+        log.info("Libro diario reconstruido");
+    }
+}
@@ -7,6 +7,7 @@ import com.club.management.repository.*;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,6 +25,7 @@ public class MovimientoStockService {
     private final EventoRepository eventoRepository;
     private final ProveedorRepository proveedorRepository;
     private final UsuarioRepository usuarioRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public List<MovimientoStockDTO> getAllMovimientos() {
@@ -135,6 +137,7 @@ public class MovimientoStockService {
         productoRepository.save(producto);
 
         MovimientoStock saved = movimientoRepository.save(movimiento);
+        eventPublisher.publishEvent(StockModificadoEvent.of(producto.getId()));
         return toDTO(saved);
     }
 
@@ -0,0 +1,402 @@
+package com.club.management.service;
+
+import com.club.management.dto.response.NominaGeneracionDTO;
+import com.club.management.entity.Nomina;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.SqlArrayValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generación masiva de nóminas de un periodo con un número fijo de sentencias
+ *
+ * 1. Una consulta agregada: empleados activos sin nómina del periodo (anti-join con
+ *    NOT EXISTS) junto con la suma de sus jornadas pagadas y sin nómina del mes.
+ * 2. Importes calculados en memoria con las mismas reglas que NominaService.
+ * 3. Inserción por lotes (app.nominas.generacion.lote) con un INSERT multi-fila
+ *    ... ON CONFLICT DO NOTHING RETURNING por lote.
+ * 4. Un único UPDATE que vincula las jornadas con las nóminas creadas.
+ *
+ * Todo en una transacción, con un advisory lock por periodo para que dos
+ * generaciones del mismo mes no se solapen. Se puede lanzar como trabajo en
+ * segundo plano (estado y progreso por polling) o de forma síncrona.
+ */
+@Service
+@Slf4j
+public class NominaGeneracionService {
+
+    public enum Modo {
+        SALARIO_BASE, JORNADAS
+    }
+
+    public enum EstadoJob {
+        PENDIENTE, EN_PROCESO, COMPLETADO, ERROR
+    }
+
+    public enum Fase {
+        CALCULANDO, INSERTANDO, VINCULANDO
+    }
+
+    private static final String PERIODO_REGEX = "^\\d{4}-(0[1-9]|1[0-2])$";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int tamanoLote;
+    private final Duration ttl;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Job> activosPorPeriodo = new ConcurrentHashMap<>();
+
+    /**
+     * Resultado de una generación: empleados a los que se ha creado nómina
+     */
+    public record Resultado(int empleadosActivos, List<Long> empleadosConNomina, int omitidas,
+                            int jornadasVinculadas, BigDecimal totalBruto, BigDecimal totalNeto) {
+    }
+
+    /** Fila de la consulta agregada */
+    private record Candidato(Long empleadoId, BigDecimal salarioBase, int jornadas,
+                             BigDecimal horas, BigDecimal totalJornadas) {
+    }
+
+    private static final class Job {
+        final String id;
+        final String periodo;
+        final Modo modo;
+        final String usuario;
+        final LocalDateTime creadoEn = LocalDateTime.now();
+        volatile EstadoJob estado = EstadoJob.PENDIENTE;
+        volatile Fase fase;
+        volatile int total;
+        volatile int procesadas;
+        volatile Resultado resultado;
+        volatile String error;
+        volatile LocalDateTime iniciadoEn;
+        volatile LocalDateTime finalizadoEn;
+
+        Job(String id, String periodo, Modo modo, String usuario) {
+            this.id = id;
+            this.periodo = periodo;
+            this.modo = modo;
+            this.usuario = usuario;
+        }
+    }
+
+    public NominaGeneracionService(NamedParameterJdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${app.nominas.generacion.lote:500}") int tamanoLote,
+                                   @Value("${app.nominas.generacion.ttl-horas:24}") int ttlHoras) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.tamanoLote = tamanoLote;
+        this.ttl = Duration.ofHours(ttlHoras);
+
+        AtomicLong hilo = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "nomina-generacion-" + hilo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lanza la generación en segundo plano. Si ya hay una en curso para el mismo
+     * periodo se devuelve esa.
+     */
+    public NominaGeneracionDTO iniciar(String periodo, Modo modo, String usuario) {
+        validarPeriodo(periodo);
+
+        Job job;
+        synchronized (this) {
+            Job enCurso = activosPorPeriodo.get(periodo);
+            if (enCurso != null) {
+                return toDTO(enCurso);
+            }
+            job = new Job(UUID.randomUUID().toString(), periodo, modo, usuario);
+            jobs.put(job.id, job);
+            activosPorPeriodo.put(periodo, job);
+        }
+
+        Job lanzado = job;
+        executor.execute(() -> {
+            lanzado.estado = EstadoJob.EN_PROCESO;
+            lanzado.iniciadoEn = LocalDateTime.now();
+            try {
+                lanzado.resultado = transactionTemplate.execute(status ->
+                        ejecutar(lanzado.periodo, lanzado.modo, null, lanzado));
+                lanzado.estado = EstadoJob.COMPLETADO;
+            } catch (Exception e) {
+                log.error("Error en la generación de nóminas {} {}: {}", lanzado.periodo, lanzado.modo, e.getMessage(), e);
+                lanzado.error = e.getMessage();
+                lanzado.estado = EstadoJob.ERROR;
+            } finally {
+                lanzado.fase = null;
+                lanzado.finalizadoEn = LocalDateTime.now();
+                activosPorPeriodo.remove(lanzado.periodo, lanzado);
+            }
+        });
+
+        log.info("Generación de nóminas {} ({}) encolada por {}", periodo, modo, usuario);
+        return toDTO(job);
+    }
+
+    public Optional<NominaGeneracionDTO> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(this::toDTO);
+    }
+
+    /**
+     * Generación síncrona en la transacción del llamante.
+     *
+     * @param empleadoId si no es null, solo ese empleado
+     */
+    @Transactional
+    public Resultado generar(String periodo, Modo modo, Long empleadoId) {
+        validarPeriodo(periodo);
+        return ejecutar(periodo, modo, empleadoId, null);
+    }
+
+    /**
+     * Limpia los trabajos terminados hace más de app.nominas.generacion.ttl-horas
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void limpiarTrabajos() {
+        LocalDateTime limite = LocalDateTime.now().minus(ttl);
+        jobs.values().removeIf(job -> job.finalizadoEn != null && job.finalizadoEn.isBefore(limite));
+    }
+
+    private Resultado ejecutar(String periodo, Modo modo, Long empleadoId, Job job) {
+        long inicioMs = System.currentTimeMillis();
+        YearMonth mes = YearMonth.parse(periodo);
+        LocalDate desde = mes.atDay(1);
+        LocalDate hasta = mes.plusMonths(1).atDay(1);
+        boolean desdeJornadas = modo == Modo.JORNADAS;
+        fase(job, Fase.CALCULANDO);
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("periodo", periodo)
+                .addValue("desde", Date.valueOf(desde))
+                .addValue("hasta", Date.valueOf(hasta))
+                .addValue("empleadoId", empleadoId);
+
+        // Una generación por periodo a la vez (también entre instancias)
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext('nominas:' || :periodo))", params);
+
+        // Un empleado concreto se genera aunque esté de baja, como hacía la generación individual
+        String filtroEmpleado = empleadoId != null ? "e.id = :empleadoId " : "e.activo ";
+
+        Integer activos = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM empleados e WHERE " + filtroEmpleado,
+                params, Integer.class);
+
+        // 0. Jornadas pagadas sin nómina del mes, bloqueadas hasta el commit: un pago o
+        //    una baja de pago concurrentes esperan, y el paso 4 vincula exactamente las
+        //    que se suman aquí (en READ COMMITTED cada sentencia ve su propia foto)
+        if (desdeJornadas) {
+            List<Long> jornadas = jdbcTemplate.queryForList(
+                    "SELECT j.id FROM jornadas_trabajo j " +
+                    "JOIN empleados e ON e.id = j.empleado_id " +
+                    "WHERE " + filtroEmpleado +
+                    "  AND j.pagado AND j.nomina_id IS NULL AND j.fecha >= :desde AND j.fecha < :hasta " +
+                    "  AND NOT EXISTS (SELECT 1 FROM nominas n WHERE n.empleado_id = e.id AND n.periodo = :periodo) " +
+                    "ORDER BY j.id " +
+                    "FOR UPDATE OF j",
+                    params, Long.class);
+            params.addValue("jornadas", new SqlArrayValue("bigint", jornadas.toArray()));
+        }
+        String filtroJornadas = desdeJornadas
+                ? "id = ANY(:jornadas) "
+                : "pagado AND nomina_id IS NULL AND fecha >= :desde AND fecha < :hasta ";
+
+        // 1. Empleados sin nómina del periodo con sus jornadas agregadas
+        List<Candidato> candidatos = jdbcTemplate.query(
+                "SELECT e.id, e.salario_base, " +
+                "       COALESCE(j.jornadas, 0) AS jornadas, " +
+                "       COALESCE(j.horas, 0) AS horas, " +
+                "       COALESCE(j.total, 0) AS total " +
+                "FROM empleados e " +
+                "LEFT JOIN (SELECT empleado_id, COUNT(*) AS jornadas, " +
+                "                  SUM(horas_trabajadas) AS horas, SUM(total_pago) AS total " +
+                "           FROM jornadas_trabajo " +
+                "           WHERE " + filtroJornadas +
+                "           GROUP BY empleado_id) j ON j.empleado_id = e.id " +
+                "WHERE " + filtroEmpleado +
+                "  AND NOT EXISTS (SELECT 1 FROM nominas n WHERE n.empleado_id = e.id AND n.periodo = :periodo) " +
+                (desdeJornadas ? "  AND j.jornadas > 0 " : "") +
+                "ORDER BY e.id",
+                params,
+                (rs, i) -> new Candidato(
+                        rs.getLong("id"),
+                        rs.getBigDecimal("salario_base"),
+                        rs.getInt("jornadas"),
+                        rs.getBigDecimal("horas"),
+                        rs.getBigDecimal("total")));
+
+        // 2. Importes
+        List<Object[]> filas = new ArrayList<>(candidatos.size());
+        for (Candidato c : candidatos) {
+            Nomina nomina = new Nomina();
+            nomina.setSalarioBase(c.salarioBase() != null ? c.salarioBase() : BigDecimal.ZERO);
+            nomina.setBonificaciones(BigDecimal.ZERO);
+            nomina.setDeducciones(BigDecimal.ZERO);
+            nomina.setOtrasRetenciones(BigDecimal.ZERO);
+            String notas = null;
+            if (desdeJornadas) {
+                // Las jornadas se consideran horas extra al precio hora medio
+                nomina.setHorasExtra(c.horas());
+                nomina.setPrecioHoraExtra(NominaService.precioHoraMedio(c.totalJornadas(), c.horas()));
+                notas = "Nómina generada automáticamente desde " + c.jornadas() + " jornadas trabajadas";
+            } else {
+                nomina.setHorasExtra(BigDecimal.ZERO);
+                nomina.setPrecioHoraExtra(BigDecimal.ZERO);
+            }
+            NominaService.calcularImportes(nomina);
+
+            filas.add(new Object[]{
+                    c.empleadoId(), nomina.getSalarioBase(), nomina.getHorasExtra(), nomina.getPrecioHoraExtra(),
+                    nomina.getSalarioBruto(), nomina.getSeguridadSocial(), nomina.getIrpf(),
+                    nomina.getSalarioNeto(), notas
+            });
+        }
+        if (job != null) {
+            job.total = filas.size();
+        }
+
+        // 3. Inserción por lotes; ON CONFLICT cubre una nómina creada a mano entretanto
+        fase(job, Fase.INSERTANDO);
+        List<Long> creadas = new ArrayList<>(filas.size());
+        BigDecimal totalBruto = BigDecimal.ZERO;
+        BigDecimal totalNeto = BigDecimal.ZERO;
+        for (int desdeFila = 0; desdeFila < filas.size(); desdeFila += tamanoLote) {
+            List<Object[]> lote = filas.subList(desdeFila, Math.min(desdeFila + tamanoLote, filas.size()));
+            List<Map<String, Object>> insertadas = jdbcTemplate.queryForList(
+                    "INSERT INTO nominas (empleado_id, periodo, fecha_pago, salario_base, horas_extra, " +
+                    "                     precio_hora_extra, bonificaciones, deducciones, salario_bruto, " +
+                    "                     seguridad_social, irpf, otras_retenciones, salario_neto, estado, notas) " +
+                    "SELECT CAST(v.empleado_id AS BIGINT), :periodo, :fechaPago, CAST(v.salario_base AS NUMERIC), " +
+                    "       CAST(v.horas_extra AS NUMERIC), CAST(v.precio_hora_extra AS NUMERIC), 0, 0, " +
+                    "       CAST(v.salario_bruto AS NUMERIC), CAST(v.seguridad_social AS NUMERIC), " +
+                    "       CAST(v.irpf AS NUMERIC), 0, CAST(v.salario_neto AS NUMERIC), 'PENDIENTE', " +
+                    "       CAST(v.notas AS TEXT) " +
+                    "FROM (VALUES :filas) AS v(empleado_id, salario_base, horas_extra, precio_hora_extra, " +
+                    "                         salario_bruto, seguridad_social, irpf, salario_neto, notas) " +
+                    "ON CONFLICT (empleado_id, periodo) DO NOTHING " +
+                    "RETURNING empleado_id, salario_bruto, salario_neto",
+                    new MapSqlParameterSource()
+                            .addValue("periodo", periodo)
+                            .addValue("fechaPago", Date.valueOf(mes.atEndOfMonth()))
+                            .addValue("filas", lote));
+
+            for (Map<String, Object> fila : insertadas) {
+                creadas.add(((Number) fila.get("empleado_id")).longValue());
+                totalBruto = totalBruto.add((BigDecimal) fila.get("salario_bruto"));
+                totalNeto = totalNeto.add((BigDecimal) fila.get("salario_neto"));
+            }
+            if (job != null) {
+                job.procesadas = desdeFila + lote.size();
+            }
+        }
+
+        // 4. Jornadas sumadas en el paso 1 vinculadas a las nóminas creadas, en una sentencia
+        int vinculadas = 0;
+        if (desdeJornadas && !creadas.isEmpty()) {
+            fase(job, Fase.VINCULANDO);
+            vinculadas = jdbcTemplate.update(
+                    "UPDATE jornadas_trabajo j " +
+                    "SET nomina_id = n.id, actualizado_en = CURRENT_TIMESTAMP " +
+                    "FROM nominas n " +
+                    "WHERE n.periodo = :periodo AND n.empleado_id IN (:empleados) " +
+                    "  AND j.empleado_id = n.empleado_id " +
+                    "  AND j.id = ANY(:jornadas)",
+                    new MapSqlParameterSource()
+                            .addValue("periodo", periodo)
+                            .addValue("empleados", creadas)
+                            .addValue("jornadas", params.getValue("jornadas")));
+        }
+
+        int activosTotal = activos != null ? activos : 0;
+        Resultado resultado = new Resultado(activosTotal, creadas, activosTotal - creadas.size(),
+                vinculadas, totalBruto, totalNeto);
+
+        log.info("Nóminas {} ({}): {} creadas de {} empleados activos, {} jornadas vinculadas, bruto {} € en {} ms",
+                periodo, modo, creadas.size(), activosTotal, vinculadas, totalBruto,
+                System.currentTimeMillis() - inicioMs);
+        return resultado;
+    }
+
+    private static void fase(Job job, Fase fase) {
+        if (job != null) {
+            job.fase = fase;
+        }
+    }
+
+    private static void validarPeriodo(String periodo) {
+        if (periodo == null || !periodo.matches(PERIODO_REGEX)) {
+            throw new RuntimeException("Formato de periodo inválido. Debe ser YYYY-MM");
+        }
+    }
+
+    private NominaGeneracionDTO toDTO(Job job) {
+        Resultado r = job.resultado;
+        int porcentaje;
+        if (job.estado == EstadoJob.COMPLETADO) {
+            porcentaje = 100;
+        } else if (job.total > 0) {
+            porcentaje = (int) (job.procesadas * 100L / job.total);
+        } else {
+            porcentaje = 0;
+        }
+
+        return NominaGeneracionDTO.builder()
+                .id(job.id)
+                .periodo(job.periodo)
+                .modo(job.modo.name())
+                .solicitadoPor(job.usuario)
+                .estado(job.estado.name())
+                .fase(job.fase != null ? job.fase.name() : null)
+                .empleadosActivos(r != null ? r.empleadosActivos() : null)
+                .totalNominas(job.total)
+                .nominasProcesadas(job.procesadas)
+                .nominasCreadas(r != null ? r.empleadosConNomina().size() : null)
+                .omitidas(r != null ? r.omitidas() : null)
+                .jornadasVinculadas(r != null ? r.jornadasVinculadas() : null)
+                .porcentaje(porcentaje)
+                .totalBruto(r != null ? r.totalBruto() : null)
+                .totalNeto(r != null ? r.totalNeto() : null)
+                .error(job.error)
+                .creadoEn(job.creadoEn)
+                .iniciadoEn(job.iniciadoEn)
+                .finalizadoEn(job.finalizadoEn)
+                .build();
+    }
+}
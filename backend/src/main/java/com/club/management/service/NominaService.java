@@ -3,10 +3,8 @@ package com.club.management.service;
 import com.club.management.dto.request.NominaRequest;
 import com.club.management.dto.response.NominaDTO;
 import com.club.management.entity.Empleado;
-import com.club.management.entity.JornadaTrabajo;
 import com.club.management.entity.Nomina;
 import com.club.management.repository.EmpleadoRepository;
-import com.club.management.repository.JornadaTrabajoRepository;
 import com.club.management.repository.NominaRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -14,8 +12,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.LocalDate;
-import java.time.YearMonth;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -25,7 +21,7 @@ public class NominaService {
 
     private final NominaRepository nominaRepository;
     private final EmpleadoRepository empleadoRepository;
-    private final JornadaTrabajoRepository jornadaTrabajoRepository;
+    private final NominaGeneracionService nominaGeneracionService;
 
     // Porcentajes de retención (configurables)
     private static final BigDecimal PORCENTAJE_SEGURIDAD_SOCIAL = new BigDecimal("6.35");
@@ -163,43 +159,9 @@ public class NominaService {
      */
     @Transactional
     public List<NominaDTO> generarNominasMasivas(String periodo) {
-        // Validar formato del periodo
-        if (!periodo.matches("^\\d{4}-(0[1-9]|1[0-2])$")) {
-            throw new RuntimeException("Formato de periodo inválido. Debe ser YYYY-MM");
-        }
-
-        // Obtener todos los empleados activos
-        List<Empleado> empleadosActivos = empleadoRepository.findByActivoTrue();
-
-        // Generar nóminas
-        List<Nomina> nominas = empleadosActivos.stream()
-                .filter(empleado -> {
-                    // Verificar que no exista ya una nómina para este empleado en este periodo
-                    return nominaRepository.findByEmpleadoIdAndPeriodo(empleado.getId(), periodo).isEmpty();
-                })
-                .map(empleado -> {
-                    Nomina nomina = new Nomina();
-                    nomina.setEmpleado(empleado);
-                    nomina.setPeriodo(periodo);
-                    nomina.setSalarioBase(empleado.getSalarioBase());
-                    nomina.setHorasExtra(BigDecimal.ZERO);
-                    nomina.setPrecioHoraExtra(BigDecimal.ZERO);
-                    nomina.setBonificaciones(BigDecimal.ZERO);
-                    nomina.setDeducciones(BigDecimal.ZERO);
-                    nomina.setOtrasRetenciones(BigDecimal.ZERO);
-                    nomina.setEstado("PENDIENTE");
-
-                    // Calcular fecha de pago: último día del mes del periodo
-                    YearMonth yearMonth = YearMonth.parse(periodo);
-                    nomina.setFechaPago(yearMonth.atEndOfMonth());
-
-                    calcularImportes(nomina);
-                    return nomina;
-                })
-                .collect(Collectors.toList());
-
-        List<Nomina> saved = nominaRepository.saveAll(nominas);
-        return saved.stream().map(this::toDTO).collect(Collectors.toList());
+        NominaGeneracionService.Resultado resultado =
+                nominaGeneracionService.generar(periodo, NominaGeneracionService.Modo.SALARIO_BASE, null);
+        return nominasCreadas(periodo, resultado);
     }
 
     /**
@@ -214,8 +176,9 @@ public class NominaService {
         }
 
         // Verificar que el empleado existe
-        Empleado empleado = empleadoRepository.findById(empleadoId)
-                .orElseThrow(() -> new RuntimeException("Empleado no encontrado con ID: " + empleadoId));
+        if (!empleadoRepository.existsById(empleadoId)) {
+            throw new RuntimeException("Empleado no encontrado con ID: " + empleadoId);
+        }
 
         // Verificar que no existe ya una nómina para ese empleado en ese periodo
         nominaRepository.findByEmpleadoIdAndPeriodo(empleadoId, periodo)
@@ -223,63 +186,15 @@ public class NominaService {
                     throw new RuntimeException("Ya existe una nómina para el empleado en el periodo: " + periodo);
                 });
 
-        // Obtener todas las jornadas PAGADAS del empleado en ese periodo que NO estén ya en una nómina
-        List<JornadaTrabajo> jornadas = jornadaTrabajoRepository.findByEmpleadoIdAndPeriodo(empleadoId, periodo)
-                .stream()
-                .filter(j -> j.getPagado() && j.getNomina() == null)
-                .collect(Collectors.toList());
+        // Jornadas PAGADAS del periodo que NO estén ya en una nómina, agregadas y vinculadas en SQL
+        NominaGeneracionService.Resultado resultado =
+                nominaGeneracionService.generar(periodo, NominaGeneracionService.Modo.JORNADAS, empleadoId);
 
-        if (jornadas.isEmpty()) {
+        if (resultado.empleadosConNomina().isEmpty()) {
             throw new RuntimeException("No hay jornadas pagadas para incluir en la nómina del periodo " + periodo);
         }
 
-        // Calcular totales de las jornadas
-        BigDecimal totalHorasTrabajadas = jornadas.stream()
-                .map(JornadaTrabajo::getHorasTrabajadas)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalPagadoJornadas = jornadas.stream()
-                .map(JornadaTrabajo::getTotalPago)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Crear la nómina
-        Nomina nomina = new Nomina();
-        nomina.setEmpleado(empleado);
-        nomina.setPeriodo(periodo);
-        nomina.setSalarioBase(empleado.getSalarioBase() != null ? empleado.getSalarioBase() : BigDecimal.ZERO);
-
-        // Las jornadas se consideran como "salario variable" o "horas extra"
-        nomina.setHorasExtra(totalHorasTrabajadas);
-
-        // Calcular precio hora promedio de las jornadas
-        BigDecimal precioHoraPromedio = totalHorasTrabajadas.compareTo(BigDecimal.ZERO) > 0
-                ? totalPagadoJornadas.divide(totalHorasTrabajadas, 2, RoundingMode.HALF_UP)
-                : BigDecimal.ZERO;
-        nomina.setPrecioHoraExtra(precioHoraPromedio);
-
-        nomina.setBonificaciones(BigDecimal.ZERO);
-        nomina.setDeducciones(BigDecimal.ZERO);
-        nomina.setOtrasRetenciones(BigDecimal.ZERO);
-        nomina.setEstado("PENDIENTE");
-        nomina.setNotas("Nómina generada automáticamente desde " + jornadas.size() + " jornadas trabajadas");
-
-        // Calcular fecha de pago: último día del mes del periodo
-        YearMonth yearMonth = YearMonth.parse(periodo);
-        nomina.setFechaPago(yearMonth.atEndOfMonth());
-
-        // Calcular importes con retenciones fiscales
-        calcularImportes(nomina);
-
-        // Guardar la nómina
-        Nomina saved = nominaRepository.save(nomina);
-
-        // Vincular las jornadas con la nómina creada
-        jornadas.forEach(jornada -> {
-            jornada.setNomina(saved);
-        });
-        jornadaTrabajoRepository.saveAll(jornadas);
-
-        return toDTO(saved);
+        return nominasCreadas(periodo, resultado).get(0);
     }
 
     /**
@@ -287,36 +202,18 @@ public class NominaService {
      */
     @Transactional
     public List<NominaDTO> generarNominasMasivasDesdeJornadas(String periodo) {
-        // Validar formato del periodo
-        if (!periodo.matches("^\\d{4}-(0[1-9]|1[0-2])$")) {
-            throw new RuntimeException("Formato de periodo inválido. Debe ser YYYY-MM");
-        }
+        NominaGeneracionService.Resultado resultado =
+                nominaGeneracionService.generar(periodo, NominaGeneracionService.Modo.JORNADAS, null);
+        return nominasCreadas(periodo, resultado);
+    }
 
-        // Obtener todos los empleados activos que tengan jornadas pagadas en el periodo
-        List<Empleado> empleadosActivos = empleadoRepository.findByActivoTrue();
-
-        List<NominaDTO> nominasGeneradas = empleadosActivos.stream()
-                .filter(empleado -> {
-                    // Verificar que no exista ya una nómina
-                    if (nominaRepository.findByEmpleadoIdAndPeriodo(empleado.getId(), periodo).isPresent()) {
-                        return false;
-                    }
-                    // Verificar que tenga jornadas pagadas sin vincular
-                    List<JornadaTrabajo> jornadas = jornadaTrabajoRepository.findByEmpleadoIdAndPeriodo(empleado.getId(), periodo);
-                    return jornadas.stream().anyMatch(j -> j.getPagado() && j.getNomina() == null);
-                })
-                .map(empleado -> {
-                    try {
-                        return generarNominaDesdeJornadas(empleado.getId(), periodo);
-                    } catch (Exception e) {
-                        // Log error pero continuar con otros empleados
-                        return null;
-                    }
-                })
-                .filter(nomina -> nomina != null)
+    private List<NominaDTO> nominasCreadas(String periodo, NominaGeneracionService.Resultado resultado) {
+        if (resultado.empleadosConNomina().isEmpty()) {
+            return List.of();
+        }
+        return nominaRepository.findByPeriodoAndEmpleadoIdIn(periodo, resultado.empleadosConNomina()).stream()
+                .map(this::toDTO)
                 .collect(Collectors.toList());
-
-        return nominasGeneradas;
     }
 
     // Métodos auxiliares
@@ -336,10 +233,19 @@ public class NominaService {
         nomina.setNotas(request.getNotas());
     }
 
+    /**
+     * Precio hora medio de un conjunto de jornadas
+     */
+    static BigDecimal precioHoraMedio(BigDecimal totalPagado, BigDecimal horas) {
+        return horas.compareTo(BigDecimal.ZERO) > 0
+                ? totalPagado.divide(horas, 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+    }
+
     /**
      * Calcula automáticamente los importes de la nómina
      */
-    private void calcularImportes(Nomina nomina) {
+    static void calcularImportes(Nomina nomina) {
         // Calcular extras por horas
         BigDecimal importeHorasExtra = nomina.getHorasExtra()
                 .multiply(nomina.getPrecioHoraExtra())
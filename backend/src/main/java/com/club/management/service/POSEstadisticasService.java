@@ -2,6 +2,7 @@ package com.club.management.service;
 
 import com.club.management.dto.EstadisticasPOSDTO;
 import com.club.management.dto.SesionCajaDTO;
+import com.club.management.dto.VentaDTO;
 import com.club.management.entity.Venta;
 import com.club.management.repository.DetalleVentaRepository;
 import com.club.management.repository.SesionCajaRepository;
@@ -15,7 +16,11 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +35,7 @@ public class POSEstadisticasService {
     private final DetalleVentaRepository detalleVentaRepository;
     private final SesionCajaRepository sesionCajaRepository;
     private final SesionCajaService sesionCajaService;
+    private final ArchivoVentasService archivoVentasService;
 
     /**
      * Obtiene estadísticas completas del POS para un rango de fechas
@@ -38,21 +44,28 @@ public class POSEstadisticasService {
     public EstadisticasPOSDTO getEstadisticas(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
         log.info("Calculando estadísticas POS desde {} hasta {}", fechaInicio, fechaFin);
 
+        // Ventas archivadas dentro del rango (resúmenes diarios, vacío si el rango es reciente)
+        ArchivoVentasService.ResumenVentasArchivadas archivado =
+                archivoVentasService.getResumen(fechaInicio, fechaFin);
+
         // Estadísticas generales
-        Long totalVentas = ventaRepository.countVentasEntreFechas(fechaInicio, fechaFin);
-        BigDecimal totalIngresos = ventaRepository.calcularTotalVentasEntreFechas(fechaInicio, fechaFin);
-        Long productosVendidos = detalleVentaRepository.calcularTotalUnidadesVendidas(fechaInicio, fechaFin);
+        Long totalVentas = ventaRepository.countVentasEntreFechas(fechaInicio, fechaFin)
+                + archivado.getNumVentas();
+        BigDecimal totalIngresos = ventaRepository.calcularTotalVentasEntreFechas(fechaInicio, fechaFin)
+                .add(archivado.getTotal());
+        Long productosVendidos = detalleVentaRepository.calcularTotalUnidadesVendidas(fechaInicio, fechaFin)
+                + archivado.getUnidadesVendidas();
         BigDecimal ticketPromedio = totalVentas > 0 ?
                 totalIngresos.divide(BigDecimal.valueOf(totalVentas), 2, RoundingMode.HALF_UP) :
                 BigDecimal.ZERO;
 
         // Desglose por método de pago
         BigDecimal totalEfectivo = ventaRepository.calcularTotalPorMetodoPago(
-                Venta.MetodoPago.EFECTIVO, fechaInicio, fechaFin);
+                Venta.MetodoPago.EFECTIVO, fechaInicio, fechaFin).add(archivado.getTotalEfectivo());
         BigDecimal totalTarjeta = ventaRepository.calcularTotalPorMetodoPago(
-                Venta.MetodoPago.TARJETA, fechaInicio, fechaFin);
+                Venta.MetodoPago.TARJETA, fechaInicio, fechaFin).add(archivado.getTotalTarjeta());
         BigDecimal totalMixto = ventaRepository.calcularTotalPorMetodoPago(
-                Venta.MetodoPago.MIXTO, fechaInicio, fechaFin);
+                Venta.MetodoPago.MIXTO, fechaInicio, fechaFin).add(archivado.getTotalMixto());
 
         // Top productos más vendidos
         List<EstadisticasPOSDTO.ProductoVendidoDTO> topProductos = getTopProductos(fechaInicio, fechaFin, 10);
@@ -117,8 +130,7 @@ public class POSEstadisticasService {
 
         List<Object[]> results = detalleVentaRepository.findProductosMasVendidos(fechaInicio, fechaFin);
 
-        return results.stream()
-                .limit(limit)
+        List<EstadisticasPOSDTO.ProductoVendidoDTO> productos = results.stream()
                 .map(row -> EstadisticasPOSDTO.ProductoVendidoDTO.builder()
                         .productoId((Long) row[0])
                         .nombre((String) row[1])
@@ -127,6 +139,32 @@ public class POSEstadisticasService {
                         .numeroVentas(((Number) row[4]).intValue())
                         .build())
                 .collect(Collectors.toList());
+
+        List<EstadisticasPOSDTO.ProductoVendidoDTO> archivados =
+                archivoVentasService.getProductosVendidos(fechaInicio, fechaFin);
+        if (archivados.isEmpty()) {
+            return productos.stream().limit(limit).collect(Collectors.toList());
+        }
+
+        // Combinar ventas calientes y archivadas del mismo producto
+        Map<Long, EstadisticasPOSDTO.ProductoVendidoDTO> porProducto = new LinkedHashMap<>();
+        for (EstadisticasPOSDTO.ProductoVendidoDTO p : productos) {
+            porProducto.put(p.getProductoId(), p);
+        }
+        for (EstadisticasPOSDTO.ProductoVendidoDTO a : archivados) {
+            porProducto.merge(a.getProductoId(), a, (p, q) -> EstadisticasPOSDTO.ProductoVendidoDTO.builder()
+                    .productoId(p.getProductoId())
+                    .nombre(p.getNombre())
+                    .cantidadVendida(p.getCantidadVendida() + q.getCantidadVendida())
+                    .totalIngresos(p.getTotalIngresos().add(q.getTotalIngresos()))
+                    .numeroVentas(p.getNumeroVentas() + q.getNumeroVentas())
+                    .build());
+        }
+
+        return porProducto.values().stream()
+                .sorted(Comparator.comparing(EstadisticasPOSDTO.ProductoVendidoDTO::getCantidadVendida).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -138,13 +176,34 @@ public class POSEstadisticasService {
 
         List<Object[]> results = ventaRepository.getEstadisticasPorHora(fechaInicio, fechaFin);
 
-        return results.stream()
+        List<EstadisticasPOSDTO.VentaPorHoraDTO> horas = results.stream()
                 .map(row -> EstadisticasPOSDTO.VentaPorHoraDTO.builder()
                         .hora((Integer) row[0])
                         .cantidad(((Number) row[1]).intValue())
                         .total((BigDecimal) row[2])
                         .build())
                 .collect(Collectors.toList());
+
+        List<EstadisticasPOSDTO.VentaPorHoraDTO> archivadas =
+                archivoVentasService.getVentasPorHora(fechaInicio, fechaFin);
+        if (archivadas.isEmpty()) {
+            return horas;
+        }
+
+        // Combinar ventas calientes y archivadas de la misma hora
+        Map<Integer, EstadisticasPOSDTO.VentaPorHoraDTO> porHora = new TreeMap<>();
+        for (EstadisticasPOSDTO.VentaPorHoraDTO h : horas) {
+            porHora.put(h.getHora(), h);
+        }
+        for (EstadisticasPOSDTO.VentaPorHoraDTO a : archivadas) {
+            porHora.merge(a.getHora(), a, (h, q) -> EstadisticasPOSDTO.VentaPorHoraDTO.builder()
+                    .hora(h.getHora())
+                    .cantidad(h.getCantidad() + q.getCantidad())
+                    .total(h.getTotal().add(q.getTotal()))
+                    .build());
+        }
+
+        return new ArrayList<>(porHora.values());
     }
 
     /**
@@ -154,6 +213,13 @@ public class POSEstadisticasService {
     public EstadisticasPOSDTO getEstadisticasSesion(Long sesionId) {
         List<Venta> ventas = ventaRepository.findAllBySesionCajaId(sesionId);
 
+        if (ventas.isEmpty()) {
+            List<VentaDTO> archivadas = archivoVentasService.findVentasBySesionCajaId(sesionId);
+            if (!archivadas.isEmpty()) {
+                return getEstadisticasSesionArchivada(archivadas);
+            }
+        }
+
         // Calcular totales
         int totalVentas = ventas.size();
         BigDecimal totalIngresos = ventas.stream()
@@ -199,4 +265,44 @@ public class POSEstadisticasService {
                 .sesionesActivasDetalle(new ArrayList<>())
                 .build();
     }
+
+    /**
+     * Estadísticas de una sesión archivada a partir de sus ventas en el archivo
+     */
+    private EstadisticasPOSDTO getEstadisticasSesionArchivada(List<VentaDTO> ventas) {
+        int totalVentas = ventas.size();
+        BigDecimal totalIngresos = ventas.stream()
+                .map(VentaDTO::getTotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        int productosVendidos = ventas.stream()
+                .flatMap(v -> v.getDetalles().stream())
+                .mapToInt(d -> d.getCantidad())
+                .sum();
+
+        BigDecimal ticketPromedio = totalVentas > 0 ?
+                totalIngresos.divide(BigDecimal.valueOf(totalVentas), 2, RoundingMode.HALF_UP) :
+                BigDecimal.ZERO;
+
+        return EstadisticasPOSDTO.builder()
+                .totalVentas(totalVentas)
+                .totalIngresos(totalIngresos)
+                .productosVendidos(productosVendidos)
+                .ticketPromedio(ticketPromedio)
+                .totalEfectivo(totalPorMetodo(ventas, Venta.MetodoPago.EFECTIVO))
+                .totalTarjeta(totalPorMetodo(ventas, Venta.MetodoPago.TARJETA))
+                .totalMixto(totalPorMetodo(ventas, Venta.MetodoPago.MIXTO))
+                .topProductos(new ArrayList<>())
+                .ventasPorHora(new ArrayList<>())
+                .sesionesAbiertas(0)
+                .sesionesActivasDetalle(new ArrayList<>())
+                .build();
+    }
+
+    private BigDecimal totalPorMetodo(List<VentaDTO> ventas, Venta.MetodoPago metodoPago) {
+        return ventas.stream()
+                .filter(v -> v.getMetodoPago() == metodoPago)
+                .map(VentaDTO::getTotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
 }
@@ -5,24 +5,82 @@ import com.club.management.entity.Pedido;
 import com.club.management.entity.PedidoAuditoria;
 import com.club.management.entity.Usuario;
 import com.club.management.repository.PedidoAuditoriaRepository;
-import com.club.management.repository.PedidoRepository;
-import lombok.RequiredArgsConstructor;
+import com.club.management.security.ClientIpResolver;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
 /**
  * Servicio para gestión de auditoría de pedidos
+ *
+ * Los registros se capturan en la transacción del cambio, se encolan en memoria
+ * tras el commit y se insertan en batch (app.auditoria-pedidos.flush-ms), en
+ * orden de llegada. Al cerrar la aplicación se vuelca lo pendiente.
+ * Cada inserción va en su propia transacción (REQUIRES_NEW): el volcado también
+ * se hace desde afterCommit cuando la cola está llena, y ahí la transacción del
+ * cambio ya está confirmada aunque su conexión siga ligada al hilo.
+ * Los cambios de estado marcan el pedido en club.auditoria_pedidos para que el
+ * trigger de la tabla pedidos no los registre otra vez (V049).
  */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class PedidoAuditoriaService {
 
     private final PedidoAuditoriaRepository auditoriaRepository;
-    private final PedidoRepository pedidoRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ClientIpResolver clientIpResolver;
+    private final TransactionTemplate nuevaTransaccion;
+
+    private final int tamanoLote;
+    private final int capacidad;
+    private final LinkedBlockingQueue<Evento> cola;
+
+    /** Registro pendiente de volcar, con todo resuelto en el momento del cambio */
+    private record Evento(Long pedidoId, Long usuarioId, String username, String accion,
+                          String estadoAnterior, String estadoNuevo,
+                          String campoModificado, String valorAnterior, String valorNuevo,
+                          String observaciones, String ipAddress, String userAgent,
+                          LocalDateTime fecha) {
+    }
+
+    public PedidoAuditoriaService(PedidoAuditoriaRepository auditoriaRepository,
+                                  NamedParameterJdbcTemplate jdbcTemplate,
+                                  ClientIpResolver clientIpResolver,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${app.auditoria-pedidos.lote:500}") int tamanoLote,
+                                  @Value("${app.auditoria-pedidos.capacidad:10000}") int capacidad) {
+        this.auditoriaRepository = auditoriaRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clientIpResolver = clientIpResolver;
+        this.nuevaTransaccion = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.nuevaTransaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.tamanoLote = tamanoLote;
+        this.capacidad = capacidad;
+        this.cola = new LinkedBlockingQueue<>(capacidad);
+    }
 
     /**
      * Obtener historial completo de auditoría de un pedido
@@ -49,21 +107,15 @@ public class PedidoAuditoriaService {
     /**
      * Registrar creación de pedido
      */
-    @Transactional
     public void registrarCreacion(Pedido pedido, Usuario usuario, String ipAddress, String userAgent) {
-        PedidoAuditoria auditoria = PedidoAuditoria.crearRegistroCreacion(
-                pedido,
-                usuario,
-                ipAddress,
-                userAgent
-        );
-        auditoriaRepository.save(auditoria);
+        encolar(pedido, usuario, "CREADO", null, pedido.getEstado().name(), null, null, null,
+                "Pedido creado", ipAddress, userAgent);
     }
 
     /**
-     * Registrar cambio de estado
+     * Registrar cambio de estado. Debe llamarse dentro de la transacción que cambia
+     * el estado: marca el pedido para que el trigger de V033/V049 no lo duplique.
      */
-    @Transactional
     public void registrarCambioEstado(
             Pedido pedido,
             Usuario usuario,
@@ -72,22 +124,21 @@ public class PedidoAuditoriaService {
             String observaciones,
             String ipAddress,
             String userAgent) {
-        PedidoAuditoria auditoria = PedidoAuditoria.crearRegistroCambioEstado(
-                pedido,
-                usuario,
-                estadoAnterior,
-                estadoNuevo,
-                observaciones,
-                ipAddress,
-                userAgent
-        );
-        auditoriaRepository.save(auditoria);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            jdbcTemplate.queryForObject(
+                    "SELECT set_config('club.auditoria_pedidos', " +
+                    "       COALESCE(NULLIF(current_setting('club.auditoria_pedidos', true), '') || ',', '') || :pedidoId, " +
+                    "       true)",
+                    new MapSqlParameterSource("pedidoId", pedido.getId().toString()),
+                    String.class);
+        }
+        encolar(pedido, usuario, "CAMBIO_ESTADO", estadoAnterior, estadoNuevo, null, null, null,
+                observaciones, ipAddress, userAgent);
     }
 
     /**
      * Registrar modificación de campo
      */
-    @Transactional
     public void registrarModificacion(
             Pedido pedido,
             Usuario usuario,
@@ -96,33 +147,40 @@ public class PedidoAuditoriaService {
             String valorNuevo,
             String ipAddress,
             String userAgent) {
-        PedidoAuditoria auditoria = PedidoAuditoria.crearRegistroModificacion(
-                pedido,
-                usuario,
-                campoModificado,
-                valorAnterior,
-                valorNuevo,
-                ipAddress,
-                userAgent
-        );
-        auditoriaRepository.save(auditoria);
+        encolar(pedido, usuario, "MODIFICADO", null, null, campoModificado, valorAnterior, valorNuevo,
+                "Campo modificado: " + campoModificado, ipAddress, userAgent);
     }
 
     /**
-     * Registrar eliminación de pedido
+     * Registrar eliminación de pedido. La auditoría se borra en cascada con el
+     * pedido, así que solo queda constancia en el log si el pedido ya no existe
+     * al volcar la cola.
      */
-    @Transactional
     public void registrarEliminacion(Pedido pedido, Usuario usuario, String ipAddress, String userAgent) {
-        PedidoAuditoria auditoria = PedidoAuditoria.builder()
-                .pedido(pedido)
-                .usuario(usuario)
-                .accion("ELIMINADO")
-                .observaciones("Pedido eliminado")
-                .ipAddress(ipAddress)
-                .userAgent(userAgent)
-                .fechaCambio(LocalDateTime.now())
-                .build();
-        auditoriaRepository.save(auditoria);
+        encolar(pedido, usuario, "ELIMINADO", null, null, null, null, null,
+                "Pedido eliminado", ipAddress, userAgent);
+    }
+
+    /**
+     * Vuelca la cola en batch. Un único volcado a la vez, en orden de llegada: los
+     * registros de un mismo pedido se insertan en el orden en que se produjeron.
+     */
+    @Scheduled(fixedDelayString = "${app.auditoria-pedidos.flush-ms:1000}")
+    public synchronized void volcar() {
+        while (!cola.isEmpty()) {
+            List<Evento> lote = new ArrayList<>(tamanoLote);
+            cola.drainTo(lote, tamanoLote);
+            if (lote.isEmpty()) {
+                return;
+            }
+            insertar(lote);
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        volcar();
+        log.info("Auditoría de pedidos volcada al cerrar");
     }
 
     /**
@@ -144,6 +202,119 @@ public class PedidoAuditoriaService {
         return auditoriaRepository.countByPedidoId(pedidoId);
     }
 
+    private void encolar(Pedido pedido, Usuario usuario, String accion,
+                         String estadoAnterior, String estadoNuevo,
+                         String campoModificado, String valorAnterior, String valorNuevo,
+                         String observaciones, String ipAddress, String userAgent) {
+        // Datos de la petición y del usuario se capturan en el hilo que la atiende
+        HttpServletRequest request = peticionActual();
+        if (ipAddress == null && request != null) {
+            ipAddress = clientIpResolver.resolver(request);
+        }
+        if (userAgent == null && request != null) {
+            userAgent = request.getHeader("User-Agent");
+        }
+        String username = null;
+        if (usuario == null) {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            username = auth != null ? auth.getName() : null;
+        }
+
+        Evento evento = new Evento(
+                pedido.getId(),
+                usuario != null ? usuario.getId() : null,
+                username,
+                accion,
+                estadoAnterior,
+                estadoNuevo,
+                campoModificado,
+                valorAnterior,
+                valorNuevo,
+                observaciones,
+                truncar(ipAddress, 45),
+                truncar(userAgent, 500),
+                LocalDateTime.now());
+
+        // Solo lo confirmado se audita
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ofrecer(evento);
+                }
+            });
+        } else {
+            ofrecer(evento);
+        }
+    }
+
+    private void ofrecer(Evento evento) {
+        if (!cola.offer(evento)) {
+            // Cola llena: se vacía desde este hilo (conserva el orden) y se reintenta.
+            // insertar() abre su propia transacción, no usa la ya confirmada
+            log.warn("Cola de auditoría de pedidos llena ({}), volcando de forma síncrona", capacidad);
+            volcar();
+            if (!cola.offer(evento)) {
+                insertar(List.of(evento));
+            }
+        }
+    }
+
+    private void insertar(List<Evento> lote) {
+        MapSqlParameterSource[] params = lote.stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("pedidoId", e.pedidoId())
+                        .addValue("usuarioId", e.usuarioId())
+                        .addValue("username", e.username())
+                        .addValue("accion", e.accion())
+                        .addValue("estadoAnterior", e.estadoAnterior())
+                        .addValue("estadoNuevo", e.estadoNuevo())
+                        .addValue("campoModificado", e.campoModificado())
+                        .addValue("valorAnterior", e.valorAnterior())
+                        .addValue("valorNuevo", e.valorNuevo())
+                        .addValue("observaciones", e.observaciones())
+                        .addValue("ipAddress", e.ipAddress())
+                        .addValue("userAgent", e.userAgent())
+                        .addValue("fecha", Timestamp.valueOf(e.fecha())))
+                .toArray(MapSqlParameterSource[]::new);
+
+        try {
+            // Sin fallar el lote si el pedido se eliminó o el usuario ya no existe
+            int[] filas = nuevaTransaccion.execute(status -> jdbcTemplate.batchUpdate(
+                    "INSERT INTO pedido_auditoria (pedido_id, usuario_id, accion, estado_anterior, estado_nuevo, " +
+                    "                              campo_modificado, valor_anterior, valor_nuevo, observaciones, " +
+                    "                              ip_address, user_agent, fecha_cambio) " +
+                    "SELECT p.id, " +
+                    "       COALESCE((SELECT u.id FROM usuarios u WHERE u.id = CAST(:usuarioId AS BIGINT)), " +
+                    "                (SELECT u.id FROM usuarios u WHERE u.username = CAST(:username AS VARCHAR))), " +
+                    "       :accion, :estadoAnterior, :estadoNuevo, :campoModificado, :valorAnterior, :valorNuevo, " +
+                    "       :observaciones, :ipAddress, :userAgent, :fecha " +
+                    "FROM pedidos p WHERE p.id = :pedidoId",
+                    params));
+
+            for (int i = 0; i < filas.length; i++) {
+                if (filas[i] == 0) {
+                    Evento e = lote.get(i);
+                    log.info("Auditoría de pedido {} sin registrar (pedido eliminado): {} {}",
+                            e.pedidoId(), e.accion(), e.observaciones());
+                }
+            }
+        } catch (DataAccessException e) {
+            log.error("Error al volcar {} registros de auditoría de pedidos: {}", lote.size(), e.getMessage());
+            lote.forEach(ev -> log.error("Auditoría perdida: pedido {} {} {} -> {} ({})",
+                    ev.pedidoId(), ev.accion(), ev.estadoAnterior(), ev.estadoNuevo(), ev.fecha()));
+        }
+    }
+
+    private static HttpServletRequest peticionActual() {
+        RequestAttributes atributos = RequestContextHolder.getRequestAttributes();
+        return atributos instanceof ServletRequestAttributes servlet ? servlet.getRequest() : null;
+    }
+
+    private static String truncar(String valor, int max) {
+        return valor != null && valor.length() > max ? valor.substring(0, max) : valor;
+    }
+
     /**
      * Mapear PedidoAuditoria a PedidoAuditoriaDTO
      */
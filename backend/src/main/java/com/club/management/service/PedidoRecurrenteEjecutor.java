@@ -0,0 +1,309 @@
+package com.club.management.service;
+
+import com.club.management.entity.DetallePedido;
+import com.club.management.entity.EstadoPedido;
+import com.club.management.entity.Pedido;
+import com.club.management.entity.PedidoRecurrente;
+import com.club.management.entity.PedidoRecurrente.Frecuencia;
+import com.club.management.entity.PlantillaPedido;
+import com.club.management.entity.Producto;
+import com.club.management.repository.PedidoRepository;
+import com.club.management.repository.PlantillaPedidoRepository;
+import com.club.management.repository.ProductoRepository;
+import com.club.management.repository.UsuarioRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ejecución programada de pedidos recurrentes, segura con varias instancias
+ *
+ * 1. Reserva: un único UPDATE ... WHERE id IN (SELECT ... FOR UPDATE SKIP LOCKED)
+ *    marca un lote de vencidos con esta instancia hasta reservado_hasta (V047).
+ *    Dos instancias nunca reservan el mismo pedido recurrente.
+ * 2. Generación en paralelo: cada pedido en su propia transacción, que también
+ *    avanza proxima_ejecucion y libera la reserva solo si sigue siendo nuestra; si
+ *    la reserva caducó y otra instancia la tomó, se deshace el pedido.
+ * 3. Resultados: las ejecuciones se registran en batch y los fallidos se aplazan
+ *    app.pedidos-recurrentes.reintento-minutos.
+ */
+@Service
+@Slf4j
+public class PedidoRecurrenteEjecutor {
+
+    private final PlantillaPedidoRepository plantillaRepository;
+    private final PedidoRepository pedidoRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final ProductoRepository productoRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PedidoAuditoriaService auditoriaService;
+
+    private final String instancia;
+    private final int tamanoLote;
+    private final Duration duracionReserva;
+    private final Duration reintento;
+    private final ThreadPoolExecutor executor;
+
+    /** Pedido recurrente reservado por esta instancia */
+    private record Reserva(Long id, Long plantillaId, Long creadoPorId, Frecuencia frecuencia,
+                           Integer diaEjecucion, LocalTime horaEjecucion) {
+    }
+
+    private record Resultado(Reserva reserva, Long pedidoId, String error, LocalDateTime fecha) {
+        boolean exitoso() {
+            return error == null;
+        }
+    }
+
+    public PedidoRecurrenteEjecutor(PlantillaPedidoRepository plantillaRepository,
+                                    PedidoRepository pedidoRepository,
+                                    UsuarioRepository usuarioRepository,
+                                    ProductoRepository productoRepository,
+                                    NamedParameterJdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    PedidoAuditoriaService auditoriaService,
+                                    @Value("${app.pedidos-recurrentes.hilos:4}") int hilos,
+                                    @Value("${app.pedidos-recurrentes.lote:50}") int tamanoLote,
+                                    @Value("${app.pedidos-recurrentes.reserva-minutos:10}") int reservaMinutos,
+                                    @Value("${app.pedidos-recurrentes.reintento-minutos:30}") int reintentoMinutos) {
+        this.plantillaRepository = plantillaRepository;
+        this.pedidoRepository = pedidoRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.productoRepository = productoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.auditoriaService = auditoriaService;
+        this.instancia = System.getenv().getOrDefault("HOSTNAME", "local") + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.tamanoLote = tamanoLote;
+        this.duracionReserva = Duration.ofMinutes(reservaMinutos);
+        this.reintento = Duration.ofMinutes(reintentoMinutos);
+
+        AtomicLong hilo = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "pedido-recurrente-" + hilo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${app.pedidos-recurrentes.intervalo-ms:60000}",
+            initialDelayString = "${app.pedidos-recurrentes.retraso-inicial-ms:30000}")
+    public void ejecutarProgramados() {
+        ejecutarPendientes();
+    }
+
+    /**
+     * Genera los pedidos de todos los recurrentes vencidos que esta instancia consiga reservar
+     *
+     * @return ids de los pedidos generados
+     */
+    public List<Long> ejecutarPendientes() {
+        List<Long> generados = new ArrayList<>();
+        int exitosos = 0;
+        int fallidos = 0;
+        List<Reserva> lote;
+        do {
+            lote = reservar();
+            if (lote.isEmpty()) {
+                break;
+            }
+            List<CompletableFuture<Resultado>> futuros = lote.stream()
+                    .map(reserva -> CompletableFuture.supplyAsync(() -> ejecutar(reserva), executor))
+                    .toList();
+            List<Resultado> resultados = futuros.stream().map(CompletableFuture::join).toList();
+            registrarResultados(resultados);
+
+            for (Resultado resultado : resultados) {
+                if (resultado.exitoso()) {
+                    generados.add(resultado.pedidoId());
+                    exitosos++;
+                } else {
+                    fallidos++;
+                }
+            }
+        } while (lote.size() == tamanoLote);
+
+        if (exitosos > 0 || fallidos > 0) {
+            log.info("Pedidos recurrentes ejecutados: {} pedidos generados, {} fallidos", exitosos, fallidos);
+        }
+        return generados;
+    }
+
+    /**
+     * Reserva un lote de vencidos en una transacción propia y corta: la reserva queda
+     * visible para las demás instancias en cuanto se confirma. El pool no hace
+     * autocommit, así que sin transacción el UPDATE se desharía al devolver la conexión
+     */
+    private List<Reserva> reservar() {
+        LocalDateTime ahora = LocalDateTime.now();
+        return transactionTemplate.execute(status -> jdbcTemplate.query(
+                "UPDATE pedidos_recurrentes pr " +
+                "SET reservado_por = :instancia, reservado_hasta = :hasta " +
+                "WHERE pr.id IN (SELECT id FROM pedidos_recurrentes " +
+                "                WHERE activo AND proxima_ejecucion <= :ahora " +
+                "                  AND (reservado_hasta IS NULL OR reservado_hasta < :ahora) " +
+                "                ORDER BY proxima_ejecucion " +
+                "                LIMIT :lote " +
+                "                FOR UPDATE SKIP LOCKED) " +
+                "RETURNING pr.id, pr.plantilla_id, pr.creado_por_id, pr.frecuencia, pr.dia_ejecucion, pr.hora_ejecucion",
+                new MapSqlParameterSource()
+                        .addValue("instancia", instancia)
+                        .addValue("hasta", Timestamp.valueOf(ahora.plus(duracionReserva)))
+                        .addValue("ahora", Timestamp.valueOf(ahora))
+                        .addValue("lote", tamanoLote),
+                (rs, i) -> new Reserva(
+                        rs.getLong("id"),
+                        rs.getLong("plantilla_id"),
+                        rs.getLong("creado_por_id"),
+                        Frecuencia.valueOf(rs.getString("frecuencia")),
+                        rs.getObject("dia_ejecucion", Integer.class),
+                        rs.getTime("hora_ejecucion").toLocalTime())));
+    }
+
+    private Resultado ejecutar(Reserva reserva) {
+        LocalDateTime ahora = LocalDateTime.now();
+        try {
+            Long pedidoId = transactionTemplate.execute(status -> {
+                Long id = generarPedido(reserva, ahora);
+
+                LocalDateTime proxima = PedidoRecurrente.calcularProximaEjecucion(
+                        reserva.frecuencia(), reserva.diaEjecucion(), reserva.horaEjecucion(), ahora);
+                int actualizados = jdbcTemplate.update(
+                        "UPDATE pedidos_recurrentes " +
+                        "SET ultima_ejecucion = :ahora, proxima_ejecucion = :proxima, " +
+                        "    reservado_por = NULL, reservado_hasta = NULL " +
+                        "WHERE id = :id AND reservado_por = :instancia",
+                        new MapSqlParameterSource()
+                                .addValue("id", reserva.id())
+                                .addValue("ahora", Timestamp.valueOf(ahora))
+                                .addValue("proxima", Timestamp.valueOf(proxima))
+                                .addValue("instancia", instancia));
+                if (actualizados == 0) {
+                    throw new IllegalStateException("La reserva del pedido recurrente caducó antes de terminar");
+                }
+                return id;
+            });
+            log.info("Pedido recurrente {} ejecutado. Pedido generado: {}", reserva.id(), pedidoId);
+            return new Resultado(reserva, pedidoId, null, ahora);
+        } catch (RuntimeException e) {
+            log.error("Error al ejecutar pedido recurrente {}: {}", reserva.id(), e.getMessage(), e);
+            return new Resultado(reserva, null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), ahora);
+        }
+    }
+
+    private Long generarPedido(Reserva reserva, LocalDateTime ahora) {
+        PlantillaPedido plantilla = plantillaRepository.findById(reserva.plantillaId())
+                .orElseThrow(() -> new RuntimeException("Plantilla no encontrada"));
+        if (!Boolean.TRUE.equals(plantilla.getActiva())) {
+            throw new RuntimeException("La plantilla '" + plantilla.getNombre() + "' no está activa");
+        }
+
+        Pedido pedido = new Pedido();
+        pedido.setProveedor(plantilla.getProveedor());
+        pedido.setUsuario(usuarioRepository.getReferenceById(reserva.creadoPorId()));
+        pedido.setEstado(EstadoPedido.BORRADOR);
+        pedido.setFechaPedido(ahora);
+        pedido.setNotas(plantilla.getObservaciones());
+
+        // Productos de la plantilla en una sola consulta
+        JsonNode lineas = plantilla.getDetalles();
+        Set<Long> productoIds = new LinkedHashSet<>();
+        if (lineas != null && lineas.isArray()) {
+            lineas.forEach(item -> productoIds.add(item.get("productoId").asLong()));
+        }
+        if (productoIds.isEmpty()) {
+            throw new RuntimeException("La plantilla '" + plantilla.getNombre() + "' no tiene productos");
+        }
+        Map<Long, Producto> productos = productoRepository.findAllById(productoIds).stream()
+                .collect(Collectors.toMap(Producto::getId, Function.identity()));
+
+        for (JsonNode item : lineas) {
+            Long productoId = item.get("productoId").asLong();
+            Producto producto = productos.get(productoId);
+            if (producto == null) {
+                throw new RuntimeException("Producto no encontrado: " + productoId);
+            }
+            DetallePedido detalle = new DetallePedido();
+            detalle.setProducto(producto);
+            detalle.setCantidadPedida(new BigDecimal(item.get("cantidad").asText()));
+            detalle.setPrecioUnitario(new BigDecimal(item.get("precioUnitario").asText()));
+            detalle.calcularSubtotal();
+            pedido.addDetalle(detalle);
+        }
+        pedido.calcularTotales();
+
+        Pedido guardado = pedidoRepository.save(pedido);
+        auditoriaService.registrarCreacion(guardado, pedido.getUsuario(), null, "Pedido recurrente");
+        return guardado.getId();
+    }
+
+    /**
+     * Historial de ejecuciones en batch; los fallidos se liberan con reintento aplazado.
+     * Todo en una transacción
+     */
+    private void registrarResultados(List<Resultado> resultados) {
+        transactionTemplate.executeWithoutResult(status -> escribirResultados(resultados));
+    }
+
+    private void escribirResultados(List<Resultado> resultados) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO ejecuciones_pedido_recurrente (pedido_recurrente_id, pedido_generado_id, " +
+                "                                           fecha_ejecucion, exitoso, mensaje_error) " +
+                "VALUES (:recurrenteId, :pedidoId, :fecha, :exitoso, :error)",
+                resultados.stream()
+                        .map(r -> new MapSqlParameterSource()
+                                .addValue("recurrenteId", r.reserva().id())
+                                .addValue("pedidoId", r.pedidoId())
+                                .addValue("fecha", Timestamp.valueOf(r.fecha()))
+                                .addValue("exitoso", r.exitoso())
+                                .addValue("error", r.error()))
+                        .toArray(MapSqlParameterSource[]::new));
+
+        List<MapSqlParameterSource> fallidos = resultados.stream()
+                .filter(r -> !r.exitoso())
+                .map(r -> new MapSqlParameterSource()
+                        .addValue("id", r.reserva().id())
+                        .addValue("instancia", instancia)
+                        .addValue("reintento", Timestamp.valueOf(r.fecha().plus(reintento))))
+                .toList();
+        if (!fallidos.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE pedidos_recurrentes SET reservado_por = NULL, reservado_hasta = :reintento " +
+                    "WHERE id = :id AND reservado_por = :instancia",
+                    fallidos.toArray(MapSqlParameterSource[]::new));
+        }
+    }
+}
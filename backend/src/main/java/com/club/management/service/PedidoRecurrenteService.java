@@ -2,18 +2,14 @@ package com.club.management.service;
 
 import com.club.management.dto.PedidoRecurrenteDTO;
 import com.club.management.entity.*;
-import com.club.management.entity.EstadoPedido;
 import com.club.management.repository.*;
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,10 +22,8 @@ public class PedidoRecurrenteService {
 
     private final PedidoRecurrenteRepository recurrenteRepository;
     private final PlantillaPedidoRepository plantillaRepository;
-    private final PedidoRepository pedidoRepository;
     private final UsuarioRepository usuarioRepository;
-    private final ProductoRepository productoRepository;
-    private final EjecucionPedidoRecurrenteRepository ejecucionRepository;
+    private final PedidoRecurrenteEjecutor ejecutor;
 
     /**
      * Obtener todos los pedidos recurrentes
@@ -92,7 +86,6 @@ public class PedidoRecurrenteService {
         LocalDateTime proximaEjecucion = calcularProximaEjecucion(
                 dto.getFrecuencia(),
                 dto.getDiaEjecucion(),
-                dto.getDiasEjecucion(),
                 dto.getHoraEjecucion() != null ? dto.getHoraEjecucion() : LocalTime.of(9, 0)
         );
 
@@ -151,7 +144,6 @@ public class PedidoRecurrenteService {
             LocalDateTime nuevaProxima = calcularProximaEjecucion(
                     recurrente.getFrecuencia().name(),
                     recurrente.getDiaEjecucion(),
-                    recurrente.getDiasEjecucion(),
                     recurrente.getHoraEjecucion()
             );
             recurrente.setProximaEjecucion(nuevaProxima);
@@ -186,52 +178,11 @@ public class PedidoRecurrenteService {
     }
 
     /**
-     * Ejecutar pedidos recurrentes pendientes (llamado por scheduler)
+     * Ejecutar pedidos recurrentes pendientes (también lo hace el scheduler de
+     * {@link PedidoRecurrenteEjecutor}; con varias instancias cada pedido se genera una sola vez)
      */
-    @Transactional
     public List<Long> ejecutarPedidosPendientes() {
-        List<Long> pedidosGenerados = new ArrayList<>();
-        List<PedidoRecurrente> pendientes = recurrenteRepository.findPendientesDeEjecucion(LocalDateTime.now());
-
-        log.info("Encontrados {} pedidos recurrentes pendientes de ejecución", pendientes.size());
-
-        for (PedidoRecurrente recurrente : pendientes) {
-            try {
-                // Generar pedido desde la plantilla
-                Long pedidoId = generarPedidoDesdePlantilla(recurrente.getPlantilla());
-
-                // Registrar ejecución exitosa
-                Pedido pedido = pedidoRepository.findById(pedidoId).orElse(null);
-                EjecucionPedidoRecurrente ejecucion = EjecucionPedidoRecurrente.crearExitoso(recurrente, pedido);
-                ejecucionRepository.save(ejecucion);
-
-                // Actualizar última ejecución y calcular próxima
-                recurrente.setUltimaEjecucion(LocalDateTime.now());
-                LocalDateTime nuevaProxima = calcularProximaEjecucion(
-                        recurrente.getFrecuencia().name(),
-                        recurrente.getDiaEjecucion(),
-                        recurrente.getDiasEjecucion(),
-                        recurrente.getHoraEjecucion()
-                );
-                recurrente.setProximaEjecucion(nuevaProxima);
-                recurrenteRepository.save(recurrente);
-
-                pedidosGenerados.add(pedidoId);
-                log.info("Pedido recurrente {} ejecutado exitosamente. Pedido generado: {}", recurrente.getId(), pedidoId);
-
-            } catch (Exception e) {
-                log.error("Error al ejecutar pedido recurrente {}: {}", recurrente.getId(), e.getMessage(), e);
-
-                // Registrar ejecución fallida
-                EjecucionPedidoRecurrente ejecucion = EjecucionPedidoRecurrente.crearFallido(
-                        recurrente,
-                        e.getMessage()
-                );
-                ejecucionRepository.save(ejecucion);
-            }
-        }
-
-        return pedidosGenerados;
+        return ejecutor.ejecutarPendientes();
     }
 
     /**
@@ -260,102 +211,17 @@ public class PedidoRecurrenteService {
 
     // Helper methods
 
-    private Long generarPedidoDesdePlantilla(PlantillaPedido plantilla) {
-        // Crear nuevo pedido basado en la plantilla
-        Pedido pedido = new Pedido();
-        pedido.setProveedor(plantilla.getProveedor());
-        pedido.setFechaPedido(LocalDateTime.now());
-        pedido.setEstado(EstadoPedido.BORRADOR);
-        pedido.setObservaciones(plantilla.getObservaciones());
-
-        // Convertir detalles JSON a entidades DetallePedido
-        List<DetallePedido> detalles = convertirJsonADetalles(plantilla.getDetalles(), pedido);
-        pedido.setDetalles(detalles);
-
-        // Calcular total
-        BigDecimal total = detalles.stream()
-                .map(d -> d.getPrecioUnitario().multiply(d.getCantidad()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        pedido.setTotal(total);
-
-        Pedido saved = pedidoRepository.save(pedido);
-        return saved.getId();
-    }
-
-    private List<DetallePedido> convertirJsonADetalles(JsonNode detallesJson, Pedido pedido) {
-        List<DetallePedido> detalles = new ArrayList<>();
-
-        if (detallesJson != null && detallesJson.isArray()) {
-            for (JsonNode item : detallesJson) {
-                Long productoId = item.get("productoId").asLong();
-                Integer cantidad = item.get("cantidad").asInt();
-                BigDecimal precioUnitario = new BigDecimal(item.get("precioUnitario").asText());
-
-                Producto producto = productoRepository.findById(productoId)
-                        .orElseThrow(() -> new RuntimeException("Producto no encontrado: " + productoId));
-
-                DetallePedido detalle = new DetallePedido();
-                detalle.setPedido(pedido);
-                detalle.setProducto(producto);
-                detalle.setCantidad(cantidad);
-                detalle.setPrecioUnitario(precioUnitario);
-
-                detalles.add(detalle);
-            }
-        }
-
-        return detalles;
-    }
-
     private LocalDateTime calcularProximaEjecucion(
             String frecuencia,
             Integer diaEjecucion,
-            String diasEjecucion,
             LocalTime horaEjecucion
     ) {
-        LocalDateTime ahora = LocalDateTime.now();
-        LocalDateTime proxima;
-
-        switch (frecuencia) {
-            case "SEMANAL":
-                // Próximo día de la semana especificado (1=Lunes, 7=Domingo)
-                int diaActual = ahora.getDayOfWeek().getValue();
-                int diasHasta = (diaEjecucion - diaActual + 7) % 7;
-                if (diasHasta == 0) diasHasta = 7; // Si es hoy, programar para la próxima semana
-                proxima = ahora.plusDays(diasHasta).toLocalDate().atTime(horaEjecucion);
-                break;
-
-            case "QUINCENAL":
-                // Días 1 y 15 de cada mes
-                int diaDelMes = ahora.getDayOfMonth();
-                if (diaDelMes < 15) {
-                    proxima = ahora.toLocalDate().withDayOfMonth(15).atTime(horaEjecucion);
-                } else {
-                    proxima = ahora.plusMonths(1).toLocalDate().withDayOfMonth(1).atTime(horaEjecucion);
-                }
-                break;
-
-            case "MENSUAL":
-                // Día específico del mes
-                proxima = ahora.toLocalDate().withDayOfMonth(diaEjecucion).atTime(horaEjecucion);
-                if (proxima.isBefore(ahora) || proxima.isEqual(ahora)) {
-                    proxima = proxima.plusMonths(1);
-                }
-                break;
-
-            case "TRIMESTRAL":
-                // Cada 3 meses en el día especificado
-                proxima = ahora.toLocalDate().withDayOfMonth(diaEjecucion).atTime(horaEjecucion);
-                if (proxima.isBefore(ahora) || proxima.isEqual(ahora)) {
-                    proxima = proxima.plusMonths(3);
-                }
-                break;
-
-            default:
-                throw new RuntimeException("Frecuencia no válida: " + frecuencia);
+        try {
+            return PedidoRecurrente.calcularProximaEjecucion(
+                    PedidoRecurrente.Frecuencia.valueOf(frecuencia), diaEjecucion, horaEjecucion, LocalDateTime.now());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException(e.getMessage() != null ? e.getMessage() : "Frecuencia no válida: " + frecuencia);
         }
-
-        return proxima;
     }
 
     private PedidoRecurrenteDTO mapToDTO(PedidoRecurrente recurrente) {
@@ -1,20 +1,30 @@
 package com.club.management.service;
 
 import com.club.management.dto.pedido.*;
-import com.club.management.dto.request.MovimientoStockFormData;
 import com.club.management.dto.request.TransaccionRequest;
+import com.club.management.dto.response.TransaccionDTO;
 import com.club.management.entity.*;
 import com.club.management.entity.Transaccion.TipoTransaccion;
 import com.club.management.repository.*;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,13 +33,15 @@ import java.util.stream.Collectors;
 public class PedidoService {
 
     private final PedidoRepository pedidoRepository;
-    private final DetallePedidoRepository detallePedidoRepository;
     private final ProveedorRepository proveedorRepository;
     private final ProductoRepository productoRepository;
     private final UsuarioRepository usuarioRepository;
     private final CategoriaTransaccionRepository categoriaTransaccionRepository;
-    private final MovimientoStockService movimientoStockService;
+    private final TransaccionRepository transaccionRepository;
     private final TransaccionService transaccionService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PedidoAuditoriaService auditoriaService;
 
     /**
      * Crear un nuevo pedido
@@ -77,6 +89,8 @@ public class PedidoService {
         Pedido pedidoGuardado = pedidoRepository.save(pedido);
         log.info("Pedido creado con ID: {} y número: {}", pedidoGuardado.getId(), pedidoGuardado.getNumeroPedido());
 
+        auditoriaService.registrarCreacion(pedidoGuardado, usuario, null, null);
+
         return convertirAPedidoDTO(pedidoGuardado);
     }
 
@@ -124,7 +138,12 @@ public class PedidoService {
         Pedido pedido = pedidoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
 
+        EstadoPedido estadoAnterior = pedido.getEstado();
         pedido.setEstado(nuevoEstado);
+        if (estadoAnterior != nuevoEstado) {
+            auditoriaService.registrarCambioEstado(pedido, null, estadoAnterior.name(), nuevoEstado.name(),
+                    null, null, null);
+        }
         Pedido pedidoActualizado = pedidoRepository.save(pedido);
 
         log.info("Pedido {} actualizado a estado: {}", id, nuevoEstado);
@@ -133,10 +152,14 @@ public class PedidoService {
 
     /**
      * Recepcionar un pedido
-     * - Actualiza cantidades recibidas
-     * - Crea movimientos de stock (ENTRADA) para cada producto
-     * - Registra gasto automático
+     * - Actualiza cantidades recibidas (cantidad acumulada de cada línea)
+     * - Crea movimientos de stock (ENTRADA) por lo recibido en esta recepción
+     * - Registra gasto automático (una sola vez por pedido)
      * - Cambia estado del pedido
+     *
+     * Número fijo de sentencias sea cual sea el número de líneas: una lectura con
+     * bloqueo de líneas y productos, updates/inserts en batch y un único UPDATE
+     * set-based del stock.
      */
     @Transactional
     public PedidoDTO recepcionarPedido(Long id, RecepcionarPedidoRequest request, Long usuarioId) {
@@ -155,52 +178,175 @@ public class PedidoService {
         Usuario usuario = usuarioRepository.findById(usuarioId)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
-        // Actualizar cantidades recibidas
-        for (RecepcionarPedidoRequest.DetalleRecepcionRequest detalleRecepcion : request.getDetallesRecepcion()) {
-            DetallePedido detalle = detallePedidoRepository.findById(detalleRecepcion.getDetalleId())
-                    .orElseThrow(() -> new RuntimeException("Detalle de pedido no encontrado"));
+        // 1. Todas las líneas del pedido y el stock de sus productos, bloqueados hasta el commit
+        Map<Long, LineaRecepcion> lineas = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT d.id, d.producto_id, d.cantidad_pedida, d.cantidad_recibida, d.precio_unitario, " +
+                "       p.nombre, p.stock_actual " +
+                "FROM detalle_pedido d JOIN productos p ON p.id = d.producto_id " +
+                "WHERE d.pedido_id = :pedidoId " +
+                "ORDER BY p.id, d.id " +
+                "FOR UPDATE OF d, p",
+                new MapSqlParameterSource("pedidoId", id),
+                rs -> {
+                    lineas.put(rs.getLong("id"), new LineaRecepcion(
+                            rs.getLong("producto_id"),
+                            rs.getString("nombre"),
+                            rs.getBigDecimal("cantidad_pedida"),
+                            rs.getBigDecimal("cantidad_recibida") != null ? rs.getBigDecimal("cantidad_recibida") : BigDecimal.ZERO,
+                            rs.getBigDecimal("precio_unitario"),
+                            rs.getBigDecimal("stock_actual")));
+                });
+
+        // 2. Cantidades recibidas y stock resultante por producto
+        LocalDateTime ahora = LocalDateTime.now();
+        String motivo = String.format("Recepción pedido %s - %s",
+                pedido.getNumeroPedido(),
+                pedido.getProveedor().getNombre());
+        Map<Long, BigDecimal> stockPorProducto = new HashMap<>();
+        List<MapSqlParameterSource> detalles = new ArrayList<>();
+        List<MapSqlParameterSource> movimientos = new ArrayList<>();
+        Set<Long> recibidos = new HashSet<>();
 
-            detalle.setCantidadRecibida(detalleRecepcion.getCantidadRecibida());
-            if (detalleRecepcion.getNotas() != null) {
-                detalle.setNotas(detalleRecepcion.getNotas());
+        for (RecepcionarPedidoRequest.DetalleRecepcionRequest detalleRecepcion : request.getDetallesRecepcion()) {
+            LineaRecepcion linea = lineas.get(detalleRecepcion.getDetalleId());
+            if (linea == null) {
+                throw new RuntimeException("Detalle de pedido no encontrado");
+            }
+            if (!recibidos.add(detalleRecepcion.getDetalleId())) {
+                throw new RuntimeException("El detalle " + detalleRecepcion.getDetalleId() + " aparece más de una vez");
             }
-            detallePedidoRepository.save(detalle);
+            BigDecimal cantidadRecibida = detalleRecepcion.getCantidadRecibida();
+            if (cantidadRecibida == null || cantidadRecibida.signum() < 0) {
+                throw new RuntimeException("Cantidad recibida no válida para " + linea.productoNombre());
+            }
+            BigDecimal entrada = cantidadRecibida.subtract(linea.cantidadRecibida());
+            if (entrada.signum() < 0) {
+                throw new RuntimeException("La cantidad recibida de " + linea.productoNombre() +
+                        " no puede ser menor que la ya recibida (" + linea.cantidadRecibida() + ")");
+            }
+            linea.recibir(cantidadRecibida);
+
+            detalles.add(new MapSqlParameterSource()
+                    .addValue("id", detalleRecepcion.getDetalleId())
+                    .addValue("cantidadRecibida", cantidadRecibida)
+                    .addValue("notas", detalleRecepcion.getNotas()));
 
             // Crear movimiento de stock (ENTRADA)
-            if (detalleRecepcion.getCantidadRecibida().compareTo(BigDecimal.ZERO) > 0) {
-                String motivo = String.format("Recepción pedido %s - %s",
-                        pedido.getNumeroPedido(),
-                        pedido.getProveedor().getNombre());
-
-                MovimientoStockFormData movimientoData = new MovimientoStockFormData();
-                movimientoData.setProductoId(detalle.getProducto().getId());
-                movimientoData.setTipoMovimiento("ENTRADA");
-                movimientoData.setCantidad(detalleRecepcion.getCantidadRecibida());
-                movimientoData.setMotivo(motivo);
-                movimientoData.setPrecioUnitario(detalle.getPrecioUnitario());
-                movimientoData.setProveedorId(pedido.getProveedor().getId());
-                movimientoData.setFechaMovimiento(LocalDateTime.now());
-
-                movimientoStockService.registrarMovimiento(movimientoData);
-
-                log.info("Movimiento de stock creado: producto {} +{} unidades",
-                        detalle.getProducto().getNombre(), detalleRecepcion.getCantidadRecibida());
+            if (entrada.signum() > 0) {
+                BigDecimal stockAnterior = stockPorProducto.getOrDefault(linea.productoId(), linea.stockActual());
+                BigDecimal stockNuevo = stockAnterior.add(entrada);
+                stockPorProducto.put(linea.productoId(), stockNuevo);
+
+                movimientos.add(new MapSqlParameterSource()
+                        .addValue("productoId", linea.productoId())
+                        .addValue("cantidad", entrada)
+                        .addValue("stockAnterior", stockAnterior)
+                        .addValue("stockNuevo", stockNuevo)
+                        .addValue("precioUnitario", linea.precioUnitario())
+                        .addValue("costoTotal", linea.precioUnitario() != null ? linea.precioUnitario().multiply(entrada) : null)
+                        .addValue("motivo", motivo)
+                        .addValue("proveedorId", pedido.getProveedor().getId())
+                        .addValue("usuarioId", usuario.getId())
+                        .addValue("fecha", Timestamp.valueOf(ahora)));
             }
         }
 
+        // 3. Escrituras en batch
+        jdbcTemplate.batchUpdate(
+                "UPDATE detalle_pedido SET cantidad_recibida = :cantidadRecibida, notas = COALESCE(:notas, notas) " +
+                "WHERE id = :id",
+                detalles.toArray(MapSqlParameterSource[]::new));
+
+        if (!movimientos.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO movimientos_stock (producto_id, tipo_movimiento, cantidad, stock_anterior, stock_nuevo, " +
+                    "                               precio_unitario, costo_total, motivo, proveedor_id, usuario_id, " +
+                    "                               fecha_movimiento) " +
+                    "VALUES (:productoId, 'ENTRADA', :cantidad, :stockAnterior, :stockNuevo, " +
+                    "        :precioUnitario, :costoTotal, :motivo, :proveedorId, :usuarioId, :fecha)",
+                    movimientos.toArray(MapSqlParameterSource[]::new));
+
+            jdbcTemplate.update(
+                    "UPDATE productos p " +
+                    "SET stock_actual = v.stock_nuevo, actualizado_en = CURRENT_TIMESTAMP " +
+                    "FROM (VALUES :stocks) AS v(id, stock_nuevo) " +
+                    "WHERE p.id = v.id",
+                    new MapSqlParameterSource("stocks", stockPorProducto.entrySet().stream()
+                            .map(e -> new Object[]{e.getKey(), e.getValue()})
+                            .toList()));
+
+            eventPublisher.publishEvent(new StockModificadoEvent(stockPorProducto.keySet()));
+        }
+
         // Actualizar estado del pedido
-        pedido.setFechaRecepcion(LocalDateTime.now());
+        EstadoPedido estadoAnterior = pedido.getEstado();
+        pedido.setFechaRecepcion(ahora);
         pedido.setRecepcionadoPor(usuario);
 
-        if (pedido.getIsCompletamenteRecibido()) {
+        boolean completo = lineas.values().stream().allMatch(LineaRecepcion::completa);
+        boolean algunRecibido = lineas.values().stream().anyMatch(l -> l.cantidadRecibida().signum() > 0);
+        if (completo && !lineas.isEmpty()) {
             pedido.setEstado(EstadoPedido.RECIBIDO);
-            log.info("Pedido {} completamente recibido", id);
-        } else if (pedido.getIsParcialmenteRecibido()) {
+        } else if (algunRecibido) {
             pedido.setEstado(EstadoPedido.PARCIAL);
-            log.info("Pedido {} parcialmente recibido", id);
         }
 
-        // Crear transacción financiera (GASTO)
+        if (pedido.getEstado() != estadoAnterior) {
+            auditoriaService.registrarCambioEstado(pedido, usuario, estadoAnterior.name(), pedido.getEstado().name(),
+                    "Recepción de " + detalles.size() + " líneas", null, null);
+        }
+
+        // Crear transacción financiera (GASTO), solo en la primera recepción
+        if (pedido.getTransaccion() == null) {
+            registrarGasto(pedido);
+        }
+
+        // Guardar pedido actualizado
+        Pedido pedidoRecepcionado = pedidoRepository.save(pedido);
+        log.info("Pedido {} recepcionado: {} líneas, {} entradas de stock, estado {}",
+                id, detalles.size(), movimientos.size(), pedidoRecepcionado.getEstado());
+
+        return convertirAPedidoDTO(pedidoRecepcionado);
+    }
+
+    /**
+     * Línea de pedido leída para la recepción
+     */
+    private static final class LineaRecepcion {
+        private final Long productoId;
+        private final String productoNombre;
+        private final BigDecimal cantidadPedida;
+        private final BigDecimal precioUnitario;
+        private final BigDecimal stockActual;
+        private BigDecimal cantidadRecibida;
+
+        LineaRecepcion(Long productoId, String productoNombre, BigDecimal cantidadPedida,
+                       BigDecimal cantidadRecibida, BigDecimal precioUnitario, BigDecimal stockActual) {
+            this.productoId = productoId;
+            this.productoNombre = productoNombre;
+            this.cantidadPedida = cantidadPedida;
+            this.cantidadRecibida = cantidadRecibida;
+            this.precioUnitario = precioUnitario;
+            this.stockActual = stockActual;
+        }
+
+        Long productoId() { return productoId; }
+        String productoNombre() { return productoNombre; }
+        BigDecimal cantidadRecibida() { return cantidadRecibida; }
+        BigDecimal precioUnitario() { return precioUnitario; }
+        BigDecimal stockActual() { return stockActual; }
+
+        void recibir(BigDecimal cantidad) {
+            this.cantidadRecibida = cantidad;
+        }
+
+        boolean completa() {
+            return cantidadRecibida.compareTo(cantidadPedida) >= 0;
+        }
+    }
+
+    private void registrarGasto(Pedido pedido) {
         try {
             // Buscar o crear categoría "Compras a Proveedores"
             CategoriaTransaccion categoriaCompras = categoriaTransaccionRepository
@@ -222,18 +368,14 @@ public class PedidoService {
             transaccionRequest.setFecha(LocalDate.now());
             transaccionRequest.setProveedorId(pedido.getProveedor().getId());
 
-            transaccionService.create(transaccionRequest);
+            TransaccionDTO transaccion = transaccionService.create(transaccionRequest);
+            pedido.setTransaccion(transaccionRepository.getReferenceById(transaccion.getId()));
 
-            log.info("Transacción financiera creada para pedido {}: {} EUR", id, pedido.getTotal());
+            log.info("Transacción financiera creada para pedido {}: {} EUR", pedido.getId(), pedido.getTotal());
         } catch (Exception e) {
-            log.error("Error al crear transacción financiera para pedido {}: {}", id, e.getMessage());
+            log.error("Error al crear transacción financiera para pedido {}: {}", pedido.getId(), e.getMessage());
             // No falla la recepción si falla la transacción
         }
-
-        // Guardar pedido actualizado
-        Pedido pedidoRecepcionado = pedidoRepository.save(pedido);
-
-        return convertirAPedidoDTO(pedidoRecepcionado);
     }
 
     /**
@@ -248,6 +390,8 @@ public class PedidoService {
             throw new RuntimeException("El pedido no puede ser cancelado en su estado actual: " + pedido.getEstado());
         }
 
+        auditoriaService.registrarCambioEstado(pedido, null, pedido.getEstado().name(), EstadoPedido.CANCELADO.name(),
+                motivo, null, null);
         pedido.setEstado(EstadoPedido.CANCELADO);
         if (motivo != null) {
             String notasActuales = pedido.getNotas() != null ? pedido.getNotas() + "\n" : "";
@@ -0,0 +1,350 @@
+package com.club.management.service;
+
+import com.club.management.dto.response.PrevisionConsumoDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Previsión de consumo por producto para sugerir pedidos.
+ *
+ * Mantiene, por producto y día de la semana de la jornada, el consumo por jornada
+ * suavizado exponencialmente (EWMA, factor app.prevision-consumo.alfa). Se actualiza
+ * de forma incremental y nunca recorre el histórico de ventas ni de movimientos:
+ * - Cada venta o consumo confirmado publica un {@link ConsumoRegistradoEvent}; las
+ *   cantidades se acumulan en memoria y se vuelcan en batch a consumo_jornada cada
+ *   app.prevision-consumo.flush-ms (upsert aditivo, válido con varias instancias).
+ * - Al cerrar una jornada (la jornada va de hora-corte a hora-corte del día
+ *   siguiente) su consumo se pliega en consumo_previsiones: los productos vendidos
+ *   actualizan la tasa y los que no se vendieron decaen hacia cero. Solo se pliegan
+ *   jornadas con ventas, así los días de cierre no cuentan como consumo cero.
+ * - Una venta offline que llega después de plegar su jornada suma alfa * cantidad a
+ *   la tasa, lo que habría aportado en el plegado (exacto si es la última jornada
+ *   plegada de ese día de la semana).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PrevisionConsumoService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.prevision-consumo.alfa:0.3}")
+    private BigDecimal alfa;
+
+    @Value("${app.prevision-consumo.hora-corte:6}")
+    private int horaCorte;
+
+    @Value("${app.prevision-consumo.max-dias-agotamiento:60}")
+    private int maxDiasAgotamiento;
+
+    /** Consumo confirmado pendiente de volcar a consumo_jornada */
+    private final Map<ConsumoJornada, BigDecimal> pendientes = new ConcurrentHashMap<>();
+
+    private record ConsumoJornada(Long productoId, LocalDate fecha) {
+    }
+
+    private record FilaPrevision(Long productoId, String codigo, String nombre, String unidadMedida, Long proveedorId,
+                                 BigDecimal stockActual, BigDecimal stockMinimo, BigDecimal stockMaximo,
+                                 Integer diaSemana, BigDecimal tasa) {
+    }
+
+    /**
+     * Acumula el consumo de una venta o consumo ya confirmado
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onConsumoRegistrado(ConsumoRegistradoEvent event) {
+        LocalDate fecha = jornada(event.fecha() != null ? event.fecha() : LocalDateTime.now());
+        event.cantidades().forEach((productoId, cantidad) -> {
+            if (productoId != null && cantidad != null && cantidad.signum() != 0) {
+                pendientes.merge(new ConsumoJornada(productoId, fecha), cantidad, BigDecimal::add);
+            }
+        });
+    }
+
+    /**
+     * Vuelca a consumo_jornada el consumo acumulado desde la última pasada
+     */
+    @Scheduled(fixedDelayString = "${app.prevision-consumo.flush-ms:10000}")
+    public void volcarPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        Map<ConsumoJornada, BigDecimal> lote = new HashMap<>();
+        for (ConsumoJornada clave : new ArrayList<>(pendientes.keySet())) {
+            BigDecimal cantidad = pendientes.remove(clave);
+            if (cantidad != null) {
+                lote.put(clave, cantidad);
+            }
+        }
+
+        MapSqlParameterSource[] filas = lote.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("productoId", e.getKey().productoId())
+                        .addValue("fecha", Date.valueOf(e.getKey().fecha()))
+                        .addValue("cantidad", e.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        try {
+            // En una transacción: con autocommit desactivado en el pool, fuera de ella se perdería
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "INSERT INTO consumo_jornada (producto_id, fecha, cantidad) " +
+                    "SELECT :productoId, CAST(:fecha AS DATE), :cantidad " +
+                    "WHERE EXISTS (SELECT 1 FROM productos WHERE id = :productoId) " +
+                    "ON CONFLICT (producto_id, fecha) DO UPDATE SET cantidad = consumo_jornada.cantidad + EXCLUDED.cantidad",
+                    filas));
+        } catch (RuntimeException e) {
+            // Se reintentan en la siguiente pasada
+            lote.forEach((clave, cantidad) -> pendientes.merge(clave, cantidad, BigDecimal::add));
+            throw e;
+        }
+    }
+
+    /**
+     * Vuelca lo pendiente al parar la instancia para no perder el consumo acumulado
+     */
+    @PreDestroy
+    void detener() {
+        try {
+            volcarPendientes();
+        } catch (RuntimeException e) {
+            log.error("No se pudo volcar el consumo pendiente al parar: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Pliega en la previsión las jornadas ya cerradas
+     */
+    @Scheduled(cron = "${app.prevision-consumo.cierre-cron:0 30 * * * *}")
+    public void cerrarJornadas() {
+        volcarPendientes();
+
+        LocalDate jornadaActual = jornada(LocalDateTime.now());
+        List<LocalDate> fechas = jdbcTemplate.queryForList(
+                "SELECT DISTINCT fecha FROM consumo_jornada WHERE fecha < :actual ORDER BY fecha",
+                new MapSqlParameterSource("actual", Date.valueOf(jornadaActual)),
+                Date.class).stream()
+                .map(Date::toLocalDate)
+                .toList();
+
+        for (LocalDate fecha : fechas) {
+            Integer productos = transactionTemplate.execute(status -> plegarJornada(fecha));
+            if (productos != null && productos > 0) {
+                log.info("Previsión de consumo: jornada {} plegada ({} productos con consumo)", fecha, productos);
+            }
+        }
+    }
+
+    /**
+     * Actualiza las tasas del día de la semana de la jornada con su consumo.
+     * El DELETE ... RETURNING hace que, con varias instancias, solo una la pliegue.
+     */
+    private int plegarJornada(LocalDate fecha) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fecha", Date.valueOf(fecha))
+                .addValue("dia", fecha.getDayOfWeek().getValue())
+                .addValue("alfa", alfa);
+
+        List<MapSqlParameterSource> consumos = jdbcTemplate.query(
+                "DELETE FROM consumo_jornada WHERE fecha = :fecha RETURNING producto_id, cantidad",
+                params,
+                (rs, i) -> new MapSqlParameterSource(params.getValues())
+                        .addValue("productoId", rs.getLong("producto_id"))
+                        .addValue("cantidad", rs.getBigDecimal("cantidad")));
+        if (consumos.isEmpty()) {
+            return 0;
+        }
+
+        // Productos sin consumo en la jornada: la tasa decae hacia cero
+        List<Object> vendidos = consumos.stream().map(c -> c.getValue("productoId")).toList();
+        jdbcTemplate.update(
+                "UPDATE consumo_previsiones " +
+                "SET tasa = (1 - :alfa) * tasa, observaciones = observaciones + 1, " +
+                "    ultima_jornada = :fecha, actualizado_en = CURRENT_TIMESTAMP " +
+                "WHERE dia_semana = :dia AND ultima_jornada < :fecha AND producto_id NOT IN (:vendidos)",
+                new MapSqlParameterSource(params.getValues()).addValue("vendidos", vendidos));
+
+        // Productos con consumo: primera observación, jornada nueva o consumo tardío
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO consumo_previsiones (producto_id, dia_semana, tasa, observaciones, ultima_jornada) " +
+                "VALUES (:productoId, :dia, :cantidad, 1, :fecha) " +
+                "ON CONFLICT (producto_id, dia_semana) DO UPDATE SET " +
+                "    tasa = CASE WHEN consumo_previsiones.ultima_jornada < EXCLUDED.ultima_jornada " +
+                "                THEN :alfa * EXCLUDED.tasa + (1 - :alfa) * consumo_previsiones.tasa " +
+                "                ELSE consumo_previsiones.tasa + :alfa * EXCLUDED.tasa END, " +
+                "    observaciones = consumo_previsiones.observaciones + " +
+                "        CASE WHEN consumo_previsiones.ultima_jornada < EXCLUDED.ultima_jornada THEN 1 ELSE 0 END, " +
+                "    ultima_jornada = GREATEST(consumo_previsiones.ultima_jornada, EXCLUDED.ultima_jornada), " +
+                "    actualizado_en = CURRENT_TIMESTAMP",
+                consumos.toArray(MapSqlParameterSource[]::new));
+
+        return consumos.size();
+    }
+
+    /**
+     * Previsión de los productos activos con historial de consumo, los que antes se
+     * agotan primero
+     */
+    @Transactional(readOnly = true)
+    public List<PrevisionConsumoDTO> getPrevisiones(Long proveedorId, int horizonteDias) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String filtro = "";
+        if (proveedorId != null) {
+            filtro = "AND p.proveedor_id = :proveedorId ";
+            params.addValue("proveedorId", proveedorId);
+        }
+        List<FilaPrevision> filas = jdbcTemplate.query(
+                "SELECT p.id, p.codigo, p.nombre, p.unidad_medida, p.proveedor_id, p.stock_actual, p.stock_minimo, " +
+                "       p.stock_maximo, cp.dia_semana, cp.tasa " +
+                "FROM productos p " +
+                "JOIN consumo_previsiones cp ON cp.producto_id = p.id " +
+                "WHERE p.activo " + filtro +
+                "ORDER BY p.id",
+                params,
+                (rs, i) -> mapFila(rs));
+
+        return calcular(filas, horizonteDias).stream()
+                .sorted(Comparator.comparing(PrevisionConsumoDTO::getDiasHastaAgotarse,
+                        Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    /**
+     * Previsión de un producto (con consumo cero si aún no hay historial)
+     */
+    @Transactional(readOnly = true)
+    public PrevisionConsumoDTO getPrevision(Long productoId, int horizonteDias) {
+        List<FilaPrevision> filas = jdbcTemplate.query(
+                "SELECT p.id, p.codigo, p.nombre, p.unidad_medida, p.proveedor_id, p.stock_actual, p.stock_minimo, " +
+                "       p.stock_maximo, cp.dia_semana, cp.tasa " +
+                "FROM productos p " +
+                "LEFT JOIN consumo_previsiones cp ON cp.producto_id = p.id " +
+                "WHERE p.id = :productoId",
+                new MapSqlParameterSource("productoId", productoId),
+                (rs, i) -> mapFila(rs));
+        if (filas.isEmpty()) {
+            throw new RuntimeException("Producto no encontrado con ID: " + productoId);
+        }
+        return calcular(filas, horizonteDias).get(0);
+    }
+
+    private List<PrevisionConsumoDTO> calcular(List<FilaPrevision> filas, int horizonteDias) {
+        Map<Long, List<FilaPrevision>> porProducto = new LinkedHashMap<>();
+        for (FilaPrevision fila : filas) {
+            porProducto.computeIfAbsent(fila.productoId(), id -> new ArrayList<>()).add(fila);
+        }
+
+        LocalDate hoy = jornada(LocalDateTime.now());
+        List<PrevisionConsumoDTO> previsiones = new ArrayList<>(porProducto.size());
+        for (List<FilaPrevision> producto : porProducto.values()) {
+            previsiones.add(calcularProducto(producto, hoy, horizonteDias));
+        }
+        return previsiones;
+    }
+
+    private PrevisionConsumoDTO calcularProducto(List<FilaPrevision> filas, LocalDate hoy, int horizonteDias) {
+        FilaPrevision producto = filas.get(0);
+
+        Map<DayOfWeek, BigDecimal> tasas = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek dia : DayOfWeek.values()) {
+            tasas.put(dia, BigDecimal.ZERO);
+        }
+        for (FilaPrevision fila : filas) {
+            if (fila.diaSemana() != null) {
+                tasas.put(DayOfWeek.of(fila.diaSemana()), fila.tasa().setScale(2, RoundingMode.HALF_UP));
+            }
+        }
+
+        // Consumo esperado en el horizonte, empezando por la jornada en curso
+        BigDecimal consumoPrevisto = BigDecimal.ZERO;
+        for (int d = 0; d < horizonteDias; d++) {
+            consumoPrevisto = consumoPrevisto.add(tasas.get(hoy.plusDays(d).getDayOfWeek()));
+        }
+
+        // Primera jornada en la que el stock llega a cero
+        Integer diasHastaAgotarse = null;
+        BigDecimal restante = producto.stockActual();
+        for (int d = 0; d < maxDiasAgotamiento; d++) {
+            if (restante.signum() <= 0) {
+                diasHastaAgotarse = d;
+                break;
+            }
+            restante = restante.subtract(tasas.get(hoy.plusDays(d).getDayOfWeek()));
+        }
+
+        BigDecimal cantidadSugerida = consumoPrevisto.add(producto.stockMinimo()).subtract(producto.stockActual());
+        if (producto.stockMaximo() != null) {
+            cantidadSugerida = cantidadSugerida.min(producto.stockMaximo().subtract(producto.stockActual()));
+        }
+        cantidadSugerida = cantidadSugerida.max(BigDecimal.ZERO).setScale(0, RoundingMode.CEILING);
+
+        BigDecimal consumoMedio = tasas.values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .divide(BigDecimal.valueOf(7), 2, RoundingMode.HALF_UP);
+
+        return PrevisionConsumoDTO.builder()
+                .productoId(producto.productoId())
+                .productoCodigo(producto.codigo())
+                .productoNombre(producto.nombre())
+                .unidadMedida(producto.unidadMedida())
+                .proveedorId(producto.proveedorId())
+                .stockActual(producto.stockActual())
+                .stockMinimo(producto.stockMinimo())
+                .stockMaximo(producto.stockMaximo())
+                .consumoPorDiaSemana(tasas)
+                .consumoMedioDiario(consumoMedio)
+                .horizonteDias(horizonteDias)
+                .consumoPrevisto(consumoPrevisto)
+                .cantidadSugerida(cantidadSugerida)
+                .diasHastaAgotarse(diasHastaAgotarse)
+                .fechaAgotamientoEstimada(diasHastaAgotarse != null ? hoy.plusDays(diasHastaAgotarse) : null)
+                .build();
+    }
+
+    /**
+     * Jornada a la que pertenece un instante: lo vendido de madrugada, antes de la
+     * hora de corte, cuenta para la noche anterior
+     */
+    private LocalDate jornada(LocalDateTime fecha) {
+        return fecha.minusHours(horaCorte).toLocalDate();
+    }
+
+    private static FilaPrevision mapFila(ResultSet rs) throws SQLException {
+        return new FilaPrevision(
+                rs.getLong("id"),
+                rs.getString("codigo"),
+                rs.getString("nombre"),
+                rs.getString("unidad_medida"),
+                rs.getObject("proveedor_id", Long.class),
+                rs.getBigDecimal("stock_actual"),
+                rs.getBigDecimal("stock_minimo"),
+                rs.getBigDecimal("stock_maximo"),
+                rs.getObject("dia_semana", Integer.class),
+                rs.getBigDecimal("tasa"));
+    }
+}
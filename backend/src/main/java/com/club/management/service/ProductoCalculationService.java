@@ -1,20 +1,376 @@
 package com.club.management.service;
 
+import com.club.management.entity.Producto;
 import com.club.management.entity.Producto.TipoVenta;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Servicio para cálculos económicos de productos de ocio nocturno
  * Calcula unidades teóricas, reales, ingresos y márgenes
+ *
+ * Es la única implementación de las fórmulas (sustituye al trigger
+ * calcular_economia_producto, eliminado en V045). El recálculo del catálogo carga
+ * los productos en arrays primitivos de céntimos, calcula todos los campos en una
+ * pasada (en paralelo si el catálogo es grande) y escribe en batch solo las filas
+ * cuyo resultado ha cambiado. Se ejecuta al arrancar, de modo que un cambio de
+ * presets (app.productos.presets.*) se aplica a todo el catálogo.
  */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class ProductoCalculationService {
 
+    /** Valor nulo en los arrays de céntimos */
+    private static final long NULO = Long.MIN_VALUE;
+
+    private static final byte SIN_TIPO = -1;
+    private static final byte BOTELLA = 0;
+    private static final byte COPA = 1;
+    private static final byte CHUPITO = 2;
+
+    /** margen_porcentaje es DECIMAL(5,2) */
+    private static final long MARGEN_MAXIMO = 99999;
+
+    private static final int UMBRAL_PARALELO = 4096;
+    private static final int TAMANO_LOTE = 500;
+
+    private static final String SELECT_ECONOMIA =
+            "SELECT id, tipo_venta, precio_compra, precio_venta, capacidad_ml, ml_por_servicio, factor_merma, " +
+            "       unidades_teoricas, unidades_reales, ingreso_total_estimado, beneficio_unitario, margen_porcentaje " +
+            "FROM productos";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${app.productos.presets.copa.ml-por-servicio:90}")
+    private BigDecimal copaMlPorServicio;
+
+    @Value("${app.productos.presets.copa.factor-merma:10}")
+    private BigDecimal copaFactorMerma;
+
+    @Value("${app.productos.presets.chupito.ml-por-servicio:30}")
+    private BigDecimal chupitoMlPorServicio;
+
+    @Value("${app.productos.presets.chupito.factor-merma:5}")
+    private BigDecimal chupitoFactorMerma;
+
+    /**
+     * Catálogo en columnas: un array por campo, importes en céntimos (x100)
+     */
+    private static final class Catalogo {
+        int n;
+        long[] id;
+        byte[] tipo;
+        long[] compra, venta, capacidad, ml, merma;
+        long[] teoricas, reales, ingreso, beneficio, margen;
+        long[] nTeoricas, nReales, nIngreso, nBeneficio, nMargen;
+
+        Catalogo(int capacidadInicial) {
+            int c = Math.max(capacidadInicial, 1);
+            id = new long[c];
+            tipo = new byte[c];
+            compra = new long[c];
+            venta = new long[c];
+            capacidad = new long[c];
+            ml = new long[c];
+            merma = new long[c];
+            teoricas = new long[c];
+            reales = new long[c];
+            ingreso = new long[c];
+            beneficio = new long[c];
+            margen = new long[c];
+        }
+
+        void asegurarCapacidad() {
+            if (n < id.length) {
+                return;
+            }
+            int c = id.length * 2;
+            id = Arrays.copyOf(id, c);
+            tipo = Arrays.copyOf(tipo, c);
+            compra = Arrays.copyOf(compra, c);
+            venta = Arrays.copyOf(venta, c);
+            capacidad = Arrays.copyOf(capacidad, c);
+            ml = Arrays.copyOf(ml, c);
+            merma = Arrays.copyOf(merma, c);
+            teoricas = Arrays.copyOf(teoricas, c);
+            reales = Arrays.copyOf(reales, c);
+            ingreso = Arrays.copyOf(ingreso, c);
+            beneficio = Arrays.copyOf(beneficio, c);
+            margen = Arrays.copyOf(margen, c);
+        }
+
+        void prepararResultados() {
+            nTeoricas = new long[n];
+            nReales = new long[n];
+            nIngreso = new long[n];
+            nBeneficio = new long[n];
+            nMargen = new long[n];
+        }
+
+        boolean cambiado(int i) {
+            return teoricas[i] != nTeoricas[i] || reales[i] != nReales[i] || ingreso[i] != nIngreso[i]
+                    || beneficio[i] != nBeneficio[i] || margen[i] != nMargen[i];
+        }
+    }
+
+    /**
+     * Al arrancar se recalcula todo el catálogo (presets cambiados, datos anteriores a V045)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void inicializar() {
+        recalcularCatalogo();
+    }
+
+    /**
+     * Recalcular la economía de todo el catálogo
+     *
+     * @return número de productos cuyos campos calculados han cambiado
+     */
+    @Transactional
+    public int recalcularCatalogo() {
+        long inicio = System.nanoTime();
+        Catalogo catalogo = cargar(SELECT_ECONOMIA, new MapSqlParameterSource(), contarProductos());
+        int modificados = recalcular(catalogo);
+        log.info("Economía del catálogo recalculada: {} productos, {} modificados en {} ms",
+                catalogo.n, modificados, (System.nanoTime() - inicio) / 1_000_000);
+        return modificados;
+    }
+
+    /**
+     * Recalcular la economía de un conjunto de productos
+     *
+     * @return número de productos cuyos campos calculados han cambiado
+     */
+    @Transactional
+    public int recalcularProductos(Collection<Long> productoIds) {
+        if (productoIds == null || productoIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(productoIds);
+        Catalogo catalogo = new Catalogo(ids.size());
+        for (int desde = 0; desde < ids.size(); desde += TAMANO_LOTE) {
+            cargar(catalogo, SELECT_ECONOMIA + " WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(desde, Math.min(desde + TAMANO_LOTE, ids.size()))));
+        }
+        return recalcular(catalogo);
+    }
+
+    /**
+     * Calcular los campos económicos de un producto antes de guardarlo
+     */
+    public void aplicarEconomia(Producto producto) {
+        Catalogo c = new Catalogo(1);
+        c.n = 1;
+        c.tipo[0] = codigoTipo(producto.getTipoVenta());
+        c.compra[0] = centimos(producto.getPrecioCompra());
+        c.venta[0] = centimos(producto.getPrecioVenta());
+        c.capacidad[0] = centimos(producto.getCapacidadMl());
+        c.ml[0] = centimos(producto.getMlPorServicio());
+        c.merma[0] = centimos(producto.getFactorMerma());
+        c.teoricas[0] = centimos(producto.getUnidadesTeorica());
+        c.reales[0] = centimos(producto.getUnidadesReales());
+        c.ingreso[0] = centimos(producto.getIngresoTotalEstimado());
+        c.prepararResultados();
+        calcular(c, 0, presetsMl(), presetsMerma(), new AtomicInteger());
+
+        producto.setUnidadesTeorica(decimal(c.nTeoricas[0]));
+        producto.setUnidadesReales(decimal(c.nReales[0]));
+        producto.setIngresoTotalEstimado(decimal(c.nIngreso[0]));
+        producto.setBeneficioUnitario(decimal(c.nBeneficio[0]));
+        producto.setMargenPorcentaje(decimal(c.nMargen[0]));
+    }
+
+    private int recalcular(Catalogo c) {
+        if (c.n == 0) {
+            return 0;
+        }
+        c.prepararResultados();
+        long[] presetsMl = presetsMl();
+        long[] presetsMerma = presetsMerma();
+        AtomicInteger margenesRecortados = new AtomicInteger();
+
+        IntStream indices = IntStream.range(0, c.n);
+        if (c.n >= UMBRAL_PARALELO) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> calcular(c, i, presetsMl, presetsMerma, margenesRecortados));
+
+        if (margenesRecortados.get() > 0) {
+            log.warn("{} productos con margen fuera de rango (±999.99 %): se guarda el valor límite",
+                    margenesRecortados.get());
+        }
+        return escribirCambios(c);
+    }
+
+    /**
+     * Fórmulas de un producto, en aritmética entera de céntimos con redondeo HALF_UP a 2 decimales
+     */
+    private static void calcular(Catalogo c, int i, long[] presetsMl, long[] presetsMerma,
+                                 AtomicInteger margenesRecortados) {
+        long teoricas, reales, ingreso;
+        byte tipo = c.tipo[i];
+
+        if (tipo == BOTELLA) {
+            // Botella completa: 1 unidad = 1 botella
+            teoricas = 100;
+            reales = 100;
+            ingreso = c.venta[i];
+        } else if (tipo == COPA || tipo == CHUPITO) {
+            long ml = c.ml[i] != NULO ? c.ml[i] : presetsMl[tipo];
+            long merma = c.merma[i] != NULO ? c.merma[i] : presetsMerma[tipo];
+            teoricas = c.capacidad[i] != NULO && ml > 0
+                    ? dividir(multiplicar(c.capacidad[i], 100, c, i), ml) : NULO;
+            reales = teoricas != NULO
+                    ? dividir(multiplicar(teoricas, 10000 - merma, c, i), 10000) : NULO;
+            ingreso = reales != NULO && c.venta[i] != NULO
+                    ? dividir(multiplicar(c.venta[i], reales, c, i), 100) : NULO;
+        } else {
+            // Sin tipo de venta: unidades e ingreso se conservan
+            teoricas = c.teoricas[i];
+            reales = c.reales[i];
+            ingreso = c.ingreso[i];
+        }
+
+        long beneficio = ingreso != NULO && c.compra[i] != NULO ? ingreso - c.compra[i] : NULO;
+        long margen = NULO;
+        if (beneficio != NULO && c.compra[i] > 0) {
+            margen = dividir(multiplicar(beneficio, 10000, c, i), c.compra[i]);
+            if (Math.abs(margen) > MARGEN_MAXIMO) {
+                margen = margen > 0 ? MARGEN_MAXIMO : -MARGEN_MAXIMO;
+                margenesRecortados.incrementAndGet();
+            }
+        }
+
+        c.nTeoricas[i] = teoricas;
+        c.nReales[i] = reales;
+        c.nIngreso[i] = ingreso;
+        c.nBeneficio[i] = beneficio;
+        c.nMargen[i] = margen;
+    }
+
+    private int escribirCambios(Catalogo c) {
+        List<MapSqlParameterSource> cambios = new ArrayList<>();
+        for (int i = 0; i < c.n; i++) {
+            if (c.cambiado(i)) {
+                cambios.add(new MapSqlParameterSource()
+                        .addValue("id", c.id[i])
+                        .addValue("teoricas", decimal(c.nTeoricas[i]))
+                        .addValue("reales", decimal(c.nReales[i]))
+                        .addValue("ingreso", decimal(c.nIngreso[i]))
+                        .addValue("beneficio", decimal(c.nBeneficio[i]))
+                        .addValue("margen", decimal(c.nMargen[i])));
+            }
+        }
+        for (int desde = 0; desde < cambios.size(); desde += TAMANO_LOTE) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE productos " +
+                    "SET unidades_teoricas = :teoricas, unidades_reales = :reales, " +
+                    "    ingreso_total_estimado = :ingreso, beneficio_unitario = :beneficio, " +
+                    "    margen_porcentaje = :margen " +
+                    "WHERE id = :id",
+                    cambios.subList(desde, Math.min(desde + TAMANO_LOTE, cambios.size()))
+                            .toArray(MapSqlParameterSource[]::new));
+        }
+        return cambios.size();
+    }
+
+    private int contarProductos() {
+        Integer total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM productos",
+                new MapSqlParameterSource(), Integer.class);
+        return total != null ? total : 0;
+    }
+
+    private Catalogo cargar(String sql, MapSqlParameterSource params, int capacidadInicial) {
+        Catalogo catalogo = new Catalogo(capacidadInicial);
+        cargar(catalogo, sql, params);
+        return catalogo;
+    }
+
+    private void cargar(Catalogo c, String sql, MapSqlParameterSource params) {
+        jdbcTemplate.query(sql, params, rs -> {
+            c.asegurarCapacidad();
+            int i = c.n++;
+            c.id[i] = rs.getLong("id");
+            String tipo = rs.getString("tipo_venta");
+            c.tipo[i] = tipo != null ? codigoTipo(TipoVenta.valueOf(tipo)) : SIN_TIPO;
+            c.compra[i] = centimos(rs.getBigDecimal("precio_compra"));
+            c.venta[i] = centimos(rs.getBigDecimal("precio_venta"));
+            c.capacidad[i] = centimos(rs.getBigDecimal("capacidad_ml"));
+            c.ml[i] = centimos(rs.getBigDecimal("ml_por_servicio"));
+            c.merma[i] = centimos(rs.getBigDecimal("factor_merma"));
+            c.teoricas[i] = centimos(rs.getBigDecimal("unidades_teoricas"));
+            c.reales[i] = centimos(rs.getBigDecimal("unidades_reales"));
+            c.ingreso[i] = centimos(rs.getBigDecimal("ingreso_total_estimado"));
+            c.beneficio[i] = centimos(rs.getBigDecimal("beneficio_unitario"));
+            c.margen[i] = centimos(rs.getBigDecimal("margen_porcentaje"));
+        });
+    }
+
+    private long[] presetsMl() {
+        return new long[]{NULO, centimos(copaMlPorServicio), centimos(chupitoMlPorServicio)};
+    }
+
+    private long[] presetsMerma() {
+        return new long[]{0, centimos(copaFactorMerma), centimos(chupitoFactorMerma)};
+    }
+
+    private static byte codigoTipo(TipoVenta tipoVenta) {
+        if (tipoVenta == null) {
+            return SIN_TIPO;
+        }
+        return switch (tipoVenta) {
+            case BOTELLA -> BOTELLA;
+            case COPA -> COPA;
+            case CHUPITO -> CHUPITO;
+        };
+    }
+
+    private static long centimos(BigDecimal valor) {
+        return valor != null ? valor.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : NULO;
+    }
+
+    private static BigDecimal decimal(long centimos) {
+        return centimos != NULO ? BigDecimal.valueOf(centimos, 2) : null;
+    }
+
+    /** División entera con redondeo HALF_UP (como ROUND de PostgreSQL) */
+    private static long dividir(long a, long b) {
+        long q = a / b;
+        long r = a % b;
+        if (Math.abs(r) * 2 >= Math.abs(b)) {
+            q += (a < 0) == (b < 0) ? 1 : -1;
+        }
+        return q;
+    }
+
+    private static long multiplicar(long a, long b, Catalogo c, int i) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Valores fuera de rango en el producto " + c.id[i], e);
+        }
+    }
+
     /**
      * Calcular todas las métricas económicas de un producto
      *
@@ -53,55 +409,34 @@ public class ProductoCalculationService {
         resultado.put("mlPorServicio", mlPorServicio);
         resultado.put("factorMerma", factorMerma);
 
-        // Calcular según tipo de venta
-        BigDecimal unidadesTeorica, unidadesReales, ingresoTotal, beneficio, margen;
-
-        if (tipoVenta == TipoVenta.BOTELLA) {
-            // Botella completa: 1 unidad = 1 botella
-            unidadesTeorica = BigDecimal.ONE;
-            unidadesReales = BigDecimal.ONE;
-            ingresoTotal = precioVenta;
-
-        } else {
-            // COPA o CHUPITO: calcular servicios por botella
-            if (mlPorServicio.compareTo(BigDecimal.ZERO) == 0) {
-                throw new IllegalArgumentException("ml_por_servicio no puede ser 0 para tipo " + tipoVenta);
-            }
-
-            // Unidades teóricas = capacidad_ml / ml_por_servicio
-            unidadesTeorica = capacidadMl.divide(mlPorServicio, 2, RoundingMode.HALF_UP);
-
-            // Unidades reales = teóricas × (1 - merma/100)
-            BigDecimal factorReal = BigDecimal.ONE.subtract(
-                    factorMerma.divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP)
-            );
-            unidadesReales = unidadesTeorica.multiply(factorReal).setScale(2, RoundingMode.HALF_UP);
-
-            // Ingreso total = precio_venta × unidades_reales
-            ingresoTotal = precioVenta.multiply(unidadesReales).setScale(2, RoundingMode.HALF_UP);
+        if (tipoVenta != TipoVenta.BOTELLA && mlPorServicio.compareTo(BigDecimal.ZERO) == 0) {
+            throw new IllegalArgumentException("ml_por_servicio no puede ser 0 para tipo " + tipoVenta);
         }
 
-        // Beneficio = ingreso_total - precio_compra
-        beneficio = ingresoTotal.subtract(precioCompra).setScale(2, RoundingMode.HALF_UP);
+        // Mismas fórmulas que el recálculo del catálogo
+        Producto producto = new Producto();
+        producto.setTipoVenta(tipoVenta);
+        producto.setPrecioCompra(precioCompra);
+        producto.setPrecioVenta(precioVenta);
+        producto.setCapacidadMl(capacidadMl);
+        producto.setMlPorServicio(mlPorServicio);
+        producto.setFactorMerma(factorMerma);
+        aplicarEconomia(producto);
 
-        // Margen % = (beneficio / precio_compra) × 100
-        if (precioCompra.compareTo(BigDecimal.ZERO) > 0) {
-            margen = beneficio.divide(precioCompra, 4, RoundingMode.HALF_UP)
-                    .multiply(BigDecimal.valueOf(100))
-                    .setScale(2, RoundingMode.HALF_UP);
-        } else {
-            margen = BigDecimal.ZERO;
-        }
+        BigDecimal unidadesReales = producto.getUnidadesReales();
+        BigDecimal ingresoTotal = producto.getIngresoTotalEstimado();
 
         // Añadir resultados
-        resultado.put("unidadesTeorica", unidadesTeorica);
+        resultado.put("unidadesTeorica", producto.getUnidadesTeorica());
         resultado.put("unidadesReales", unidadesReales);
         resultado.put("ingresoTotalEstimado", ingresoTotal);
-        resultado.put("beneficioUnitario", beneficio);
-        resultado.put("margenPorcentaje", margen);
+        resultado.put("beneficioUnitario", producto.getBeneficioUnitario());
+        resultado.put("margenPorcentaje", producto.getMargenPorcentaje() != null
+                ? producto.getMargenPorcentaje() : BigDecimal.ZERO);
 
         // Añadir métricas adicionales útiles
-        BigDecimal precioPorServicio = unidadesReales.compareTo(BigDecimal.ZERO) > 0
+        BigDecimal precioPorServicio = unidadesReales != null && ingresoTotal != null
+                && unidadesReales.compareTo(BigDecimal.ZERO) > 0
                 ? ingresoTotal.divide(unidadesReales, 2, RoundingMode.HALF_UP)
                 : BigDecimal.ZERO;
         resultado.put("precioPromedioServicio", precioPorServicio);
@@ -114,8 +449,8 @@ public class ProductoCalculationService {
      */
     public BigDecimal getPresetMlPorServicio(TipoVenta tipoVenta) {
         return switch (tipoVenta) {
-            case COPA -> BigDecimal.valueOf(90);      // 6 segundos
-            case CHUPITO -> BigDecimal.valueOf(30);   // 2 segundos
+            case COPA -> copaMlPorServicio;           // 6 segundos (90 ml por defecto)
+            case CHUPITO -> chupitoMlPorServicio;     // 2 segundos (30 ml por defecto)
             case BOTELLA -> null;                     // No aplica
         };
     }
@@ -125,8 +460,8 @@ public class ProductoCalculationService {
      */
     public BigDecimal getPresetFactorMerma(TipoVenta tipoVenta) {
         return switch (tipoVenta) {
-            case COPA -> BigDecimal.valueOf(10);      // 10% merma
-            case CHUPITO -> BigDecimal.valueOf(5);    // 5% merma
+            case COPA -> copaFactorMerma;             // 10% merma por defecto
+            case CHUPITO -> chupitoFactorMerma;       // 5% merma por defecto
             case BOTELLA -> BigDecimal.ZERO;          // 0% merma
         };
     }
@@ -0,0 +1,553 @@
+package com.club.management.service;
+
+import com.club.management.dto.response.ImportacionProductosResultadoDTO;
+import com.club.management.dto.response.ImportacionProductosResultadoDTO.ErrorFilaDTO;
+import com.club.management.entity.Producto.TipoVenta;
+import com.club.management.repository.ProveedorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.SqlArrayValue;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Importación masiva de productos desde CSV o XLSX (catálogos de proveedor).
+ *
+ * - Lectura en streaming: CSV carácter a carácter (separador ';', ',' o tabulador,
+ *   detectado en la cabecera) y XLSX con el modelo de eventos de POI, sin cargar el
+ *   libro en memoria.
+ * - Validación completa en memoria antes de escribir: si alguna fila es inválida
+ *   no se importa nada y se devuelven los errores por fila.
+ * - Upsert por código en batches JDBC. En los productos existentes solo se
+ *   sobrescriben las columnas presentes en el archivo y nunca el stock actual.
+ * - La economía (unidades, ingreso, beneficio, margen) se calcula al final para todo
+ *   el lote con ProductoCalculationService.recalcularProductos.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductoImportService {
+
+    private static final int TAMANO_LOTE = 500;
+    private static final int MAX_ERRORES = 200;
+
+    /** Columnas importables (nombre en productos) */
+    private static final List<String> COLUMNAS = List.of(
+            "codigo", "nombre", "descripcion", "categoria", "unidad_medida",
+            "precio_compra", "precio_venta", "stock_actual", "stock_minimo", "stock_maximo",
+            "activo", "perecedero", "dias_caducidad", "notas",
+            "capacidad_ml", "tipo_venta", "ml_por_servicio", "factor_merma");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ProveedorRepository proveedorRepository;
+    private final ProductoCalculationService calculationService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.productos.importacion.max-filas:10000}")
+    private int maxFilas;
+
+    @FunctionalInterface
+    private interface ManejadorFila {
+        void fila(int numero, List<String> valores);
+    }
+
+    @Transactional
+    public ImportacionProductosResultadoDTO importar(MultipartFile archivo, Long proveedorId) {
+        if (archivo == null || archivo.isEmpty()) {
+            throw new RuntimeException("El archivo está vacío");
+        }
+        if (proveedorId != null && !proveedorRepository.existsById(proveedorId)) {
+            throw new RuntimeException("Proveedor no encontrado");
+        }
+
+        // 1. Lectura y validación en memoria
+        Lectura lectura = new Lectura(proveedorId);
+        String nombre = archivo.getOriginalFilename() != null
+                ? archivo.getOriginalFilename().toLowerCase(Locale.ROOT) : "";
+        try (InputStream in = archivo.getInputStream()) {
+            if (nombre.endsWith(".xlsx")) {
+                leerXlsx(in, lectura::fila);
+            } else if (nombre.endsWith(".csv") || nombre.endsWith(".txt")) {
+                leerCsv(in, lectura::fila);
+            } else {
+                throw new RuntimeException("Formato no soportado: usa CSV o XLSX");
+            }
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new RuntimeException("No se pudo leer el archivo: " + e.getMessage(), e);
+        }
+        if (lectura.indices == null) {
+            throw new RuntimeException("El archivo no tiene cabecera");
+        }
+
+        if (!lectura.errores.isEmpty() || lectura.filas.isEmpty()) {
+            return ImportacionProductosResultadoDTO.builder()
+                    .filasLeidas(lectura.leidas)
+                    .creados(0)
+                    .actualizados(0)
+                    .errores(lectura.errores)
+                    .build();
+        }
+
+        // 2. Upsert por código en batches
+        MapSqlParameterSource porCodigos = new MapSqlParameterSource("codigos",
+                new SqlArrayValue("varchar", lectura.codigos.toArray()));
+        Set<String> existentes = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT codigo FROM productos WHERE codigo = ANY(:codigos)", porCodigos, String.class));
+
+        String upsert = construirUpsert(lectura.indices.keySet(), proveedorId != null);
+        for (int desde = 0; desde < lectura.filas.size(); desde += TAMANO_LOTE) {
+            List<MapSqlParameterSource> lote = lectura.filas.subList(desde,
+                    Math.min(desde + TAMANO_LOTE, lectura.filas.size()));
+            jdbcTemplate.batchUpdate(upsert, lote.toArray(MapSqlParameterSource[]::new));
+        }
+
+        // 3. Economía de todo el lote en una pasada
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM productos WHERE codigo = ANY(:codigos)", porCodigos, Long.class);
+        calculationService.recalcularProductos(ids);
+
+        eventPublisher.publishEvent(new StockModificadoEvent(ids));
+
+        int actualizados = existentes.size();
+        int creados = lectura.filas.size() - actualizados;
+        log.info("Importación de productos ({}): {} filas, {} creados, {} actualizados",
+                archivo.getOriginalFilename(), lectura.leidas, creados, actualizados);
+
+        return ImportacionProductosResultadoDTO.builder()
+                .filasLeidas(lectura.leidas)
+                .creados(creados)
+                .actualizados(actualizados)
+                .errores(List.of())
+                .build();
+    }
+
+    /**
+     * INSERT con todas las columnas; en conflicto solo se actualizan las del archivo
+     */
+    private String construirUpsert(Set<String> columnasArchivo, boolean conProveedor) {
+        Set<String> actualizar = new HashSet<>(columnasArchivo);
+        actualizar.remove("codigo");
+        actualizar.remove("stock_actual");
+        if (actualizar.contains("tipo_venta")) {
+            // Los presets dependen del tipo de venta
+            actualizar.add("ml_por_servicio");
+            actualizar.add("factor_merma");
+        }
+        if (conProveedor) {
+            actualizar.add("proveedor_id");
+        }
+
+        List<String> insertar = new ArrayList<>(COLUMNAS);
+        insertar.add("proveedor_id");
+
+        StringBuilder sql = new StringBuilder("INSERT INTO productos (")
+                .append(String.join(", ", insertar))
+                .append(", es_venta_dual, creado_en, actualizado_en) VALUES (");
+        for (String columna : insertar) {
+            sql.append(':').append(columna).append(", ");
+        }
+        sql.append("FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) ON CONFLICT (codigo) DO UPDATE SET ");
+        for (String columna : insertar) {
+            if (actualizar.contains(columna)) {
+                sql.append(columna).append(" = EXCLUDED.").append(columna).append(", ");
+            }
+        }
+        sql.append("actualizado_en = CURRENT_TIMESTAMP");
+        return sql.toString();
+    }
+
+    /**
+     * Estado de la lectura: cabecera, filas validadas y errores
+     */
+    private class Lectura {
+        private final Long proveedorId;
+        private Map<String, Integer> indices;
+        private final List<MapSqlParameterSource> filas = new ArrayList<>();
+        private final Set<String> codigos = new HashSet<>();
+        private final List<ErrorFilaDTO> errores = new ArrayList<>();
+        private int leidas;
+
+        Lectura(Long proveedorId) {
+            this.proveedorId = proveedorId;
+        }
+
+        void fila(int numero, List<String> valores) {
+            if (indices == null) {
+                cabecera(valores);
+                return;
+            }
+            if (valores.stream().allMatch(v -> v == null || v.isBlank())) {
+                return;
+            }
+            if (++leidas > maxFilas) {
+                throw new RuntimeException("El archivo supera el máximo de " + maxFilas + " filas");
+            }
+            String codigo = valor(valores, "codigo");
+            try {
+                MapSqlParameterSource fila = validar(valores, codigo);
+                if (!codigos.add(codigo)) {
+                    throw new IllegalArgumentException("Código repetido en el archivo");
+                }
+                filas.add(fila);
+            } catch (IllegalArgumentException e) {
+                if (errores.size() < MAX_ERRORES) {
+                    errores.add(ErrorFilaDTO.builder().fila(numero).codigo(codigo).mensaje(e.getMessage()).build());
+                }
+            }
+        }
+
+        private void cabecera(List<String> valores) {
+            Map<String, String> aliases = new HashMap<>();
+            for (String columna : COLUMNAS) {
+                aliases.put(normalizar(columna), columna);
+            }
+            indices = new LinkedHashMap<>();
+            for (int i = 0; i < valores.size(); i++) {
+                String columna = valores.get(i) != null ? aliases.get(normalizar(valores.get(i))) : null;
+                if (columna != null) {
+                    indices.putIfAbsent(columna, i);
+                }
+            }
+            for (String obligatoria : List.of("codigo", "nombre", "categoria")) {
+                if (!indices.containsKey(obligatoria)) {
+                    throw new RuntimeException("Falta la columna obligatoria '" + obligatoria + "'");
+                }
+            }
+        }
+
+        private MapSqlParameterSource validar(List<String> valores, String codigo) {
+            String nombre = valor(valores, "nombre");
+            String categoria = valor(valores, "categoria");
+            requerido(codigo, "codigo", 50);
+            requerido(nombre, "nombre", 200);
+            requerido(categoria, "categoria", 50);
+
+            TipoVenta tipoVenta;
+            String tipo = valor(valores, "tipo_venta");
+            try {
+                tipoVenta = tipo != null ? TipoVenta.valueOf(tipo.toUpperCase(Locale.ROOT)) : TipoVenta.BOTELLA;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Tipo de venta no válido: " + tipo);
+            }
+
+            BigDecimal capacidadMl = decimal(valores, "capacidad_ml");
+            BigDecimal mlPorServicio = decimal(valores, "ml_por_servicio");
+            BigDecimal factorMerma = decimal(valores, "factor_merma");
+            if (tipoVenta != TipoVenta.BOTELLA) {
+                if (capacidadMl == null || capacidadMl.signum() <= 0) {
+                    throw new IllegalArgumentException("capacidad_ml es obligatoria para " + tipoVenta);
+                }
+                if (mlPorServicio == null) {
+                    mlPorServicio = calculationService.getPresetMlPorServicio(tipoVenta);
+                }
+                if (mlPorServicio.signum() <= 0) {
+                    throw new IllegalArgumentException("ml_por_servicio debe ser mayor que 0");
+                }
+            }
+            if (factorMerma == null) {
+                factorMerma = calculationService.getPresetFactorMerma(tipoVenta);
+            }
+            if (factorMerma.signum() < 0 || factorMerma.compareTo(BigDecimal.valueOf(100)) > 0) {
+                throw new IllegalArgumentException("factor_merma debe estar entre 0 y 100");
+            }
+
+            String unidadMedida = valor(valores, "unidad_medida");
+            if (unidadMedida != null && unidadMedida.length() > 20) {
+                throw new IllegalArgumentException("unidad_medida no puede exceder 20 caracteres");
+            }
+            Boolean activo = booleano(valores, "activo");
+            Boolean perecedero = booleano(valores, "perecedero");
+            String diasCaducidad = valor(valores, "dias_caducidad");
+
+            return new MapSqlParameterSource()
+                    .addValue("codigo", codigo)
+                    .addValue("nombre", nombre)
+                    .addValue("descripcion", valor(valores, "descripcion"))
+                    .addValue("categoria", categoria)
+                    .addValue("unidad_medida", unidadMedida != null ? unidadMedida : "UNIDAD")
+                    .addValue("proveedor_id", proveedorId)
+                    .addValue("precio_compra", noNegativo(valores, "precio_compra", BigDecimal.ZERO))
+                    .addValue("precio_venta", noNegativo(valores, "precio_venta", BigDecimal.ZERO))
+                    .addValue("stock_actual", noNegativo(valores, "stock_actual", BigDecimal.ZERO))
+                    .addValue("stock_minimo", noNegativo(valores, "stock_minimo", BigDecimal.ZERO))
+                    .addValue("stock_maximo", noNegativo(valores, "stock_maximo", null))
+                    .addValue("activo", activo != null ? activo : Boolean.TRUE)
+                    .addValue("perecedero", perecedero != null ? perecedero : Boolean.FALSE)
+                    .addValue("dias_caducidad", entero(diasCaducidad, "dias_caducidad"))
+                    .addValue("notas", valor(valores, "notas"))
+                    .addValue("capacidad_ml", capacidadMl)
+                    .addValue("tipo_venta", tipoVenta.name())
+                    .addValue("ml_por_servicio", mlPorServicio)
+                    .addValue("factor_merma", factorMerma);
+        }
+
+        private String valor(List<String> valores, String columna) {
+            Integer i = indices.get(columna);
+            if (i == null || i >= valores.size() || valores.get(i) == null) {
+                return null;
+            }
+            String valor = valores.get(i).trim();
+            return valor.isEmpty() ? null : valor;
+        }
+
+        private BigDecimal decimal(List<String> valores, String columna) {
+            String valor = valor(valores, columna);
+            if (valor == null) {
+                return null;
+            }
+            String limpio = valor.replace("€", "").replace(" ", "");
+            if (limpio.indexOf(',') >= 0 && limpio.indexOf('.') >= 0) {
+                // El primero de los dos es el separador de miles
+                limpio = limpio.indexOf(',') < limpio.indexOf('.')
+                        ? limpio.replace(",", "")
+                        : limpio.replace(".", "").replace(',', '.');
+            } else {
+                limpio = limpio.replace(',', '.');
+            }
+            try {
+                return new BigDecimal(limpio);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(columna + " no es un número: " + valor);
+            }
+        }
+
+        private BigDecimal noNegativo(List<String> valores, String columna, BigDecimal porDefecto) {
+            BigDecimal valor = decimal(valores, columna);
+            if (valor == null) {
+                return porDefecto;
+            }
+            if (valor.signum() < 0) {
+                throw new IllegalArgumentException(columna + " no puede ser negativo");
+            }
+            return valor;
+        }
+
+        private Boolean booleano(List<String> valores, String columna) {
+            String valor = valor(valores, columna);
+            if (valor == null) {
+                return null;
+            }
+            return switch (valor.toLowerCase(Locale.ROOT)) {
+                case "1", "true", "si", "sí", "s", "x", "yes" -> true;
+                case "0", "false", "no", "n" -> false;
+                default -> throw new IllegalArgumentException(columna + " no es un valor sí/no: " + valor);
+            };
+        }
+
+        private Integer entero(String valor, String columna) {
+            if (valor == null) {
+                return null;
+            }
+            try {
+                return new BigDecimal(valor.replace(',', '.')).intValueExact();
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException(columna + " no es un número entero: " + valor);
+            }
+        }
+
+        private void requerido(String valor, String columna, int longitudMaxima) {
+            if (valor == null) {
+                throw new IllegalArgumentException(columna + " es obligatorio");
+            }
+            if (valor.length() > longitudMaxima) {
+                throw new IllegalArgumentException(columna + " no puede exceder " + longitudMaxima + " caracteres");
+            }
+        }
+    }
+
+    /**
+     * Nombre de columna comparable: "Precio compra", "precioCompra" y "precio_compra" coinciden
+     */
+    private static String normalizar(String cabecera) {
+        return cabecera.replace("\uFEFF", "")
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[\\s_\\-]", "");
+    }
+
+    // ========== LECTORES ==========
+
+    /**
+     * Lee la primera hoja de un XLSX en streaming (modelo de eventos SAX de POI)
+     */
+    private void leerXlsx(InputStream in, ManejadorFila manejador)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        try (OPCPackage paquete = OPCPackage.open(in)) {
+            XSSFReader reader = new XSSFReader(paquete);
+            ReadOnlySharedStringsTable textos = new ReadOnlySharedStringsTable(paquete);
+            XSSFReader.SheetIterator hojas = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!hojas.hasNext()) {
+                throw new RuntimeException("El libro no tiene hojas");
+            }
+            try (InputStream hoja = hojas.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, textos,
+                        new FilasXlsx(manejador), new DataFormatter(Locale.ROOT), false));
+                parser.parse(new InputSource(hoja));
+            }
+        }
+    }
+
+    private static class FilasXlsx implements SheetContentsHandler {
+        private final ManejadorFila manejador;
+        private final List<String> valores = new ArrayList<>();
+        private int columnaActual;
+
+        FilasXlsx(ManejadorFila manejador) {
+            this.manejador = manejador;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            valores.clear();
+            columnaActual = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            manejador.fila(rowNum + 1, new ArrayList<>(valores));
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int columna = cellReference != null ? new CellReference(cellReference).getCol() : columnaActual + 1;
+            while (valores.size() < columna) {
+                valores.add(null);
+            }
+            valores.add(formattedValue);
+            columnaActual = columna;
+        }
+    }
+
+    /**
+     * Lee un CSV registro a registro (RFC 4180: comillas dobles, saltos de línea
+     * dentro de comillas). El separador se detecta en la cabecera.
+     */
+    private void leerCsv(InputStream in, ManejadorFila manejador) throws IOException {
+        try (PushbackReader reader = new PushbackReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), 1)) {
+            char separador = 0;
+            int numero = 0;
+            List<String> registro;
+            while ((registro = leerRegistroCsv(reader, separador)) != null) {
+                numero++;
+                if (separador == 0) {
+                    separador = detectarSeparador(registro.get(0));
+                    registro = separar(registro.get(0), separador);
+                }
+                manejador.fila(numero, registro);
+            }
+        }
+    }
+
+    /**
+     * Siguiente registro; con separador 0 devuelve la línea completa sin separar
+     */
+    private static List<String> leerRegistroCsv(PushbackReader reader, char separador) throws IOException {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        boolean leido = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            leido = true;
+            if (entreComillas) {
+                if (c == '"') {
+                    int siguiente = reader.read();
+                    if (siguiente == '"') {
+                        campo.append('"');
+                    } else {
+                        entreComillas = false;
+                        if (siguiente != -1) {
+                            reader.unread(siguiente);
+                        }
+                    }
+                } else {
+                    campo.append((char) c);
+                }
+            } else if (c == '"' && separador != 0) {
+                entreComillas = true;
+            } else if (separador != 0 && c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                campo.append((char) c);
+            }
+        }
+        if (!leido) {
+            return null;
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private static char detectarSeparador(String cabecera) {
+        long puntoYComa = cabecera.chars().filter(ch -> ch == ';').count();
+        long tabuladores = cabecera.chars().filter(ch -> ch == '\t').count();
+        long comas = cabecera.chars().filter(ch -> ch == ',').count();
+        if (puntoYComa >= comas && puntoYComa >= tabuladores && puntoYComa > 0) {
+            return ';';
+        }
+        return tabuladores > comas ? '\t' : ',';
+    }
+
+    private static List<String> separar(String linea, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (c == '"') {
+                if (entreComillas && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreComillas = !entreComillas;
+                }
+            } else if (c == separador && !entreComillas) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+}
@@ -7,6 +7,7 @@ import com.club.management.entity.Proveedor;
 import com.club.management.repository.ProductoRepository;
 import com.club.management.repository.ProveedorRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +20,8 @@ public class ProductoService {
 
     private final ProductoRepository productoRepository;
     private final ProveedorRepository proveedorRepository;
+    private final ProductoCalculationService calculationService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public List<ProductoDTO> getAllProductos() {
@@ -62,7 +65,9 @@ public class ProductoService {
 
         Producto producto = new Producto();
         mapearDatosProducto(producto, formData);
+        calculationService.aplicarEconomia(producto);
         Producto saved = productoRepository.save(producto);
+        eventPublisher.publishEvent(StockModificadoEvent.of(saved.getId()));
         return toDTO(saved);
     }
 
@@ -79,7 +84,9 @@ public class ProductoService {
         }
 
         mapearDatosProducto(producto, formData);
+        calculationService.aplicarEconomia(producto);
         Producto updated = productoRepository.save(producto);
+        eventPublisher.publishEvent(StockModificadoEvent.of(updated.getId()));
         return toDTO(updated);
     }
 
@@ -89,6 +96,7 @@ public class ProductoService {
                 .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
         producto.setActivo(false);
         productoRepository.save(producto);
+        eventPublisher.publishEvent(StockModificadoEvent.of(producto.getId()));
     }
 
     private void mapearDatosProducto(Producto producto, ProductoFormData formData) {
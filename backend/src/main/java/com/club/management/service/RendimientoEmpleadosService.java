@@ -0,0 +1,247 @@
+package com.club.management.service;
+
+import com.club.management.dto.response.RendimientoEmpleadoDTO;
+import com.club.management.dto.response.RendimientoEmpleadoMesDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rendimiento de empleados a partir de la matriz empleado × mes (V050).
+ *
+ * rendimiento_empleado_mes guarda por empleado y mes las jornadas, horas, importe,
+ * lo pagado y las ventas del TPV. Los triggers sobre jornadas_trabajo y ventas la
+ * mantienen al día, así que el rendimiento de uno o de todos los empleados en
+ * cualquier rango de meses se lee de unas pocas filas por empleado.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RendimientoEmpleadosService {
+
+    private static final DateTimeFormatter PERIODO_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    // Criterios de ordenación del ranking (nunca se concatena el parámetro)
+    private static final Map<String, String> ORDENES = Map.of(
+            "horas", "horas",
+            "jornadas", "jornadas",
+            "importe", "importe_jornadas",
+            "ventas", "total_ventas",
+            "numeroVentas", "num_ventas");
+
+    // Agregados del rango [desde, hasta] y pendiente de pago de todos los meses
+    private static final String SELECT_RENDIMIENTO =
+            "SELECT e.id, e.nombre, e.apellidos, " +
+            "       COALESCE(SUM(r.jornadas) FILTER (WHERE r.mes BETWEEN :desde AND :hasta), 0) AS jornadas, " +
+            "       COALESCE(SUM(r.horas) FILTER (WHERE r.mes BETWEEN :desde AND :hasta), 0) AS horas, " +
+            "       COALESCE(SUM(r.importe_jornadas) FILTER (WHERE r.mes BETWEEN :desde AND :hasta), 0) AS importe_jornadas, " +
+            "       COALESCE(SUM(r.num_ventas) FILTER (WHERE r.mes BETWEEN :desde AND :hasta), 0) AS num_ventas, " +
+            "       COALESCE(SUM(r.total_ventas) FILTER (WHERE r.mes BETWEEN :desde AND :hasta), 0) AS total_ventas, " +
+            "       COALESCE(SUM(r.jornadas - r.jornadas_pagadas), 0) AS jornadas_pendientes, " +
+            "       COALESCE(SUM(r.importe_jornadas - r.importe_pagado), 0) AS importe_pendiente ";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Rendimiento de un empleado entre dos meses (ambos incluidos)
+     */
+    @Transactional(readOnly = true)
+    public RendimientoEmpleadoDTO getRendimiento(Long empleadoId, YearMonth desde, YearMonth hasta) {
+        List<RendimientoEmpleadoDTO> filas = jdbcTemplate.query(
+                SELECT_RENDIMIENTO +
+                "FROM empleados e " +
+                "LEFT JOIN rendimiento_empleado_mes r ON r.empleado_id = e.id " +
+                "WHERE e.id = :empleadoId " +
+                "GROUP BY e.id, e.nombre, e.apellidos",
+                rango(desde, hasta).addValue("empleadoId", empleadoId),
+                (rs, i) -> mapRendimiento(rs, desde, hasta));
+
+        if (filas.isEmpty()) {
+            throw new RuntimeException("Empleado no encontrado con ID: " + empleadoId);
+        }
+        return filas.get(0);
+    }
+
+    /**
+     * Comparativa de todos los empleados con actividad entre dos meses, ordenada de
+     * mayor a menor por el criterio indicado (horas, jornadas, importe, ventas o
+     * numeroVentas)
+     */
+    @Transactional(readOnly = true)
+    public List<RendimientoEmpleadoDTO> getRanking(YearMonth desde, YearMonth hasta, String orden, Integer limite) {
+        String columna = ORDENES.get(orden != null ? orden : "horas");
+        if (columna == null) {
+            throw new RuntimeException("Criterio de ordenación no válido: " + orden);
+        }
+
+        MapSqlParameterSource params = rango(desde, hasta);
+        String sql = "SELECT * FROM (" +
+                SELECT_RENDIMIENTO +
+                "FROM rendimiento_empleado_mes r " +
+                "JOIN empleados e ON e.id = r.empleado_id " +
+                "GROUP BY e.id, e.nombre, e.apellidos" +
+                ") t " +
+                "WHERE jornadas > 0 OR num_ventas > 0 " +
+                "ORDER BY " + columna + " DESC, id";
+        if (limite != null && limite > 0) {
+            sql += " LIMIT :limite";
+            params.addValue("limite", limite);
+        }
+
+        List<RendimientoEmpleadoDTO> ranking = jdbcTemplate.query(sql, params,
+                (rs, i) -> mapRendimiento(rs, desde, hasta));
+        for (int i = 0; i < ranking.size(); i++) {
+            ranking.get(i).setPosicion(i + 1);
+        }
+        return ranking;
+    }
+
+    /**
+     * Evolución mes a mes de un empleado; los meses sin actividad salen a cero
+     */
+    @Transactional(readOnly = true)
+    public List<RendimientoEmpleadoMesDTO> getTendencia(Long empleadoId, YearMonth desde, YearMonth hasta) {
+        MapSqlParameterSource params = rango(desde, hasta).addValue("empleadoId", empleadoId);
+
+        Boolean existe = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM empleados WHERE id = :empleadoId)", params, Boolean.class);
+        if (!Boolean.TRUE.equals(existe)) {
+            throw new RuntimeException("Empleado no encontrado con ID: " + empleadoId);
+        }
+
+        return jdbcTemplate.query(
+                "SELECT to_char(m.mes, 'YYYY-MM') AS periodo, " +
+                "       COALESCE(r.jornadas, 0) AS jornadas, " +
+                "       COALESCE(r.horas, 0) AS horas, " +
+                "       COALESCE(r.importe_jornadas, 0) AS importe_jornadas, " +
+                "       COALESCE(r.importe_pagado, 0) AS importe_pagado, " +
+                "       COALESCE(r.num_ventas, 0) AS num_ventas, " +
+                "       COALESCE(r.total_ventas, 0) AS total_ventas " +
+                "FROM generate_series(CAST(:desde AS DATE), CAST(:hasta AS DATE), INTERVAL '1 month') AS m(mes) " +
+                "LEFT JOIN rendimiento_empleado_mes r " +
+                "       ON r.empleado_id = :empleadoId AND r.mes = CAST(m.mes AS DATE) " +
+                "ORDER BY m.mes",
+                params,
+                (rs, i) -> {
+                    BigDecimal importe = rs.getBigDecimal("importe_jornadas");
+                    BigDecimal pagado = rs.getBigDecimal("importe_pagado");
+                    return RendimientoEmpleadoMesDTO.builder()
+                            .periodo(rs.getString("periodo"))
+                            .jornadas(rs.getLong("jornadas"))
+                            .horas(rs.getBigDecimal("horas"))
+                            .importeJornadas(importe)
+                            .importePagado(pagado)
+                            .importePendiente(importe.subtract(pagado))
+                            .numeroVentas(rs.getLong("num_ventas"))
+                            .totalVentas(rs.getBigDecimal("total_ventas"))
+                            .build();
+                });
+    }
+
+    /**
+     * Comprueba cada noche que la matriz cuadra con jornadas y ventas (incluidas las
+     * archivadas) y la reconstruye si no
+     */
+    @Scheduled(cron = "${app.rendimiento-empleados.reconciliacion-cron:0 50 5 * * *}")
+    @Transactional
+    public void reconciliar() {
+        Map<String, Object> fila = jdbcTemplate.queryForMap(
+                "SELECT " +
+                "  (SELECT COUNT(*) FROM jornadas_trabajo) AS jornadas_origen, " +
+                "  (SELECT COALESCE(SUM(total_pago), 0) FROM jornadas_trabajo) AS importe_origen, " +
+                "  (SELECT COALESCE(SUM(total_pago) FILTER (WHERE pagado), 0) FROM jornadas_trabajo) AS pagado_origen, " +
+                "  (SELECT COALESCE(SUM(total), 0) FROM ventas) " +
+                "    + (SELECT COALESCE(SUM(total), 0) FROM ventas_resumen_diario " +
+                "       WHERE empleado_id IN (SELECT id FROM empleados)) AS ventas_origen, " +
+                "  COALESCE(SUM(jornadas), 0) AS jornadas_matriz, " +
+                "  COALESCE(SUM(importe_jornadas), 0) AS importe_matriz, " +
+                "  COALESCE(SUM(importe_pagado), 0) AS pagado_matriz, " +
+                "  COALESCE(SUM(total_ventas), 0) AS ventas_matriz " +
+                "FROM rendimiento_empleado_mes",
+                new MapSqlParameterSource());
+
+        boolean cuadra = ((Number) fila.get("jornadas_origen")).longValue()
+                == ((Number) fila.get("jornadas_matriz")).longValue()
+                && iguales(fila, "importe_origen", "importe_matriz")
+                && iguales(fila, "pagado_origen", "pagado_matriz")
+                && iguales(fila, "ventas_origen", "ventas_matriz");
+
+        if (!cuadra) {
+            log.warn("Matriz de rendimiento de empleados descuadrada ({}). Reconstruyendo...", fila);
+            reconstruir();
+        } else {
+            log.debug("Matriz de rendimiento de empleados cuadrada");
+        }
+    }
+
+    /**
+     * Reconstruye la matriz completa a partir de jornadas y ventas
+     */
+    @Transactional
+    public void reconstruir() {
+        jdbcTemplate.getJdbcTemplate().execute("SELECT reconstruir_rendimiento_empleados()");
+        log.info("Matriz de rendimiento de empleados reconstruida");
+    }
+
+    private static MapSqlParameterSource rango(YearMonth desde, YearMonth hasta) {
+        if (hasta.isBefore(desde)) {
+            throw new RuntimeException("El periodo de fin no puede ser anterior al de inicio");
+        }
+        return new MapSqlParameterSource()
+                .addValue("desde", desde.atDay(1))
+                .addValue("hasta", hasta.atDay(1));
+    }
+
+    private static boolean iguales(Map<String, Object> fila, String origen, String matriz) {
+        return ((BigDecimal) fila.get(origen)).compareTo((BigDecimal) fila.get(matriz)) == 0;
+    }
+
+    private static RendimientoEmpleadoDTO mapRendimiento(ResultSet rs, YearMonth desde, YearMonth hasta)
+            throws SQLException {
+        long jornadas = rs.getLong("jornadas");
+        BigDecimal horas = rs.getBigDecimal("horas");
+        BigDecimal importe = rs.getBigDecimal("importe_jornadas");
+
+        BigDecimal promedioHorasPorJornada = jornadas > 0
+                ? horas.divide(BigDecimal.valueOf(jornadas), 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+
+        BigDecimal promedioIngresoPorJornada = jornadas > 0
+                ? importe.divide(BigDecimal.valueOf(jornadas), 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+
+        BigDecimal precioPromedioHora = horas.compareTo(BigDecimal.ZERO) > 0
+                ? importe.divide(horas, 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+
+        return RendimientoEmpleadoDTO.builder()
+                .empleadoId(rs.getLong("id"))
+                .empleadoNombre(rs.getString("nombre") + " " + rs.getString("apellidos"))
+                .totalHorasTrabajadas(horas)
+                .totalJornadas(jornadas)
+                .totalPagado(importe)
+                .promedioHorasPorJornada(promedioHorasPorJornada)
+                .promedioIngresoPorJornada(promedioIngresoPorJornada)
+                .periodoInicio(desde.format(PERIODO_FORMATTER))
+                .periodoFin(hasta.format(PERIODO_FORMATTER))
+                .precioPromedioHora(precioPromedioHora)
+                .jornadasPendientes(rs.getLong("jornadas_pendientes"))
+                .importePendiente(rs.getBigDecimal("importe_pendiente"))
+                .numeroVentas(rs.getLong("num_ventas"))
+                .totalVentas(rs.getBigDecimal("total_ventas"))
+                .build();
+    }
+}
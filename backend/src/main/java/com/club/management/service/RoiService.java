@@ -1,10 +1,8 @@
 package com.club.management.service;
 
 import com.club.management.dto.response.RoiMetricsDTO;
-import com.club.management.entity.Transaccion.TipoTransaccion;
 import com.club.management.repository.ActivoFijoRepository;
 import com.club.management.repository.InversionInicialRepository;
-import com.club.management.repository.TransaccionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,7 +20,7 @@ public class RoiService {
 
     private final InversionInicialRepository inversionInicialRepository;
     private final ActivoFijoRepository activoFijoRepository;
-    private final TransaccionRepository transaccionRepository;
+    private final LibroDiarioService libroDiarioService;
 
     /**
      * Calcula las métricas de ROI desde el inicio hasta ahora
@@ -75,11 +73,10 @@ public class RoiService {
         // 2. Calcular valor actual de activos (todos los activos, no filtrado por periodo)
         BigDecimal valorActivosActual = calcularValorActivosActual();
 
-        // 3. Calcular ingresos totales del periodo
-        BigDecimal ingresosTotales = calcularIngresosPorPeriodo(fechaInicio, fechaFin);
-
-        // 4. Calcular gastos totales del periodo
-        BigDecimal gastosTotales = calcularGastosPorPeriodo(fechaInicio, fechaFin);
+        // 3-4. Ingresos y gastos totales del periodo (libro diario acumulado)
+        LibroDiarioService.TotalesPeriodo totales = libroDiarioService.getTotales(fechaInicio, fechaFin);
+        BigDecimal ingresosTotales = totales.getIngresos();
+        BigDecimal gastosTotales = totales.getGastos();
 
         // 5. Calcular beneficio neto acumulado
         BigDecimal beneficioNetoAcumulado = ingresosTotales.subtract(gastosTotales);
@@ -146,11 +143,7 @@ public class RoiService {
      * Obtiene la fecha más antigua de inversión inicial (fecha de apertura)
      */
     private LocalDate obtenerFechaApertura() {
-        return inversionInicialRepository.findAllByOrderByFechaDesc()
-                .stream()
-                .map(inv -> inv.getFecha())
-                .min(LocalDate::compareTo)
-                .orElse(null);
+        return inversionInicialRepository.findFechaPrimeraInversion();
     }
 
     /**
@@ -171,24 +164,6 @@ public class RoiService {
         return valor != null ? valor : BigDecimal.ZERO;
     }
 
-    /**
-     * Calcula los ingresos totales del periodo
-     */
-    private BigDecimal calcularIngresosPorPeriodo(LocalDate fechaInicio, LocalDate fechaFin) {
-        BigDecimal ingresos = transaccionRepository.sumByTipoAndFechaBetween(
-                TipoTransaccion.INGRESO, fechaInicio, fechaFin);
-        return ingresos != null ? ingresos : BigDecimal.ZERO;
-    }
-
-    /**
-     * Calcula los gastos totales del periodo
-     */
-    private BigDecimal calcularGastosPorPeriodo(LocalDate fechaInicio, LocalDate fechaFin) {
-        BigDecimal gastos = transaccionRepository.sumByTipoAndFechaBetween(
-                TipoTransaccion.GASTO, fechaInicio, fechaFin);
-        return gastos != null ? gastos : BigDecimal.ZERO;
-    }
-
     /**
      * Calcula el ROI: ((beneficioNeto - inversionTotal) / inversionTotal) × 100
      */
@@ -11,10 +11,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -29,6 +31,7 @@ public class SesionVentaService {
     private final ConsumoSesionRepository consumoRepository;
     private final EmpleadoRepository empleadoRepository;
     private final ProductoRepository productoRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public SesionVentaDTO crearSesion(SesionVentaRequest request) {
@@ -122,6 +125,9 @@ public class SesionVentaService {
                 .build();
 
         consumo = consumoRepository.save(consumo);
+        eventPublisher.publishEvent(StockModificadoEvent.of(producto.getId()));
+        eventPublisher.publishEvent(ConsumoRegistradoEvent.of(
+                producto.getId(), unidadesDeStock(producto, consumo.getCantidad()), consumo.getFechaRegistro()));
 
         // NOTA: El stock se descuenta automáticamente por el trigger descontar_stock_consumo()
         // NOTA: Los totales de la sesión se actualizan automáticamente por el trigger actualizar_totales_sesion()
@@ -204,6 +210,17 @@ public class SesionVentaService {
         }
     }
 
+    /**
+     * Cantidad en unidades de stock, como la descuenta el trigger descontar_stock_consumo()
+     */
+    private BigDecimal unidadesDeStock(Producto producto, BigDecimal cantidad) {
+        if (producto.isVentaPorServicio() && producto.getUnidadesReales() != null
+                && producto.getUnidadesReales().signum() > 0) {
+            return cantidad.divide(producto.getUnidadesReales(), 4, RoundingMode.HALF_UP);
+        }
+        return cantidad;
+    }
+
     private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         return authentication != null ? authentication.getName() : "system";
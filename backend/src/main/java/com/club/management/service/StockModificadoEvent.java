@@ -0,0 +1,17 @@
+package com.club.management.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Evento publicado cuando cambia el stock (o el stock mínimo) de uno o varios
+ * productos: ventas, consumos, movimientos, recepciones de pedidos y ediciones
+ * de producto. Lo consumen {@link AlertaStockService} e
+ * {@link InventoryStatsService} tras el commit.
+ */
+public record StockModificadoEvent(Collection<Long> productoIds) {
+
+    public static StockModificadoEvent of(Long productoId) {
+        return new StockModificadoEvent(List.of(productoId));
+    }
+}
@@ -5,6 +5,7 @@ import com.club.management.dto.response.UsuarioDTO;
 import com.club.management.entity.Usuario;
 import com.club.management.entity.Usuario.RolUsuario;
 import com.club.management.repository.UsuarioRepository;
+import com.club.management.security.TokenRevocationList;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -27,6 +28,7 @@ public class UsuarioService {
 
     private final UsuarioRepository usuarioRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenRevocationList tokenRevocationList;
 
     /**
      * Obtener todos los usuarios
@@ -120,6 +122,16 @@ public class UsuarioService {
             throw new RuntimeException("El email ya existe: " + request.getEmail());
         }
 
+        // Los access tokens llevan username y rol: revocar los emitidos si cambian
+        // los datos de acceso
+        boolean cambiaAcceso = !usuario.getUsername().equals(request.getUsername())
+                || usuario.getRol() != request.getRol()
+                || !usuario.getActivo().equals(request.getActivo())
+                || (request.getPassword() != null && !request.getPassword().isEmpty());
+        if (cambiaAcceso) {
+            tokenRevocationList.revocarUsuario(usuario.getUsername(), "ACTUALIZACION");
+        }
+
         usuario.setUsername(request.getUsername());
         usuario.setEmail(request.getEmail());
         usuario.setRol(request.getRol());
@@ -144,6 +156,7 @@ public class UsuarioService {
 
         usuario.setActivo(false);
         usuarioRepository.save(usuario);
+        tokenRevocationList.revocarUsuario(usuario.getUsername(), "DESACTIVACION");
     }
 
     /**
@@ -151,10 +164,11 @@ public class UsuarioService {
      */
     @Transactional
     public void deleteUsuarioPermanente(Long id) {
-        if (!usuarioRepository.existsById(id)) {
-            throw new RuntimeException("Usuario no encontrado con id: " + id);
-        }
-        usuarioRepository.deleteById(id);
+        Usuario usuario = usuarioRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado con id: " + id));
+
+        usuarioRepository.delete(usuario);
+        tokenRevocationList.revocarUsuario(usuario.getUsername(), "BORRADO");
     }
 
     /**
@@ -167,6 +181,7 @@ public class UsuarioService {
 
         usuario.setRol(nuevoRol);
         Usuario updatedUsuario = usuarioRepository.save(usuario);
+        tokenRevocationList.revocarUsuario(usuario.getUsername(), "CAMBIO_ROL");
         return mapToDTO(updatedUsuario);
     }
 
@@ -180,6 +195,7 @@ public class UsuarioService {
 
         usuario.setActivo(!usuario.getActivo());
         Usuario updatedUsuario = usuarioRepository.save(usuario);
+        tokenRevocationList.revocarUsuario(usuario.getUsername(), "CAMBIO_ESTADO");
         return mapToDTO(updatedUsuario);
     }
 
@@ -220,6 +236,7 @@ public class UsuarioService {
 
         usuario.setPassword(passwordEncoder.encode(tempPassword));
         usuarioRepository.save(usuario);
+        tokenRevocationList.revocarUsuario(usuario.getUsername(), "RESET_PASSWORD");
 
         return tempPassword;
     }
@@ -7,13 +7,17 @@ import com.club.management.entity.*;
 import com.club.management.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +33,10 @@ public class VentaService {
     private final EmpleadoRepository empleadoRepository;
     private final ProductoRepository productoRepository;
     private final EventoRepository eventoRepository;
+    private final ArchivoVentasService archivoVentasService;
+    private final BotellaAbiertaService botellaAbiertaService;
+    private final BotellaAbiertaRepository botellaAbiertaRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public List<VentaDTO> findAll() {
@@ -53,9 +61,15 @@ public class VentaService {
 
     @Transactional(readOnly = true)
     public List<VentaDTO> findBySesionCajaId(Long sesionCajaId) {
-        return ventaRepository.findAllBySesionCajaId(sesionCajaId).stream()
+        List<VentaDTO> ventas = ventaRepository.findAllBySesionCajaId(sesionCajaId).stream()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
+
+        // Sesiones antiguas: leer del archivo
+        if (ventas.isEmpty()) {
+            return archivoVentasService.findVentasBySesionCajaId(sesionCajaId);
+        }
+        return ventas;
     }
 
     @Transactional(readOnly = true)
@@ -67,16 +81,34 @@ public class VentaService {
 
     @Transactional(readOnly = true)
     public List<VentaDTO> findByEventoId(Long eventoId) {
-        return ventaRepository.findAllByEventoId(eventoId).stream()
+        List<VentaDTO> ventas = ventaRepository.findAllByEventoId(eventoId).stream()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
+
+        // Eventos antiguos: incluir las ventas archivadas de la noche del evento
+        List<VentaDTO> archivadas = eventoRepository.findById(eventoId)
+                .map(evento -> archivoVentasService.findVentasByEventoId(eventoId, evento.getFecha()))
+                .orElseGet(ArrayList::new);
+        if (!archivadas.isEmpty()) {
+            ventas.addAll(archivadas);
+            ventas.sort(Comparator.comparing(VentaDTO::getFecha).reversed());
+        }
+        return ventas;
     }
 
     @Transactional(readOnly = true)
     public List<VentaDTO> findEntreFechas(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        return ventaRepository.findVentasEntreFechas(fechaInicio, fechaFin).stream()
+        List<VentaDTO> ventas = ventaRepository.findVentasEntreFechas(fechaInicio, fechaFin).stream()
                 .map(this::toDTO)
                 .collect(Collectors.toList());
+
+        // Rangos antiguos: incluir ventas archivadas manteniendo el orden por fecha DESC
+        List<VentaDTO> archivadas = archivoVentasService.findVentasEntreFechas(fechaInicio, fechaFin);
+        if (!archivadas.isEmpty()) {
+            ventas.addAll(archivadas);
+            ventas.sort(Comparator.comparing(VentaDTO::getFecha).reversed());
+        }
+        return ventas;
     }
 
     /**
@@ -142,6 +174,23 @@ public class VentaService {
                     .descuento(detalleReq.getDescuento())
                     .build();
 
+            // Copas de una botella abierta en barra
+            if (BotellaAbiertaService.COPA_INDIVIDUAL.equals(detalleReq.getTipoVenta())) {
+                Map<Long, Integer> botellas = botellaAbiertaService.servirCopas(
+                        producto.getId(), detalleReq.getUbicacion(), detalleReq.getCantidad());
+                if (detalleReq.getPrecioUnitario() == null && producto.getPrecioCopa() != null) {
+                    detalle.setPrecioUnitario(producto.getPrecioCopa());
+                }
+                // Si la línea se sirvió de varias botellas, una línea por botella
+                for (DetalleVenta parte : repartirPorBotella(detalle, botellas)) {
+                    parte.validarVentaBotella();
+                    parte.validarStock();
+                    parte.calcularTotales();
+                    venta.addDetalle(parte);
+                }
+                continue;
+            }
+
             // Validar stock disponible
             detalle.validarStock();
 
@@ -160,12 +209,48 @@ public class VentaService {
 
         // 8. Guardar venta (esto dispara el trigger que crea la transacción y descuenta stock)
         Venta saved = ventaRepository.save(venta);
+        eventPublisher.publishEvent(new StockModificadoEvent(saved.getDetalles().stream()
+                .map(d -> d.getProducto().getId())
+                .collect(Collectors.toSet())));
+        eventPublisher.publishEvent(ConsumoRegistradoEvent.deVenta(saved));
 
         log.info("Venta creada exitosamente: ticket={}, total={}", saved.getNumeroTicket(), saved.getTotal());
 
         return toDTO(saved);
     }
 
+    /**
+     * Divide una línea de copas en una línea por botella de la que se sirvió, cada una
+     * con sus copas y la parte proporcional del descuento (la última se queda el resto
+     * del redondeo)
+     */
+    private List<DetalleVenta> repartirPorBotella(DetalleVenta detalle, Map<Long, Integer> botellas) {
+        BigDecimal descuento = detalle.getDescuento() != null ? detalle.getDescuento() : BigDecimal.ZERO;
+        BigDecimal descuentoRepartido = BigDecimal.ZERO;
+        List<DetalleVenta> partes = new ArrayList<>(botellas.size());
+        int restantes = botellas.size();
+        for (Map.Entry<Long, Integer> botella : botellas.entrySet()) {
+            int copas = botella.getValue();
+            BigDecimal descuentoParte = --restantes == 0
+                    ? descuento.subtract(descuentoRepartido)
+                    : descuento.multiply(BigDecimal.valueOf(copas))
+                            .divide(BigDecimal.valueOf(detalle.getCantidad()), 2, RoundingMode.HALF_UP);
+            descuentoRepartido = descuentoRepartido.add(descuentoParte);
+
+            partes.add(DetalleVenta.builder()
+                    .producto(detalle.getProducto())
+                    .cantidad(copas)
+                    .precioUnitario(detalle.getPrecioUnitario())
+                    .descuento(descuentoParte)
+                    .tipoVenta(BotellaAbiertaService.COPA_INDIVIDUAL)
+                    .esCopaIndividual(true)
+                    .copasVendidas(copas)
+                    .botellaAbierta(botellaAbiertaRepository.getReferenceById(botella.getKey()))
+                    .build());
+        }
+        return partes;
+    }
+
     /**
      * Convierte entidad a DTO
      */
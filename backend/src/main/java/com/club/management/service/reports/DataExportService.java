@@ -0,0 +1,305 @@
+package com.club.management.service.reports;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Exportación de datos en bruto (CSV / NDJSON) para herramientas de BI.
+ *
+ * - Lectura con cursor JDBC forward-only (fetch size {@link #FETCH_SIZE}) dentro de
+ *   una transacción de solo lectura: memoria constante sea cual sea el volumen.
+ * - Exportación incremental por marca de agua en orden de keyset (fecha, id): fecha
+ *   de inserción en ventas, detalle_venta y movimientos_stock, actualizado_en en
+ *   transacciones. El cliente pasa la fecha e id de la última fila recibida como
+ *   updatedSince/afterId.
+ *   El id no sirve como marca de agua: los ids no se asignan en orden de commit
+ *   (y con las secuencias agrupadas de V037 cada instancia reserva bloques), así
+ *   que una fila confirmada tarde puede tener un id menor que otro ya exportado.
+ *   La fecha tampoco es la del commit, por eso solo se exportan filas con más de
+ *   app.export.margen-segundos de antigüedad: una fila más reciente podría
+ *   tener aún por delante transacciones sin confirmar con fecha anterior.
+ * - Los borrados no se propagan, y las ventas movidas al archivo frío ya no
+ *   aparecen (se exportaron mientras estaban en caliente). Una descarga completa
+ *   posterior al archivado las omite; ReportController lo indica con la cabecera
+ *   ArchivoVentasService.CABECERA_ARCHIVADAS_HASTA.
+ */
+@Service
+@Slf4j
+public class DataExportService {
+
+    private static final int FETCH_SIZE = 1000;
+
+    public enum Dataset {
+        VENTAS(
+                "SELECT v.id, v.numero_ticket, v.fecha, v.sesion_caja_id, v.empleado_id, v.evento_id, " +
+                "       v.metodo_pago, v.subtotal, v.descuento, v.total, v.monto_efectivo, v.monto_tarjeta, " +
+                "       v.cliente_nombre, v.created_at " +
+                "FROM ventas v ",
+                "v.id", "v.created_at"),
+        DETALLE_VENTA(
+                "SELECT d.id, d.venta_id, d.producto_id, p.codigo AS producto_codigo, p.nombre AS producto_nombre, " +
+                "       d.cantidad, d.precio_unitario, d.subtotal, d.descuento, d.total, d.tipo_venta, " +
+                "       d.es_copa_individual, d.copas_vendidas, d.descuento_pack_vip, d.created_at " +
+                "FROM detalle_venta d " +
+                "JOIN productos p ON p.id = d.producto_id ",
+                "d.id", "d.created_at"),
+        TRANSACCIONES(
+                "SELECT t.id, t.fecha, t.tipo, t.categoria_id, c.nombre AS categoria, t.evento_id, t.concepto, " +
+                "       t.descripcion, t.monto, t.metodo_pago, t.referencia, t.proveedor_id, " +
+                "       t.creado_en, t.actualizado_en " +
+                "FROM transacciones t " +
+                "JOIN categorias_transaccion c ON c.id = t.categoria_id ",
+                "t.id", "t.actualizado_en"),
+        MOVIMIENTOS_STOCK(
+                "SELECT m.id, m.fecha_movimiento, m.producto_id, p.codigo AS producto_codigo, " +
+                "       p.nombre AS producto_nombre, m.tipo_movimiento, m.cantidad, m.stock_anterior, " +
+                "       m.stock_nuevo, m.precio_unitario, m.costo_total, m.motivo, m.referencia, " +
+                "       m.evento_id, m.proveedor_id, m.usuario_id, m.creado_en " +
+                "FROM movimientos_stock m " +
+                "JOIN productos p ON p.id = m.producto_id ",
+                "m.id", "m.creado_en");
+
+        private final String select;
+        private final String idColumn;
+        private final String watermarkColumn;
+
+        Dataset(String select, String idColumn, String watermarkColumn) {
+            this.select = select;
+            this.idColumn = idColumn;
+            this.watermarkColumn = watermarkColumn;
+        }
+
+        /**
+         * Datasets de ventas, a los que les falta lo movido al archivo frío
+         */
+        public boolean isVentas() {
+            return this == VENTAS || this == DETALLE_VENTA;
+        }
+    }
+
+    public enum Formato {
+        CSV, NDJSON
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int margenSegundos;
+
+    public DataExportService(DataSource dataSource, ObjectMapper objectMapper,
+                             @Value("${app.export.margen-segundos:300}") int margenSegundos) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(FETCH_SIZE);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+        this.objectMapper = objectMapper;
+        this.margenSegundos = margenSegundos;
+    }
+
+    /**
+     * Escribe las filas del dataset en el stream indicado.
+     *
+     * @param updatedSince fecha de la última fila recibida (inserción, o modificación en transacciones)
+     * @param afterId      id de la última fila recibida; solo junto con updatedSince
+     * @param limite       máximo de filas, o null para todas
+     * @return número de filas escritas
+     */
+    @Transactional(readOnly = true)
+    public long export(Dataset dataset, Formato formato, LocalDateTime updatedSince, Long afterId,
+                       Integer limite, OutputStream out) throws IOException {
+        if (afterId != null && updatedSince == null) {
+            throw new IllegalArgumentException("afterId solo se admite junto con updatedSince");
+        }
+
+        // Solo filas con antigüedad suficiente para que no quede nada anterior sin confirmar
+        StringBuilder sql = new StringBuilder(dataset.select)
+                .append("WHERE ").append(dataset.watermarkColumn)
+                .append(" <= LOCALTIMESTAMP - :margen * INTERVAL '1 second' ");
+        MapSqlParameterSource params = new MapSqlParameterSource("margen", margenSegundos);
+
+        if (updatedSince != null) {
+            sql.append("AND (").append(dataset.watermarkColumn).append(", ").append(dataset.idColumn)
+                    .append(") > (:since, :afterId) ");
+            params.addValue("since", Timestamp.valueOf(updatedSince));
+            params.addValue("afterId", afterId != null ? afterId : 0L);
+        }
+        sql.append("ORDER BY ").append(dataset.watermarkColumn).append(", ").append(dataset.idColumn).append(" ");
+
+        if (limite != null) {
+            sql.append("LIMIT :limite");
+            params.addValue("limite", limite);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rowWriter = formato == Formato.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer, objectMapper);
+
+        long inicio = System.currentTimeMillis();
+        try {
+            jdbcTemplate.query(sql.toString(), params, rs -> {
+                try {
+                    rowWriter.write(rs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Cliente desconectado o error de escritura: se corta el cursor
+            throw e.getCause();
+        }
+        rowWriter.finish();
+        writer.flush();
+
+        log.info("Exportación {} {} (updatedSince={}, afterId={}): {} filas en {} ms",
+                dataset, formato, updatedSince, afterId, rowWriter.count, System.currentTimeMillis() - inicio);
+        return rowWriter.count;
+    }
+
+    // ===== ESCRITORES =====
+
+    private abstract static class RowWriter {
+        protected final Writer writer;
+        protected long count = 0;
+        protected String[] columnas;
+
+        RowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        void write(ResultSet rs) throws SQLException, IOException {
+            if (columnas == null) {
+                ResultSetMetaData meta = rs.getMetaData();
+                columnas = new String[meta.getColumnCount()];
+                for (int i = 0; i < columnas.length; i++) {
+                    columnas[i] = meta.getColumnLabel(i + 1);
+                }
+                header();
+            }
+            row(rs);
+            count++;
+        }
+
+        void header() throws IOException {
+        }
+
+        abstract void row(ResultSet rs) throws SQLException, IOException;
+
+        void finish() throws IOException {
+        }
+
+        /**
+         * Normaliza los tipos JDBC a valores serializables (fechas en ISO-8601)
+         */
+        protected static Object valor(ResultSet rs, int i) throws SQLException {
+            Object value = rs.getObject(i);
+            if (value instanceof Timestamp ts) {
+                return ts.toLocalDateTime().toString();
+            }
+            if (value instanceof Date date) {
+                return date.toLocalDate().toString();
+            }
+            return value;
+        }
+    }
+
+    private static class CsvRowWriter extends RowWriter {
+
+        CsvRowWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        void header() throws IOException {
+            for (int i = 0; i < columnas.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(columnas[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        void row(ResultSet rs) throws SQLException, IOException {
+            for (int i = 0; i < columnas.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = valor(rs, i + 1);
+                if (value == null) {
+                    continue;
+                }
+                String text = value instanceof BigDecimal bd ? bd.toPlainString() : value.toString();
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                    writer.write('"');
+                    writer.write(text.replace("\"", "\"\""));
+                    writer.write('"');
+                } else {
+                    writer.write(text);
+                }
+            }
+            writer.write("\r\n");
+        }
+    }
+
+    private static class NdjsonRowWriter extends RowWriter {
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+            super(writer);
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        }
+
+        @Override
+        void row(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columnas.length; i++) {
+                generator.writeFieldName(columnas[i]);
+                Object value = valor(rs, i + 1);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof BigDecimal bd) {
+                    generator.writeNumber(bd);
+                } else if (value instanceof Long l) {
+                    generator.writeNumber(l);
+                } else if (value instanceof Integer n) {
+                    generator.writeNumber(n);
+                } else if (value instanceof Boolean b) {
+                    generator.writeBoolean(b);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.flush();
+        }
+    }
+}
@@ -1,417 +1,420 @@
 package com.club.management.service.reports;
 
-import com.club.management.entity.*;
-import com.club.management.repository.*;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayOutputStream;
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 
+/**
+ * Exportación de reportes a Excel en modo streaming.
+ *
+ * - SXSSF: solo {@link #ROW_WINDOW} filas en memoria, el resto se vuelca a un
+ *   fichero temporal comprimido.
+ * - Las filas se leen con un cursor JDBC forward-only (fetch size {@link #FETCH_SIZE}),
+ *   sin materializar listas de entidades. Requiere transacción para que PostgreSQL
+ *   use un cursor real en lugar de cargar todo el resultado.
+ * - El ancho de columna se estima a partir de la longitud del texto escrito
+ *   (autoSizeColumn necesitaría todas las filas en memoria).
+ * - El libro se escribe directamente en el OutputStream recibido (normalmente el
+ *   de la respuesta HTTP), sin pasar por un byte[].
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class ExcelExportService {
 
-    private final EventoRepository eventoRepository;
-    private final TransaccionRepository transaccionRepository;
-    private final NominaRepository nominaRepository;
-    private final ProductoRepository productoRepository;
-    private final MovimientoStockRepository movimientoStockRepository;
+    private static final int ROW_WINDOW = 100;
+    private static final int FETCH_SIZE = 500;
+    private static final int MAX_COLUMN_CHARS = 60;
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
-    public byte[] exportEventos(LocalDate fechaInicio, LocalDate fechaFin) throws IOException {
-        List<Evento> eventos = eventoRepository.findByFechaBetween(fechaInicio, fechaFin.plusDays(1));
+    private final JdbcTemplate jdbcTemplate;
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Eventos");
-
-            // Estilos
-            CellStyle headerStyle = createHeaderStyle(workbook);
-            CellStyle dateStyle = createDateStyle(workbook);
-            CellStyle currencyStyle = createCurrencyStyle(workbook);
-
-            // Header
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"ID", "Nombre", "Tipo", "Fecha", "Capacidad", "Asistentes", "Ingresos Esperados", "Gastos Estimados", "Estado"};
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
-            }
-
-            // Datos
-            int rowNum = 1;
-            for (Evento evento : eventos) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(evento.getId());
-                row.createCell(1).setCellValue(evento.getNombre());
-                row.createCell(2).setCellValue(evento.getTipo().toString());
-
-                Cell dateCell = row.createCell(3);
-                dateCell.setCellValue(evento.getFecha().toString()); // LocalDate to String
-                dateCell.setCellStyle(dateStyle);
-
-                row.createCell(4).setCellValue(evento.getAforoEsperado() != null ? evento.getAforoEsperado() : 0);
-                row.createCell(5).setCellValue(evento.getAforoReal() != null ? evento.getAforoReal() : 0);
-
-                Cell ingresosCell = row.createCell(6);
-                ingresosCell.setCellValue(evento.getIngresosEstimados() != null ? evento.getIngresosEstimados().doubleValue() : 0.0);
-                ingresosCell.setCellStyle(currencyStyle);
-
-                Cell gastosCell = row.createCell(7);
-                gastosCell.setCellValue(evento.getGastosEstimados() != null ? evento.getGastosEstimados().doubleValue() : 0.0);
-                gastosCell.setCellStyle(currencyStyle);
-
-                row.createCell(8).setCellValue(evento.getEstado().toString());
-            }
-
-            // Auto-size columns
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
+    public ExcelExportService(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
 
-            workbook.write(out);
-            return out.toByteArray();
+    @Transactional(readOnly = true)
+    public void exportEventos(LocalDate fechaInicio, LocalDate fechaFin, OutputStream out) throws IOException {
+        try (StreamingSheet sheet = new StreamingSheet("Eventos",
+                "ID", "Nombre", "Tipo", "Fecha", "Capacidad", "Asistentes", "Ingresos Esperados", "Gastos Estimados", "Estado")) {
+
+            jdbcTemplate.query(
+                    "SELECT id, nombre, tipo, fecha, aforo_esperado, aforo_real, ingresos_estimados, gastos_estimados, estado " +
+                    "FROM eventos WHERE fecha BETWEEN ? AND ? ORDER BY fecha, id",
+                    rs -> {
+                        Row row = sheet.nextRow();
+                        sheet.number(row, 0, rs.getLong("id"));
+                        sheet.text(row, 1, rs.getString("nombre"));
+                        sheet.text(row, 2, rs.getString("tipo"));
+                        sheet.text(row, 3, rs.getDate("fecha").toLocalDate().toString(), sheet.dateStyle);
+                        sheet.number(row, 4, rs.getInt("aforo_esperado"));
+                        sheet.number(row, 5, rs.getInt("aforo_real"));
+                        sheet.currency(row, 6, decimalOrZero(rs, "ingresos_estimados"));
+                        sheet.currency(row, 7, decimalOrZero(rs, "gastos_estimados"));
+                        sheet.text(row, 8, rs.getString("estado"));
+                    },
+                    Date.valueOf(fechaInicio), Date.valueOf(fechaFin.plusDays(1)));
+
+            sheet.write(out);
         }
     }
 
-    public byte[] exportTransacciones(LocalDate fechaInicio, LocalDate fechaFin) throws IOException {
-        List<Transaccion> transacciones = transaccionRepository.findByFechaBetween(fechaInicio, fechaFin.plusDays(1));
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Transacciones");
-
-            CellStyle headerStyle = createHeaderStyle(workbook);
-            CellStyle dateStyle = createDateStyle(workbook);
-            CellStyle currencyStyle = createCurrencyStyle(workbook);
-
-            // Header
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"ID", "Fecha", "Tipo", "Categoría", "Concepto", "Monto", "Método Pago", "Evento", "Estado"};
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
-            }
-
-            // Datos
-            int rowNum = 1;
-            BigDecimal totalIngresos = BigDecimal.ZERO;
-            BigDecimal totalGastos = BigDecimal.ZERO;
-
-            for (Transaccion tx : transacciones) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(tx.getId());
-
-                Cell dateCell = row.createCell(1);
-                dateCell.setCellValue(tx.getFecha().format(DATE_FORMATTER));
-                dateCell.setCellStyle(dateStyle);
-
-                row.createCell(2).setCellValue(tx.getTipo().toString());
-                row.createCell(3).setCellValue(tx.getCategoria() != null ? tx.getCategoria().getNombre() : "");
-                row.createCell(4).setCellValue(tx.getConcepto());
-
-                Cell montoCell = row.createCell(5);
-                montoCell.setCellValue(tx.getMonto().doubleValue());
-                montoCell.setCellStyle(currencyStyle);
-
-                row.createCell(6).setCellValue(tx.getMetodoPago());
-                row.createCell(7).setCellValue(tx.getEvento() != null ? tx.getEvento().getNombre() : "");
-                row.createCell(8).setCellValue("-"); // Estado not in entity
-
-                if (tx.getTipo().toString().equals("INGRESO")) {
-                    totalIngresos = totalIngresos.add(tx.getMonto());
-                } else if (tx.getTipo().toString().equals("GASTO")) {
-                    totalGastos = totalGastos.add(tx.getMonto());
-                }
-            }
+    @Transactional(readOnly = true)
+    public void exportTransacciones(LocalDate fechaInicio, LocalDate fechaFin, OutputStream out) throws IOException {
+        try (StreamingSheet sheet = new StreamingSheet("Transacciones",
+                "ID", "Fecha", "Tipo", "Categoría", "Concepto", "Monto", "Método Pago", "Evento", "Estado")) {
+
+            BigDecimal[] totales = {BigDecimal.ZERO, BigDecimal.ZERO}; // ingresos, gastos
+
+            jdbcTemplate.query(
+                    "SELECT t.id, t.fecha, t.tipo, c.nombre AS categoria, t.concepto, t.monto, t.metodo_pago, " +
+                    "       e.nombre AS evento " +
+                    "FROM transacciones t " +
+                    "LEFT JOIN categorias_transaccion c ON c.id = t.categoria_id " +
+                    "LEFT JOIN eventos e ON e.id = t.evento_id " +
+                    "WHERE t.fecha BETWEEN ? AND ? " +
+                    "ORDER BY t.fecha, t.id",
+                    rs -> {
+                        Row row = sheet.nextRow();
+                        BigDecimal monto = rs.getBigDecimal("monto");
+                        String tipo = rs.getString("tipo");
+
+                        sheet.number(row, 0, rs.getLong("id"));
+                        sheet.text(row, 1, rs.getDate("fecha").toLocalDate().format(DATE_FORMATTER), sheet.dateStyle);
+                        sheet.text(row, 2, tipo);
+                        sheet.text(row, 3, rs.getString("categoria"));
+                        sheet.text(row, 4, rs.getString("concepto"));
+                        sheet.currency(row, 5, monto);
+                        sheet.text(row, 6, rs.getString("metodo_pago"));
+                        sheet.text(row, 7, rs.getString("evento"));
+                        sheet.text(row, 8, "-"); // Estado not in entity
+
+                        if ("INGRESO".equals(tipo)) {
+                            totales[0] = totales[0].add(monto);
+                        } else if ("GASTO".equals(tipo)) {
+                            totales[1] = totales[1].add(monto);
+                        }
+                    },
+                    Date.valueOf(fechaInicio), Date.valueOf(fechaFin.plusDays(1)));
 
             // Totales
-            rowNum++;
-            Row totalRow = sheet.createRow(rowNum);
-            totalRow.createCell(4).setCellValue("TOTALES:");
+            sheet.skipRow();
+            Row totalRow = sheet.nextRow();
+            sheet.text(totalRow, 4, "TOTALES:");
+            sheet.currency(totalRow, 5, totales[0]);
 
-            Cell totalIngresosCell = totalRow.createCell(5);
-            totalIngresosCell.setCellValue(totalIngresos.doubleValue());
-            totalIngresosCell.setCellStyle(currencyStyle);
+            Row gastosRow = sheet.nextRow();
+            sheet.text(gastosRow, 4, "Total Gastos:");
+            sheet.currency(gastosRow, 5, totales[1]);
 
-            rowNum++;
-            Row gastosRow = sheet.createRow(rowNum);
-            gastosRow.createCell(4).setCellValue("Total Gastos:");
-            Cell totalGastosCell = gastosRow.createCell(5);
-            totalGastosCell.setCellValue(totalGastos.doubleValue());
-            totalGastosCell.setCellStyle(currencyStyle);
+            Row balanceRow = sheet.nextRow();
+            sheet.text(balanceRow, 4, "Balance:");
+            sheet.currency(balanceRow, 5, totales[0].subtract(totales[1]));
 
-            rowNum++;
-            Row balanceRow = sheet.createRow(rowNum);
-            balanceRow.createCell(4).setCellValue("Balance:");
-            Cell balanceCell = balanceRow.createCell(5);
-            balanceCell.setCellValue(totalIngresos.subtract(totalGastos).doubleValue());
-            balanceCell.setCellStyle(currencyStyle);
-
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            workbook.write(out);
-            return out.toByteArray();
+            sheet.write(out);
         }
     }
 
-    public byte[] exportNominas(Integer mes, Integer anio) throws IOException {
+    @Transactional(readOnly = true)
+    public void exportNominas(Integer mes, Integer anio, OutputStream out) throws IOException {
         String periodo = String.format("%04d-%02d", anio, mes);
-        List<Nomina> nominas = nominaRepository.findByPeriodo(periodo);
-
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Nóminas " + mes + "-" + anio);
-
-            CellStyle headerStyle = createHeaderStyle(workbook);
-            CellStyle dateStyle = createDateStyle(workbook);
-            CellStyle currencyStyle = createCurrencyStyle(workbook);
-
-            // Header
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"ID", "Empleado", "Mes", "Año", "Salario Base", "Horas Extra", "Bonos", "Deducciones", "Salario Neto", "Estado", "Fecha Pago"};
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
-            }
-
-            // Datos
-            int rowNum = 1;
-            BigDecimal totalNeto = BigDecimal.ZERO;
-
-            for (Nomina nomina : nominas) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(nomina.getId());
-                row.createCell(1).setCellValue(nomina.getEmpleado().getNombre() + " " + nomina.getEmpleado().getApellidos());
-                row.createCell(2).setCellValue(nomina.getPeriodo());
-                row.createCell(3).setCellValue("-"); // No separate year field
-
-                Cell salarioBaseCell = row.createCell(4);
-                salarioBaseCell.setCellValue(nomina.getSalarioBase().doubleValue());
-                salarioBaseCell.setCellStyle(currencyStyle);
-
-                Cell horasExtraCell = row.createCell(5);
-                BigDecimal totalHorasExtra = nomina.getHorasExtra().multiply(nomina.getPrecioHoraExtra());
-                horasExtraCell.setCellValue(totalHorasExtra.doubleValue());
-                horasExtraCell.setCellStyle(currencyStyle);
-
-                Cell bonosCell = row.createCell(6);
-                bonosCell.setCellValue(nomina.getBonificaciones().doubleValue());
-                bonosCell.setCellStyle(currencyStyle);
-
-                Cell deduccionesCell = row.createCell(7);
-                deduccionesCell.setCellValue(nomina.getDeducciones().doubleValue());
-                deduccionesCell.setCellStyle(currencyStyle);
 
-                Cell netoCell = row.createCell(8);
-                netoCell.setCellValue(nomina.getSalarioNeto().doubleValue());
-                netoCell.setCellStyle(currencyStyle);
+        try (StreamingSheet sheet = new StreamingSheet("Nóminas " + mes + "-" + anio,
+                "ID", "Empleado", "Mes", "Año", "Salario Base", "Horas Extra", "Bonos", "Deducciones", "Salario Neto", "Estado", "Fecha Pago")) {
+
+            BigDecimal[] totalNeto = {BigDecimal.ZERO};
+
+            jdbcTemplate.query(
+                    "SELECT n.id, e.nombre, e.apellidos, n.periodo, n.salario_base, n.horas_extra, n.precio_hora_extra, " +
+                    "       n.bonificaciones, n.deducciones, n.salario_neto, n.estado, n.fecha_pago " +
+                    "FROM nominas n " +
+                    "JOIN empleados e ON e.id = n.empleado_id " +
+                    "WHERE n.periodo = ? " +
+                    "ORDER BY n.id",
+                    rs -> {
+                        Row row = sheet.nextRow();
+                        BigDecimal neto = rs.getBigDecimal("salario_neto");
+
+                        sheet.number(row, 0, rs.getLong("id"));
+                        sheet.text(row, 1, rs.getString("nombre") + " " + rs.getString("apellidos"));
+                        sheet.text(row, 2, rs.getString("periodo"));
+                        sheet.text(row, 3, "-"); // No separate year field
+                        sheet.currency(row, 4, rs.getBigDecimal("salario_base"));
+                        sheet.currency(row, 5, decimalOrZero(rs, "horas_extra").multiply(decimalOrZero(rs, "precio_hora_extra")));
+                        sheet.currency(row, 6, decimalOrZero(rs, "bonificaciones"));
+                        sheet.currency(row, 7, decimalOrZero(rs, "deducciones"));
+                        sheet.currency(row, 8, neto);
+                        sheet.text(row, 9, rs.getString("estado"));
+
+                        Date fechaPago = rs.getDate("fecha_pago");
+                        if (fechaPago != null) {
+                            sheet.text(row, 10, fechaPago.toLocalDate().format(DATE_FORMATTER), sheet.dateStyle);
+                        }
+
+                        totalNeto[0] = totalNeto[0].add(neto);
+                    },
+                    periodo);
 
-                row.createCell(9).setCellValue(nomina.getEstado());
+            // Total
+            sheet.skipRow();
+            Row totalRow = sheet.nextRow();
+            sheet.text(totalRow, 7, "TOTAL NETO:");
+            sheet.currency(totalRow, 8, totalNeto[0]);
 
-                if (nomina.getFechaPago() != null) {
-                    Cell fechaPagoCell = row.createCell(10);
-                    fechaPagoCell.setCellValue(nomina.getFechaPago().format(DATE_FORMATTER));
-                    fechaPagoCell.setCellStyle(dateStyle);
-                }
+            sheet.write(out);
+        }
+    }
 
-                totalNeto = totalNeto.add(nomina.getSalarioNeto());
-            }
+    @Transactional(readOnly = true)
+    public void exportInventario(OutputStream out) throws IOException {
+        try (StreamingSheet sheet = new StreamingSheet("Inventario",
+                "Código", "Nombre", "Categoría", "Stock Actual", "Stock Mínimo", "Unidad", "Precio Compra", "Precio Venta", "Margen %", "Valor Stock", "Proveedor", "Estado")) {
+
+            BigDecimal[] valorTotalStock = {BigDecimal.ZERO};
+
+            // Margen: mismo criterio que Producto.getMargenBeneficio()
+            jdbcTemplate.query(
+                    "SELECT p.codigo, p.nombre, p.categoria, p.stock_actual, p.stock_minimo, p.unidad_medida, " +
+                    "       p.precio_compra, p.precio_venta, p.activo, pr.nombre AS proveedor, " +
+                    "       CASE " +
+                    "           WHEN p.margen_porcentaje IS NOT NULL AND p.margen_porcentaje <> 0 THEN p.margen_porcentaje " +
+                    "           WHEN p.precio_compra = 0 THEN 0 " +
+                    "           ELSE ROUND((p.precio_venta - p.precio_compra) / p.precio_compra, 4) * 100 " +
+                    "       END AS margen " +
+                    "FROM productos p " +
+                    "LEFT JOIN proveedores pr ON pr.id = p.proveedor_id " +
+                    "ORDER BY p.id",
+                    rs -> {
+                        Row row = sheet.nextRow();
+                        BigDecimal stockActual = rs.getBigDecimal("stock_actual");
+                        BigDecimal precioCompra = rs.getBigDecimal("precio_compra");
+                        BigDecimal valorStock = precioCompra.multiply(stockActual);
+
+                        sheet.text(row, 0, rs.getString("codigo"));
+                        sheet.text(row, 1, rs.getString("nombre"));
+                        sheet.text(row, 2, rs.getString("categoria"));
+                        sheet.number(row, 3, stockActual.doubleValue());
+                        sheet.number(row, 4, rs.getBigDecimal("stock_minimo").doubleValue());
+                        sheet.text(row, 5, rs.getString("unidad_medida"));
+                        sheet.currency(row, 6, precioCompra);
+                        sheet.currency(row, 7, rs.getBigDecimal("precio_venta"));
+                        sheet.percent(row, 8, rs.getBigDecimal("margen").doubleValue() / 100);
+                        sheet.currency(row, 9, valorStock);
+                        sheet.text(row, 10, rs.getString("proveedor"));
+                        sheet.text(row, 11, rs.getBoolean("activo") ? "Activo" : "Inactivo");
+
+                        valorTotalStock[0] = valorTotalStock[0].add(valorStock);
+                    });
 
             // Total
-            rowNum++;
-            Row totalRow = sheet.createRow(rowNum);
-            totalRow.createCell(7).setCellValue("TOTAL NETO:");
-            Cell totalCell = totalRow.createCell(8);
-            totalCell.setCellValue(totalNeto.doubleValue());
-            totalCell.setCellStyle(currencyStyle);
+            sheet.skipRow();
+            Row totalRow = sheet.nextRow();
+            sheet.text(totalRow, 8, "VALOR TOTAL STOCK:");
+            sheet.currency(totalRow, 9, valorTotalStock[0]);
 
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            workbook.write(out);
-            return out.toByteArray();
+            sheet.write(out);
         }
     }
 
-    public byte[] exportInventario() throws IOException {
-        List<Producto> productos = productoRepository.findAll();
+    @Transactional(readOnly = true)
+    public void exportMovimientosStock(LocalDate fechaInicio, LocalDate fechaFin, OutputStream out) throws IOException {
+        try (StreamingSheet sheet = new StreamingSheet("Movimientos Stock",
+                "ID", "Fecha", "Producto", "Tipo", "Cantidad", "Stock Anterior", "Stock Nuevo", "Precio Unit.", "Costo Total", "Motivo", "Referencia", "Usuario")) {
+
+            jdbcTemplate.query(
+                    "SELECT m.id, m.fecha_movimiento, p.nombre AS producto, m.tipo_movimiento, m.cantidad, " +
+                    "       m.stock_anterior, m.stock_nuevo, m.precio_unitario, m.costo_total, m.motivo, " +
+                    "       m.referencia, u.username " +
+                    "FROM movimientos_stock m " +
+                    "JOIN productos p ON p.id = m.producto_id " +
+                    "LEFT JOIN usuarios u ON u.id = m.usuario_id " +
+                    "WHERE m.fecha_movimiento BETWEEN ? AND ? " +
+                    "ORDER BY m.fecha_movimiento DESC",
+                    rs -> {
+                        Row row = sheet.nextRow();
+                        sheet.number(row, 0, rs.getLong("id"));
+                        sheet.text(row, 1, rs.getTimestamp("fecha_movimiento").toLocalDateTime().format(DATETIME_FORMATTER), sheet.dateStyle);
+                        sheet.text(row, 2, rs.getString("producto"));
+                        sheet.text(row, 3, rs.getString("tipo_movimiento"));
+                        sheet.number(row, 4, rs.getBigDecimal("cantidad").doubleValue());
+                        sheet.number(row, 5, rs.getBigDecimal("stock_anterior").doubleValue());
+                        sheet.number(row, 6, rs.getBigDecimal("stock_nuevo").doubleValue());
+
+                        BigDecimal precioUnitario = rs.getBigDecimal("precio_unitario");
+                        if (precioUnitario != null) {
+                            sheet.currency(row, 7, precioUnitario);
+                        }
+
+                        BigDecimal costoTotal = rs.getBigDecimal("costo_total");
+                        if (costoTotal != null) {
+                            sheet.currency(row, 8, costoTotal);
+                        }
+
+                        sheet.text(row, 9, rs.getString("motivo"));
+                        sheet.text(row, 10, rs.getString("referencia"));
+                        sheet.text(row, 11, rs.getString("username"));
+                    },
+                    Timestamp.valueOf(fechaInicio.atStartOfDay()), Timestamp.valueOf(fechaFin.plusDays(1).atStartOfDay()));
+
+            sheet.write(out);
+        }
+    }
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Inventario");
+    private static BigDecimal decimalOrZero(ResultSet rs, String column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        return value != null ? value : BigDecimal.ZERO;
+    }
 
-            CellStyle headerStyle = createHeaderStyle(workbook);
-            CellStyle currencyStyle = createCurrencyStyle(workbook);
-            CellStyle percentStyle = createPercentStyle(workbook);
+    /**
+     * Hoja SXSSF con estilos compartidos y estimación de ancho de columnas.
+     * Cierra el libro y borra los ficheros temporales al cerrarse.
+     */
+    private static class StreamingSheet implements AutoCloseable {
+
+        private final SXSSFWorkbook workbook;
+        private final SXSSFSheet sheet;
+        private final int[] columnChars;
+        private int rowNum = 0;
+
+        private final CellStyle headerStyle;
+        private final CellStyle dateStyle;
+        private final CellStyle currencyStyle;
+        private final CellStyle percentStyle;
+
+        StreamingSheet(String name, String... headers) {
+            this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+            this.workbook.setCompressTempFiles(true);
+            this.sheet = workbook.createSheet(name);
+            this.columnChars = new int[headers.length];
+
+            this.headerStyle = createHeaderStyle(workbook);
+            this.dateStyle = createDateStyle(workbook);
+            this.currencyStyle = createCurrencyStyle(workbook);
+            this.percentStyle = createPercentStyle(workbook);
 
             // Header
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"Código", "Nombre", "Categoría", "Stock Actual", "Stock Mínimo", "Unidad", "Precio Compra", "Precio Venta", "Margen %", "Valor Stock", "Proveedor", "Estado"};
+            Row headerRow = nextRow();
             for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
+                text(headerRow, i, headers[i], headerStyle);
             }
+        }
 
-            // Datos
-            int rowNum = 1;
-            BigDecimal valorTotalStock = BigDecimal.ZERO;
-
-            for (Producto p : productos) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(p.getCodigo());
-                row.createCell(1).setCellValue(p.getNombre());
-                row.createCell(2).setCellValue(p.getCategoria());
-                row.createCell(3).setCellValue(p.getStockActual().doubleValue());
-                row.createCell(4).setCellValue(p.getStockMinimo().doubleValue());
-                row.createCell(5).setCellValue(p.getUnidadMedida());
-
-                Cell precioCompraCell = row.createCell(6);
-                precioCompraCell.setCellValue(p.getPrecioCompra().doubleValue());
-                precioCompraCell.setCellStyle(currencyStyle);
-
-                Cell precioVentaCell = row.createCell(7);
-                precioVentaCell.setCellValue(p.getPrecioVenta().doubleValue());
-                precioVentaCell.setCellStyle(currencyStyle);
-
-                Cell margenCell = row.createCell(8);
-                margenCell.setCellValue(p.getMargenBeneficio().doubleValue() / 100);
-                margenCell.setCellStyle(percentStyle);
-
-                BigDecimal valorStock = p.getPrecioCompra().multiply(p.getStockActual());
-                Cell valorStockCell = row.createCell(9);
-                valorStockCell.setCellValue(valorStock.doubleValue());
-                valorStockCell.setCellStyle(currencyStyle);
-
-                row.createCell(10).setCellValue(p.getProveedor() != null ? p.getProveedor().getNombre() : "");
-                row.createCell(11).setCellValue(p.getActivo() ? "Activo" : "Inactivo");
-
-                valorTotalStock = valorTotalStock.add(valorStock);
-            }
+        Row nextRow() {
+            return sheet.createRow(rowNum++);
+        }
 
-            // Total
+        void skipRow() {
             rowNum++;
-            Row totalRow = sheet.createRow(rowNum);
-            totalRow.createCell(8).setCellValue("VALOR TOTAL STOCK:");
-            Cell totalCell = totalRow.createCell(9);
-            totalCell.setCellValue(valorTotalStock.doubleValue());
-            totalCell.setCellStyle(currencyStyle);
+        }
 
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
+        void text(Row row, int col, String value) {
+            text(row, col, value, null);
+        }
 
-            workbook.write(out);
-            return out.toByteArray();
+        void text(Row row, int col, String value, CellStyle style) {
+            Cell cell = row.createCell(col);
+            cell.setCellValue(value != null ? value : "");
+            if (style != null) {
+                cell.setCellStyle(style);
+            }
+            track(col, value != null ? value.length() : 0);
         }
-    }
 
-    public byte[] exportMovimientosStock(LocalDate fechaInicio, LocalDate fechaFin) throws IOException {
-        List<MovimientoStock> movimientos = movimientoStockRepository.findByFechaMovimientoBetween(
-                fechaInicio.atStartOfDay(), fechaFin.plusDays(1).atStartOfDay());
+        void number(Row row, int col, double value) {
+            row.createCell(col).setCellValue(value);
+            track(col, numberChars(value));
+        }
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Movimientos Stock");
+        void currency(Row row, int col, BigDecimal value) {
+            Cell cell = row.createCell(col);
+            cell.setCellValue(value.doubleValue());
+            cell.setCellStyle(currencyStyle);
+            // "€" + separadores de miles + 2 decimales
+            track(col, numberChars(value.doubleValue()) + 5);
+        }
 
-            CellStyle headerStyle = createHeaderStyle(workbook);
-            CellStyle dateStyle = createDateStyle(workbook);
-            CellStyle currencyStyle = createCurrencyStyle(workbook);
+        void percent(Row row, int col, double value) {
+            Cell cell = row.createCell(col);
+            cell.setCellValue(value);
+            cell.setCellStyle(percentStyle);
+            track(col, numberChars(value * 100) + 4);
+        }
 
-            // Header
-            Row headerRow = sheet.createRow(0);
-            String[] headers = {"ID", "Fecha", "Producto", "Tipo", "Cantidad", "Stock Anterior", "Stock Nuevo", "Precio Unit.", "Costo Total", "Motivo", "Referencia", "Usuario"};
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
+        void write(OutputStream out) throws IOException {
+            for (int i = 0; i < columnChars.length; i++) {
+                int chars = Math.min(columnChars[i] + 2, MAX_COLUMN_CHARS);
+                sheet.setColumnWidth(i, chars * 256);
             }
+            workbook.write(out);
+            out.flush();
+            log.debug("Excel '{}' exportado: {} filas", sheet.getSheetName(), rowNum);
+        }
 
-            // Datos
-            int rowNum = 1;
-            for (MovimientoStock mov : movimientos) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(mov.getId());
-
-                Cell dateCell = row.createCell(1);
-                dateCell.setCellValue(mov.getFechaMovimiento().format(DATETIME_FORMATTER));
-                dateCell.setCellStyle(dateStyle);
-
-                row.createCell(2).setCellValue(mov.getProducto().getNombre());
-                row.createCell(3).setCellValue(mov.getTipoMovimiento());
-                row.createCell(4).setCellValue(mov.getCantidad().doubleValue());
-                row.createCell(5).setCellValue(mov.getStockAnterior().doubleValue());
-                row.createCell(6).setCellValue(mov.getStockNuevo().doubleValue());
-
-                if (mov.getPrecioUnitario() != null) {
-                    Cell precioCell = row.createCell(7);
-                    precioCell.setCellValue(mov.getPrecioUnitario().doubleValue());
-                    precioCell.setCellStyle(currencyStyle);
-                }
-
-                if (mov.getCostoTotal() != null) {
-                    Cell costoCell = row.createCell(8);
-                    costoCell.setCellValue(mov.getCostoTotal().doubleValue());
-                    costoCell.setCellStyle(currencyStyle);
-                }
-
-                row.createCell(9).setCellValue(mov.getMotivo() != null ? mov.getMotivo() : "");
-                row.createCell(10).setCellValue(mov.getReferencia() != null ? mov.getReferencia() : "");
-                row.createCell(11).setCellValue(mov.getUsuario() != null ? mov.getUsuario().getUsername() : "");
-            }
+        @Override
+        public void close() throws IOException {
+            workbook.dispose();
+            workbook.close();
+        }
 
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
+        private void track(int col, int chars) {
+            if (col < columnChars.length && chars > columnChars[col]) {
+                columnChars[col] = chars;
             }
+        }
 
-            workbook.write(out);
-            return out.toByteArray();
+        private static int numberChars(double value) {
+            return Long.toString(Math.round(Math.abs(value))).length() + (value < 0 ? 1 : 0);
         }
-    }
 
-    // Métodos auxiliares para estilos
-    private CellStyle createHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        font.setColor(IndexedColors.WHITE.getIndex());
-        style.setFont(font);
-        style.setFillForegroundColor(IndexedColors.DARK_BLUE.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        return style;
-    }
+        // Métodos auxiliares para estilos
+        private static CellStyle createHeaderStyle(Workbook workbook) {
+            CellStyle style = workbook.createCellStyle();
+            Font font = workbook.createFont();
+            font.setBold(true);
+            font.setColor(IndexedColors.WHITE.getIndex());
+            style.setFont(font);
+            style.setFillForegroundColor(IndexedColors.DARK_BLUE.getIndex());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            style.setBorderBottom(BorderStyle.THIN);
+            style.setBorderTop(BorderStyle.THIN);
+            style.setBorderLeft(BorderStyle.THIN);
+            style.setBorderRight(BorderStyle.THIN);
+            return style;
+        }
 
-    private CellStyle createDateStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
-        return style;
-    }
+        private static CellStyle createDateStyle(Workbook workbook) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+            return style;
+        }
 
-    private CellStyle createCurrencyStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setDataFormat(workbook.createDataFormat().getFormat("€#,##0.00"));
-        return style;
-    }
+        private static CellStyle createCurrencyStyle(Workbook workbook) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("€#,##0.00"));
+            return style;
+        }
 
-    private CellStyle createPercentStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setDataFormat(workbook.createDataFormat().getFormat("0.00%"));
-        return style;
+        private static CellStyle createPercentStyle(Workbook workbook) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("0.00%"));
+            return style;
+        }
     }
 }
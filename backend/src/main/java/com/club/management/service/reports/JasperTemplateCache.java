@@ -0,0 +1,171 @@
+package com.club.management.service.reports;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import net.sf.jasperreports.engine.xml.JRXmlWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de plantillas JasperReports compiladas.
+ *
+ * Cada plantilla se identifica por su tipo (nombre del diseño) y una versión
+ * calculada como SHA-256 del JRXML generado a partir del JasperDesign más la
+ * versión de JasperReports. Si el diseño cambia, cambia la versión y se recompila.
+ *
+ * Niveles:
+ * - Memoria: un JasperReport compilado por tipo durante la vida del proceso.
+ * - Disco (opcional, app.reports.template-cache-dir): ficheros {tipo}-{version}.jasper
+ *   para no recompilar en cada arranque. Las versiones obsoletas se borran.
+ *
+ * Métricas (Micrometer, tag "tipo"): reportes.pdf.compile, reportes.pdf.fill,
+ * reportes.pdf.export.
+ */
+@Component
+@Slf4j
+public class JasperTemplateCache {
+
+    @FunctionalInterface
+    public interface DesignSupplier {
+        JasperDesign get() throws JRException;
+    }
+
+    @FunctionalInterface
+    public interface JRCallable<T> {
+        T call() throws JRException;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Path cacheDir;
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    private record CompiledTemplate(String version, JasperReport report) {
+    }
+
+    public JasperTemplateCache(MeterRegistry meterRegistry,
+                               @Value("${app.reports.template-cache-dir:}") String cacheDir) {
+        this.meterRegistry = meterRegistry;
+        this.cacheDir = cacheDir == null || cacheDir.isBlank() ? null : Paths.get(cacheDir);
+    }
+
+    /**
+     * Devuelve la plantilla compilada para el tipo indicado, compilándola
+     * (o cargándola de disco) solo la primera vez.
+     */
+    public JasperReport get(String tipo, DesignSupplier designSupplier) throws JRException {
+        CompiledTemplate cached = templates.get(tipo);
+        if (cached != null) {
+            return cached.report();
+        }
+        synchronized (this) {
+            cached = templates.get(tipo);
+            if (cached == null) {
+                cached = load(tipo, designSupplier.get());
+                templates.put(tipo, cached);
+            }
+            return cached.report();
+        }
+    }
+
+    /**
+     * Versión actual de la plantilla en memoria, o null si aún no se ha compilado.
+     */
+    public String getVersion(String tipo) {
+        CompiledTemplate cached = templates.get(tipo);
+        return cached != null ? cached.version() : null;
+    }
+
+    /**
+     * Mide una fase (fill/export) de la generación de un reporte.
+     */
+    public <T> T medir(String fase, String tipo, JRCallable<T> callable) throws JRException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return callable.call();
+        } finally {
+            sample.stop(timer(fase, tipo));
+        }
+    }
+
+    private CompiledTemplate load(String tipo, JasperDesign design) throws JRException {
+        String version = fingerprint(design);
+        Path file = cacheDir != null ? cacheDir.resolve(tipo + "-" + version + ".jasper") : null;
+
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                JasperReport report = (JasperReport) JRLoader.loadObject(file.toFile());
+                log.info("Plantilla {} cargada de disco (versión {})", tipo, version);
+                return new CompiledTemplate(version, report);
+            } catch (JRException | ClassCastException e) {
+                log.warn("Plantilla {} en disco no válida, se recompila: {}", tipo, e.getMessage());
+            }
+        }
+
+        long inicio = System.nanoTime();
+        JasperReport report = medir("compile", tipo, () -> JasperCompileManager.compileReport(design));
+        log.info("Plantilla {} compilada en {} ms (versión {})", tipo, (System.nanoTime() - inicio) / 1_000_000, version);
+
+        if (file != null) {
+            guardar(tipo, file, report);
+        }
+        return new CompiledTemplate(version, report);
+    }
+
+    private void guardar(String tipo, Path file, JasperReport report) {
+        try {
+            Files.createDirectories(cacheDir);
+            // Borrar versiones anteriores del mismo tipo
+            try (DirectoryStream<Path> antiguos = Files.newDirectoryStream(cacheDir, tipo + "-*.jasper")) {
+                for (Path antiguo : antiguos) {
+                    if (!antiguo.equals(file)) {
+                        Files.deleteIfExists(antiguo);
+                    }
+                }
+            }
+            Path tmp = Files.createTempFile(cacheDir, tipo, ".tmp");
+            JRSaver.saveObject(report, tmp.toFile());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JRException e) {
+            log.warn("No se pudo guardar la plantilla {} en disco: {}", tipo, e.getMessage());
+        }
+    }
+
+    private String fingerprint(JasperDesign design) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(JRXmlWriter.writeReport(design, "UTF-8").getBytes(StandardCharsets.UTF_8));
+            String jrVersion = JasperReport.class.getPackage().getImplementationVersion();
+            digest.update(String.valueOf(jrVersion).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest()).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Timer timer(String fase, String tipo) {
+        return Timer.builder("reportes.pdf." + fase)
+                .description("Tiempo de " + fase + " de reportes PDF")
+                .tag("tipo", tipo)
+                .register(meterRegistry);
+    }
+}
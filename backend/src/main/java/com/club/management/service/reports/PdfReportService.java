@@ -2,14 +2,18 @@ package com.club.management.service.reports;
 
 import com.club.management.entity.*;
 import com.club.management.repository.*;
+import com.club.management.service.LibroDiarioService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
 import net.sf.jasperreports.engine.design.*;
 import net.sf.jasperreports.engine.type.HorizontalTextAlignEnum;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -18,15 +22,45 @@ import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class PdfReportService {
 
     private final EventoRepository eventoRepository;
     private final TransaccionRepository transaccionRepository;
     private final NominaRepository nominaRepository;
     private final ProductoRepository productoRepository;
+    private final JasperTemplateCache templateCache;
+    private final LibroDiarioService libroDiarioService;
+
+    @Value("${app.reports.precompilar:true}")
+    private boolean precompilar;
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    // Tipos de reporte (nombre del diseño, usado como clave de caché y tag de métricas)
+    private static final String NOMINAS = "NominasReport";
+    private static final String EVENTOS = "EventosReport";
+    private static final String PROFIT_LOSS = "ProfitLossReport";
+    private static final String TRANSACCIONES = "TransaccionesReport";
+
+    /**
+     * Compila (o carga de disco) todas las plantillas al arrancar para que
+     * la primera petición no pague la compilación.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void precompilarPlantillas() {
+        if (!precompilar) {
+            return;
+        }
+        for (String tipo : List.of(NOMINAS, EVENTOS, PROFIT_LOSS, TRANSACCIONES)) {
+            try {
+                templateCache.get(tipo, designFor(tipo));
+            } catch (JRException e) {
+                log.error("Error precompilando plantilla {}: {}", tipo, e.getMessage());
+            }
+        }
+    }
+
     /**
      * Genera PDF de nóminas de un mes específico
      */
@@ -34,10 +68,6 @@ public class PdfReportService {
         String periodo = String.format("%04d-%02d", anio, mes);
         List<Nomina> nominas = nominaRepository.findByPeriodo(periodo);
 
-        // Crear diseño del reporte
-        JasperDesign jasperDesign = createNominasDesign();
-        JasperReport jasperReport = JasperCompileManager.compileReport(jasperDesign);
-
         // Preparar datos
         List<Map<String, Object>> dataList = nominas.stream().map(n -> {
             Map<String, Object> map = new HashMap<>();
@@ -61,12 +91,7 @@ public class PdfReportService {
         parameters.put("totalNeto", totalNeto);
 
         // Generar PDF
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(dataList);
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        JasperExportManager.exportReportToPdfStream(jasperPrint, outputStream);
-        return outputStream.toByteArray();
+        return render(NOMINAS, dataList, parameters);
     }
 
     /**
@@ -75,9 +100,6 @@ public class PdfReportService {
     public byte[] generateEventosPdf(LocalDate fechaInicio, LocalDate fechaFin) throws JRException {
         List<Evento> eventos = eventoRepository.findByFechaBetween(fechaInicio, fechaFin.plusDays(1));
 
-        JasperDesign jasperDesign = createEventosDesign();
-        JasperReport jasperReport = JasperCompileManager.compileReport(jasperDesign);
-
         List<Map<String, Object>> dataList = eventos.stream().map(e -> {
             Map<String, Object> map = new HashMap<>();
             map.put("nombre", e.getNombre());
@@ -97,35 +119,20 @@ public class PdfReportService {
         parameters.put("periodo", fechaInicio.format(DATE_FORMATTER) + " - " + fechaFin.format(DATE_FORMATTER));
         parameters.put("fechaGeneracion", LocalDate.now().format(DATE_FORMATTER));
 
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(dataList);
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        JasperExportManager.exportReportToPdfStream(jasperPrint, outputStream);
-        return outputStream.toByteArray();
+        return render(EVENTOS, dataList, parameters);
     }
 
     /**
      * Genera PDF de P&L (Profit & Loss)
      */
     public byte[] generateProfitLossPdf(LocalDate fechaInicio, LocalDate fechaFin) throws JRException {
-        List<Transaccion> transacciones = transaccionRepository.findByFechaBetween(fechaInicio, fechaFin.plusDays(1));
-
-        BigDecimal totalIngresos = transacciones.stream()
-                .filter(t -> t.getTipo().toString().equals("INGRESO"))
-                .map(Transaccion::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        BigDecimal totalGastos = transacciones.stream()
-                .filter(t -> t.getTipo().toString().equals("GASTO"))
-                .map(Transaccion::getMonto)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // Totales del libro diario (mismo rango que el resto de reportes: fin + 1 día)
+        LibroDiarioService.TotalesPeriodo totales = libroDiarioService.getTotales(fechaInicio, fechaFin.plusDays(1));
+        BigDecimal totalIngresos = totales.getIngresos();
+        BigDecimal totalGastos = totales.getGastos();
 
         BigDecimal balance = totalIngresos.subtract(totalGastos);
 
-        JasperDesign jasperDesign = createProfitLossDesign();
-        JasperReport jasperReport = JasperCompileManager.compileReport(jasperDesign);
-
         List<Map<String, Object>> dataList = new ArrayList<>();
         Map<String, Object> resumen = new HashMap<>();
         resumen.put("concepto", "Ingresos Totales");
@@ -150,12 +157,7 @@ public class PdfReportService {
         parameters.put("totalGastos", totalGastos);
         parameters.put("balance", balance);
 
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(dataList);
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        JasperExportManager.exportReportToPdfStream(jasperPrint, outputStream);
-        return outputStream.toByteArray();
+        return render(PROFIT_LOSS, dataList, parameters);
     }
 
     /**
@@ -164,9 +166,6 @@ public class PdfReportService {
     public byte[] generateTransaccionesPdf(LocalDate fechaInicio, LocalDate fechaFin) throws JRException {
         List<Transaccion> transacciones = transaccionRepository.findByFechaBetween(fechaInicio, fechaFin.plusDays(1));
 
-        JasperDesign jasperDesign = createTransaccionesDesign();
-        JasperReport jasperReport = JasperCompileManager.compileReport(jasperDesign);
-
         List<Map<String, Object>> dataList = transacciones.stream().map(t -> {
             Map<String, Object> map = new HashMap<>();
             map.put("fecha", t.getFecha().format(DATE_FORMATTER));
@@ -183,16 +182,33 @@ public class PdfReportService {
         parameters.put("periodo", fechaInicio.format(DATE_FORMATTER) + " - " + fechaFin.format(DATE_FORMATTER));
         parameters.put("fechaGeneracion", LocalDate.now().format(DATE_FORMATTER));
 
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(dataList);
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
+        return render(TRANSACCIONES, dataList, parameters);
+    }
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        JasperExportManager.exportReportToPdfStream(jasperPrint, outputStream);
-        return outputStream.toByteArray();
+    /**
+     * Rellena la plantilla compilada del tipo indicado y la exporta a PDF
+     */
+    private byte[] render(String tipo, List<Map<String, Object>> dataList, Map<String, Object> parameters) throws JRException {
+        JasperReport jasperReport = templateCache.get(tipo, designFor(tipo));
+
+        JasperPrint jasperPrint = templateCache.medir("fill", tipo, () ->
+                JasperFillManager.fillReport(jasperReport, parameters, new JRBeanCollectionDataSource(dataList)));
+
+        return templateCache.medir("export", tipo, () -> JasperExportManager.exportReportToPdf(jasperPrint));
     }
 
     // ===== DISEÑOS DE REPORTES =====
 
+    private JasperTemplateCache.DesignSupplier designFor(String tipo) {
+        return switch (tipo) {
+            case NOMINAS -> this::createNominasDesign;
+            case EVENTOS -> this::createEventosDesign;
+            case PROFIT_LOSS -> this::createProfitLossDesign;
+            case TRANSACCIONES -> this::createTransaccionesDesign;
+            default -> throw new IllegalArgumentException("Tipo de reporte desconocido: " + tipo);
+        };
+    }
+
     private JasperDesign createNominasDesign() throws JRException {
         JasperDesign design = new JasperDesign();
         design.setName("NominasReport");
@@ -0,0 +1,515 @@
+package com.club.management.service.reports;
+
+import com.club.management.dto.request.ReportJobRequest;
+import com.club.management.dto.response.ReportJobDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cola de trabajos de generación de reportes (Excel/PDF) en segundo plano.
+ *
+ * - Pool de workers acotado (app.reports.jobs.workers) con cola por prioridad
+ *   (ALTA > NORMAL > BAJA, FIFO dentro de cada prioridad) y capacidad máxima
+ *   (app.reports.jobs.capacidad-cola). Los hilos de Tomcat solo encolan.
+ * - Los ficheros generados se guardan en disco con una clave SHA-256 de
+ *   tipo + parámetros + marca de agua de los datos (número de filas y última
+ *   modificación de las tablas implicadas). Una petición idéntica con los
+ *   mismos datos se sirve directamente del fichero existente, y si ya hay un
+ *   trabajo en curso con la misma clave se reutiliza.
+ * - El estado se consulta por polling o por SSE.
+ * - Los trabajos terminados y los ficheros caducados (app.reports.jobs.ttl-horas)
+ *   se limpian cada hora.
+ */
+@Service
+@Slf4j
+public class ReportJobService {
+
+    public enum Prioridad {
+        ALTA, NORMAL, BAJA
+    }
+
+    public enum EstadoJob {
+        PENDIENTE, EN_PROCESO, COMPLETADO, ERROR
+    }
+
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_DATE;
+    private static final long SSE_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private final ExcelExportService excelExportService;
+    private final PdfReportService pdfReportService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final Path directorio;
+    private final int capacidadCola;
+    private final Duration ttl;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong secuencia = new AtomicLong();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Job> activosPorClave = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    public ReportJobService(ExcelExportService excelExportService,
+                            PdfReportService pdfReportService,
+                            NamedParameterJdbcTemplate jdbcTemplate,
+                            @Value("${app.reports.jobs.dir:${java.io.tmpdir}/club-reports/jobs}") String directorio,
+                            @Value("${app.reports.jobs.workers:2}") int workers,
+                            @Value("${app.reports.jobs.capacidad-cola:50}") int capacidadCola,
+                            @Value("${app.reports.jobs.ttl-horas:24}") int ttlHoras) {
+        this.excelExportService = excelExportService;
+        this.pdfReportService = pdfReportService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.directorio = Paths.get(directorio);
+        this.capacidadCola = capacidadCola;
+        this.ttl = Duration.ofHours(ttlHoras);
+
+        AtomicLong hilo = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "report-worker-" + hilo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Encola un reporte. Si el fichero ya existe para los mismos parámetros y datos,
+     * el trabajo se devuelve completado; si hay uno idéntico en curso, se reutiliza.
+     *
+     * @throws IllegalArgumentException si faltan parámetros o son inválidos
+     * @throws IllegalStateException    si la cola está llena
+     */
+    public ReportJobDTO encolar(ReportJobRequest request, String usuario) {
+        TipoReporte tipo = request.getTipo();
+        Map<String, String> parametros = validarParametros(request);
+        Prioridad prioridad = parsePrioridad(request.getPrioridad());
+
+        String clave = calcularClave(tipo, parametros, calcularMarcaDeAgua(tipo, request));
+        Path fichero = directorio.resolve(clave + "." + tipo.getFormato().getExtension());
+
+        Job job;
+        synchronized (this) {
+            Job enCurso = activosPorClave.get(clave);
+            if (enCurso != null) {
+                log.debug("Reporte {} ya en curso ({}), se reutiliza", tipo, enCurso.id);
+                return toDTO(enCurso);
+            }
+
+            job = new Job(UUID.randomUUID().toString(), tipo, request, parametros, prioridad,
+                    clave, fichero, usuario, secuencia.incrementAndGet());
+            jobs.put(job.id, job);
+
+            if (Files.isRegularFile(fichero)) {
+                tocar(fichero);
+                job.desdeCache = true;
+                job.estado = EstadoJob.COMPLETADO;
+                job.iniciadoEn = job.creadoEn;
+                job.finalizadoEn = job.creadoEn;
+                log.info("Reporte {} {} servido desde caché para {}", tipo, parametros, usuario);
+                return toDTO(job);
+            }
+
+            if (executor.getQueue().size() >= capacidadCola) {
+                jobs.remove(job.id);
+                throw new IllegalStateException("La cola de reportes está llena, inténtelo más tarde");
+            }
+
+            activosPorClave.put(clave, job);
+            executor.execute(new Tarea(job));
+        }
+
+        log.info("Reporte {} {} encolado ({}) para {}", tipo, parametros, prioridad, usuario);
+        return toDTO(job);
+    }
+
+    public Optional<ReportJobDTO> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(this::toDTO);
+    }
+
+    public TipoReporte getTipo(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new RuntimeException("Trabajo de reporte no encontrado");
+        }
+        return job.tipo;
+    }
+
+    /**
+     * Fichero generado de un trabajo completado
+     */
+    public Path getFichero(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new RuntimeException("Trabajo de reporte no encontrado");
+        }
+        if (job.estado != EstadoJob.COMPLETADO || !Files.isRegularFile(job.fichero)) {
+            throw new IllegalStateException("El reporte no está disponible");
+        }
+        return job.fichero;
+    }
+
+    /**
+     * Suscripción SSE a los cambios de estado de un trabajo.
+     * Si el trabajo ya ha terminado se envía el estado final y se cierra.
+     */
+    public SseEmitter suscribir(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new RuntimeException("Trabajo de reporte no encontrado");
+        }
+
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+        List<SseEmitter> lista = emitters.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>());
+        lista.add(emitter);
+        emitter.onCompletion(() -> lista.remove(emitter));
+        emitter.onTimeout(() -> lista.remove(emitter));
+        emitter.onError(e -> lista.remove(emitter));
+
+        notificar(job);
+        return emitter;
+    }
+
+    /**
+     * Nombre de fichero para la descarga
+     */
+    public String getNombreFichero(String id) {
+        Job job = jobs.get(id);
+        return job != null ? nombreFichero(job) : null;
+    }
+
+    // ===== EJECUCIÓN =====
+
+    private void ejecutar(Job job) {
+        job.estado = EstadoJob.EN_PROCESO;
+        job.iniciadoEn = LocalDateTime.now();
+        notificar(job);
+
+        Path tmp = null;
+        try {
+            Files.createDirectories(directorio);
+            tmp = Files.createTempFile(directorio, job.clave, ".tmp");
+
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                generar(job, out);
+            }
+            Files.move(tmp, job.fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            job.estado = EstadoJob.COMPLETADO;
+            log.info("Reporte {} {} generado en {} ms", job.tipo, job.parametros,
+                    Duration.between(job.iniciadoEn, LocalDateTime.now()).toMillis());
+        } catch (Exception e) {
+            job.estado = EstadoJob.ERROR;
+            job.error = e.getMessage();
+            log.error("Error generando reporte {} {}: {}", job.tipo, job.parametros, e.getMessage(), e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // El fichero temporal se limpia en la siguiente pasada
+                }
+            }
+        } finally {
+            job.finalizadoEn = LocalDateTime.now();
+            activosPorClave.remove(job.clave, job);
+            notificar(job);
+        }
+    }
+
+    private void generar(Job job, OutputStream out) throws Exception {
+        ReportJobRequest r = job.request;
+        switch (job.tipo) {
+            case EVENTOS_EXCEL -> excelExportService.exportEventos(r.getFechaInicio(), r.getFechaFin(), out);
+            case TRANSACCIONES_EXCEL -> excelExportService.exportTransacciones(r.getFechaInicio(), r.getFechaFin(), out);
+            case NOMINAS_EXCEL -> excelExportService.exportNominas(r.getMes(), r.getAnio(), out);
+            case INVENTARIO_EXCEL -> excelExportService.exportInventario(out);
+            case MOVIMIENTOS_STOCK_EXCEL -> excelExportService.exportMovimientosStock(r.getFechaInicio(), r.getFechaFin(), out);
+            case NOMINAS_PDF -> out.write(pdfReportService.generateNominasPdf(r.getMes(), r.getAnio()));
+            case EVENTOS_PDF -> out.write(pdfReportService.generateEventosPdf(r.getFechaInicio(), r.getFechaFin()));
+            case PROFIT_LOSS_PDF -> out.write(pdfReportService.generateProfitLossPdf(r.getFechaInicio(), r.getFechaFin()));
+            case TRANSACCIONES_PDF -> out.write(pdfReportService.generateTransaccionesPdf(r.getFechaInicio(), r.getFechaFin()));
+        }
+    }
+
+    // ===== CLAVE DE CACHÉ =====
+
+    private Map<String, String> validarParametros(ReportJobRequest r) {
+        Map<String, String> parametros = new TreeMap<>();
+        switch (r.getTipo().getParametros()) {
+            case RANGO -> {
+                if (r.getFechaInicio() == null || r.getFechaFin() == null) {
+                    throw new IllegalArgumentException("fechaInicio y fechaFin son obligatorios");
+                }
+                if (r.getFechaFin().isBefore(r.getFechaInicio())) {
+                    throw new IllegalArgumentException("fechaFin no puede ser anterior a fechaInicio");
+                }
+                parametros.put("fechaInicio", r.getFechaInicio().format(ISO));
+                parametros.put("fechaFin", r.getFechaFin().format(ISO));
+            }
+            case PERIODO -> {
+                if (r.getMes() == null || r.getAnio() == null) {
+                    throw new IllegalArgumentException("mes y anio son obligatorios");
+                }
+                parametros.put("mes", String.valueOf(r.getMes()));
+                parametros.put("anio", String.valueOf(r.getAnio()));
+            }
+            case NINGUNO -> {
+            }
+        }
+        // Los PDF incluyen la fecha de generación en la cabecera
+        if (r.getTipo().getFormato() == TipoReporte.Formato.PDF) {
+            parametros.put("generado", LocalDate.now().format(ISO));
+        }
+        return parametros;
+    }
+
+    /**
+     * Marca de agua de los datos de un reporte: número de filas y última
+     * modificación de las tablas que intervienen. Cambia si se inserta,
+     * modifica o borra cualquier fila relevante.
+     */
+    private String calcularMarcaDeAgua(TipoReporte tipo, ReportJobRequest r) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (tipo.getParametros() == TipoReporte.Parametros.RANGO) {
+            params.addValue("inicio", r.getFechaInicio())
+                    .addValue("fin", r.getFechaFin().plusDays(1));
+        } else if (tipo.getParametros() == TipoReporte.Parametros.PERIODO) {
+            params.addValue("periodo", String.format("%04d-%02d", r.getAnio(), r.getMes()));
+        }
+
+        String sql = switch (tipo) {
+            case EVENTOS_EXCEL, EVENTOS_PDF ->
+                    "SELECT COUNT(*), MAX(actualizado_en) FROM eventos WHERE fecha BETWEEN :inicio AND :fin";
+            case TRANSACCIONES_EXCEL, TRANSACCIONES_PDF, PROFIT_LOSS_PDF ->
+                    "SELECT COUNT(*), MAX(actualizado_en), " +
+                    "       (SELECT MAX(actualizado_en) FROM categorias_transaccion), " +
+                    "       (SELECT MAX(actualizado_en) FROM eventos) " +
+                    "FROM transacciones WHERE fecha BETWEEN :inicio AND :fin";
+            case NOMINAS_EXCEL, NOMINAS_PDF ->
+                    "SELECT COUNT(*), MAX(n.actualizado_en), MAX(e.actualizado_en) " +
+                    "FROM nominas n JOIN empleados e ON e.id = n.empleado_id WHERE n.periodo = :periodo";
+            case INVENTARIO_EXCEL ->
+                    "SELECT COUNT(*), MAX(actualizado_en), " +
+                    "       (SELECT MAX(actualizado_en) FROM proveedores) " +
+                    "FROM productos";
+            case MOVIMIENTOS_STOCK_EXCEL ->
+                    "SELECT COUNT(*), MAX(id), " +
+                    "       (SELECT MAX(actualizado_en) FROM productos) " +
+                    "FROM movimientos_stock WHERE fecha_movimiento BETWEEN :inicio AND :fin";
+        };
+
+        Map<String, Object> fila = jdbcTemplate.queryForMap(sql, params);
+        return fila.values().stream().map(String::valueOf).collect(Collectors.joining("|"));
+    }
+
+    private String calcularClave(TipoReporte tipo, Map<String, String> parametros, String marcaDeAgua) {
+        String base = tipo.name() + "|" + parametros + "|" + marcaDeAgua;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(base.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ===== LIMPIEZA =====
+
+    /**
+     * Elimina trabajos terminados y ficheros no usados desde hace más del TTL
+     */
+    @Scheduled(cron = "${app.reports.jobs.limpieza-cron:0 15 * * * *}")
+    public void limpiar() {
+        LocalDateTime limiteJobs = LocalDateTime.now().minus(ttl);
+        jobs.values().removeIf(job -> job.finalizadoEn != null && job.finalizadoEn.isBefore(limiteJobs));
+
+        if (!Files.isDirectory(directorio)) {
+            return;
+        }
+        FileTime limiteFicheros = FileTime.fromMillis(System.currentTimeMillis() - ttl.toMillis());
+        int borrados = 0;
+        try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(directorio)) {
+            for (Path fichero : ficheros) {
+                if (Files.getLastModifiedTime(fichero).compareTo(limiteFicheros) < 0
+                        && Files.deleteIfExists(fichero)) {
+                    borrados++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error limpiando ficheros de reportes: {}", e.getMessage());
+        }
+        if (borrados > 0) {
+            log.info("Limpieza de reportes: {} ficheros caducados eliminados", borrados);
+        }
+    }
+
+    // ===== AUXILIARES =====
+
+    private void notificar(Job job) {
+        List<SseEmitter> lista = emitters.get(job.id);
+        if (lista == null || lista.isEmpty()) {
+            return;
+        }
+        ReportJobDTO dto = toDTO(job);
+        boolean terminado = job.estado == EstadoJob.COMPLETADO || job.estado == EstadoJob.ERROR;
+        for (SseEmitter emitter : lista) {
+            try {
+                emitter.send(SseEmitter.event().name("estado").data(dto));
+                if (terminado) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                lista.remove(emitter);
+            }
+        }
+        if (terminado) {
+            emitters.remove(job.id);
+        }
+    }
+
+    private Prioridad parsePrioridad(String prioridad) {
+        if (prioridad == null || prioridad.isBlank()) {
+            return Prioridad.NORMAL;
+        }
+        try {
+            return Prioridad.valueOf(prioridad.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Prioridad inválida: " + prioridad + " (ALTA, NORMAL o BAJA)");
+        }
+    }
+
+    private void tocar(Path fichero) {
+        try {
+            Files.setLastModifiedTime(fichero, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Solo afecta a la caducidad del fichero
+        }
+    }
+
+    private String nombreFichero(Job job) {
+        ReportJobRequest r = job.request;
+        String sufijo = switch (job.tipo.getParametros()) {
+            case RANGO -> r.getFechaInicio().format(ISO) + "_" + r.getFechaFin().format(ISO);
+            case PERIODO -> r.getMes() + "_" + r.getAnio();
+            case NINGUNO -> job.creadoEn.toLocalDate().format(ISO);
+        };
+        return job.tipo.getPrefijo() + "_" + sufijo + "." + job.tipo.getFormato().getExtension();
+    }
+
+    private ReportJobDTO toDTO(Job job) {
+        Integer posicion = null;
+        if (job.estado == EstadoJob.PENDIENTE) {
+            posicion = (int) executor.getQueue().stream()
+                    .filter(r -> r instanceof Tarea t && t.compareTo(new Tarea(job)) < 0)
+                    .count() + 1;
+        }
+        Long tamano = null;
+        if (job.estado == EstadoJob.COMPLETADO) {
+            try {
+                tamano = Files.size(job.fichero);
+            } catch (IOException ignored) {
+                // Fichero eliminado por la limpieza
+            }
+        }
+
+        return ReportJobDTO.builder()
+                .id(job.id)
+                .tipo(job.tipo.name())
+                .prioridad(job.prioridad.name())
+                .solicitadoPor(job.usuario)
+                .estado(job.estado.name())
+                .posicionEnCola(posicion)
+                .desdeCache(job.desdeCache)
+                .nombreFichero(nombreFichero(job))
+                .tamanoBytes(tamano)
+                .error(job.error)
+                .creadoEn(job.creadoEn)
+                .iniciadoEn(job.iniciadoEn)
+                .finalizadoEn(job.finalizadoEn)
+                .build();
+    }
+
+    private static class Job {
+        final String id;
+        final TipoReporte tipo;
+        final ReportJobRequest request;
+        final Map<String, String> parametros;
+        final Prioridad prioridad;
+        final String clave;
+        final Path fichero;
+        final String usuario;
+        final long secuencia;
+        final LocalDateTime creadoEn = LocalDateTime.now();
+
+        volatile EstadoJob estado = EstadoJob.PENDIENTE;
+        volatile boolean desdeCache;
+        volatile String error;
+        volatile LocalDateTime iniciadoEn;
+        volatile LocalDateTime finalizadoEn;
+
+        Job(String id, TipoReporte tipo, ReportJobRequest request, Map<String, String> parametros,
+            Prioridad prioridad, String clave, Path fichero, String usuario, long secuencia) {
+            this.id = id;
+            this.tipo = tipo;
+            this.request = request;
+            this.parametros = parametros;
+            this.prioridad = prioridad;
+            this.clave = clave;
+            this.fichero = fichero;
+            this.usuario = usuario;
+            this.secuencia = secuencia;
+        }
+    }
+
+    /**
+     * Tarea ordenable por prioridad y orden de llegada para la PriorityBlockingQueue
+     */
+    private class Tarea implements Runnable, Comparable<Tarea> {
+        private final Job job;
+
+        Tarea(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            ejecutar(job);
+        }
+
+        @Override
+        public int compareTo(Tarea otra) {
+            int cmp = job.prioridad.compareTo(otra.job.prioridad);
+            return cmp != 0 ? cmp : Long.compare(job.secuencia, otra.job.secuencia);
+        }
+    }
+}
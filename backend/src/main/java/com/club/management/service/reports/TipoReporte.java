@@ -0,0 +1,85 @@
+package com.club.management.service.reports;
+
+import java.util.Set;
+
+/**
+ * Tipos de reporte generables en segundo plano.
+ * Los roles coinciden con los de los endpoints síncronos de ReportController.
+ */
+public enum TipoReporte {
+
+    EVENTOS_EXCEL("eventos", Formato.XLSX, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_ENCARGADO", "ROLE_LECTURA")),
+    TRANSACCIONES_EXCEL("transacciones", Formato.XLSX, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_LECTURA")),
+    NOMINAS_EXCEL("nominas", Formato.XLSX, Parametros.PERIODO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_RRHH")),
+    INVENTARIO_EXCEL("inventario", Formato.XLSX, Parametros.NINGUNO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_ENCARGADO", "ROLE_LECTURA")),
+    MOVIMIENTOS_STOCK_EXCEL("movimientos_stock", Formato.XLSX, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_ENCARGADO", "ROLE_LECTURA")),
+    NOMINAS_PDF("nominas", Formato.PDF, Parametros.PERIODO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_RRHH")),
+    EVENTOS_PDF("eventos", Formato.PDF, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_ENCARGADO", "ROLE_LECTURA")),
+    PROFIT_LOSS_PDF("profit_loss", Formato.PDF, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_LECTURA")),
+    TRANSACCIONES_PDF("transacciones", Formato.PDF, Parametros.RANGO,
+            Set.of("ROLE_ADMIN", "ROLE_GERENTE", "ROLE_LECTURA"));
+
+    public enum Formato {
+        XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+        PDF("pdf", "application/pdf");
+
+        private final String extension;
+        private final String contentType;
+
+        Formato(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Parámetros que necesita cada reporte
+     */
+    public enum Parametros {
+        NINGUNO, RANGO, PERIODO
+    }
+
+    private final String prefijo;
+    private final Formato formato;
+    private final Parametros parametros;
+    private final Set<String> roles;
+
+    TipoReporte(String prefijo, Formato formato, Parametros parametros, Set<String> roles) {
+        this.prefijo = prefijo;
+        this.formato = formato;
+        this.parametros = parametros;
+        this.roles = roles;
+    }
+
+    public String getPrefijo() {
+        return prefijo;
+    }
+
+    public Formato getFormato() {
+        return formato;
+    }
+
+    public Parametros getParametros() {
+        return parametros;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+}
@@ -0,0 +1,45 @@
+-- =============================================================================
+-- Migration V037: Secuencias con incremento 25 para inserciones en batch
+-- Descripción: Las entidades de alto volumen pasan de GenerationType.IDENTITY a
+--              GenerationType.SEQUENCE con optimizador "pooled" (allocationSize 25).
+--              Con IDENTITY Hibernate necesita el id tras cada INSERT y desactiva
+--              el batching JDBC (hibernate.jdbc.batch_size).
+--
+-- Cada nextval() reserva un bloque de 25 ids. Hibernate asigna los ids del bloque
+-- en memoria, por lo que el DEFAULT nextval() de las columnas BIGSERIAL sigue
+-- siendo válido para triggers y scripts SQL que insertan directamente.
+--
+-- IMPORTANTE: allocationSize en las entidades debe coincidir con INCREMENT BY.
+-- =============================================================================
+
+DO $$
+DECLARE
+    tabla TEXT;
+    secuencia TEXT;
+    max_id BIGINT;
+BEGIN
+    FOREACH tabla IN ARRAY ARRAY[
+        'detalle_venta',
+        'movimientos_stock',
+        'nominas',
+        'system_logs',
+        'detalles_inventario',
+        'detalle_pedido',
+        'pedido_auditoria'
+    ]
+    LOOP
+        secuencia := pg_get_serial_sequence(tabla, 'id');
+
+        IF secuencia IS NULL THEN
+            RAISE NOTICE 'Tabla % sin secuencia serial, se omite', tabla;
+            CONTINUE;
+        END IF;
+
+        EXECUTE format('ALTER SEQUENCE %s INCREMENT BY 25', secuencia);
+
+        -- Dejar la secuencia por encima del mayor id existente: el primer bloque
+        -- que reserve Hibernate empieza en (valor - 24) y no puede solaparse
+        EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', tabla) INTO max_id;
+        PERFORM setval(secuencia, GREATEST(max_id, 1), true);
+    END LOOP;
+END $$;
@@ -0,0 +1,70 @@
+-- =============================================================================
+-- Migration V038: Archivo frío de sesiones de caja y ventas
+-- Descripción: Las sesiones de caja cerradas hace más de una temporada se mueven
+--              fuera de las tablas calientes (sesiones_caja, ventas, detalle_venta)
+--              para que sus índices solo contengan datos vivos.
+--
+-- - sesiones_caja_archivo: una fila por sesión con todas sus ventas y líneas en
+--   un único JSONB (comprimido automáticamente por TOAST).
+-- - ventas_resumen_diario / detalle_venta_resumen_diario: resúmenes agregados por
+--   día que se quedan en caliente y responden a los reportes de rangos archivados.
+-- =============================================================================
+
+-- ============================================
+-- Tabla: sesiones_caja_archivo
+-- ============================================
+CREATE TABLE IF NOT EXISTS sesiones_caja_archivo (
+    id BIGINT PRIMARY KEY,  -- Mismo id que tenía en sesiones_caja
+    nombre_caja VARCHAR(100) NOT NULL,
+    empleado_apertura_id BIGINT,
+    empleado_cierre_id BIGINT,
+    fecha_apertura TIMESTAMP NOT NULL,
+    fecha_cierre TIMESTAMP,
+    monto_inicial DECIMAL(10,2),
+    monto_esperado DECIMAL(10,2),
+    monto_real DECIMAL(10,2),
+    diferencia DECIMAL(10,2),
+    observaciones TEXT,
+    num_ventas INTEGER NOT NULL DEFAULT 0,
+    total_ventas DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    fecha_primera_venta TIMESTAMP,
+    fecha_ultima_venta TIMESTAMP,
+    ventas JSONB NOT NULL DEFAULT '[]'::jsonb,  -- Array de VentaDTO con sus detalles
+    archivado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_sesiones_caja_archivo_rango
+    ON sesiones_caja_archivo(fecha_primera_venta, fecha_ultima_venta);
+
+-- ============================================
+-- Tabla: ventas_resumen_diario
+-- Granularidad: día + hora + método de pago + cajero
+-- ============================================
+CREATE TABLE IF NOT EXISTS ventas_resumen_diario (
+    fecha DATE NOT NULL,
+    hora SMALLINT NOT NULL CHECK (hora BETWEEN 0 AND 23),
+    metodo_pago VARCHAR(30) NOT NULL,
+    empleado_id BIGINT NOT NULL,
+    num_ventas INTEGER NOT NULL DEFAULT 0,
+    subtotal DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    descuento DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    total DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    PRIMARY KEY (fecha, hora, metodo_pago, empleado_id)
+);
+
+-- ============================================
+-- Tabla: detalle_venta_resumen_diario
+-- Granularidad: día + producto
+-- ============================================
+CREATE TABLE IF NOT EXISTS detalle_venta_resumen_diario (
+    fecha DATE NOT NULL,
+    producto_id BIGINT NOT NULL REFERENCES productos(id),
+    cantidad BIGINT NOT NULL DEFAULT 0,
+    total DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    num_ventas INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (fecha, producto_id)
+);
+
+COMMENT ON TABLE sesiones_caja_archivo IS 'Sesiones de caja cerradas archivadas con sus ventas en JSONB (tier frío)';
+COMMENT ON TABLE ventas_resumen_diario IS 'Resumen de ventas archivadas por día, hora, método de pago y cajero';
+COMMENT ON TABLE detalle_venta_resumen_diario IS 'Resumen de unidades e ingresos por producto y día de ventas archivadas';
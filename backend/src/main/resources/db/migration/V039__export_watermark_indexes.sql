@@ -0,0 +1,22 @@
+-- =============================================================================
+-- Migration V039: Índices para exportación incremental (CSV/NDJSON)
+-- Descripción: La API de exportación para BI recorre las tablas por marca de agua
+--              (id y/o fecha de inserción/modificación) en orden de keyset.
+--
+-- - ventas, detalle_venta, movimientos_stock son de solo inserción: el id ya es
+--   la marca de agua principal; para updatedSince basta un índice BRIN sobre la
+--   fecha de inserción (mínimo coste de mantenimiento en tablas append-only).
+-- - transacciones se modifica: keyset por (actualizado_en, id).
+-- =============================================================================
+
+CREATE INDEX IF NOT EXISTS idx_ventas_created_at_brin
+ON ventas USING BRIN (created_at);
+
+CREATE INDEX IF NOT EXISTS idx_detalle_venta_created_at_brin
+ON detalle_venta USING BRIN (created_at);
+
+CREATE INDEX IF NOT EXISTS idx_movimientos_stock_creado_en_brin
+ON movimientos_stock USING BRIN (creado_en);
+
+CREATE INDEX IF NOT EXISTS idx_transacciones_actualizado_en_id
+ON transacciones (actualizado_en, id);
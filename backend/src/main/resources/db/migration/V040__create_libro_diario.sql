@@ -0,0 +1,129 @@
+-- =============================================================================
+-- Migration V040: Libro diario de ingresos y gastos
+-- Descripción: Agregados diarios de transacciones mantenidos por trigger para que
+--              ROI, P&L e ingresos del mes no recorran toda la tabla transacciones.
+--
+-- - libro_diario: total y número de transacciones por día, tipo y categoría.
+-- - libro_diario_totales: una fila por día con movimiento, con los totales del
+--   día y las sumas acumuladas (prefix sums) desde el primer día. La suma de
+--   cualquier periodo es acumulado(fin) - acumulado(día anterior al inicio):
+--   dos búsquedas por índice, sin importar la longitud del periodo.
+--
+-- El trigger aplica el delta de cada INSERT/UPDATE/DELETE. Las transacciones de
+-- hoy solo tocan la fila de hoy; una transacción con fecha pasada actualiza los
+-- acumulados de los días posteriores.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS libro_diario (
+    fecha DATE NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    categoria_id BIGINT NOT NULL,
+    total DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    num_transacciones INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (fecha, tipo, categoria_id)
+);
+
+CREATE TABLE IF NOT EXISTS libro_diario_totales (
+    fecha DATE PRIMARY KEY,
+    ingresos DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    gastos DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    ingresos_acumulados DECIMAL(16, 2) NOT NULL DEFAULT 0,
+    gastos_acumulados DECIMAL(16, 2) NOT NULL DEFAULT 0
+);
+
+-- ============================================
+-- Aplicar un delta al libro diario
+-- ============================================
+CREATE OR REPLACE FUNCTION aplicar_delta_libro_diario(
+    p_fecha DATE, p_tipo VARCHAR, p_categoria_id BIGINT, p_monto DECIMAL, p_num INTEGER
+) RETURNS VOID AS $$
+DECLARE
+    v_ingresos DECIMAL := CASE WHEN p_tipo = 'INGRESO' THEN p_monto ELSE 0 END;
+    v_gastos DECIMAL := CASE WHEN p_tipo = 'GASTO' THEN p_monto ELSE 0 END;
+BEGIN
+    -- Serializa escritores del libro: una fila de día nueva copia el acumulado
+    -- del día anterior, que no puede estar cambiando a la vez
+    PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+
+    INSERT INTO libro_diario (fecha, tipo, categoria_id, total, num_transacciones)
+    VALUES (p_fecha, p_tipo, p_categoria_id, p_monto, p_num)
+    ON CONFLICT (fecha, tipo, categoria_id) DO UPDATE
+    SET total = libro_diario.total + EXCLUDED.total,
+        num_transacciones = libro_diario.num_transacciones + EXCLUDED.num_transacciones;
+
+    INSERT INTO libro_diario_totales (fecha, ingresos_acumulados, gastos_acumulados)
+    SELECT p_fecha,
+           COALESCE((SELECT ingresos_acumulados FROM libro_diario_totales
+                     WHERE fecha < p_fecha ORDER BY fecha DESC LIMIT 1), 0),
+           COALESCE((SELECT gastos_acumulados FROM libro_diario_totales
+                     WHERE fecha < p_fecha ORDER BY fecha DESC LIMIT 1), 0)
+    ON CONFLICT (fecha) DO NOTHING;
+
+    UPDATE libro_diario_totales
+    SET ingresos = ingresos + v_ingresos,
+        gastos = gastos + v_gastos
+    WHERE fecha = p_fecha;
+
+    UPDATE libro_diario_totales
+    SET ingresos_acumulados = ingresos_acumulados + v_ingresos,
+        gastos_acumulados = gastos_acumulados + v_gastos
+    WHERE fecha >= p_fecha;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ============================================
+-- Trigger sobre transacciones
+-- ============================================
+CREATE OR REPLACE FUNCTION actualizar_libro_diario()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM aplicar_delta_libro_diario(OLD.fecha, OLD.tipo, OLD.categoria_id, -OLD.monto, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM aplicar_delta_libro_diario(NEW.fecha, NEW.tipo, NEW.categoria_id, NEW.monto, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_actualizar_libro_diario ON transacciones;
+CREATE TRIGGER trigger_actualizar_libro_diario
+    AFTER INSERT OR DELETE OR UPDATE OF fecha, tipo, categoria_id, monto ON transacciones
+    FOR EACH ROW
+    EXECUTE FUNCTION actualizar_libro_diario();
+
+-- ============================================
+-- Reconstrucción completa (carga inicial y reconciliación)
+-- ============================================
+CREATE OR REPLACE FUNCTION reconstruir_libro_diario()
+RETURNS VOID AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+
+    DELETE FROM libro_diario;
+    DELETE FROM libro_diario_totales;
+
+    INSERT INTO libro_diario (fecha, tipo, categoria_id, total, num_transacciones)
+    SELECT fecha, tipo, categoria_id, SUM(monto), COUNT(*)
+    FROM transacciones
+    GROUP BY fecha, tipo, categoria_id;
+
+    INSERT INTO libro_diario_totales (fecha, ingresos, gastos, ingresos_acumulados, gastos_acumulados)
+    SELECT fecha, ingresos, gastos,
+           SUM(ingresos) OVER (ORDER BY fecha),
+           SUM(gastos) OVER (ORDER BY fecha)
+    FROM (
+        SELECT fecha,
+               COALESCE(SUM(total) FILTER (WHERE tipo = 'INGRESO'), 0) AS ingresos,
+               COALESCE(SUM(total) FILTER (WHERE tipo = 'GASTO'), 0) AS gastos
+        FROM libro_diario
+        GROUP BY fecha
+    ) dias;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT reconstruir_libro_diario();
+
+COMMENT ON TABLE libro_diario IS 'Ingresos y gastos por día y categoría, mantenido por trigger sobre transacciones';
+COMMENT ON TABLE libro_diario_totales IS 'Totales diarios con sumas acumuladas para consultas de periodo en O(1)';
@@ -0,0 +1,26 @@
+-- =============================================================================
+-- Migration V041: Lista de revocación de tokens JWT
+-- Descripción: Los access tokens llevan el rol y se validan sin consultar usuarios,
+--              así que la revocación pasa por esta tabla, que cada instancia copia
+--              en memoria periódicamente (TokenRevocationList).
+--
+-- - jti informado: revoca un token concreto (logout, rotación de refresh token).
+-- - jti NULL: revoca todos los tokens del username emitidos antes de revocado_en
+--   (desactivación, cambio de rol o contraseña, borrado).
+-- - expira_en: a partir de esa fecha ningún token afectado puede seguir vivo y la
+--   fila se purga; la tabla solo contiene revocaciones vigentes.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS tokens_revocados (
+    id BIGSERIAL PRIMARY KEY,
+    jti VARCHAR(64),
+    username VARCHAR(100),
+    motivo VARCHAR(50),
+    revocado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expira_en TIMESTAMP NOT NULL,
+    CONSTRAINT chk_tokens_revocados_objetivo CHECK (jti IS NOT NULL OR username IS NOT NULL)
+);
+
+CREATE INDEX IF NOT EXISTS idx_tokens_revocados_expira_en ON tokens_revocados (expira_en);
+
+COMMENT ON TABLE tokens_revocados IS 'Revocaciones vigentes de tokens JWT (por jti o por usuario)';
@@ -0,0 +1,41 @@
+-- =============================================================================
+-- Migration V042: Alertas de stock dirigidas por eventos
+-- Descripción: AlertaStockService evalúa los productos cuando cambia su stock y
+--              escribe las alertas en batch; la pasada horaria es una
+--              reconciliación set-based.
+--
+-- - Los CHECK de V009 no admitían los valores que usa el servicio
+--   (SIN_STOCK, CRITICO, ALTO): se amplían conservando los anteriores.
+-- - Índice único parcial: como mucho una alerta activa por producto y tipo, lo que
+--   permite INSERT ... ON CONFLICT DO NOTHING en los batches.
+-- - Índice parcial de productos bajo mínimo para la reconciliación.
+-- =============================================================================
+
+ALTER TABLE alertas_stock DROP CONSTRAINT IF EXISTS chk_tipo_alerta;
+ALTER TABLE alertas_stock ADD CONSTRAINT chk_tipo_alerta CHECK (tipo_alerta IN (
+    'SIN_STOCK', 'STOCK_BAJO', 'STOCK_CRITICO', 'STOCK_CERO', 'PRODUCTO_CADUCADO', 'PRODUCTO_POR_CADUCAR'));
+
+ALTER TABLE alertas_stock DROP CONSTRAINT IF EXISTS chk_nivel_alerta;
+ALTER TABLE alertas_stock ADD CONSTRAINT chk_nivel_alerta CHECK (nivel IN (
+    'CRITICO', 'ALTO', 'MEDIO', 'BAJO', 'INFO', 'WARNING', 'CRITICAL'));
+
+-- Dejar solo la alerta activa más reciente por producto y tipo
+UPDATE alertas_stock
+SET activa = FALSE
+WHERE id IN (
+    SELECT id FROM (
+        SELECT id, ROW_NUMBER() OVER (PARTITION BY producto_id, tipo_alerta
+                                      ORDER BY fecha_alerta DESC, id DESC) AS rn
+        FROM alertas_stock
+        WHERE activa
+    ) duplicadas
+    WHERE rn > 1
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_alertas_stock_activa
+ON alertas_stock (producto_id, tipo_alerta)
+WHERE activa;
+
+CREATE INDEX IF NOT EXISTS idx_productos_bajo_minimo
+ON productos (id)
+WHERE activo AND (stock_actual <= 0 OR stock_actual < stock_minimo);
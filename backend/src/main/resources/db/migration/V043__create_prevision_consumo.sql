@@ -0,0 +1,37 @@
+-- =============================================================================
+-- Migration V043: Previsión de consumo por producto
+-- Descripción: Tasas de consumo suavizadas exponencialmente (EWMA) por producto y
+--              día de la semana de la jornada, actualizadas de forma incremental
+--              por PrevisionConsumoService a medida que se confirman ventas y
+--              consumos. Nunca se recorre el histórico de ventas ni de movimientos.
+--
+-- - consumo_jornada: consumo acumulado de las jornadas aún no cerradas (en unidades
+--   de stock). Al cerrar la jornada sus filas se pliegan en consumo_previsiones y
+--   se eliminan.
+-- - consumo_previsiones: tasa por jornada para cada producto y día de la semana
+--   (ISO, 1 = lunes). ultima_jornada permite reconocer ventas offline que llegan
+--   después de haber plegado su jornada.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS consumo_jornada (
+    producto_id BIGINT NOT NULL REFERENCES productos(id) ON DELETE CASCADE,
+    fecha DATE NOT NULL,
+    cantidad NUMERIC(12,4) NOT NULL DEFAULT 0,
+    PRIMARY KEY (producto_id, fecha)
+);
+
+CREATE INDEX IF NOT EXISTS idx_consumo_jornada_fecha ON consumo_jornada (fecha);
+
+CREATE TABLE IF NOT EXISTS consumo_previsiones (
+    producto_id BIGINT NOT NULL REFERENCES productos(id) ON DELETE CASCADE,
+    dia_semana SMALLINT NOT NULL,
+    tasa NUMERIC(12,4) NOT NULL DEFAULT 0,
+    observaciones INTEGER NOT NULL DEFAULT 0,
+    ultima_jornada DATE NOT NULL,
+    actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (producto_id, dia_semana),
+    CONSTRAINT chk_consumo_previsiones_dia CHECK (dia_semana BETWEEN 1 AND 7)
+);
+
+COMMENT ON TABLE consumo_jornada IS 'Consumo acumulado por producto de las jornadas pendientes de plegar en la previsión';
+COMMENT ON TABLE consumo_previsiones IS 'Consumo por jornada suavizado exponencialmente, por producto y día de la semana';
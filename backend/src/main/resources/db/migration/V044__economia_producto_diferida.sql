@@ -0,0 +1,67 @@
+-- =============================================================================
+-- Migration V044: Cálculo diferido de la economía de productos
+-- Descripción: La importación masiva de productos (ProductoImportService) hace el
+--              upsert en batches y calcula unidades, ingreso, beneficio y margen de
+--              todas las filas con un único UPDATE set-based al final.
+--
+-- Con club.economia_diferida = 'on' (SET LOCAL / set_config(..., true), solo dura
+-- la transacción) el trigger calcular_economia_producto() no hace nada. Sin la
+-- variable el comportamiento es el de V011.
+-- =============================================================================
+
+CREATE OR REPLACE FUNCTION calcular_economia_producto()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Cálculo diferido: lo hace quien activó la variable, en bloque
+    IF current_setting('club.economia_diferida', true) = 'on' THEN
+        RETURN NEW;
+    END IF;
+
+    -- Solo calcular si es COPA o CHUPITO (BOTELLA no necesita cálculos)
+    IF NEW.tipo_venta IN ('COPA', 'CHUPITO') THEN
+
+        -- Calcular unidades teóricas
+        IF NEW.capacidad_ml IS NOT NULL AND NEW.ml_por_servicio IS NOT NULL AND NEW.ml_por_servicio > 0 THEN
+            NEW.unidades_teoricas := NEW.capacidad_ml / NEW.ml_por_servicio;
+        ELSE
+            NEW.unidades_teoricas := NULL;
+        END IF;
+
+        -- Calcular unidades reales (con merma)
+        IF NEW.unidades_teoricas IS NOT NULL THEN
+            NEW.unidades_reales := NEW.unidades_teoricas * (1 - COALESCE(NEW.factor_merma, 0) / 100.0);
+        ELSE
+            NEW.unidades_reales := NULL;
+        END IF;
+
+        -- Calcular ingreso total estimado
+        IF NEW.unidades_reales IS NOT NULL AND NEW.precio_venta IS NOT NULL THEN
+            NEW.ingreso_total_estimado := NEW.precio_venta * NEW.unidades_reales;
+        ELSE
+            NEW.ingreso_total_estimado := NULL;
+        END IF;
+
+    ELSIF NEW.tipo_venta = 'BOTELLA' THEN
+        -- Para botellas completas, 1 unidad = 1 botella
+        NEW.unidades_teoricas := 1;
+        NEW.unidades_reales := 1;
+        NEW.ingreso_total_estimado := NEW.precio_venta;
+    END IF;
+
+    -- Calcular beneficio unitario
+    IF NEW.ingreso_total_estimado IS NOT NULL AND NEW.precio_compra IS NOT NULL THEN
+        NEW.beneficio_unitario := NEW.ingreso_total_estimado - NEW.precio_compra;
+    ELSE
+        NEW.beneficio_unitario := NULL;
+    END IF;
+
+    -- Calcular margen porcentual
+    IF NEW.beneficio_unitario IS NOT NULL AND NEW.precio_compra IS NOT NULL AND NEW.precio_compra > 0 THEN
+        NEW.margen_porcentaje := (NEW.beneficio_unitario / NEW.precio_compra) * 100;
+    ELSE
+        NEW.margen_porcentaje := NULL;
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,15 @@
+-- =============================================================================
+-- Migration V045: Economía de productos calculada en la aplicación
+-- Descripción: unidades_teoricas, unidades_reales, ingreso_total_estimado,
+--              beneficio_unitario y margen_porcentaje los calcula
+--              ProductoCalculationService: al guardar un producto, tras una
+--              importación y para todo el catálogo al arrancar (en bloque, solo
+--              escribe las filas que cambian).
+--
+-- El trigger se ejecutaba en cada UPDATE de productos, también en los de
+-- stock_actual de los triggers de ventas y consumos, y no veía los presets de
+-- la aplicación. La variable club.economia_diferida (V044) deja de usarse.
+-- =============================================================================
+
+DROP TRIGGER IF EXISTS trigger_calcular_economia_producto ON productos;
+DROP FUNCTION IF EXISTS calcular_economia_producto();
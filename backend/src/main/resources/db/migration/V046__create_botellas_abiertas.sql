@@ -0,0 +1,112 @@
+-- =============================================================================
+-- Migration V046: Botellas abiertas en barra
+-- Descripción: Tabla botellas_abiertas (entidad BotellaAbierta) y FK desde
+--              detalle_venta.botella_abierta_id (columna creada en V029).
+--
+-- Stock dual: al abrir una botella se descuenta 1 unidad de productos.stock_actual
+-- (BotellaAbiertaService); las copas servidas de una botella abierta
+-- (detalle_venta.es_copa_individual) ya no descuentan stock en el trigger.
+--
+-- copas_servidas / copas_restantes los escribe BotellaAbiertaService en diferido
+-- (contadores en memoria volcados en batch cada pocos segundos).
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS botellas_abiertas (
+    id BIGSERIAL PRIMARY KEY,
+    producto_id BIGINT NOT NULL REFERENCES productos(id),
+    sesion_caja_id BIGINT REFERENCES sesiones_caja(id),
+    abierta_por BIGINT REFERENCES empleados(id),
+    cerrada_por BIGINT REFERENCES empleados(id),
+    ubicacion VARCHAR(100) NOT NULL,
+    copas_totales INTEGER NOT NULL,
+    copas_servidas INTEGER NOT NULL DEFAULT 0,
+    copas_restantes INTEGER NOT NULL,
+    fecha_apertura TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    fecha_cierre TIMESTAMP,
+    estado VARCHAR(20) NOT NULL DEFAULT 'ABIERTA',
+    notas TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_botellas_abiertas_copas CHECK (
+        copas_totales > 0 AND copas_servidas >= 0 AND copas_restantes >= 0
+        AND copas_servidas + copas_restantes = copas_totales),
+    CONSTRAINT chk_botellas_abiertas_estado CHECK (estado IN ('ABIERTA', 'CERRADA', 'DESPERDICIADA'))
+);
+
+-- Botellas en uso por barra (consulta principal y carga al arrancar)
+CREATE INDEX IF NOT EXISTS idx_botellas_abiertas_activas
+ON botellas_abiertas(ubicacion, producto_id, fecha_apertura)
+WHERE estado = 'ABIERTA';
+
+CREATE INDEX IF NOT EXISTS idx_botellas_abiertas_producto_fecha
+ON botellas_abiertas(producto_id, fecha_apertura DESC);
+
+-- Sin tabla hasta ahora, cualquier valor previo es huérfano
+UPDATE detalle_venta SET botella_abierta_id = NULL WHERE botella_abierta_id IS NOT NULL;
+
+ALTER TABLE detalle_venta
+ADD CONSTRAINT fk_detalle_venta_botella_abierta
+FOREIGN KEY (botella_abierta_id) REFERENCES botellas_abiertas(id);
+
+-- Las copas de una botella abierta no descuentan stock: la botella se descontó al abrirla
+CREATE OR REPLACE FUNCTION descontar_stock_venta()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_producto RECORD;
+    v_stock_actual NUMERIC(10,2);
+BEGIN
+    IF NEW.es_copa_individual THEN
+        RETURN NEW;
+    END IF;
+
+    -- Obtener datos del producto (stock_actual está en la tabla productos)
+    SELECT id, nombre, stock_actual
+    INTO v_producto
+    FROM productos
+    WHERE id = NEW.producto_id;
+
+    IF NOT FOUND THEN
+        RAISE EXCEPTION 'Producto % no encontrado', NEW.producto_id;
+    END IF;
+
+    v_stock_actual := v_producto.stock_actual;
+
+    -- Verificar stock disponible
+    IF v_stock_actual < NEW.cantidad THEN
+        RAISE EXCEPTION 'Stock insuficiente para producto "%". Disponible: %, Solicitado: %',
+            v_producto.nombre, v_stock_actual, NEW.cantidad;
+    END IF;
+
+    -- Descontar del stock del producto
+    UPDATE productos
+    SET stock_actual = stock_actual - NEW.cantidad,
+        actualizado_en = CURRENT_TIMESTAMP
+    WHERE id = NEW.producto_id;
+
+    -- Registrar movimiento de stock
+    INSERT INTO movimientos_stock (
+        producto_id,
+        tipo_movimiento,
+        cantidad,
+        stock_anterior,
+        stock_nuevo,
+        motivo,
+        referencia,
+        fecha_movimiento
+    )
+    VALUES (
+        NEW.producto_id,
+        'SALIDA',
+        NEW.cantidad,
+        v_stock_actual,
+        v_stock_actual - NEW.cantidad,
+        'Venta POS',
+        'Venta #' || (SELECT numero_ticket FROM ventas WHERE id = NEW.venta_id),
+        CURRENT_TIMESTAMP
+    );
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON FUNCTION descontar_stock_venta() IS 'Descuenta stock del producto al registrar una venta. Las copas de botella abierta no descuentan (V046)';
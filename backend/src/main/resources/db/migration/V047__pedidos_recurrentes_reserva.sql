@@ -0,0 +1,53 @@
+-- =============================================================================
+-- Migration V047: Ejecución concurrente de pedidos recurrentes
+-- Descripción: Cada instancia reclama los pedidos recurrentes vencidos con
+--              FOR UPDATE SKIP LOCKED y los marca con una reserva temporal
+--              (reservado_por / reservado_hasta). Solo quien tiene la reserva
+--              puede generar el pedido y avanzar proxima_ejecucion, en la misma
+--              transacción. Si la instancia cae, la reserva caduca y otra lo
+--              retoma. Tras un fallo, reservado_hasta marca el próximo reintento.
+--
+-- La próxima ejecución se calcula en Java (PedidoRecurrente.calcularProximaEjecucion);
+-- la función calcular_proxima_ejecucion() de V036 no se usaba y se elimina.
+-- =============================================================================
+
+ALTER TABLE pedidos_recurrentes
+ADD COLUMN IF NOT EXISTS reservado_por VARCHAR(100),
+ADD COLUMN IF NOT EXISTS reservado_hasta TIMESTAMP;
+
+COMMENT ON COLUMN pedidos_recurrentes.reservado_por IS 'Instancia que está generando el pedido (NULL si ninguna)';
+COMMENT ON COLUMN pedidos_recurrentes.reservado_hasta IS 'Fin de la reserva o del aplazamiento tras un fallo';
+
+-- Búsqueda de vencidos
+CREATE INDEX IF NOT EXISTS idx_recurrentes_vencidos
+ON pedidos_recurrentes(proxima_ejecucion)
+WHERE activo;
+
+DROP FUNCTION IF EXISTS calcular_proxima_ejecucion(VARCHAR, INTEGER, VARCHAR, TIME, TIMESTAMP);
+
+-- Número de pedido: con varias transacciones insertando a la vez, el COUNT(*) + 1
+-- daba el mismo número a dos pedidos. El bloqueo consultivo serializa solo la
+-- numeración hasta el commit de cada transacción.
+CREATE OR REPLACE FUNCTION generar_numero_pedido()
+RETURNS TRIGGER AS $$
+DECLARE
+    contador INT;
+    fecha_actual VARCHAR(8);
+BEGIN
+    IF NEW.numero_pedido IS NULL THEN
+        PERFORM pg_advisory_xact_lock(hashtext('generar_numero_pedido'));
+
+        fecha_actual := TO_CHAR(CURRENT_DATE, 'YYYYMMDD');
+
+        -- Siguiente número del día
+        SELECT COALESCE(MAX(SUBSTRING(numero_pedido FROM 14)::INT), 0) + 1 INTO contador
+        FROM pedidos
+        WHERE numero_pedido LIKE 'PED-' || fecha_actual || '-%';
+
+        -- Generar número: PED-YYYYMMDD-NNNN
+        NEW.numero_pedido := 'PED-' || fecha_actual || '-' || LPAD(contador::TEXT, 4, '0');
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
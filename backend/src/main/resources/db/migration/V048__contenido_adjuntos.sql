@@ -0,0 +1,58 @@
+-- =============================================================================
+-- Migration V048: Almacenamiento de adjuntos por contenido
+-- Descripción: Los adjuntos nuevos se guardan una sola vez por contenido, con el
+--              SHA-256 como nombre (AlmacenContenidoService). Una factura subida
+--              a varios pedidos ocupa un único fichero; archivos_contenido lleva
+--              el número de adjuntos que lo usan y la limpieza periódica borra
+--              los que se quedan sin referencias.
+--
+-- El alta incrementa referencias desde la aplicación (bloqueando la fila antes de
+-- colocar el fichero). La baja se descuenta con un trigger porque también llega en
+-- cascada al eliminar un pedido. Los adjuntos anteriores (sha256 NULL) siguen en
+-- su ruta original.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS archivos_contenido (
+    sha256 VARCHAR(64) PRIMARY KEY,
+    tamanio_bytes BIGINT NOT NULL,
+    referencias INTEGER NOT NULL DEFAULT 0,
+    creado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_archivos_contenido_sin_referencias
+ON archivos_contenido(actualizado_en)
+WHERE referencias <= 0;
+
+COMMENT ON TABLE archivos_contenido IS 'Ficheros de adjuntos almacenados por contenido (SHA-256)';
+COMMENT ON COLUMN archivos_contenido.referencias IS 'Número de adjuntos que apuntan a este contenido';
+
+ALTER TABLE adjuntos_pedido
+ADD COLUMN IF NOT EXISTS sha256 VARCHAR(64);
+
+ALTER TABLE adjuntos_pedido
+ADD CONSTRAINT fk_adjunto_contenido FOREIGN KEY (sha256)
+    REFERENCES archivos_contenido(sha256);
+
+CREATE INDEX IF NOT EXISTS idx_adjuntos_pedido_sha256 ON adjuntos_pedido(sha256);
+
+COMMENT ON COLUMN adjuntos_pedido.sha256 IS 'Contenido en archivos_contenido (NULL en adjuntos anteriores a V048)';
+
+CREATE OR REPLACE FUNCTION liberar_contenido_adjunto()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF OLD.sha256 IS NOT NULL THEN
+        UPDATE archivos_contenido
+        SET referencias = referencias - 1,
+            actualizado_en = CURRENT_TIMESTAMP
+        WHERE sha256 = OLD.sha256;
+    END IF;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_liberar_contenido_adjunto ON adjuntos_pedido;
+CREATE TRIGGER trigger_liberar_contenido_adjunto
+    AFTER DELETE ON adjuntos_pedido
+    FOR EACH ROW
+    EXECUTE FUNCTION liberar_contenido_adjunto();
@@ -0,0 +1,62 @@
+-- =============================================================================
+-- Migration V049: Auditoría de pedidos asíncrona y sin duplicados
+-- Descripción: La aplicación registra la auditoría de pedidos en una cola en
+--              memoria que se vuelca en batch tras el commit (PedidoAuditoriaService).
+--              El trigger de V033 queda como red de seguridad para los cambios de
+--              estado hechos fuera de la aplicación.
+--
+-- Deduplicación: en la transacción que cambia el estado, la aplicación añade el id
+-- del pedido a club.auditoria_pedidos (set_config(..., true), solo dura la
+-- transacción) y el trigger no escribe esos pedidos. El trigger de V033 además
+-- leía NEW.usuario_modificacion_id, columna que pedidos no tiene.
+--
+-- pedido_auditoria pasa a ser de solo inserción: se rechazan los UPDATE. Los DELETE
+-- siguen permitidos para el ON DELETE CASCADE desde pedidos.
+-- =============================================================================
+
+CREATE OR REPLACE FUNCTION audit_pedido_cambio_estado()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Cambio ya auditado por la aplicación en esta transacción
+    IF NEW.id::text = ANY(string_to_array(current_setting('club.auditoria_pedidos', true), ',')) THEN
+        RETURN NEW;
+    END IF;
+
+    IF OLD.estado IS DISTINCT FROM NEW.estado THEN
+        INSERT INTO pedido_auditoria (
+            pedido_id,
+            accion,
+            estado_anterior,
+            estado_nuevo,
+            observaciones,
+            fecha_cambio
+        ) VALUES (
+            NEW.id,
+            'CAMBIO_ESTADO',
+            OLD.estado,
+            NEW.estado,
+            'Cambio automático de estado',
+            CURRENT_TIMESTAMP
+        );
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION bloquear_modificacion_auditoria_pedido()
+RETURNS TRIGGER AS $$
+BEGIN
+    RAISE EXCEPTION 'pedido_auditoria es de solo inserción';
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_auditoria_pedido_solo_insercion ON pedido_auditoria;
+CREATE TRIGGER trigger_auditoria_pedido_solo_insercion
+    BEFORE UPDATE ON pedido_auditoria
+    FOR EACH ROW
+    EXECUTE FUNCTION bloquear_modificacion_auditoria_pedido();
+
+-- Historial de un pedido en orden de inserción
+CREATE INDEX IF NOT EXISTS idx_pedido_auditoria_pedido_fecha
+ON pedido_auditoria(pedido_id, fecha_cambio DESC, id DESC);
@@ -0,0 +1,196 @@
+-- =============================================================================
+-- Migration V050: Matriz de rendimiento empleado × mes
+-- Descripción: Agregados mensuales por empleado de jornadas (horas, importe,
+--              pagado) y ventas del TPV, mantenidos por trigger para que el
+--              rendimiento de uno o de todos los empleados en cualquier rango de
+--              meses no recorra jornadas_trabajo ni ventas.
+--
+-- Los triggers son por sentencia con tablas de transición: un UPDATE masivo
+-- (pago de varias jornadas, vinculación a nóminas) o un INSERT multi-fila de
+-- ventas aplica un único upsert agregado por (empleado, mes), ordenado por clave
+-- para que escritores concurrentes no se crucen.
+--
+-- Pendiente = jornadas - jornadas_pagadas / importe_jornadas - importe_pagado.
+--
+-- El archivado de ventas (ArchivoVentasService) borra de ventas con
+-- club.archivo_ventas = 'on' (set_config(..., true), solo dura la transacción):
+-- esas ventas siguen contando en la matriz.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS rendimiento_empleado_mes (
+    empleado_id BIGINT NOT NULL REFERENCES empleados(id) ON DELETE CASCADE,
+    mes DATE NOT NULL,  -- Primer día del mes
+    jornadas INTEGER NOT NULL DEFAULT 0,
+    horas DECIMAL(10, 2) NOT NULL DEFAULT 0,
+    importe_jornadas DECIMAL(12, 2) NOT NULL DEFAULT 0,
+    jornadas_pagadas INTEGER NOT NULL DEFAULT 0,
+    importe_pagado DECIMAL(12, 2) NOT NULL DEFAULT 0,
+    num_ventas INTEGER NOT NULL DEFAULT 0,
+    total_ventas DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (empleado_id, mes)
+);
+
+CREATE INDEX IF NOT EXISTS idx_rendimiento_empleado_mes_mes ON rendimiento_empleado_mes(mes);
+
+-- ============================================
+-- Jornadas de trabajo
+-- ============================================
+CREATE OR REPLACE FUNCTION actualizar_rendimiento_jornadas()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        INSERT INTO rendimiento_empleado_mes AS r
+            (empleado_id, mes, jornadas, horas, importe_jornadas, jornadas_pagadas, importe_pagado)
+        SELECT empleado_id, date_trunc('month', fecha)::date,
+               -COUNT(*), -SUM(horas_trabajadas), -SUM(total_pago),
+               -COUNT(*) FILTER (WHERE pagado), -COALESCE(SUM(total_pago) FILTER (WHERE pagado), 0)
+        FROM antiguas
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        ON CONFLICT (empleado_id, mes) DO UPDATE
+        SET jornadas = r.jornadas + EXCLUDED.jornadas,
+            horas = r.horas + EXCLUDED.horas,
+            importe_jornadas = r.importe_jornadas + EXCLUDED.importe_jornadas,
+            jornadas_pagadas = r.jornadas_pagadas + EXCLUDED.jornadas_pagadas,
+            importe_pagado = r.importe_pagado + EXCLUDED.importe_pagado;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO rendimiento_empleado_mes AS r
+            (empleado_id, mes, jornadas, horas, importe_jornadas, jornadas_pagadas, importe_pagado)
+        SELECT empleado_id, date_trunc('month', fecha)::date,
+               COUNT(*), SUM(horas_trabajadas), SUM(total_pago),
+               COUNT(*) FILTER (WHERE pagado), COALESCE(SUM(total_pago) FILTER (WHERE pagado), 0)
+        FROM nuevas
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        ON CONFLICT (empleado_id, mes) DO UPDATE
+        SET jornadas = r.jornadas + EXCLUDED.jornadas,
+            horas = r.horas + EXCLUDED.horas,
+            importe_jornadas = r.importe_jornadas + EXCLUDED.importe_jornadas,
+            jornadas_pagadas = r.jornadas_pagadas + EXCLUDED.jornadas_pagadas,
+            importe_pagado = r.importe_pagado + EXCLUDED.importe_pagado;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_jornadas_insert ON jornadas_trabajo;
+CREATE TRIGGER trigger_rendimiento_jornadas_insert
+    AFTER INSERT ON jornadas_trabajo
+    REFERENCING NEW TABLE AS nuevas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_jornadas();
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_jornadas_update ON jornadas_trabajo;
+CREATE TRIGGER trigger_rendimiento_jornadas_update
+    AFTER UPDATE ON jornadas_trabajo
+    REFERENCING OLD TABLE AS antiguas NEW TABLE AS nuevas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_jornadas();
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_jornadas_delete ON jornadas_trabajo;
+CREATE TRIGGER trigger_rendimiento_jornadas_delete
+    AFTER DELETE ON jornadas_trabajo
+    REFERENCING OLD TABLE AS antiguas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_jornadas();
+
+-- ============================================
+-- Ventas del TPV (cajero = ventas.empleado_id)
+-- ============================================
+CREATE OR REPLACE FUNCTION actualizar_rendimiento_ventas()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Archivado: las ventas pasan al archivo frío pero siguen contando
+    IF TG_OP = 'DELETE' AND current_setting('club.archivo_ventas', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        INSERT INTO rendimiento_empleado_mes AS r (empleado_id, mes, num_ventas, total_ventas)
+        SELECT empleado_id, date_trunc('month', fecha)::date, -COUNT(*), -SUM(total)
+        FROM antiguas
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        ON CONFLICT (empleado_id, mes) DO UPDATE
+        SET num_ventas = r.num_ventas + EXCLUDED.num_ventas,
+            total_ventas = r.total_ventas + EXCLUDED.total_ventas;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO rendimiento_empleado_mes AS r (empleado_id, mes, num_ventas, total_ventas)
+        SELECT empleado_id, date_trunc('month', fecha)::date, COUNT(*), SUM(total)
+        FROM nuevas
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        ON CONFLICT (empleado_id, mes) DO UPDATE
+        SET num_ventas = r.num_ventas + EXCLUDED.num_ventas,
+            total_ventas = r.total_ventas + EXCLUDED.total_ventas;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_ventas_insert ON ventas;
+CREATE TRIGGER trigger_rendimiento_ventas_insert
+    AFTER INSERT ON ventas
+    REFERENCING NEW TABLE AS nuevas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_ventas();
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_ventas_update ON ventas;
+CREATE TRIGGER trigger_rendimiento_ventas_update
+    AFTER UPDATE ON ventas
+    REFERENCING OLD TABLE AS antiguas NEW TABLE AS nuevas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_ventas();
+
+DROP TRIGGER IF EXISTS trigger_rendimiento_ventas_delete ON ventas;
+CREATE TRIGGER trigger_rendimiento_ventas_delete
+    AFTER DELETE ON ventas
+    REFERENCING OLD TABLE AS antiguas
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION actualizar_rendimiento_ventas();
+
+-- ============================================
+-- Reconstrucción completa (carga inicial y reconciliación)
+-- Las ventas archivadas salen de ventas_resumen_diario
+-- ============================================
+CREATE OR REPLACE FUNCTION reconstruir_rendimiento_empleados()
+RETURNS VOID AS $$
+BEGIN
+    -- Bloquea las escrituras en las tablas origen mientras se recalcula
+    LOCK TABLE jornadas_trabajo, ventas IN SHARE MODE;
+
+    DELETE FROM rendimiento_empleado_mes;
+
+    INSERT INTO rendimiento_empleado_mes
+        (empleado_id, mes, jornadas, horas, importe_jornadas, jornadas_pagadas, importe_pagado,
+         num_ventas, total_ventas)
+    SELECT empleado_id, mes,
+           SUM(jornadas), SUM(horas), SUM(importe_jornadas), SUM(jornadas_pagadas), SUM(importe_pagado),
+           SUM(num_ventas), SUM(total_ventas)
+    FROM (
+        SELECT empleado_id, date_trunc('month', fecha)::date AS mes,
+               COUNT(*) AS jornadas, SUM(horas_trabajadas) AS horas, SUM(total_pago) AS importe_jornadas,
+               COUNT(*) FILTER (WHERE pagado) AS jornadas_pagadas,
+               COALESCE(SUM(total_pago) FILTER (WHERE pagado), 0) AS importe_pagado,
+               0 AS num_ventas, 0 AS total_ventas
+        FROM jornadas_trabajo
+        GROUP BY 1, 2
+        UNION ALL
+        SELECT empleado_id, date_trunc('month', fecha)::date, 0, 0, 0, 0, 0, COUNT(*), SUM(total)
+        FROM ventas
+        GROUP BY 1, 2
+        UNION ALL
+        SELECT empleado_id, date_trunc('month', fecha)::date, 0, 0, 0, 0, 0, SUM(num_ventas), SUM(total)
+        FROM ventas_resumen_diario
+        WHERE empleado_id IN (SELECT id FROM empleados)  -- El resumen no tiene FK
+        GROUP BY 1, 2
+    ) origen
+    GROUP BY empleado_id, mes;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT reconstruir_rendimiento_empleados();
+
+COMMENT ON TABLE rendimiento_empleado_mes IS 'Jornadas y ventas por empleado y mes, mantenido por triggers sobre jornadas_trabajo y ventas';
@@ -0,0 +1,20 @@
+-- =============================================================================
+-- Migration V051: Reglas de borrado de botellas_abiertas
+-- Descripción: V046 creó las FK a productos y sesiones_caja sin acción ON DELETE.
+--
+-- - sesion_caja_id: el archivado de sesiones (ArchivoVentasService) borra de
+--   sesiones_caja; una sesión con botellas abiertas hacía fallar el lote entero.
+--   La botella se conserva sin sesión.
+-- - producto_id: como el resto de tablas nuevas que cuelgan de productos
+--   (consumo_jornada, consumo_previsiones), las botellas se borran con el producto.
+-- =============================================================================
+
+ALTER TABLE botellas_abiertas DROP CONSTRAINT IF EXISTS botellas_abiertas_sesion_caja_id_fkey;
+ALTER TABLE botellas_abiertas
+ADD CONSTRAINT botellas_abiertas_sesion_caja_id_fkey
+FOREIGN KEY (sesion_caja_id) REFERENCES sesiones_caja(id) ON DELETE SET NULL;
+
+ALTER TABLE botellas_abiertas DROP CONSTRAINT IF EXISTS botellas_abiertas_producto_id_fkey;
+ALTER TABLE botellas_abiertas
+ADD CONSTRAINT botellas_abiertas_producto_id_fkey
+FOREIGN KEY (producto_id) REFERENCES productos(id) ON DELETE CASCADE;
@@ -0,0 +1,21 @@
+-- =============================================================================
+-- Migration V052: Exportación incremental por (fecha de inserción, id)
+-- Descripción: Los ids no se asignan en orden de commit (V037 reserva bloques por
+--              instancia), así que la exportación de ventas, detalle_venta y
+--              movimientos_stock pasa a recorrerse por keyset (fecha, id), como
+--              transacciones. Los índices BRIN de V039 no dan ese orden: se
+--              sustituyen por índices btree compuestos.
+-- =============================================================================
+
+CREATE INDEX IF NOT EXISTS idx_ventas_created_at_id
+ON ventas (created_at, id);
+
+CREATE INDEX IF NOT EXISTS idx_detalle_venta_created_at_id
+ON detalle_venta (created_at, id);
+
+CREATE INDEX IF NOT EXISTS idx_movimientos_stock_creado_en_id
+ON movimientos_stock (creado_en, id);
+
+DROP INDEX IF EXISTS idx_ventas_created_at_brin;
+DROP INDEX IF EXISTS idx_detalle_venta_created_at_brin;
+DROP INDEX IF EXISTS idx_movimientos_stock_creado_en_brin;
@@ -0,0 +1,91 @@
+-- =============================================================================
+-- Migration V053: Libro diario sin serializar a todos los escritores
+-- Descripción: V040 tomaba un advisory lock exclusivo global en cada cambio de
+--              transacciones, así que dos cajas registrando a la vez se esperaban
+--              hasta el commit de la otra.
+--
+-- Un candado por día no basta: un día nuevo copia el acumulado del día anterior,
+-- y el UPDATE de acumulados (fecha >= día) de un escritor concurrente en un día
+-- anterior no ve la fila recién creada (READ COMMITTED). Por eso:
+--
+-- - Días que ya existen (el caso normal): advisory lock COMPARTIDO. Los escritores
+--   solo suman deltas, que conmutan; se bloquean las filas de libro_diario_totales
+--   afectadas en orden de fecha para que dos rangos solapados no se crucen.
+-- - Crear un día: advisory lock EXCLUSIVO, que espera a que terminen los escritores
+--   en curso. Pasa una vez al día y con transacciones de fecha pasada sin movimiento.
+-- - La reconstrucción sigue tomando el exclusivo.
+--
+-- Una transacción que toca varios días en sentencias distintas (o crea un día tras
+-- haber escrito otro) puede topar con un deadlock con otra igual; PostgreSQL lo
+-- detecta y aborta una de las dos.
+-- =============================================================================
+
+CREATE OR REPLACE FUNCTION aplicar_delta_libro_diario(
+    p_fecha DATE, p_tipo VARCHAR, p_categoria_id BIGINT, p_monto DECIMAL, p_num INTEGER
+) RETURNS VOID AS $$
+DECLARE
+    v_ingresos DECIMAL := CASE WHEN p_tipo = 'INGRESO' THEN p_monto ELSE 0 END;
+    v_gastos DECIMAL := CASE WHEN p_tipo = 'GASTO' THEN p_monto ELSE 0 END;
+BEGIN
+    IF EXISTS (SELECT 1 FROM libro_diario_totales WHERE fecha = p_fecha) THEN
+        PERFORM pg_advisory_xact_lock_shared(hashtext('libro_diario'));
+    ELSE
+        -- Día nuevo: el acumulado del día anterior no puede estar cambiando a la vez
+        PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+
+        INSERT INTO libro_diario_totales (fecha, ingresos_acumulados, gastos_acumulados)
+        SELECT p_fecha,
+               COALESCE((SELECT ingresos_acumulados FROM libro_diario_totales
+                         WHERE fecha < p_fecha ORDER BY fecha DESC LIMIT 1), 0),
+               COALESCE((SELECT gastos_acumulados FROM libro_diario_totales
+                         WHERE fecha < p_fecha ORDER BY fecha DESC LIMIT 1), 0)
+        ON CONFLICT (fecha) DO NOTHING;
+    END IF;
+
+    INSERT INTO libro_diario (fecha, tipo, categoria_id, total, num_transacciones)
+    VALUES (p_fecha, p_tipo, p_categoria_id, p_monto, p_num)
+    ON CONFLICT (fecha, tipo, categoria_id) DO UPDATE
+    SET total = libro_diario.total + EXCLUDED.total,
+        num_transacciones = libro_diario.num_transacciones + EXCLUDED.num_transacciones;
+
+    -- Filas afectadas bloqueadas en orden de fecha
+    PERFORM 1 FROM libro_diario_totales WHERE fecha >= p_fecha ORDER BY fecha FOR UPDATE;
+
+    UPDATE libro_diario_totales
+    SET ingresos = ingresos + v_ingresos,
+        gastos = gastos + v_gastos
+    WHERE fecha = p_fecha;
+
+    UPDATE libro_diario_totales
+    SET ingresos_acumulados = ingresos_acumulados + v_ingresos,
+        gastos_acumulados = gastos_acumulados + v_gastos
+    WHERE fecha >= p_fecha;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION actualizar_libro_diario()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        -- Si la nueva fecha es un día nuevo, el exclusivo se toma antes que el
+        -- compartido: ampliar de compartido a exclusivo puede cruzarse con otro escritor
+        IF NOT EXISTS (SELECT 1 FROM libro_diario_totales WHERE fecha = NEW.fecha) THEN
+            PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+        END IF;
+
+        -- Primero la fecha menor, para bloquear las filas en orden
+        IF OLD.fecha <= NEW.fecha THEN
+            PERFORM aplicar_delta_libro_diario(OLD.fecha, OLD.tipo, OLD.categoria_id, -OLD.monto, -1);
+            PERFORM aplicar_delta_libro_diario(NEW.fecha, NEW.tipo, NEW.categoria_id, NEW.monto, 1);
+        ELSE
+            PERFORM aplicar_delta_libro_diario(NEW.fecha, NEW.tipo, NEW.categoria_id, NEW.monto, 1);
+            PERFORM aplicar_delta_libro_diario(OLD.fecha, OLD.tipo, OLD.categoria_id, -OLD.monto, -1);
+        END IF;
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM aplicar_delta_libro_diario(OLD.fecha, OLD.tipo, OLD.categoria_id, -OLD.monto, -1);
+    ELSE
+        PERFORM aplicar_delta_libro_diario(NEW.fecha, NEW.tipo, NEW.categoria_id, NEW.monto, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,10 @@
+-- =============================================================================
+-- Migration V054: Índice sobre la última venta archivada
+-- Descripción: ArchivoVentasService lee MAX(fecha_ultima_venta) en cada reporte
+--              de ventas en lugar de cachearlo por instancia (otra instancia puede
+--              haber archivado). El índice de V038 empieza por fecha_primera_venta
+--              y no sirve para ese MAX.
+-- =============================================================================
+
+CREATE INDEX IF NOT EXISTS idx_sesiones_caja_archivo_ultima_venta
+    ON sesiones_caja_archivo(fecha_ultima_venta);
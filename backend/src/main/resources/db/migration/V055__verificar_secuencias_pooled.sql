@@ -0,0 +1,68 @@
+-- =============================================================================
+-- Migration V055: Verificación de las secuencias pooled de V037
+-- Descripción: V037 omitía con un NOTICE las tablas cuyo id no tenía secuencia
+--              serial asociada, y la entidad (allocationSize 25) fallaba después
+--              al pedir nextval a una secuencia inexistente. Aquí se comprueba la
+--              secuencia que espera cada entidad:
+--
+-- - si no existe, se crea con INCREMENT BY 25, asociada a la columna id y por
+--   encima del mayor id existente;
+-- - si existe con otro incremento, se corrige sin retroceder su valor.
+--
+-- Las tablas corregidas (o que no existen) se listan en un WARNING.
+-- =============================================================================
+
+DO $$
+DECLARE
+    par TEXT[];
+    tabla TEXT;
+    secuencia TEXT;
+    incremento BIGINT;
+    max_id BIGINT;
+    corregidas TEXT[] := ARRAY[]::TEXT[];
+BEGIN
+    FOREACH par SLICE 1 IN ARRAY ARRAY[
+        ['detalle_venta', 'detalle_venta_id_seq'],
+        ['movimientos_stock', 'movimientos_stock_id_seq'],
+        ['nominas', 'nominas_id_seq'],
+        ['system_logs', 'system_logs_id_seq'],
+        ['detalles_inventario', 'detalles_inventario_id_seq'],
+        ['detalle_pedido', 'detalle_pedido_id_seq'],
+        ['pedido_auditoria', 'pedido_auditoria_id_seq']
+    ]
+    LOOP
+        tabla := par[1];
+        secuencia := par[2];
+
+        IF to_regclass(tabla) IS NULL THEN
+            corregidas := corregidas || format('%s (no existe)', tabla);
+            CONTINUE;
+        END IF;
+
+        SELECT s.increment_by INTO incremento
+        FROM pg_sequences s
+        WHERE s.schemaname = current_schema() AND s.sequencename = secuencia;
+
+        IF NOT FOUND THEN
+            EXECUTE format('CREATE SEQUENCE %I INCREMENT BY 25 OWNED BY %I.id', secuencia, tabla);
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)', tabla, secuencia);
+            corregidas := corregidas || format('%s (secuencia creada)', tabla);
+        ELSIF incremento <> 25 THEN
+            EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 25', secuencia);
+            corregidas := corregidas || format('%s (incremento %s -> 25)', tabla, incremento);
+        ELSE
+            CONTINUE;
+        END IF;
+
+        -- Nunca por debajo de lo ya reservado: otra instancia puede tener un bloque en memoria
+        EXECUTE format('SELECT GREATEST(COALESCE(MAX(id), 0), (SELECT last_value FROM %I), 1) FROM %I',
+                       secuencia, tabla) INTO max_id;
+        PERFORM setval(secuencia, max_id, true);
+    END LOOP;
+
+    IF array_length(corregidas, 1) > 0 THEN
+        RAISE WARNING 'Secuencias pooled corregidas: %', array_to_string(corregidas, ', ');
+    ELSE
+        RAISE NOTICE 'Secuencias pooled correctas en todas las tablas';
+    END IF;
+END $$;
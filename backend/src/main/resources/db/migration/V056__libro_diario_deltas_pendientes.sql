@@ -0,0 +1,157 @@
+-- =============================================================================
+-- Migration V056: Libro diario con deltas pendientes de plegar
+-- Descripción: Con V053 cada venta del día seguía actualizando la misma fila de
+--              libro_diario_totales (y la de hoy en libro_diario) y retenía su
+--              bloqueo hasta el commit: los cobros concurrentes se encolaban.
+--
+-- - El trigger sobre transacciones solo inserta el delta en libro_diario_pendiente
+--   (tabla de solo inserción, sin filas compartidas que bloquear).
+-- - plegar_libro_diario() (LibroDiarioService, cada app.libro-diario.plegado-ms)
+--   borra los deltas confirmados y los aplica agregados a libro_diario y a
+--   libro_diario_totales. Un solo plegador a la vez (advisory lock exclusivo).
+-- - Las consultas suman a los acumulados los deltas aún pendientes del rango.
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS libro_diario_pendiente (
+    id BIGSERIAL PRIMARY KEY,
+    fecha DATE NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    categoria_id BIGINT NOT NULL,
+    monto DECIMAL(14, 2) NOT NULL,
+    num INTEGER NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_libro_diario_pendiente_fecha ON libro_diario_pendiente(fecha);
+
+-- ============================================
+-- Trigger sobre transacciones: solo apunta el delta
+-- ============================================
+CREATE OR REPLACE FUNCTION actualizar_libro_diario()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        INSERT INTO libro_diario_pendiente (fecha, tipo, categoria_id, monto, num)
+        VALUES (OLD.fecha, OLD.tipo, OLD.categoria_id, -OLD.monto, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO libro_diario_pendiente (fecha, tipo, categoria_id, monto, num)
+        VALUES (NEW.fecha, NEW.tipo, NEW.categoria_id, NEW.monto, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Ya no la usa el trigger
+DROP FUNCTION IF EXISTS aplicar_delta_libro_diario(DATE, VARCHAR, BIGINT, DECIMAL, INTEGER);
+
+-- ============================================
+-- Plegado de los deltas confirmados
+-- ============================================
+CREATE OR REPLACE FUNCTION plegar_libro_diario()
+RETURNS INTEGER AS $$
+DECLARE
+    v_plegados INTEGER;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+
+    CREATE TEMP TABLE libro_diario_lote (
+        fecha DATE NOT NULL,
+        tipo VARCHAR(20) NOT NULL,
+        categoria_id BIGINT NOT NULL,
+        monto DECIMAL(14, 2) NOT NULL,
+        num INTEGER NOT NULL,
+        filas INTEGER NOT NULL
+    ) ON COMMIT DROP;
+
+    -- Solo se ven (y se borran) los deltas ya confirmados; los de transacciones en
+    -- curso se pliegan en una pasada posterior
+    WITH borrados AS (
+        DELETE FROM libro_diario_pendiente
+        RETURNING fecha, tipo, categoria_id, monto, num
+    )
+    INSERT INTO libro_diario_lote (fecha, tipo, categoria_id, monto, num, filas)
+    SELECT fecha, tipo, categoria_id, SUM(monto), SUM(num), COUNT(*)
+    FROM borrados
+    GROUP BY fecha, tipo, categoria_id;
+
+    SELECT COALESCE(SUM(filas), 0) INTO v_plegados FROM libro_diario_lote;
+    IF v_plegados = 0 THEN
+        DROP TABLE libro_diario_lote;
+        RETURN 0;
+    END IF;
+
+    INSERT INTO libro_diario AS l (fecha, tipo, categoria_id, total, num_transacciones)
+    SELECT fecha, tipo, categoria_id, monto, num
+    FROM libro_diario_lote
+    ORDER BY fecha, tipo, categoria_id
+    ON CONFLICT (fecha, tipo, categoria_id) DO UPDATE
+    SET total = l.total + EXCLUDED.total,
+        num_transacciones = l.num_transacciones + EXCLUDED.num_transacciones;
+
+    -- Días nuevos: copian el acumulado del último día existente anterior; el paso
+    -- siguiente les suma los deltas de este lote de su día y anteriores
+    INSERT INTO libro_diario_totales (fecha, ingresos_acumulados, gastos_acumulados)
+    SELECT d.fecha,
+           COALESCE((SELECT t.ingresos_acumulados FROM libro_diario_totales t
+                     WHERE t.fecha < d.fecha ORDER BY t.fecha DESC LIMIT 1), 0),
+           COALESCE((SELECT t.gastos_acumulados FROM libro_diario_totales t
+                     WHERE t.fecha < d.fecha ORDER BY t.fecha DESC LIMIT 1), 0)
+    FROM (SELECT DISTINCT fecha FROM libro_diario_lote) d
+    ON CONFLICT (fecha) DO NOTHING;
+
+    WITH dias AS (
+        SELECT fecha,
+               COALESCE(SUM(monto) FILTER (WHERE tipo = 'INGRESO'), 0) AS ingresos,
+               COALESCE(SUM(monto) FILTER (WHERE tipo = 'GASTO'), 0) AS gastos
+        FROM libro_diario_lote
+        GROUP BY fecha
+    )
+    UPDATE libro_diario_totales t
+    SET ingresos = t.ingresos + COALESCE((SELECT d.ingresos FROM dias d WHERE d.fecha = t.fecha), 0),
+        gastos = t.gastos + COALESCE((SELECT d.gastos FROM dias d WHERE d.fecha = t.fecha), 0),
+        ingresos_acumulados = t.ingresos_acumulados
+            + (SELECT COALESCE(SUM(d.ingresos), 0) FROM dias d WHERE d.fecha <= t.fecha),
+        gastos_acumulados = t.gastos_acumulados
+            + (SELECT COALESCE(SUM(d.gastos), 0) FROM dias d WHERE d.fecha <= t.fecha)
+    WHERE t.fecha >= (SELECT MIN(fecha) FROM dias);
+
+    DROP TABLE libro_diario_lote;
+    RETURN v_plegados;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ============================================
+-- Reconstrucción: descarta los deltas, que ya están en transacciones
+-- ============================================
+CREATE OR REPLACE FUNCTION reconstruir_libro_diario()
+RETURNS VOID AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('libro_diario'));
+    -- Sin escrituras en transacciones mientras tanto: un delta confirmado entre el
+    -- borrado de pendientes y la lectura de transacciones se contaría dos veces
+    LOCK TABLE transacciones IN SHARE MODE;
+
+    DELETE FROM libro_diario_pendiente;
+    DELETE FROM libro_diario;
+    DELETE FROM libro_diario_totales;
+
+    INSERT INTO libro_diario (fecha, tipo, categoria_id, total, num_transacciones)
+    SELECT fecha, tipo, categoria_id, SUM(monto), COUNT(*)
+    FROM transacciones
+    GROUP BY fecha, tipo, categoria_id;
+
+    INSERT INTO libro_diario_totales (fecha, ingresos, gastos, ingresos_acumulados, gastos_acumulados)
+    SELECT fecha, ingresos, gastos,
+           SUM(ingresos) OVER (ORDER BY fecha),
+           SUM(gastos) OVER (ORDER BY fecha)
+    FROM (
+        SELECT fecha,
+               COALESCE(SUM(total) FILTER (WHERE tipo = 'INGRESO'), 0) AS ingresos,
+               COALESCE(SUM(total) FILTER (WHERE tipo = 'GASTO'), 0) AS gastos
+        FROM libro_diario
+        GROUP BY fecha
+    ) dias;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON TABLE libro_diario_pendiente IS 'Deltas de transacciones pendientes de plegar en libro_diario y libro_diario_totales';
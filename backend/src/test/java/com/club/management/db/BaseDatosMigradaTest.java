@@ -0,0 +1,61 @@
+package com.club.management.db;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base de los tests de triggers y funciones SQL: PostgreSQL en Testcontainers con
+ * todas las migraciones de Flyway aplicadas, sin contexto de Spring.
+ * Sin Docker los tests se omiten.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+abstract class BaseDatosMigradaTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    protected static DataSource dataSource;
+    protected static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void migrar() {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    protected static List<Map<String, Object>> filas(String sql) {
+        return jdbc.queryForList(sql);
+    }
+
+    protected static Long crearEmpleado(String dni) {
+        return jdbc.queryForObject(
+                "INSERT INTO empleados (nombre, apellidos, dni, cargo, fecha_alta, salario_base) " +
+                "VALUES ('Test', 'Empleado', ?, 'CAMARERO', CURRENT_DATE, 0) RETURNING id",
+                Long.class, dni);
+    }
+
+    protected static Long crearTransaccion(String tipo, LocalDate fecha, BigDecimal monto) {
+        Long categoriaId = jdbc.queryForObject(
+                "SELECT id FROM categorias_transaccion WHERE tipo = ? ORDER BY id LIMIT 1", Long.class, tipo);
+        return jdbc.queryForObject(
+                "INSERT INTO transacciones (tipo, categoria_id, fecha, concepto, monto) " +
+                "VALUES (?, ?, ?, 'test', ?) RETURNING id",
+                Long.class, tipo, categoriaId, fecha, monto);
+    }
+}
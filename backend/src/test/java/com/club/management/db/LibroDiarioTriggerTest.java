@@ -0,0 +1,128 @@
+package com.club.management.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+/**
+ * Libro diario mantenido por trigger (V040) con deltas pendientes de plegar (V056):
+ * tras plegar, libro_diario y libro_diario_totales coinciden con la reconstrucción
+ * completa desde transacciones, y los escritores no se bloquean entre sí.
+ */
+class LibroDiarioTriggerTest extends BaseDatosMigradaTest {
+
+    private static final LocalDate DIA_1 = LocalDate.of(2026, 3, 1);
+    private static final LocalDate DIA_2 = LocalDate.of(2026, 3, 2);
+    private static final LocalDate DIA_3 = LocalDate.of(2026, 3, 5);
+
+    private static final String LIBRO =
+            "SELECT fecha, tipo, categoria_id, total, num_transacciones FROM libro_diario " +
+            "WHERE num_transacciones <> 0 ORDER BY fecha, tipo, categoria_id";
+    private static final String TOTALES =
+            "SELECT fecha, ingresos, gastos, ingresos_acumulados, gastos_acumulados FROM libro_diario_totales " +
+            "WHERE ingresos <> 0 OR gastos <> 0 ORDER BY fecha";
+
+    @BeforeEach
+    void limpiar() {
+        jdbc.execute("DELETE FROM transacciones");
+        jdbc.execute("TRUNCATE libro_diario, libro_diario_totales, libro_diario_pendiente");
+    }
+
+    @Test
+    void elTriggerSoloApuntaDeltasHastaPlegar() {
+        crearTransaccion("INGRESO", DIA_1, new BigDecimal("100.00"));
+        crearTransaccion("GASTO", DIA_1, new BigDecimal("40.00"));
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM libro_diario_pendiente", Integer.class)).isEqualTo(2);
+        assertThat(filas(TOTALES)).isEmpty();
+
+        assertThat(plegar()).isEqualTo(2);
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM libro_diario_pendiente", Integer.class)).isZero();
+        Map<String, Object> dia = jdbc.queryForMap(
+                "SELECT ingresos_acumulados, gastos_acumulados FROM libro_diario_totales WHERE fecha = ?", DIA_1);
+        assertThat(dia.get("ingresos_acumulados")).isEqualTo(new BigDecimal("100.00"));
+        assertThat(dia.get("gastos_acumulados")).isEqualTo(new BigDecimal("40.00"));
+    }
+
+    @Test
+    void plegarCoincideConLaReconstruccion() {
+        crearTransaccion("INGRESO", DIA_1, new BigDecimal("100.00"));
+        crearTransaccion("INGRESO", DIA_3, new BigDecimal("30.00"));
+        plegar();
+
+        // Día intermedio nuevo: hereda el acumulado de DIA_1 y desplaza el de DIA_3
+        crearTransaccion("INGRESO", DIA_2, new BigDecimal("12.50"));
+        Long gasto = crearTransaccion("GASTO", DIA_3, new BigDecimal("8.00"));
+        Long movido = crearTransaccion("INGRESO", DIA_3, new BigDecimal("5.00"));
+        plegar();
+
+        jdbc.update("UPDATE transacciones SET fecha = ? WHERE id = ?", DIA_1, movido);
+        jdbc.update("UPDATE transacciones SET monto = 9.00 WHERE id = ?", gasto);
+        Long borrado = crearTransaccion("GASTO", DIA_2, new BigDecimal("3.00"));
+        jdbc.update("DELETE FROM transacciones WHERE id = ?", borrado);
+        plegar();
+
+        List<Map<String, Object>> libro = filas(LIBRO);
+        List<Map<String, Object>> totales = filas(TOTALES);
+
+        jdbc.execute("SELECT reconstruir_libro_diario()");
+
+        assertThat(libro).isEqualTo(filas(LIBRO));
+        assertThat(totales).isEqualTo(filas(TOTALES));
+    }
+
+    @Test
+    void dosEscritoresDelMismoDiaNoSeEsperan() throws Exception {
+        crearTransaccion("INGRESO", DIA_1, new BigDecimal("1.00"));
+        plegar();
+
+        try (Connection a = dataSource.getConnection(); Connection b = dataSource.getConnection()) {
+            a.setAutoCommit(false);
+            b.setAutoCommit(false);
+
+            insertar(a, DIA_1, new BigDecimal("10.00"));
+            try (Statement st = b.createStatement()) {
+                st.execute("SET LOCAL lock_timeout = '2s'");
+            }
+            // Con V053 esperaba al commit de a por la fila de libro_diario_totales
+            assertThatCode(() -> insertar(b, DIA_1, new BigDecimal("20.00"))).doesNotThrowAnyException();
+
+            // El plegado tampoco espera ni ve los deltas sin confirmar
+            assertThat(plegar()).isZero();
+
+            a.commit();
+            b.commit();
+        }
+
+        assertThat(plegar()).isEqualTo(2);
+        assertThat(jdbc.queryForObject(
+                "SELECT ingresos_acumulados FROM libro_diario_totales WHERE fecha = ?", BigDecimal.class, DIA_1))
+                .isEqualTo(new BigDecimal("31.00"));
+    }
+
+    private static int plegar() {
+        return jdbc.queryForObject("SELECT plegar_libro_diario()", Integer.class);
+    }
+
+    private static void insertar(Connection conexion, LocalDate fecha, BigDecimal monto) throws Exception {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "INSERT INTO transacciones (tipo, categoria_id, fecha, concepto, monto) " +
+                "SELECT 'INGRESO', id, ?, 'test', ? FROM categorias_transaccion " +
+                "WHERE tipo = 'INGRESO' ORDER BY id LIMIT 1")) {
+            ps.setObject(1, fecha);
+            ps.setBigDecimal(2, monto);
+            ps.executeUpdate();
+        }
+    }
+}
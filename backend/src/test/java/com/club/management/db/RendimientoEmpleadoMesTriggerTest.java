@@ -0,0 +1,89 @@
+package com.club.management.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Matriz empleado × mes mantenida por triggers por sentencia (V050): tras altas,
+ * pagos masivos, cambios de mes y borrados coincide con reconstruir_rendimiento_empleados()
+ */
+class RendimientoEmpleadoMesTriggerTest extends BaseDatosMigradaTest {
+
+    private static final String MATRIZ =
+            "SELECT empleado_id, mes, jornadas, horas, importe_jornadas, jornadas_pagadas, importe_pagado, " +
+            "       num_ventas, total_ventas " +
+            "FROM rendimiento_empleado_mes " +
+            "WHERE jornadas <> 0 OR num_ventas <> 0 ORDER BY empleado_id, mes";
+
+    private Long empleado1;
+    private Long empleado2;
+
+    @BeforeEach
+    void preparar() {
+        jdbc.execute("DELETE FROM ventas");
+        jdbc.execute("DELETE FROM jornadas_trabajo");
+        jdbc.execute("TRUNCATE rendimiento_empleado_mes");
+        empleado1 = crearEmpleado("T-" + System.nanoTime());
+        empleado2 = crearEmpleado("T-" + System.nanoTime());
+    }
+
+    @Test
+    void jornadasCoincidenConLaReconstruccion() {
+        // INSERT multi-fila: un solo upsert agregado por (empleado, mes)
+        jdbc.update(
+                "INSERT INTO jornadas_trabajo (empleado_id, fecha, hora_inicio, hora_fin, horas_trabajadas, precio_hora, total_pago) " +
+                "VALUES (?, '2026-01-10', '22:00', '04:00', 6, 12, 72), " +
+                "       (?, '2026-01-11', '22:00', '03:00', 5, 12, 60), " +
+                "       (?, '2026-02-01', '23:00', '05:00', 6, 12, 72), " +
+                "       (?, '2026-01-10', '22:00', '02:00', 4, 15, 60)",
+                empleado1, empleado1, empleado1, empleado2);
+
+        Map<String, Object> enero = jdbc.queryForMap(
+                "SELECT jornadas, horas, importe_jornadas FROM rendimiento_empleado_mes WHERE empleado_id = ? AND mes = '2026-01-01'",
+                empleado1);
+        assertThat(enero.get("jornadas")).isEqualTo(2);
+        assertThat((BigDecimal) enero.get("importe_jornadas")).isEqualByComparingTo("132");
+
+        // Pago masivo, cambio de mes y borrado
+        jdbc.update("UPDATE jornadas_trabajo SET pagado = TRUE, fecha_pago = fecha WHERE empleado_id = ?", empleado1);
+        jdbc.update("UPDATE jornadas_trabajo SET fecha = '2026-02-10' WHERE empleado_id = ? AND fecha = '2026-01-10'", empleado2);
+        jdbc.update("DELETE FROM jornadas_trabajo WHERE empleado_id = ? AND fecha = '2026-02-01'", empleado1);
+
+        assertReconstruccionIgual();
+    }
+
+    @Test
+    void ventasCoincidenConLaReconstruccion() {
+        Long sesion = jdbc.queryForObject(
+                "INSERT INTO sesiones_caja (nombre_caja, empleado_apertura_id) VALUES ('Barra test', ?) RETURNING id",
+                Long.class, empleado1);
+
+        jdbc.update(
+                "INSERT INTO ventas (sesion_caja_id, fecha, subtotal, total, metodo_pago, empleado_id) " +
+                "VALUES (?, '2026-01-15 01:00', 20, 20, 'EFECTIVO', ?), " +
+                "       (?, '2026-01-15 02:00', 35, 35, 'TARJETA', ?), " +
+                "       (?, '2026-02-01 01:30', 12, 12, 'EFECTIVO', ?)",
+                sesion, empleado1, sesion, empleado2, sesion, empleado1);
+
+        jdbc.update("UPDATE ventas SET total = 25, subtotal = 25 WHERE sesion_caja_id = ? AND total = 20", sesion);
+        jdbc.update("DELETE FROM ventas WHERE sesion_caja_id = ? AND total = 12", sesion);
+
+        assertReconstruccionIgual();
+    }
+
+    private static void assertReconstruccionIgual() {
+        List<Map<String, Object>> porTrigger = filas(MATRIZ);
+        assertThat(porTrigger).isNotEmpty();
+
+        jdbc.execute("SELECT reconstruir_rendimiento_empleados()");
+
+        assertThat(porTrigger).isEqualTo(filas(MATRIZ));
+    }
+}
@@ -0,0 +1,141 @@
+package com.club.management.repository;
+
+import com.club.management.entity.DetalleVenta;
+import com.club.management.entity.Empleado;
+import com.club.management.entity.Producto;
+import com.club.management.entity.SesionCaja;
+import com.club.management.entity.Venta;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Viajes a la base de datos al guardar una venta de varias líneas (V037, docs/BATCH_INSERTS.md).
+ *
+ * Usa la configuración de Hibernate del perfil dev (batch_size 25, order_inserts) con
+ * reWriteBatchedInserts como en prod, y cuenta con las estadísticas de Hibernate las
+ * sentencias JDBC preparadas y las entidades insertadas. Con IDENTITY cada línea
+ * sería una sentencia propia; con la secuencia pooled las líneas van en un batch.
+ */
+@DataJpaTest
+@ActiveProfiles("dev")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Slf4j
+class VentaBatchInsertTest {
+
+    private static final int LINEAS = 8;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void baseDeDatos(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:postgresql://" + POSTGRES.getHost() + ":" +
+                POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + POSTGRES.getDatabaseName() +
+                "?reWriteBatchedInserts=true");
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long empleadoId;
+    private Long sesionId;
+    private final List<Long> productoIds = new ArrayList<>();
+
+    @BeforeEach
+    void preparar() {
+        empleadoId = jdbcTemplate.queryForObject(
+                "INSERT INTO empleados (nombre, apellidos, dni, cargo, fecha_alta, salario_base) " +
+                "VALUES ('Caja', 'Test', ?, 'CAMARERO', CURRENT_DATE, 0) RETURNING id",
+                Long.class, "B-" + System.nanoTime());
+        sesionId = jdbcTemplate.queryForObject(
+                "INSERT INTO sesiones_caja (nombre_caja, empleado_apertura_id) VALUES ('Barra test', ?) RETURNING id",
+                Long.class, empleadoId);
+        productoIds.clear();
+        for (int i = 0; i < LINEAS; i++) {
+            productoIds.add(jdbcTemplate.queryForObject(
+                    "INSERT INTO productos (codigo, nombre, categoria, precio_venta, stock_actual) " +
+                    "VALUES (?, 'Producto test', 'BEBIDA', 5, 1000) RETURNING id",
+                    Long.class, "BATCH-" + System.nanoTime() + "-" + i));
+        }
+    }
+
+    @Test
+    void unaVentaDeVariasLineasVaEnBatch() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Primera venta: inicializa el bloque de ids de la secuencia pooled
+        guardarVenta();
+
+        estadisticas.clear();
+        guardarVenta();
+
+        long sentencias = estadisticas.getPrepareStatementCount();
+        long inserciones = estadisticas.getEntityInsertCount();
+        log.info("Venta de {} líneas: {} entidades insertadas con {} sentencias JDBC preparadas",
+                LINEAS, inserciones, sentencias);
+
+        assertThat(inserciones).isEqualTo(LINEAS + 1);
+        // INSERT de la venta (IDENTITY) + un único batch para las líneas; con IDENTITY
+        // en detalle_venta serían LINEAS + 1
+        assertThat(sentencias).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM detalle_venta WHERE producto_id = ?", Integer.class, productoIds.get(0)))
+                .isEqualTo(2);
+    }
+
+    private void guardarVenta() {
+        Venta venta = Venta.builder()
+                .sesionCaja(entityManager.getReference(SesionCaja.class, sesionId))
+                .empleado(entityManager.getReference(Empleado.class, empleadoId))
+                .metodoPago(Venta.MetodoPago.TARJETA)
+                .montoTarjeta(new BigDecimal("40.00"))
+                .build();
+        for (Long productoId : productoIds) {
+            DetalleVenta detalle = DetalleVenta.builder()
+                    .producto(entityManager.getReference(Producto.class, productoId))
+                    .cantidad(1)
+                    .precioUnitario(new BigDecimal("5.00"))
+                    .build();
+            detalle.calcularTotales();
+            venta.addDetalle(detalle);
+        }
+        ventaRepository.save(venta);
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
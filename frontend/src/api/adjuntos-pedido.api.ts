@@ -16,6 +16,7 @@ export interface AdjuntoPedido {
   fechaSubida: string;
   urlDescarga: string;
   urlVistaPrevia?: string;
+  urlMiniatura?: string;
   esImagen: boolean;
   esPdf: boolean;
 }
@@ -25,6 +26,15 @@ export interface EstadisticasAdjuntos {
   tamanioTotalBytes: number;
 }
 
+// Las URLs del DTO las construye el backend con su propio host; se piden por la ruta
+// para que pasen por la baseURL de axios y lleven el token
+const rutaApi = (url: string) =>
+  new URL(url, window.location.origin).pathname.replace(/^\/api(?=\/)/, '');
+
+const esperar = (ms: number) => new Promise((resolve) => setTimeout(resolve, ms));
+
+const MAX_REINTENTOS_MINIATURA = 5;
+
 /**
  * API para adjuntos de pedidos
  */
@@ -88,6 +98,52 @@ export const adjuntosPedidoApi = {
     window.URL.revokeObjectURL(url);
   },
 
+  /**
+   * Miniatura de un adjunto de imagen, o null si no tiene o no se pudo generar.
+   * Mientras se genera el backend responde 202 con Retry-After.
+   */
+  getMiniatura: async (adjunto: AdjuntoPedido): Promise<Blob | null> => {
+    if (!adjunto.urlMiniatura) return null;
+    for (let intento = 0; intento < MAX_REINTENTOS_MINIATURA; intento++) {
+      const response = await axios.get(rutaApi(adjunto.urlMiniatura), {
+        responseType: 'blob',
+        validateStatus: (status) => status === 200 || status === 202 || status === 404,
+      });
+      if (response.status === 200) return response.data;
+      if (response.status === 404) return null;
+      await esperar(Number(response.headers['retry-after'] ?? 2) * 1000);
+    }
+    return null;
+  },
+
+  /**
+   * Abrir la vista previa en otra pestaña: versión comprimida si está lista, si no
+   * el original (lo decide el backend). Sin vista previa, se descarga.
+   */
+  abrirVistaPrevia: async (adjunto: AdjuntoPedido): Promise<void> => {
+    if (!adjunto.urlVistaPrevia) {
+      await adjuntosPedidoApi.descargarAdjunto(adjunto.id, adjunto.nombreOriginal);
+      return;
+    }
+    // La pestaña se abre antes de la petición para que no la bloquee el navegador
+    const ventana = window.open('', '_blank');
+    try {
+      const response = await axios.get(rutaApi(adjunto.urlVistaPrevia), {
+        responseType: 'blob',
+      });
+      const url = window.URL.createObjectURL(response.data);
+      if (ventana) {
+        ventana.location.href = url;
+      } else {
+        window.open(url, '_blank');
+      }
+      setTimeout(() => window.URL.revokeObjectURL(url), 60000);
+    } catch (error) {
+      ventana?.close();
+      throw error;
+    }
+  },
+
   /**
    * Eliminar un adjunto
    */
@@ -12,8 +12,15 @@ export const authApi = {
     return response.data;
   },
 
-  refreshToken: async (): Promise<LoginResponse> => {
-    const response = await axiosInstance.post<LoginResponse>('/auth/refresh');
+  refreshToken: async (refreshToken?: string): Promise<LoginResponse> => {
+    const response = await axiosInstance.post<LoginResponse>(
+      '/auth/refresh',
+      refreshToken ? { refreshToken } : undefined
+    );
     return response.data;
   },
+
+  logout: async (refreshToken?: string | null): Promise<void> => {
+    await axiosInstance.post('/auth/logout', refreshToken ? { refreshToken } : undefined);
+  },
 };
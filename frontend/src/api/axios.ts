@@ -47,10 +47,54 @@ axiosInstance.interceptors.request.use(
   }
 );
 
+// Renovación del access token con el refresh token (una sola petición en vuelo)
+let refreshEnCurso: Promise<string | null> | null = null;
+
+const renovarAccessToken = (): Promise<string | null> => {
+  const refreshToken = localStorage.getItem('refresh_token');
+  if (!refreshToken) {
+    return Promise.resolve(null);
+  }
+  if (!refreshEnCurso) {
+    refreshEnCurso = axios
+      .post(`${API_URL}/auth/refresh`, { refreshToken })
+      .then((response) => {
+        localStorage.setItem('token', response.data.token);
+        if (response.data.refreshToken) {
+          localStorage.setItem('refresh_token', response.data.refreshToken);
+        }
+        return response.data.token as string;
+      })
+      .catch(() => null)
+      .finally(() => {
+        refreshEnCurso = null;
+      });
+  }
+  return refreshEnCurso;
+};
+
 // Interceptor para manejar errores de autenticación
 axiosInstance.interceptors.response.use(
   (response) => response,
-  (error) => {
+  async (error) => {
+    const originalRequest = error.config;
+
+    // Access token caducado o revocado en backoffice: renovar y reintentar una vez
+    if (
+      error.response?.status === 401 &&
+      originalRequest &&
+      !originalRequest._reintentado &&
+      !window.location.pathname.startsWith('/pos-terminal') &&
+      !originalRequest.url?.includes('/auth/')
+    ) {
+      originalRequest._reintentado = true;
+      const nuevoToken = await renovarAccessToken();
+      if (nuevoToken) {
+        originalRequest.headers.Authorization = `Bearer ${nuevoToken}`;
+        return axiosInstance(originalRequest);
+      }
+    }
+
     // Log detallado de errores 401/403 para debugging
     if (error.response?.status === 401 || error.response?.status === 403) {
       console.error(`❌ ${error.response.status} ${error.response.statusText}:`, {
@@ -67,6 +111,7 @@ axiosInstance.interceptors.response.use(
       if (!currentPath.startsWith('/pos-terminal')) {
         // Limpiar tokens solo en backoffice
         localStorage.removeItem('token');
+        localStorage.removeItem('refresh_token');
         localStorage.removeItem('user');
         localStorage.removeItem('device_token');
         localStorage.removeItem('device_uuid');
@@ -63,6 +63,7 @@ export const jornadasApi = {
   getEstadisticasGenerales: async (): Promise<{
     totalPendiente: number;
     cantidadPendientes: number;
+    empleadosConPendientes: number;
   }> => {
     const { data } = await axiosInstance.get('/jornadas/stats/general');
     return data;
@@ -83,7 +84,14 @@ export const jornadasApi = {
     return data;
   },
 
-  pagarMultiples: async (jornadaIds: number[], metodoPago: string): Promise<JornadaTrabajo[]> => {
+  pagarMultiples: async (jornadaIds: number[], metodoPago: string): Promise<{
+    jornadasPagadas: number;
+    totalPagado: number;
+    empleados: number;
+    metodoPago: string;
+    fechaPago: string;
+    yaPagadas: number[];
+  }> => {
     const { data } = await axiosInstance.post('/jornadas/pagar-multiples', {
       jornadaIds,
       metodoPago
@@ -1,4 +1,4 @@
-import { FC, useState, useRef } from 'react';
+import { FC, useState, useRef, useEffect } from 'react';
 import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
 import {
   Upload,
@@ -6,6 +6,7 @@ import {
   FileText,
   Image,
   Download,
+  Eye,
   Trash2,
   X,
   Check,
@@ -30,6 +31,38 @@ const TIPO_ADJUNTO_OPTIONS = [
   { value: 'OTRO', label: 'Otro', color: 'bg-gray-100 text-gray-800' },
 ];
 
+/**
+ * Miniatura de un adjunto de imagen; mientras carga (o si no hay) se muestra el icono
+ */
+const MiniaturaAdjunto: FC<{ adjunto: AdjuntoPedido; icono: React.ReactNode }> = ({
+  adjunto,
+  icono,
+}) => {
+  const { data: blob } = useQuery({
+    queryKey: ['adjunto-miniatura', adjunto.id],
+    queryFn: () => adjuntosPedidoApi.getMiniatura(adjunto),
+    enabled: !!adjunto.urlMiniatura,
+    staleTime: Infinity,
+  });
+  const [url, setUrl] = useState<string | null>(null);
+
+  useEffect(() => {
+    if (!blob) return;
+    const objectUrl = URL.createObjectURL(blob);
+    setUrl(objectUrl);
+    return () => URL.revokeObjectURL(objectUrl);
+  }, [blob]);
+
+  if (!url) return <>{icono}</>;
+  return (
+    <img
+      src={url}
+      alt={adjunto.nombreOriginal}
+      className="h-12 w-12 rounded object-cover border border-gray-200"
+    />
+  );
+};
+
 export const AdjuntosSection: FC<AdjuntosSectionProps> = ({ pedidoId }) => {
   const queryClient = useQueryClient();
   const fileInputRef = useRef<HTMLInputElement>(null);
@@ -127,6 +160,14 @@ export const AdjuntosSection: FC<AdjuntosSectionProps> = ({ pedidoId }) => {
     }
   };
 
+  const handleVistaPrevia = async (adjunto: AdjuntoPedido) => {
+    try {
+      await adjuntosPedidoApi.abrirVistaPrevia(adjunto);
+    } catch (error) {
+      toast.error('Error al abrir la vista previa');
+    }
+  };
+
   const handleEliminar = async (adjuntoId: number) => {
     if (window.confirm('¿Estás seguro de que deseas eliminar este archivo?')) {
       eliminarMutation.mutate(adjuntoId);
@@ -299,7 +340,14 @@ export const AdjuntosSection: FC<AdjuntosSectionProps> = ({ pedidoId }) => {
               className="bg-white border border-gray-200 rounded-lg p-4 hover:shadow-md transition-shadow"
             >
               <div className="flex items-start gap-3">
-                <div className="flex-shrink-0 mt-1">{getIconoArchivo(adjunto)}</div>
+                <button
+                  type="button"
+                  onClick={() => handleVistaPrevia(adjunto)}
+                  className="flex-shrink-0 mt-1"
+                  title={adjunto.urlVistaPrevia ? 'Vista previa' : 'Descargar'}
+                >
+                  <MiniaturaAdjunto adjunto={adjunto} icono={getIconoArchivo(adjunto)} />
+                </button>
 
                 <div className="flex-1 min-w-0">
                   <div className="flex items-start justify-between gap-2">
@@ -332,6 +380,15 @@ export const AdjuntosSection: FC<AdjuntosSectionProps> = ({ pedidoId }) => {
                 </div>
 
                 <div className="flex items-center gap-2">
+                  {adjunto.urlVistaPrevia && (
+                    <button
+                      onClick={() => handleVistaPrevia(adjunto)}
+                      className="p-2 text-indigo-600 hover:bg-indigo-50 rounded-lg transition-colors"
+                      title="Vista previa"
+                    >
+                      <Eye className="h-4 w-4" />
+                    </button>
+                  )}
                   <button
                     onClick={() => handleDescargar(adjunto)}
                     className="p-2 text-blue-600 hover:bg-blue-50 rounded-lg transition-colors"
@@ -130,8 +130,8 @@ export const JornadasPage = () => {
     if (!confirm(`¿Pagar ${selectedJornadas.size} jornadas seleccionadas?`)) return;
 
     try {
-      await jornadasApi.pagarMultiples(Array.from(selectedJornadas), metodoPago.toUpperCase());
-      notify.success(`${selectedJornadas.size} jornadas marcadas como pagadas`);
+      const resumen = await jornadasApi.pagarMultiples(Array.from(selectedJornadas), metodoPago.toUpperCase());
+      notify.success(`${resumen.jornadasPagadas} jornadas marcadas como pagadas`);
       setSelectedJornadas(new Set());
       loadData();
     } catch (error) {
@@ -51,12 +51,15 @@ export const useAuthStore = create<AuthState>()(
         try {
           const response = await authApi.login(credentials);
 
-          // Calcular timestamp de expiración (24 horas desde ahora)
-          const expiresAt = Date.now() + (24 * 60 * 60 * 1000);
+          // La sesión dura lo que el refresh token (el access token se renueva en axios.ts)
+          const expiresAt = Date.now() + (response.refreshExpiresIn ?? 24 * 60 * 60 * 1000);
 
           // ⚠️ IMPORTANTE: Guardar token en localStorage ANTES de obtener usuario
           // El interceptor de axios necesita el token en localStorage para la próxima request
           localStorage.setItem('token', response.token);
+          if (response.refreshToken) {
+            localStorage.setItem('refresh_token', response.refreshToken);
+          }
 
           // Obtener usuario completo
           const user = await authApi.getCurrentUser();
@@ -81,6 +84,9 @@ export const useAuthStore = create<AuthState>()(
       },
 
       logout: () => {
+        // Revocar los tokens en el servidor (sin esperar respuesta)
+        authApi.logout(localStorage.getItem('refresh_token')).catch(() => undefined);
+        localStorage.removeItem('refresh_token');
         set({
           user: null,
           token: null,
@@ -31,6 +31,9 @@ export interface LoginResponse {
   username: string;
   email: string;
   rol: string;
+  refreshToken?: string;
+  expiresIn?: number; // ms
+  refreshExpiresIn?: number; // ms
 }
 
 // Tipos de Eventos